@@ -0,0 +1,468 @@
+/*============================================================================*\
+ | Copyright (C) 2015 Matthew Edwards                                         |
+ |                                                                            |
+ | Licensed under the Apache License, Version 2.0 (the "License"); you may    |
+ | not use this file except in compliance with the License. You may obtain a  |
+ | copy of the License at                                                     |
+ |                                                                            |
+ |     http://www.apache.org/licenses/LICENSE-2.0                             |
+ |                                                                            |
+ | Unless required by applicable law or agreed to in writing, software        |
+ | distributed under the License is distributed on an "AS IS" BASIS,          |
+ | WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   |
+ | See the License for the specific language governing permissions and        |
+ | limitations under the License.                                             |
+\*============================================================================*/
+
+package me.edwards.des;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.logging.Level;
+import me.edwards.des.block.Ballot;
+import me.edwards.des.block.Block;
+import me.edwards.des.block.BlockChain;
+import me.edwards.des.net.Connection;
+import me.edwards.des.net.packet.PacketGetData;
+import me.edwards.des.net.packet.PacketGetHeaders;
+import me.edwards.des.net.packet.PacketHeaders;
+import me.edwards.des.net.packet.PacketInv;
+import me.edwards.des.util.Hash256;
+import me.edwards.des.util.HashUtil;
+
+// -----------------------------------------------------------------------------
+/**
+ * Headers-first synchronization of the {@link BlockChain BlockChain} of a
+ * {@link Node Node} with its peers. When a connection is established, the Node
+ * {@linkplain ChainSync#start(Connection) requests} the headers of the Blocks
+ * which follow the most recent Block shared with the peer. Every header is
+ * checked before its Block is downloaded: it must follow the previous header,
+ * have a target no easier than {@link Block#MAXIMUM_TARGET}, and carry a valid
+ * Proof of Work. Headers are requested again from the same peer until it has
+ * no more to send. Headers are only accepted from a peer while a request
+ * sent to it is unanswered.<br>
+ * <br>
+ * The Blocks of the checked headers are then downloaded from all connected
+ * peers which sent the headers, through a sliding window of
+ * {@link ChainSync#WINDOW} Blocks starting at the first Block which is not yet
+ * in the BlockChain. Each Block is requested from the eligible peer with the
+ * fewest Blocks in flight, up to {@link ChainSync#PEER_LIMIT} per peer, and
+ * the window moves forward as Blocks are appended. Blocks which arrive out of
+ * order wait in the {@link me.edwards.des.block.OrphanPool orphan pool} of the
+ * BlockChain. Downloaded Blocks are validated like any other Block.<br>
+ * <br>
+ * Requests are tracked by the {@link RequestTracker RequestTracker} of the
+ * Node, which sends a Block which is not received in time to another eligible
+ * peer. Blocks are not requested from a stalling peer while another peer can
+ * send them. The first Block of the window is requested again if it was
+ * received but is still not appended after {@link RequestTracker#TIMEOUT},
+ * because it was invalid or dropped.<br>
+ * <br>
+ * Created on: Oct 17, 2026 at 11:26:51 AM
+ * 
+ * @author Matthew Edwards
+ */
+public class ChainSync
+    implements NodeListener
+{
+    // ~ Static/Instance variables .............................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Number of Blocks, starting at the first Block missing from the
+     * BlockChain, which may be requested at the same time
+     */
+    public static final int                    WINDOW     = 128;
+
+    /**
+     * Maximum number of Blocks in flight from a single peer
+     */
+    public static final int                    PEER_LIMIT = 16;
+
+
+    // -------------------------------------------------------------------------
+    private final Node                         node;
+
+    /**
+     * Hashes of the checked headers whose Blocks are not yet known to be in
+     * the BlockChain, in the order in which they were received
+     */
+    private final ArrayList<Hash256>           headers;
+
+    /**
+     * Position of every queued header since the synchronization started
+     */
+    private final HashMap<Hash256, Long>       positions;
+
+    /**
+     * For every peer, the position after the last queued header it sent
+     */
+    private final HashMap<Connection, Long>    reach;
+
+    /**
+     * Peers which did not yet answer the last request for headers sent to
+     * them
+     */
+    private final HashSet<Connection>          requested;
+
+    /**
+     * Time at which every received Block which is not yet in the BlockChain
+     * was received
+     */
+    private final HashMap<Hash256, Long>       delivered;
+
+    private int                                base;
+    private long                               removed;
+
+
+    // ~ Constructors ..........................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Creates new ChainSync for a Node.
+     * 
+     * @param node
+     *            Node whose BlockChain is synchronized
+     */
+    public ChainSync(Node node)
+    {
+        this.node = node;
+        this.headers = new ArrayList<Hash256>();
+        this.positions = new HashMap<Hash256, Long>();
+        this.reach = new HashMap<Connection, Long>();
+        this.requested = new HashSet<Connection>();
+        this.delivered = new HashMap<Hash256, Long>();
+        this.base = 0;
+        this.removed = 0;
+    }
+
+
+    // ~ Methods ...............................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Requests the headers following the most recent Block shared with a
+     * peer, using the {@linkplain BlockChain#getLocator() block locator} of
+     * the Node's BlockChain.
+     * 
+     * @param connection
+     *            Connection to the peer
+     */
+    public synchronized void start(Connection connection)
+    {
+        if (requested.add(connection))
+        {
+            connection.send(new PacketGetHeaders(node.blockChain
+                .getLocator()));
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Checks the headers received from a peer and queues the Blocks which are
+     * not in the BlockChain for download. Checking stops at the first header
+     * which does not follow the previous one or has an invalid Proof of Work.
+     * If the packet was full, the following headers are requested from the
+     * same peer. Headers which were not requested from the peer are ignored.
+     * 
+     * @param packet
+     *            Received headers
+     * @param connection
+     *            Connection to the peer which sent the headers
+     */
+    public synchronized void receive(PacketHeaders packet, Connection connection)
+    {
+        if (!requested.remove(connection))
+        {
+            node.logger.warning("Headers from " + connection
+                + " are unsolicited.");
+            return;
+        }
+        BlockChain chain = node.blockChain;
+        Hash256 last = null;
+        int added = 0;
+        int checked = 0;
+        for (; packet.getSize() > checked; checked++)
+        {
+            byte[] header = packet.getHeader(checked);
+            int nonce = packet.getNonce(checked);
+            int target = ByteBuffer.wrap(header).getInt(72);
+            Hash256 prevHash = Hash256.copyOf(header, 4);
+            if (last == null
+                ? !positions.containsKey(prevHash) && !chain.contains(prevHash)
+                : !prevHash.equals(last))
+            {
+                node.logger.warning("Headers from " + connection
+                    + " do not connect!");
+                break;
+            }
+            if (Block.getDifficulty(target) < Block
+                .getDifficulty(Block.MAXIMUM_TARGET)
+                || !HashUtil.validateProof(header, nonce, target))
+            {
+                node.logger.warning("Header from " + connection
+                    + " has an invalid Proof of Work!");
+                break;
+            }
+
+            last = HashUtil.generateBlockHash(header, nonce);
+            Long position = positions.get(last);
+            if (position == null && !chain.contains(last))
+            {
+                position = removed + headers.size();
+                headers.add(last);
+                positions.put(last, position);
+                added++;
+            }
+            if (position != null)
+            {
+                Long known = reach.get(connection);
+                if (known == null || known < position + 1)
+                {
+                    reach.put(connection, position + 1);
+                }
+            }
+        }
+        node.logger.log(
+            added > 0 ? Level.INFO : Level.FINER,
+            "Received " + packet.getSize() + " headers from " + connection
+                + " (" + added + " new, " + getQueued() + " queued)");
+
+        if (checked == PacketHeaders.MAXIMUM_HEADERS)
+        {
+            requested.add(connection);
+            connection.send(new PacketGetHeaders(Collections
+                .singletonList(last)));
+        }
+        schedule();
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Marks a queued Block as received, which frees its slot so the next Block
+     * can be requested from the peer.
+     * 
+     * @param hash
+     *            Hash of the received Block
+     */
+    public synchronized void delivered(Hash256 hash)
+    {
+        if (positions.containsKey(hash))
+        {
+            delivered.put(hash, System.currentTimeMillis());
+            schedule();
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Forgets a disconnected peer. The Blocks in flight from the peer are
+     * requested from the remaining peers by the Node's
+     * {@link RequestTracker RequestTracker}.
+     * 
+     * @param connection
+     *            Connection to the peer
+     */
+    public synchronized void removePeer(Connection connection)
+    {
+        reach.remove(connection);
+        requested.remove(connection);
+        schedule();
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Requests the first Block of the window again if it was received more
+     * than {@link RequestTracker#TIMEOUT} ago but is still not in the
+     * BlockChain. Its parent is in the BlockChain, so the Block was not kept
+     * as an orphan. Called every {@link RequestTracker#CHECK_INTERVAL}
+     * milliseconds by the Node.
+     */
+    public synchronized void check()
+    {
+        if (headers.size() > base)
+        {
+            Hash256 hash = headers.get(base);
+            Long time = delivered.get(hash);
+            if (time != null
+                && System.currentTimeMillis() - time >= RequestTracker.TIMEOUT
+                && !node.blockChain.contains(hash))
+            {
+                node.logger.fine("Block " + hash
+                    + " was not appended! Requesting again...");
+                delivered.remove(hash);
+            }
+        }
+        schedule();
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the number of Blocks whose headers were checked but which are
+     * not yet in the BlockChain.
+     * 
+     * @return Number of queued Blocks
+     */
+    public synchronized int getQueued()
+    {
+        return headers.size() - base;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Moves the download window past the Blocks which were appended to the
+     * BlockChain, and requests the Blocks of the window which are neither in
+     * flight nor waiting to be appended.
+     */
+    private void schedule()
+    {
+        BlockChain chain = node.blockChain;
+        while (headers.size() > base && chain.contains(headers.get(base)))
+        {
+            Hash256 hash = headers.get(base++);
+            positions.remove(hash);
+            delivered.remove(hash);
+        }
+        if (base == headers.size() || base >= WINDOW * 16)
+        {
+            if (base > 0 && base == headers.size())
+            {
+                node.logger.info("Synchronized BlockChain to height "
+                    + (chain.getSize() - 1) + ".");
+            }
+            headers.subList(0, base).clear();
+            removed += base;
+            base = 0;
+        }
+
+        RequestTracker tracker = node.dataRequests;
+        HashMap<Connection, Integer> load = new HashMap<Connection, Integer>();
+        ArrayList<Connection> stalling = new ArrayList<Connection>();
+        for (Connection c : node.getPeers())
+        {
+            Long known = reach.get(c);
+            if (known != null && known > removed + base
+                && c.getConnectionStatus() == Connection.CONNECTION_BOTH)
+            {
+                load.put(c, 0);
+                if (tracker.isStalling(c))
+                {
+                    stalling.add(c);
+                }
+            }
+        }
+
+        /*
+         * A stalling peer would hold back the window until its request times
+         * out, so it is only used when every eligible peer is stalling.
+         */
+
+        if (stalling.size() < load.size())
+        {
+            load.keySet().removeAll(stalling);
+        }
+        int end = Math.min(base + WINDOW, headers.size());
+        for (int i = base; end > i; i++)
+        {
+            Connection c = tracker.getPeer(headers.get(i));
+            if (c != null && load.containsKey(c))
+            {
+                load.put(c, load.get(c) + 1);
+            }
+        }
+
+        HashMap<Connection, PacketGetData> requests =
+            new HashMap<Connection, PacketGetData>();
+        for (int i = base; end > i; i++)
+        {
+            Hash256 hash = headers.get(i);
+            if (tracker.contains(hash) || delivered.containsKey(hash)
+                || chain.contains(hash))
+            {
+                continue;
+            }
+            Connection peer = null;
+            Iterator<Map.Entry<Connection, Integer>> it =
+                load.entrySet().iterator();
+            while (it.hasNext())
+            {
+                Map.Entry<Connection, Integer> e = it.next();
+                if (e.getValue() < PEER_LIMIT
+                    && tracker.getOutstanding(e.getKey()) < tracker
+                        .getLimit(e.getKey())
+                    && reach.get(e.getKey()) > removed + i
+                    && (peer == null || e.getValue() < load.get(peer)))
+                {
+                    peer = e.getKey();
+                }
+            }
+            if (peer == null)
+            {
+                continue;
+            }
+            load.put(peer, load.get(peer) + 1);
+            if (tracker.request(PacketInv.VECTOR_BLOCK, hash, peer))
+            {
+                PacketGetData getData = requests.get(peer);
+                if (getData == null)
+                {
+                    getData = new PacketGetData();
+                    requests.put(peer, getData);
+                }
+                getData.addInv(PacketInv.VECTOR_BLOCK, hash);
+            }
+
+            /*
+             * The other peers which sent the header can take over the request
+             * if the peer does not answer.
+             */
+
+            for (Connection c : load.keySet())
+            {
+                if (c != peer && reach.get(c) > removed + i)
+                {
+                    tracker.request(PacketInv.VECTOR_BLOCK, hash, c);
+                }
+            }
+        }
+        for (Map.Entry<Connection, PacketGetData> e : requests.entrySet())
+        {
+            e.getKey().send(e.getValue());
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    @Override
+    public void ballotAccepted(Ballot ballot)
+    {
+        //
+    }
+
+
+    // -------------------------------------------------------------------------
+    @Override
+    public void ballotAnnounced(Hash256 root, Connection connection)
+    {
+        //
+    }
+
+
+    // -------------------------------------------------------------------------
+    @Override
+    public synchronized void blockAppended(Block block)
+    {
+        schedule();
+    }
+}
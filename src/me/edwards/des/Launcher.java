@@ -35,13 +35,19 @@ import me.edwards.des.block.Ballot;
 import me.edwards.des.block.Block;
 import me.edwards.des.block.BlockChain;
 import me.edwards.des.block.BlockChainIO;
+import me.edwards.des.block.BlockStore;
+import me.edwards.des.block.OrphanPool;
 import me.edwards.des.block.Vote;
+import me.edwards.des.demo.Benchmark;
 import me.edwards.des.demo.Counter;
+import me.edwards.des.demo.LoadGenerator;
 import me.edwards.des.demo.Submitter;
 import me.edwards.des.net.Connection;
 import me.edwards.des.net.packet.PacketGetAddr;
 import me.edwards.des.net.packet.PacketPing;
 import me.edwards.des.util.ByteUtil;
+import me.edwards.des.util.Hash256;
+import me.edwards.des.util.Miner;
 
 // -----------------------------------------------------------------------------
 /**
@@ -86,6 +92,14 @@ public class Launcher
      * <td><strong>Usage</strong></td>
      * <td><strong>Description</strong></td> </thead>
      * <tr>
+     * <td>-bench</td>
+     * <td>-bench &lt;Benchmark&gt; (Arguments)</td>
+     * <td>Runs the specified {@link Benchmark benchmark}, then exits. Available
+     * benchmarks: lookup (Number of Blocks), hashing (Number of hashes),
+     * digest (Number of hashes), merkle (Number of Ballots), mining (Seconds
+     * per measurement).</td>
+     * </tr>
+     * <tr>
      * <td>-count</td>
      * <td>-count (BlockChain File)</td>
      * <td>Tabulates the results of the specified BlockChain after loading it
@@ -115,6 +129,21 @@ public class Launcher
      * <td>Generates key databases for demonstration purposes.</td>
      * </tr>
      * <tr>
+     * <td>-load</td>
+     * <td>-load &lt;Ballots per second&gt; (Threads) (Address:Port)</td>
+     * <td>Adds a {@link LoadGenerator load generator} to the Node, which signs
+     * and submits one Ballot per available private key at the specified rate
+     * and reports their acceptance and inclusion latencies. If an address is
+     * specified, Ballots are announced to that Node instead of the local Node.
+     * By default, one thread per available processor signs Ballots.</td>
+     * </tr>
+     * <tr>
+     * <td>-miners</td>
+     * <td>-miners &lt;Number of Threads&gt;</td>
+     * <td>Sets the number of threads used to generate a Proof of Work. By
+     * default, one thread per available processor is used.</td>
+     * </tr>
+     * <tr>
      * <td>-name</td>
      * <td>-name &lt;Name&gt;</td>
      * <td>Sets the human-readable name of the Node.</td>
@@ -137,6 +166,19 @@ public class Launcher
      * specified, it will submit the available number of Ballots within that
      * timeframe.</td>
      * </tr>
+     * <tr>
+     * <td>-validators</td>
+     * <td>-validators &lt;Ballot Threads&gt; (Block Threads)</td>
+     * <td>Sets the number of threads used to validate received Ballots and
+     * Blocks. By default, one thread per available processor validates
+     * Ballots and one thread validates Blocks.</td>
+     * </tr>
+     * <tr>
+     * <td>-verify</td>
+     * <td>-verify</td>
+     * <td>Verifies every stored Block of the BlockChain in the background after
+     * it is loaded.</td>
+     * </tr>
      * </table>
      * 
      * @param args
@@ -173,6 +215,7 @@ public class Launcher
 
         final Node node = new Node();
         node.peerList = new ArrayList<String>();
+        boolean verify = false;
         for (int i = 0; args.length > i; i++)
         {
             try
@@ -185,6 +228,18 @@ public class Launcher
                 {
                     node.port = Integer.parseInt(args[++i]);
                 }
+                else if (args[i].equalsIgnoreCase("-miners"))
+                {
+                    Miner.setThreads(Integer.parseInt(args[++i]));
+                }
+                else if (args[i].equalsIgnoreCase("-validators"))
+                {
+                    node.ballotThreads = Integer.parseInt(args[++i]);
+                    if (args.length > i + 1 && !args[i + 1].startsWith("-"))
+                    {
+                        node.blockThreads = Integer.parseInt(args[++i]);
+                    }
+                }
                 else if (args[i].equalsIgnoreCase("-name"))
                 {
                     node.name = args[++i];
@@ -193,7 +248,7 @@ public class Launcher
                 {
                     Block genesis =
                         new Block(
-                            "0",
+                            Hash256.ZERO,
                             Block.MAXIMUM_TARGET,
                             new ArrayList<Ballot>());
                     genesis.genProof();
@@ -222,6 +277,14 @@ public class Launcher
                         ids);
                     GLOBAL.info("ID databases generated!");
                 }
+                else if (args[i].equalsIgnoreCase("-bench"))
+                {
+                    String name = args[++i];
+                    Benchmark.run(
+                        name,
+                        Arrays.copyOfRange(args, i + 1, args.length));
+                    System.exit(0);
+                }
                 else if (args[i].equalsIgnoreCase("-count"))
                 {
                     try
@@ -259,6 +322,72 @@ public class Launcher
                         e.printStackTrace();
                     }
                 }
+                else if (args[i].equalsIgnoreCase("-load"))
+                {
+                    final int rate = Integer.parseInt(args[++i]);
+                    final int threads =
+                        args.length > i + 1 && args[i + 1].matches("\\d+")
+                            ? Integer.parseInt(args[++i])
+                            : Runtime.getRuntime().availableProcessors();
+                    final String remote =
+                        args.length > i + 1 && args[i + 1].contains(":")
+                            ? args[++i]
+                            : null;
+                    GLOBAL.info("Adding a Load Generator to this Node...");
+                    new Thread(new Runnable() {
+                        @Override
+                        public void run()
+                        {
+                            String[][] voteList =
+                                { { "1.1", "1.2" }, { "2.1", "2.2" },
+                                    { "3.1", "3.2" }, { "4.1", "4.2" } };
+                            try
+                            {
+                                while (!node.running)
+                                {
+                                    Thread.sleep(1000);
+                                }
+                                Connection target = null;
+                                if (remote != null)
+                                {
+                                    target =
+                                        node.connect(
+                                            InetAddress.getByName(remote
+                                                .split(":")[0]),
+                                            Integer.parseInt(remote
+                                                .split(":")[1]));
+                                    if (target == null)
+                                    {
+                                        GLOBAL.warning("Could not connect to "
+                                            + remote
+                                            + "! Load Generator not started.");
+                                        return;
+                                    }
+                                    while (target.isConnected()
+                                        && target.getConnectionStatus() != Connection.CONNECTION_BOTH)
+                                    {
+                                        Thread.sleep(100);
+                                    }
+                                }
+                                new LoadGenerator(
+                                    node,
+                                    target,
+                                    voteList,
+                                    rate,
+                                    threads).start(DIR);
+                            }
+                            catch (Exception e)
+                            {
+                                GLOBAL.log(Level.WARNING, "Load Exception", e);
+                            }
+                        }
+                    },
+                        "Load Generator Wait").start();
+                }
+                else if (args[i].equalsIgnoreCase("-verify"))
+                {
+                    verify = true;
+                }
                 else if (args[i].equalsIgnoreCase("-submit"))
                 {
                     GLOBAL.info("Adding a Submitter to this Node...");
@@ -351,6 +480,21 @@ public class Launcher
             System.exit(0);
         }
 
+        if (verify && node.blockChain.getStore() != null)
+        {
+            final BlockStore store = node.blockChain.getStore();
+            Thread verifier = new Thread(new Runnable() {
+                @Override
+                public void run()
+                {
+                    store.verify();
+                }
+            }, "BlockChain Verifier");
+            verifier.setDaemon(true);
+            verifier.setPriority(Thread.MIN_PRIORITY);
+            verifier.start();
+        }
+
         node.start();
 
         Scanner in = new Scanner(System.in);
@@ -423,6 +567,35 @@ public class Launcher
                             GLOBAL.info(c.toString());
                         }
                     }
+                    else if (input[0].equalsIgnoreCase("status"))
+                    {
+                        OrphanPool orphans = node.blockChain.getOrphans();
+                        GLOBAL.info("BlockChain: " + node.blockChain.getSize()
+                            + " Blocks\nBallots:    " + node.ballots.size()
+                            + " of " + node.ballots.getCapacity() + " ("
+                            + node.ballots.getRejected() + " refused)"
+                            + "\nOrphans:    " + orphans.getCount()
+                            + " Blocks (" + orphans.getSize() + " bytes), "
+                            + orphans.getResolved() + " resolved in "
+                            + orphans.getAverageResolutionTime()
+                            + " ms on average, " + orphans.getEvicted()
+                            + " evicted\nMiner:      " + Miner.getThreads()
+                            + " threads, " + (long) Miner.getHashrate()
+                            + " hashes per second\nValidation: "
+                            + node.ballotValidator.getQueued() + " of "
+                            + node.ballotValidator.getCapacity()
+                            + " Ballots queued ("
+                            + node.ballotValidator.getRejected()
+                            + " refused), "
+                            + node.blockValidator.getQueued() + " of "
+                            + node.blockValidator.getCapacity()
+                            + " Blocks queued ("
+                            + node.blockValidator.getRejected()
+                            + " refused)\nVerified:   "
+                            + node.verified.size() + " Ballots cached, "
+                            + node.verified.getHits() + " hits, "
+                            + node.verified.getMisses() + " misses");
+                    }
                     else if (input[0].equalsIgnoreCase("testload"))
                     {
                         int blocks = input.length > 1 ? Integer.parseInt(input[1]) : 10;
@@ -478,7 +651,7 @@ public class Launcher
                             for (int j = 0; ballotNum > j; j++)
                             {
                                 node.ballots
-                                    .add(new Ballot(
+                                    .offer(new Ballot(
                                         ByteUtil.bytesToHex(ByteUtil
                                             .intToBytes(i)),
                                         "0",
@@ -16,35 +16,52 @@
 
 package me.edwards.des;
 
-import java.io.IOException;
 import java.net.InetAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.security.Signature;
 import java.security.interfaces.ECPublicKey;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import me.edwards.des.block.Ballot;
+import me.edwards.des.block.BallotPool;
+import me.edwards.des.block.BallotVerifier;
 import me.edwards.des.block.Block;
 import me.edwards.des.block.BlockChain;
+import me.edwards.des.block.BlockTemplate;
+import me.edwards.des.block.CompactBlock;
+import me.edwards.des.block.MerkleProof;
+import me.edwards.des.block.VerifiedBallotCache;
 import me.edwards.des.demo.Submitter;
 import me.edwards.des.net.Connection;
+import me.edwards.des.net.ConnectionHandler;
 import me.edwards.des.net.packet.Packet;
 import me.edwards.des.net.packet.Packet.PacketTypes;
 import me.edwards.des.net.packet.PacketAddr;
 import me.edwards.des.net.packet.PacketBallot;
+import me.edwards.des.net.packet.PacketBallots;
 import me.edwards.des.net.packet.PacketBlock;
+import me.edwards.des.net.packet.PacketCompactBlock;
 import me.edwards.des.net.packet.PacketGetAddr;
+import me.edwards.des.net.packet.PacketGetBallots;
 import me.edwards.des.net.packet.PacketGetBlocks;
 import me.edwards.des.net.packet.PacketGetData;
+import me.edwards.des.net.packet.PacketGetHeaders;
+import me.edwards.des.net.packet.PacketGetProof;
+import me.edwards.des.net.packet.PacketHeaders;
 import me.edwards.des.net.packet.PacketInv;
 import me.edwards.des.net.packet.PacketNotFound;
 import me.edwards.des.net.packet.PacketPing;
 import me.edwards.des.net.packet.PacketPong;
+import me.edwards.des.net.packet.PacketProof;
 import me.edwards.des.net.packet.PacketVerack;
 import me.edwards.des.net.packet.PacketVersion;
 import me.edwards.des.util.ByteUtil;
+import me.edwards.des.util.Hash256;
+import me.edwards.des.util.WorkerPool;
 import me.edwards.des.util.Version;
 
 // -----------------------------------------------------------------------------
@@ -96,6 +113,16 @@ public class Node
      */
     public static final int         BLOCK_TIME      = 60 * 5;
 
+    /**
+     * Maximum number of received Ballots waiting to be validated
+     */
+    public static final int         BALLOT_QUEUE    = 10000;
+
+    /**
+     * Maximum number of received Blocks waiting to be validated
+     */
+    public static final int         BLOCK_QUEUE     = 100;
+
     // -------------------------------------------------------------------------
     /**
      * Logger instance to be used by this Node. Initialized during launching
@@ -117,18 +144,18 @@ public class Node
     /**
      * Hash of the parent of the Block currently being generated by the Node.
      */
-    protected String                blockGenHash;
+    protected Hash256               blockGenHash;
 
     /**
      * List of connections containing all of this Node's current peers.
      */
-    protected ArrayList<Connection> peers;
+    protected CopyOnWriteArrayList<Connection> peers;
 
     /**
-     * This Node's private list of all known, unmined ballots. Ballots inserted
-     * into new Blocks are copied from this list as new Blocks are generated.
+     * This Node's private pool of all known, unmined ballots. Ballots inserted
+     * into new Blocks are selected from this pool as new Blocks are generated.
      */
-    protected ArrayList<Ballot>     ballots;
+    protected BallotPool            ballots;
 
     /**
      * This Node's IP Address as an InetAddress instance.
@@ -136,9 +163,10 @@ public class Node
     protected InetAddress           ip;
 
     /**
-     * This Node's current listening socket as a ServerSocket instance.
+     * This Node's network layer, which owns the listening socket and serves
+     * all connections to peers.
      */
-    protected ServerSocket          socket;
+    protected ConnectionHandler     handler;
 
     /**
      * This Node's current listening socket port. Used for manual connections.
@@ -164,18 +192,74 @@ public class Node
      */
     protected boolean               running;
 
+    /**
+     * Number of threads validating received Ballots. Configurable before the
+     * Node is started.
+     */
+    protected int                   ballotThreads = Runtime.getRuntime()
+                                                      .availableProcessors();
+
+    /**
+     * Number of threads validating received Blocks. Configurable before the
+     * Node is started.
+     */
+    protected int                   blockThreads  = 1;
+
+    /**
+     * Bounded pool of threads validating received Ballots.
+     */
+    protected WorkerPool            ballotValidator;
+
+    /**
+     * Bounded pool of threads validating received Blocks. Blocks are validated
+     * separately from Ballots so a flood of Ballots never delays a Block.
+     */
+    protected WorkerPool            blockValidator;
+
+    /**
+     * Verifier used to check the signatures of the Ballots in a received Block
+     * in parallel.
+     */
+    protected BallotVerifier        verifier;
+
+    /**
+     * Cache of the Ballots whose signature was verified, so Ballots received
+     * in the pool are not verified again when they arrive in a Block.
+     */
+    protected VerifiedBallotCache   verified;
+
+    /**
+     * Headers-first synchronization of the BlockChain with this Node's peers.
+     */
+    protected ChainSync             sync;
+
+    /**
+     * Table of the data objects requested by this Node, which prevents
+     * unsolicited data from being accepted by the Node. Requests which are not
+     * answered in time are sent to other peers.
+     */
+    protected RequestTracker        dataRequests;
+
     // -------------------------------------------------------------------------
+
     /**
-     * A list of the hashes of all the data objects requested by this Node. This
-     * prevents unsolicited data from being accepted by the Node.
+     * Listeners notified of accepted Ballots and appended Blocks.
      */
-    private ArrayList<String>       dataRequests;
-    
+    private CopyOnWriteArrayList<NodeListener> listeners =
+                                                    new CopyOnWriteArrayList<NodeListener>();
+
+    /**
+     * Ballots {@linkplain Node#announce(Ballot, Connection) announced} by this
+     * Node without being added to its Ballot pool, by root hash. Peers request
+     * announced Ballots like pooled ones.
+     */
+    private Map<Hash256, Ballot>    announced;
+
     /**
-     * This thread accepts handshakes from new, previously unknown peers on the
-     * network.
+     * {@link CompactBlock Compact Blocks} received by this Node which are
+     * waiting for the Ballots missing from its Ballot pool, by Block hash.
      */
-    private Thread                  handshake;
+    private Map<Hash256, CompactBlock> compactBlocks;
     
     /**
      * This thread initiates Block generation if the {@link Node#BLOCK_TIME
@@ -183,6 +267,12 @@ public class Node
      */
     private Thread                  blockGenTimer;
 
+    /**
+     * This thread checks the timeouts of the {@link Node#dataRequests data
+     * requests} of this Node and of the synchronization of its BlockChain.
+     */
+    private Thread                  requestTimer;
+
     /**
      * This thread is used to attempt generation of new Blocks (mine a proof of
      * work for a new Block). As this process is very time and processor
@@ -192,6 +282,12 @@ public class Node
      */
     private Thread                  blockGen    = null;
 
+    /**
+     * Template of the Block currently being generated, to which newly
+     * accepted Ballots are added while its Proof of Work is generated.
+     */
+    private volatile BlockTemplate  blockTemplate;
+
 
     // ~ Methods ...............................................................
 
@@ -200,7 +296,7 @@ public class Node
      * Initializes the Node's networking processes and threads, starting the
      * Node on a specific IP Address and Port (specified by the
      * {@link me.edwards.des.Launcher Launcher}). This method creates and starts
-     * the {@link Node#handshake Handshake Thread}, allowing other Nodes to
+     * the {@link Node#handler Connection Handler}, allowing other Nodes to
      * connect to this Node. This method will also go through the "Peer List"
      * and attempt to connect to any initial peers, allowing the bootstrapping
      * process to take place. After this method is completed, the
@@ -208,17 +304,50 @@ public class Node
      */
     public void start()
     {
-        peers = new ArrayList<Connection>();
-        ballots = new ArrayList<Ballot>();
-        dataRequests = new ArrayList<String>();
+        peers = new CopyOnWriteArrayList<Connection>();
+        ballots = new BallotPool(BallotPool.MAXIMUM_BALLOTS);
+        dataRequests = new RequestTracker(this);
+        announced =
+            Collections.synchronizedMap(new LinkedHashMap<Hash256, Ballot>() {
+                private static final long serialVersionUID = 1L;
+
+
+                @Override
+                protected boolean removeEldestEntry(
+                    Map.Entry<Hash256, Ballot> e)
+                {
+                    return size() > BallotPool.MAXIMUM_BALLOTS;
+                }
+            });
+        compactBlocks =
+            Collections.synchronizedMap(new LinkedHashMap<Hash256, CompactBlock>() {
+                private static final long serialVersionUID = 1L;
+
+
+                @Override
+                protected boolean removeEldestEntry(
+                    Map.Entry<Hash256, CompactBlock> e)
+                {
+                    return size() > BLOCK_QUEUE;
+                }
+            });
+        ballotValidator =
+            new WorkerPool("Ballot Validator", ballotThreads, BALLOT_QUEUE);
+        blockValidator =
+            new WorkerPool("Block Validator", blockThreads, BLOCK_QUEUE);
+        verifier =
+            new BallotVerifier(Runtime.getRuntime().availableProcessors());
+        verified =
+            new VerifiedBallotCache(VerifiedBallotCache.MAXIMUM_ROOTS);
+        sync = new ChainSync(this);
+        listeners.add(sync);
 
         try
         {
-            socket = new ServerSocket(port);
-            socket.setReceiveBufferSize(BUFFER_SIZE);
+            handler = new ConnectionHandler(this, port);
             
             ip = InetAddress.getLocalHost();
-            port = socket.getLocalPort();
+            port = handler.getPort();
             if (name == null)
             {
                 name = ip.getHostAddress() + ":" + port;
@@ -234,56 +363,47 @@ public class Node
 
         running = true;
 
-        final Node n = this;
-        handshake = new Thread(new Runnable() {
+        handler.start();
+        
+        blockGenTimer = new Thread(new Runnable() {
             @Override
             public void run()
             {
                 while (running)
                 {
+                    generateBlock();
                     try
                     {
-                        Connection c = new Connection(n, socket.accept());
-                        logger.info("Accepted connection from Node "
-                            + c.getHostName() + "!");
-                        c.setConnectionStatus(Connection.CONNECTION_PEER_ONLY);
-                        peers.add(c);
-                        c.connect();
+                        Thread.sleep(BLOCK_TIME * 1000);
                     }
-                    catch (IOException e)
+                    catch (InterruptedException e)
                     {
-                        if (running)
-                        {
-                            logger.log(
-                                Level.WARNING,
-                                "Could not accept Node to socket",
-                                e);
-                        }
+                        //
                     }
                 }
             }
-        }, "Node Handshake");
-        handshake.start();
-        
-        blockGenTimer = new Thread(new Runnable() {
+        }, "Node Block Generation Timer");
+        blockGenTimer.start();
+        requestTimer = new Thread(new Runnable() {
             @Override
             public void run()
             {
                 while (running)
                 {
-                    generateBlock();
                     try
                     {
-                        Thread.sleep(BLOCK_TIME * 1000);
+                        Thread.sleep(RequestTracker.CHECK_INTERVAL);
                     }
                     catch (InterruptedException e)
                     {
                         //
                     }
+                    dataRequests.check();
+                    sync.check();
                 }
             }
-        }, "Node Block Generation Timer");
-        blockGenTimer.start();
+        }, "Node Request Timer");
+        requestTimer.start();
 
         logger.info("Node started!");
 
@@ -309,8 +429,8 @@ public class Node
 
     // -------------------------------------------------------------------------
     /**
-     * Stops the Node's running processes, including the {@link Node#handshake
-     * Handshake Thread} (preventing other Nodes from connecting to this Node)
+     * Stops the Node's running processes, including the {@link Node#handler
+     * Connection Handler} (preventing other Nodes from connecting to this Node)
      * and the {@link Node#blockGen Block Generation Thread} (stopping the
      * generation of any new Blocks or Blocks currently being generated). This
      * method also closes all networking sockets currently open. After this
@@ -325,28 +445,24 @@ public class Node
             running = false;
 
             stopBlockGeneration();
-            if (socket != null)
-            {
-                try
-                {
-                    socket.close();
-                }
-                catch (IOException e)
-                {
-                    //
-                }
-                socket = null;
-            }
-            if (handshake != null)
+            if (handler != null)
             {
-                handshake.interrupt();
-                handshake = null;
+                handler.close();
+                handler = null;
             }
+            ballotValidator.shutdown();
+            blockValidator.shutdown();
+            verifier.shutdown();
             if (blockGenTimer != null)
             {
                 blockGenTimer.interrupt();
                 blockGenTimer = null;
             }
+            if (requestTimer != null)
+            {
+                requestTimer.interrupt();
+                requestTimer = null;
+            }
             logger.info("Node stopped!");
         }
     }
@@ -421,8 +537,8 @@ public class Node
      * <td>{@link PacketGetData GetData}</td>
      * <td>Inventory Transfer</td>
      * <td>Sends requested data objects to the requesting Node using
-     * {@link PacketBallot Ballot data packets} or {@link PacketBlock Block data
-     * packets}.</td>
+     * {@link PacketBallot Ballot data packets}, {@link PacketBlock Block data
+     * packets} or {@link PacketCompactBlock Compact Block packets}.</td>
      * </tr>
      * <tr>
      * <td>{@link PacketBallot Ballot}</td>
@@ -446,15 +562,53 @@ public class Node
      * <td>Sends {@link PacketInv Inventory packet} containing all {@link Block
      * Blocks} after the Block specified in the GetBlocks request.</td>
      * </tr>
+     * <tr>
+     * <td>{@link PacketCompactBlock CmpctBlock}</td>
+     * <td>Inventory Transfer</td>
+     * <td>Rebuilds the {@link Block Block} from the Ballots of this Node's
+     * Ballot pool, and requests the missing Ballots with a
+     * {@link PacketGetBallots GetBallots packet}. A rebuilt Block is validated
+     * like a {@link PacketBlock Block packet}.</td>
+     * </tr>
+     * <tr>
+     * <td>{@link PacketGetBallots GetBallots}</td>
+     * <td>Inventory Transfer</td>
+     * <td>Sends the requested Ballots of a Block using a
+     * {@link PacketBallots Ballots packet}.</td>
+     * </tr>
+     * <tr>
+     * <td>{@link PacketBallots Ballots}</td>
+     * <td>Inventory Transfer</td>
+     * <td>Completes a compact Block with the received Ballots and validates
+     * it. If the Block cannot be rebuilt, it is requested in full.</td>
+     * </tr>
+     * <tr>
+     * <td>{@link PacketGetHeaders GetHeaders}</td>
+     * <td>Synchronization</td>
+     * <td>Sends a {@link PacketHeaders Headers packet} containing the headers
+     * of the main chain after the most recent Block of the requester's block
+     * locator.</td>
+     * </tr>
+     * <tr>
+     * <td>{@link PacketHeaders Headers}</td>
+     * <td>Synchronization</td>
+     * <td>Checks the received headers and downloads their Blocks from all
+     * peers through the {@link ChainSync ChainSync}.</td>
+     * </tr>
      * </table>
      * 
      * @see Packet
      * @see PacketAddr
      * @see PacketBallot
+     * @see PacketBallots
      * @see PacketBlock
+     * @see PacketCompactBlock
      * @see PacketGetAddr
+     * @see PacketGetBallots
      * @see PacketGetBlocks
      * @see PacketGetData
+     * @see PacketGetHeaders
+     * @see PacketHeaders
      * @see PacketInv
      * @see PacketNotFound
      * @see PacketPing
@@ -501,23 +655,15 @@ public class Node
                         .finer("Version valid! Sending verack and completing handshake...");
                     connection.send(new PacketVerack());
                     connection.setConnectionStatus(Connection.CONNECTION_BOTH);
-                    logger.finer("Requesting block information from "
+                    logger.finer("Requesting block headers from "
                         + connection);
-                    connection.send(new PacketGetBlocks(blockChain.getTop()
-                        .getHash()));
+                    sync.start(connection);
                     logger.finer("Sending ballot information to " + connection);
                     PacketInv inv = new PacketInv();
-                    for (int i = 0; ballots.size() > i; i++)
+                    ArrayList<Ballot> pool = ballots.getBallots();
+                    for (int i = 0; pool.size() > i; i++)
                     {
-                        Ballot bi = ballots.get(i);
-                        if (bi != null)
-                        {
-                            inv.addInv(bi);
-                        }
-                        else
-                        {
-                            i--;
-                        }
+                        inv.addInv(pool.get(i));
                     }
                     connection.send(inv);
                     logger.finer("Requesting address cache information from "
@@ -546,23 +692,15 @@ public class Node
                 {
                     logger.finer("Received verack! Completing handshake...");
                     connection.setConnectionStatus(Connection.CONNECTION_BOTH);
-                    logger.finer("Requesting block information from "
+                    logger.finer("Requesting block headers from "
                         + connection);
-                    connection.send(new PacketGetBlocks(blockChain.getTop()
-                        .getHash()));
+                    sync.start(connection);
                     logger.finer("Sending ballot information to " + connection);
                     PacketInv inv = new PacketInv();
-                    for (int i = 0; ballots.size() > i; i++)
+                    ArrayList<Ballot> pool = ballots.getBallots();
+                    for (int i = 0; pool.size() > i; i++)
                     {
-                        Ballot bi = ballots.get(i);
-                        if (bi != null)
-                        {
-                            inv.addInv(bi);
-                        }
-                        else
-                        {
-                            i--;
-                        }
+                        inv.addInv(pool.get(i));
                     }
                     connection.send(inv);
                     logger.finer("Requesting address cache information from "
@@ -608,52 +746,50 @@ public class Node
                 {
                     if (packet.getType(i) == PacketInv.VECTOR_BALLOT)
                     {
-                        if (dataRequests.contains(packet.getHash(i)))
+                        for (NodeListener l : listeners)
                         {
-                            continue;
+                            l.ballotAnnounced(packet.getHash(i), connection);
                         }
-                        boolean b = true;
-                        for (int v = 0; ballots.size() > v; v++)
+                        if (announced.containsKey(packet.getHash(i))
+                            || ballots.isFull())
                         {
-                            Ballot bi = ballots.get(v);
-                            if (bi != null)
-                            {
-                                if (bi.getRoot()
-                                    .equals(packet.getHash(i)))
-                                {
-                                    b = false;
-                                    break;
-                                }
-                            }
-                            else
-                            {
-                                v--;
-                            }
+                            continue;
                         }
-                        if (b)
+                        if (!ballots.contains(packet.getHash(i))
+                            && dataRequests.request(
+                                packet.getType(i),
+                                packet.getHash(i),
+                                connection))
                         {
                             logger.finer("New resource " + packet.getHash(i)
                                 + "(" + packet.getType(i)
                                 + ")! Requesting data...");
-                            dataRequests.add(packet.getHash(i));
                             getData
                                 .addInv(packet.getType(i), packet.getHash(i));
                         }
                     }
                     else if (packet.getType(i) == PacketInv.VECTOR_BLOCK)
                     {
-                        if (dataRequests.contains(packet.getHash(i)))
-                        {
-                            continue;
-                        }
-                        if (!blockChain.contains(packet.getHash(i)))
+                        /*
+                         * A single new Block was just mined or relayed, so its
+                         * Ballots are most likely in the Ballot pool and it is
+                         * requested as a compact Block. Blocks announced in
+                         * bulk during synchronization are requested in full.
+                         */
+
+                        int type = packet.getSize() == 1
+                            ? PacketInv.VECTOR_COMPACT_BLOCK
+                            : PacketInv.VECTOR_BLOCK;
+                        if (!blockChain.contains(packet.getHash(i))
+                            && dataRequests.request(
+                                type,
+                                packet.getHash(i),
+                                connection))
                         {
                             logger.finer("New resource " + packet.getHash(i)
                                 + "(" + packet.getType(i)
                                 + ")! Requesting data...");
-                            dataRequests.add(packet.getHash(i));
-                            getData
-                                .addInv(packet.getType(i), packet.getHash(i));
+                            getData.addInv(type, packet.getHash(i));
                         }
                     }
                 }
@@ -669,6 +805,7 @@ public class Node
                 logger.finer("Received notice that resource "
                     + packet.getHash() + "(" + packet.getType()
                     + ") could not be found.");
+                dataRequests.notFound(packet.getHash(), connection);
                 return;
             }
             case GETDATA:
@@ -678,30 +815,19 @@ public class Node
                 {
                     if (packet.getType(i) == PacketInv.VECTOR_BALLOT)
                     {
-                        boolean b = false;
-                        for (int v = 0; ballots.size() > v; v++)
+                        Ballot bi = ballots.get(packet.getHash(i));
+                        if (bi == null)
                         {
-                            Ballot bi = ballots.get(v);
-                            if (bi != null)
-                            {
-                                if (bi.getRoot()
-                                    .equalsIgnoreCase(packet.getHash(i)))
-                                {
-                                    b = true;
-                                    logger.finer("Request for resource "
-                                        + packet.getHash(i) + "("
-                                        + packet.getType(i) + ")! Sending data...");
-                                    connection
-                                        .send(new PacketBallot(bi));
-                                    break;
-                                }
-                            }
-                            else
-                            {
-                                v--;
-                            }
+                            bi = announced.get(packet.getHash(i));
+                        }
+                        if (bi != null)
+                        {
+                            logger.finer("Request for resource "
+                                + packet.getHash(i) + "(" + packet.getType(i)
+                                + ")! Sending data...");
+                            connection.send(new PacketBallot(bi));
                         }
-                        if (!b)
+                        else
                         {
                             logger.finer("Request for resource "
                                 + packet.getHash(i) + "(" + packet.getType(i)
@@ -729,6 +855,26 @@ public class Node
                                 .getType(i), packet.getHash(i)));
                         }
                     }
+                    else if (packet.getType(i) == PacketInv.VECTOR_COMPACT_BLOCK)
+                    {
+                        if (blockChain.contains(packet.getHash(i)))
+                        {
+                            logger.finer("Request for resource "
+                                + packet.getHash(i) + "(" + packet.getType(i)
+                                + ")! Sending data...");
+                            connection.send(new PacketCompactBlock(
+                                new CompactBlock(blockChain.get(packet
+                                    .getHash(i)))));
+                        }
+                        else
+                        {
+                            logger.finer("Request for resource "
+                                + packet.getHash(i) + "(" + packet.getType(i)
+                                + ")! Could not be found! Sending reply...");
+                            connection.send(new PacketNotFound(packet
+                                .getType(i), packet.getHash(i)));
+                        }
+                    }
                 }
                 return;
             }
@@ -747,7 +893,7 @@ public class Node
                 logger.fine("Received Ballot " + packet.getBallot().getRoot()
                     + " with UUID " + packet.getBallot().getID());
                 final Ballot b = packet.getBallot();
-                new Thread(new Runnable() {
+                Runnable validation = new Runnable() {
                     @Override
                     public void run()
                     {
@@ -767,7 +913,7 @@ public class Node
                          * (closing a possible crashing vector).
                          */
 
-                        if (b.getBytes().length >= BlockChain.MAXIMUM_BLOCK_SIZE - 60)
+                        if (b.getSize() >= BlockChain.MAXIMUM_BLOCK_SIZE - 60)
                         {
                             logger.fine("Ballot " + b.getID()
                                 + " is too large.");
@@ -779,21 +925,11 @@ public class Node
                          * Node's Ballots (the Ballot pool).
                          */
 
-                        for (int i = 0; ballots.size() > i; i++)
+                        if (ballots.containsID(b.getID()))
                         {
-                            Ballot bi = ballots.get(i);
-                            if (bi == null)
-                            {
-                                i--;
-                                continue;
-                            }
-                            if (bi.getID()
-                                .equalsIgnoreCase(b.getID()))
-                            {
-                                logger.fine("Ballot " + b.getID()
-                                    + " is a duplicate.");
-                                return;
-                            }
+                            logger.fine("Ballot " + b.getID()
+                                + " is a duplicate.");
+                            return;
                         }
 
                         /*
@@ -827,35 +963,13 @@ public class Node
                                 return;
                             }
 
-                            try
-                            {
-                                Signature dsa =
-                                    Signature.getInstance("SHA1withECDSA");
-                                byte[] signature =
-                                    ByteUtil.hexToBytes(b.getSignature()
-                                        .startsWith("0") ? b.getSignature()
-                                        .replaceFirst("0+", "") : b
-                                        .getSignature());
-                                dsa.initVerify(publicKey);
-                                dsa.update(ByteUtil.hexToBytes(b
-                                    .getSignatureRoot()));
-
-                                if (!dsa.verify(signature))
-                                {
-                                    logger.fine("Ballot " + b.getID()
-                                        + " had invalid signature.");
-                                    return;
-                                }
-                            }
-                            catch (Exception e)
+                            if (!BallotVerifier.verify(b, publicKey))
                             {
-                                logger.log(
-                                    Level.WARNING,
-                                    "Could not validate signature of Ballot "
-                                        + b.getID(),
-                                    e);
+                                logger.fine("Ballot " + b.getID()
+                                    + " had invalid signature.");
                                 return;
                             }
+                            verified.add(b);
                         }
                         else
                         {
@@ -865,10 +979,28 @@ public class Node
                         }
 
                         /*
-                         * Ballot is valid, add it to the Ballot pool.
+                         * Ballot is valid, add it to the Ballot pool. The pool
+                         * refuses the Ballot if it is full, or if a duplicate
+                         * was added while this Ballot was being validated.
                          */
 
-                        ballots.add(b);
+                        if (!ballots.offer(b))
+                        {
+                            logger.fine("Ballot " + b.getID()
+                                + " was refused by the Ballot pool.");
+                            return;
+                        }
+
+                        for (NodeListener l : listeners)
+                        {
+                            l.ballotAccepted(b);
+                        }
+
+                        BlockTemplate template = blockTemplate;
+                        if (template != null)
+                        {
+                            template.add(b);
+                        }
 
                         if (ballots.size() >= BLOCK_THRESHOLD)
                         {
@@ -879,7 +1011,8 @@ public class Node
                         inv.addInv(b);
                         sendToAll(inv);
                     }
-                }, "Ballot Validation " + packet.getBallot().getRoot()).start();
+                };
+                validate(ballotValidator, validation, b.getRoot(), connection);
                 return;
             }
             case BLOCK:
@@ -896,210 +1029,8 @@ public class Node
                 }
                 logger.info("Received block " + packet.getBlock().getHash()
                     + "!");
-                final Block b = packet.getBlock();
-                new Thread(new Runnable() {
-                    @Override
-                    public void run()
-                    {
-                        /*
-                         * Check that Block was requested and not unsolicited.
-                         */
-
-                        if (!dataRequests.remove(b.getHash()))
-                        {
-                            logger.info("Block " + b.getHash()
-                                + " is unsolicited.");
-                            return;
-                        }
-
-                        /*
-                         * Check that Block is not too large to be saved
-                         * (closing a possible crashing vector).
-                         */
-
-                        if (b.getBytes().length >= BlockChain.MAXIMUM_BLOCK_SIZE)
-                        {
-                            logger.info("Block " + b.getHash()
-                                + " is too large.");
-                            return;
-                        }
-
-                        /*
-                         * Check that Block is not currently in the BlockChain.
-                         */
-
-                        if (blockChain.contains(b.getHash()))
-                        {
-                            logger.info("Block " + b.getHash()
-                                + " is already in the BlockChain.");
-                            return;
-                        }
-                        
-                        /*
-                         * Check that the Block's target difficulty matches that
-                         * of the current BlockChain.
-                         */
-                        
-                        if (Block.getDifficulty(b.getTarget()) < Block
-                            .getDifficulty(blockChain.getCurrentTarget()))
-                        {
-                            logger.info("Block " + b.getHash()
-                                + " has an invalid target.");
-                            return;
-                        }
-
-                        /*
-                         * Check that the Block has a satisfactory and valid
-                         * Proof of Work. Also validates the Merkle Root.
-                         */
-
-                        if (!b.validate())
-                        {
-                            logger
-                                .info("Block " + b.getHash() + " is invalid.");
-                            return;
-                        }
-
-                        /*
-                         * Check that Block timestamp is within reasonable
-                         * bounds. (1 hour ahead of this Node's time and greater
-                         * than the mean time of the previous Blocks.)
-                         */
-
-                        if (b.getTime() > System.currentTimeMillis() / 60000 + 60
-                            || (blockChain.contains(b.getPrevHash()) && b
-                                .getTime() < blockChain.getMedianTime(b
-                                .getPrevHash())))
-                        {
-                            logger.info("Block " + b.getHash()
-                                + " was mined at an invalid time.");
-                            return;
-                        }
-                        
-                        /*
-                         * Check that all the Ballots in this Block are valid.
-                         */
-
-                        ArrayList<Ballot> bBallot = b.getBallots();
-                        for (int i = 0; bBallot.size() > i; i++)
-                        {
-                            /*
-                             * Check that Ballot is not currently in the
-                             * BlockChain.
-                             */
-
-                            if (blockChain.hasBallot(b.getPrevHash(), bBallot
-                                .get(i).getID()))
-                            {
-                                logger.info("Block " + b.getHash()
-                                    + " contains duplicate Ballot.");
-                                return;
-                            }
-
-                            /*
-                             * Check with Election Authority that the Ballot was
-                             * submitted. Validate signature using the public
-                             * key stored by the Election Authority.
-                             * 
-                             * NOTE: This must be changed when an actual
-                             * Election Authority database is used.
-                             */
-
-                            if (demo)
-                            {
-                                ECPublicKey publicKey =
-                                    Submitter.getKey(bBallot.get(i).getID());
-
-                                if (publicKey == null)
-                                {
-                                    logger.info("Ballot "
-                                        + bBallot.get(i).getID() + " in Block "
-                                        + b.getHash() + " was not cast.");
-                                    return;
-                                }
-
-                                try
-                                {
-                                    Signature dsa =
-                                        Signature.getInstance("SHA1withECDSA");
-                                    byte[] signature =
-                                        ByteUtil.hexToBytes(bBallot.get(i)
-                                            .getSignature().startsWith("0")
-                                            ? bBallot.get(i).getSignature()
-                                                .replaceFirst("0+", "")
-                                            : bBallot.get(i).getSignature());
-                                    dsa.initVerify(publicKey);
-                                    dsa.update(ByteUtil.hexToBytes(bBallot.get(
-                                        i).getSignatureRoot()));
-
-                                    if (!dsa.verify(signature))
-                                    {
-                                        logger.info("Ballot "
-                                            + bBallot.get(i).getID()
-                                            + " in Block " + b.getHash()
-                                            + " had invalid signature.");
-                                        return;
-                                    }
-                                }
-                                catch (Exception e)
-                                {
-                                    logger.log(
-                                        Level.WARNING,
-                                        "Could not validate signature of Ballot "
-                                            + bBallot.get(i).getID()
-                                            + " in Block " + b.getHash(),
-                                        e);
-                                    return;
-                                }
-                            }
-                            else
-                            {
-                                /*
-                                 * This is where Election Authority checks would
-                                 * go.
-                                 */
-                            }
-                        }
-
-                        /*
-                         * Block is valid. Stop current Block Generation if the
-                         * parents match, and synchronize Ballots.
-                         */
-
-                        if (blockGenHash != null
-                            && b.getPrevHash().equalsIgnoreCase(blockGenHash))
-                        {
-                            stopBlockGeneration();
-                        }
-
-                        ArrayList<Ballot> bBallots = b.getBallots();
-                        for (int i = 0; bBallots.size() > i; i++)
-                        {
-                            for (int j = 0; ballots.size() > j; j++)
-                            {
-                                Ballot bi = ballots.get(j);
-                                if (bi != null)
-                                {
-                                    if (bi.getID()
-                                        .equalsIgnoreCase(bBallots.get(i).getID()))
-                                    {
-                                        ballots.remove(j--);
-                                    }
-                                }
-                                else
-                                {
-                                    j--;
-                                }
-                            }
-                        }
-
-                        blockChain.append(b);
-                        PacketInv inv = new PacketInv();
-                        inv.addInv(b);
-                        sendToAll(inv);
-                        generateBlock();
-                    }
-                }, "Block Validation " + packet.getBlock().getHash()).start();
+                sync.delivered(packet.getBlock().getHash());
+                receiveBlock(packet.getBlock(), connection);
                 return;
             }
             case GETBLOCKS:
@@ -1109,40 +1040,581 @@ public class Node
                 if (root != null)
                 {
                     PacketInv inv = new PacketInv();
-                    inv.addInv(root.getBlock());
-                    ArrayList<Block> blocks = new ArrayList<Block>();
+                    inv.addInv(PacketInv.VECTOR_BLOCK, root.getHash());
+                    ArrayList<Hash256> hashes = new ArrayList<Hash256>();
                     BlockChain.Node top =
-                        blockChain.getNode(blockChain.getTop().getHash());
-                    while (top != root)
+                        blockChain.getNode(blockChain.getSize() - 1);
+                    while (top != null && top != root)
                     {
-                        blocks.add(top.getBlock());
+                        hashes.add(top.getHash());
                         top = top.getParent();
                     }
-                    for (int i = 0; blocks.size() > i; i++)
+                    for (int i = 0; hashes.size() > i; i++)
                     {
-                        inv.addInv(blocks.get(blocks.size() - 1 - i));
+                        inv.addInv(
+                            PacketInv.VECTOR_BLOCK,
+                            hashes.get(hashes.size() - 1 - i));
                     }
                     connection.send(inv);
                 }
                 return;
             }
-            default:
-                logger.finest("Could not parse invalid packet.");
-        }
-    }
-
-
-    // -------------------------------------------------------------------------
-    /**
-     * Connects this Node to a peer Node via the specified IP Address and port.
-     * 
-     * @param address
-     *            IP Address of the peer Node
+            case GETHEADERS:
+            {
+                PacketGetHeaders packet = new PacketGetHeaders(data);
+                BlockChain.Node fork = blockChain.locate(packet.getLocator());
+                PacketHeaders headers = new PacketHeaders();
+                int height = fork.getHeight() + 1;
+                BlockChain.Node n = blockChain.getNode(height);
+                while (n != null
+                    && PacketHeaders.MAXIMUM_HEADERS > headers.getSize())
+                {
+                    headers.addHeader(n.getHeader());
+                    n = blockChain.getNode(++height);
+                }
+                connection.send(headers);
+                return;
+            }
+            case HEADERS:
+            {
+                PacketHeaders packet = null;
+                try
+                {
+                    packet = new PacketHeaders(data);
+                }
+                catch (Exception e)
+                {
+                    logger.log(Level.WARNING, "Could not extract Headers from Packet", e);
+                    return;
+                }
+                sync.receive(packet, connection);
+                return;
+            }
+            case GETPROOF:
+            {
+                PacketGetProof packet = new PacketGetProof(data);
+                MerkleProof proof =
+                    blockChain.getProof(packet.getRoot(), packet.getBallotID());
+                if (proof == null)
+                {
+                    connection.send(new PacketNotFound(
+                        PacketInv.VECTOR_BALLOT,
+                        packet.getRoot()));
+                }
+                else
+                {
+                    connection.send(new PacketProof(proof));
+                }
+                return;
+            }
+            case PROOF:
+            {
+                PacketProof packet = new PacketProof(data);
+                MerkleProof proof = packet.getProof();
+                if (proof.verify() && blockChain.contains(proof.getBlockHash()))
+                {
+                    logger.info("Ballot " + proof.getRoot()
+                        + " is included in Block " + proof.getBlockHash()
+                        + ".");
+                }
+                else
+                {
+                    logger.warning("Received invalid proof for Ballot "
+                        + proof.getRoot() + ".");
+                }
+                return;
+            }
+            case CMPCTBLOCK:
+            {
+                PacketCompactBlock packet = null;
+                try
+                {
+                    packet = new PacketCompactBlock(data);
+                }
+                catch (Exception e)
+                {
+                    logger.log(Level.WARNING, "Could not extract compact Block from Packet", e);
+                    return;
+                }
+                final CompactBlock cb = packet.getBlock();
+                if (!dataRequests.contains(cb.getHash()))
+                {
+                    logger.info("Compact block " + cb.getHash()
+                        + " is unsolicited.");
+                    return;
+                }
+
+                /*
+                 * Matching the short IDs hashes every Ballot known by this
+                 * Node, so it is not done by the network thread.
+                 */
+
+                final Connection source = connection;
+                validate(blockValidator, new Runnable() {
+                    @Override
+                    public void run()
+                    {
+                        fillBlock(cb, source);
+                    }
+                }, cb.getHash(), connection);
+                return;
+            }
+            case GETBALLOTS:
+            {
+                PacketGetBallots packet = new PacketGetBallots(data);
+                int[] indexes = packet.getIndexes();
+                Block b = blockChain.contains(packet.getHash())
+                    ? blockChain.get(packet.getHash())
+                    : null;
+                ArrayList<Ballot> requested =
+                    new ArrayList<Ballot>(indexes.length);
+                for (int i = 0; b != null && indexes.length > i; i++)
+                {
+                    if (indexes[i] < 0
+                        || indexes[i] >= b.getBallots().size())
+                    {
+                        b = null;
+                    }
+                    else
+                    {
+                        requested.add(b.getBallots().get(indexes[i]));
+                    }
+                }
+                if (b == null)
+                {
+                    connection.send(new PacketNotFound(
+                        PacketInv.VECTOR_COMPACT_BLOCK,
+                        packet.getHash()));
+                }
+                else
+                {
+                    connection.send(new PacketBallots(
+                        packet.getHash(),
+                        requested));
+                }
+                return;
+            }
+            case BALLOTS:
+            {
+                PacketBallots packet = null;
+                try
+                {
+                    packet = new PacketBallots(data);
+                }
+                catch (Exception e)
+                {
+                    logger.log(Level.WARNING, "Could not extract Ballots from Packet", e);
+                    return;
+                }
+                final CompactBlock cb = compactBlocks.remove(packet.getHash());
+                if (cb == null)
+                {
+                    logger.info("Ballots of block " + packet.getHash()
+                        + " are unsolicited.");
+                    return;
+                }
+                int[] missing = cb.getMissing();
+                List<Ballot> received = packet.getBallots();
+                boolean matched = missing.length == received.size();
+                for (int i = 0; matched && missing.length > i; i++)
+                {
+                    matched = cb.set(missing[i], received.get(i));
+                }
+                if (!matched)
+                {
+                    logger.info("Ballots of compact block " + cb.getHash()
+                        + " do not match! Requesting full block...");
+                    requestBlock(cb.getHash(), connection);
+                    return;
+                }
+                final Connection source = connection;
+                validate(blockValidator, new Runnable() {
+                    @Override
+                    public void run()
+                    {
+                        rebuildBlock(cb, source);
+                    }
+                }, cb.getHash(), connection);
+                return;
+            }
+            default:
+                logger.finest("Could not parse invalid packet.");
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Matches the short IDs of a received {@link CompactBlock Compact Block}
+     * with the Ballots known by this Node. The Block is rebuilt if no Ballot
+     * is missing, otherwise the missing Ballots are requested from the peer.
+     * Called by the {@link Node#blockValidator Block Validator} pool.
+     * 
+     * @param cb
+     *            Received compact Block
+     * @param connection
+     *            Connection through which the compact Block was received
+     */
+    private void fillBlock(CompactBlock cb, Connection connection)
+    {
+        ArrayList<Ballot> known = ballots.getBallots();
+        synchronized (announced)
+        {
+            known.addAll(announced.values());
+        }
+        int missing = cb.fill(known);
+        logger.info("Received compact block " + cb.getHash() + "! " + missing
+            + " of " + cb.getSize() + " Ballots missing.");
+        if (missing == 0)
+        {
+            rebuildBlock(cb, connection);
+        }
+        else
+        {
+            compactBlocks.put(cb.getHash(), cb);
+            connection.send(new PacketGetBallots(cb.getHash(), cb
+                .getMissing()));
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Rebuilds a Block from a {@link CompactBlock Compact Block} whose Ballots
+     * are all known, and validates it. If the Ballots do not match the Merkle
+     * Root of the header, which happens when a short ID matched the wrong
+     * Ballot, the full Block is requested instead. Called by the
+     * {@link Node#blockValidator Block Validator} pool.
+     * 
+     * @param cb
+     *            Compact Block with all of its Ballots
+     * @param connection
+     *            Connection through which the compact Block was received
+     */
+    private void rebuildBlock(CompactBlock cb, Connection connection)
+    {
+        Block b;
+        try
+        {
+            b = cb.getBlock();
+        }
+        catch (IllegalArgumentException e)
+        {
+            logger.info("Compact block " + cb.getHash()
+                + " does not match its Merkle Root! Requesting full block...");
+            requestBlock(cb.getHash(), connection);
+            return;
+        }
+        validateBlock(b);
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Requests a full Block from a peer, used when a {@link CompactBlock
+     * Compact Block} could not be rebuilt. The Block must already be in the
+     * {@link Node#dataRequests data requests} table.
+     * 
+     * @param hash
+     *            Hash of the Block
+     * @param connection
+     *            Connection to the peer
+     */
+    private void requestBlock(Hash256 hash, Connection connection)
+    {
+        PacketGetData getData = new PacketGetData();
+        getData.addInv(PacketInv.VECTOR_BLOCK, hash);
+        connection.send(getData);
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Queues the validation of a Block received from a peer on the
+     * {@link Node#blockValidator Block Validator} pool.
+     * 
+     * @param b
+     *            Received Block
+     * @param connection
+     *            Connection through which the Block was received
+     */
+    private void receiveBlock(final Block b, Connection connection)
+    {
+        validate(blockValidator, new Runnable() {
+            @Override
+            public void run()
+            {
+                validateBlock(b);
+            }
+        }, b.getHash(), connection);
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Validates a Block received from a peer, either in full or rebuilt from a
+     * {@link CompactBlock Compact Block}. A valid Block is appended to the
+     * BlockChain and announced to all peers. Called by the
+     * {@link Node#blockValidator Block Validator} pool.
+     * 
+     * @param b
+     *            Received Block
+     */
+    private void validateBlock(Block b)
+    {
+        /*
+         * Check that Block was requested and not unsolicited.
+         */
+
+        if (!dataRequests.remove(b.getHash()))
+        {
+            logger.info("Block " + b.getHash()
+                + " is unsolicited.");
+            return;
+        }
+
+        /*
+         * Check that Block is not too large to be saved
+         * (closing a possible crashing vector).
+         */
+
+        if (b.getSize() >= BlockChain.MAXIMUM_BLOCK_SIZE)
+        {
+            logger.info("Block " + b.getHash()
+                + " is too large.");
+            return;
+        }
+
+        /*
+         * Check that Block is not currently in the BlockChain.
+         */
+
+        if (blockChain.contains(b.getHash()))
+        {
+            logger.info("Block " + b.getHash()
+                + " is already in the BlockChain.");
+            return;
+        }
+
+        /*
+         * Check that the Block's target difficulty matches that
+         * of the current BlockChain.
+         */
+
+        if (Block.getDifficulty(b.getTarget()) < Block
+            .getDifficulty(blockChain.getCurrentTarget()))
+        {
+            logger.info("Block " + b.getHash()
+                + " has an invalid target.");
+            return;
+        }
+
+        /*
+         * Check that the Block has a satisfactory and valid
+         * Proof of Work. Also validates the Merkle Root.
+         */
+
+        if (!b.validate())
+        {
+            logger
+                .info("Block " + b.getHash() + " is invalid.");
+            return;
+        }
+
+        /*
+         * Check that Block timestamp is within reasonable
+         * bounds. (1 hour ahead of this Node's time and greater
+         * than the mean time of the previous Blocks.)
+         */
+
+        if (b.getTime() > System.currentTimeMillis() / 60000 + 60
+            || (blockChain.contains(b.getPrevHash()) && b
+                .getTime() < blockChain.getMedianTime(b
+                .getPrevHash())))
+        {
+            logger.info("Block " + b.getHash()
+                + " was mined at an invalid time.");
+            return;
+        }
+
+        /*
+         * Check that all the Ballots in this Block are valid.
+         */
+
+        ArrayList<Ballot> bBallot = b.getBallots();
+        ArrayList<Ballot> unverified = new ArrayList<Ballot>();
+        ArrayList<ECPublicKey> keys =
+            new ArrayList<ECPublicKey>();
+        for (int i = 0; bBallot.size() > i; i++)
+        {
+            /*
+             * Check that Ballot is not currently in the
+             * BlockChain.
+             */
+
+            if (blockChain.hasBallot(b.getPrevHash(), bBallot
+                .get(i).getID()))
+            {
+                logger.info("Block " + b.getHash()
+                    + " contains duplicate Ballot.");
+                return;
+            }
+
+            /*
+             * Check with Election Authority that the Ballot was
+             * submitted, and look up the public key stored by
+             * the Election Authority. Ballots that were already
+             * verified (usually when they entered the Ballot
+             * pool) are skipped.
+             * 
+             * NOTE: This must be changed when an actual
+             * Election Authority database is used.
+             */
+
+            if (demo)
+            {
+                if (verified.contains(bBallot.get(i)))
+                {
+                    continue;
+                }
+
+                ECPublicKey publicKey =
+                    Submitter.getKey(bBallot.get(i).getID());
+
+                if (publicKey == null)
+                {
+                    logger.info("Ballot "
+                        + bBallot.get(i).getID() + " in Block "
+                        + b.getHash() + " was not cast.");
+                    return;
+                }
+                unverified.add(bBallot.get(i));
+                keys.add(publicKey);
+            }
+            else
+            {
+                /*
+                 * This is where Election Authority checks would
+                 * go.
+                 */
+            }
+        }
+
+        /*
+         * Validate the signatures of all unverified Ballots in
+         * parallel using the public keys stored by the
+         * Election Authority.
+         */
+
+        if (!unverified.isEmpty())
+        {
+            try
+            {
+                int invalid =
+                    verifier.verifyAll(
+                        unverified,
+                        keys.toArray(new ECPublicKey[keys
+                            .size()]));
+                if (invalid != -1)
+                {
+                    logger.info("Ballot "
+                        + unverified.get(invalid).getID()
+                        + " in Block " + b.getHash()
+                        + " had invalid signature.");
+                    return;
+                }
+            }
+            catch (InterruptedException e)
+            {
+                return;
+            }
+        }
+
+        /*
+         * Block is valid. Stop current Block Generation if the
+         * parents match, and synchronize Ballots.
+         */
+
+        if (blockGenHash != null
+            && b.getPrevHash().equals(blockGenHash))
+        {
+            stopBlockGeneration();
+        }
+
+        ballots.removeAll(b.getBallots());
+
+        blockChain.append(b);
+        for (NodeListener l : listeners)
+        {
+            l.blockAppended(b);
+        }
+        PacketInv inv = new PacketInv();
+        inv.addInv(b);
+        sendToAll(inv);
+        generateBlock();
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Queues the validation of a received data object on a bounded
+     * {@link WorkerPool WorkerPool}. If the pool's queue is full, the request
+     * for the object is released (so it can be requested again later) and
+     * reading from the sending peer is {@linkplain Connection#pause() paused}
+     * until the queue has drained. Objects submitted locally (without a
+     * connection) are validated by the calling thread instead, which slows
+     * down the local submitter.
+     * 
+     * @param pool
+     *            Pool of validation threads
+     * @param validation
+     *            Validation task
+     * @param hash
+     *            Hash of the data object being validated
+     * @param connection
+     *            Connection through which the object was received, or null
+     */
+    private void validate(
+        WorkerPool pool,
+        Runnable validation,
+        Hash256 hash,
+        final Connection connection)
+    {
+        if (pool.execute(validation))
+        {
+            return;
+        }
+        if (connection == null)
+        {
+            validation.run();
+            return;
+        }
+        logger.fine("Validation queue is full! Refused " + hash + " from "
+            + connection);
+        dataRequests.remove(hash);
+        connection.pause();
+        pool.whenAvailable(new Runnable() {
+            @Override
+            public void run()
+            {
+                connection.resume();
+            }
+        });
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Connects this Node to a peer Node via the specified IP Address and port.
+     * 
+     * @param address
+     *            IP Address of the peer Node
      * @param port
      *            Port of the peer Node
      * @return Returns a {@link Connection connection} object if the connection
-     *         to the peer was successful. If the connection was unsuccessful,
-     *         null is returned.
+     *         to the peer was started. The connection is completed (or times
+     *         out) by the {@link ConnectionHandler Connection Handler}. If the
+     *         connection could not be started, null is returned.
      */
     public Connection connect(InetAddress address, int port)
     {
@@ -1157,23 +1629,13 @@ public class Node
 
         try
         {
-            Connection c = new Connection(this, new Socket(address, port));
-            if (c.getSocket().isConnected())
-            {
-                logger.info("Connected to Node " + c.getHostName()
-                    + "! Sending version information...");
-                c.setConnectionStatus(Connection.CONNECTION_NODE_ONLY);
-                c.connect();
-                c.send(new PacketVersion(VERSION, this.port));
-                peers.add(c);
-                return c;
-            }
-            else
-            {
-                logger.log(
-                    Level.FINE,
-                    "Could not connect to Node " + c.getHostName() + "!");
-            }
+            Connection c = handler.connect(address, port);
+            logger.fine("Connecting to Node " + c.getHostName()
+                + "! Sending version information...");
+            c.setConnectionStatus(Connection.CONNECTION_NODE_ONLY);
+            peers.add(c);
+            c.send(new PacketVersion(VERSION, this.port));
+            return c;
         }
         catch (Exception e)
         {
@@ -1183,6 +1645,21 @@ public class Node
     }
 
 
+    // -------------------------------------------------------------------------
+    /**
+     * Adds a {@link Connection connection} accepted by the
+     * {@link ConnectionHandler Connection Handler} to the list of this Node's
+     * peers.
+     * 
+     * @param c
+     *            Connection of the new peer
+     */
+    public void addConnection(Connection c)
+    {
+        peers.add(c);
+    }
+
+
     // -------------------------------------------------------------------------
     /**
      * Disconnects the specified peer and removes its {@link Connection
@@ -1194,14 +1671,13 @@ public class Node
      */
     public void removeConnection(Connection c)
     {
-        if (peers.contains(c))
+        if (c.isConnected())
         {
-            if (c.isConnected())
-            {
-                c.disconnect();
-            }
-            peers.remove(c);
+            c.disconnect();
         }
+        peers.remove(c);
+        dataRequests.removePeer(c);
+        sync.removePeer(c);
     }
 
 
@@ -1220,12 +1696,12 @@ public class Node
      */
     public Connection getConnection(String hostname)
     {
-        for (int i = 0; peers.size() > i; i++)
+        for (Connection c : peers)
         {
-            if (peers.get(i).getHostName().equals(hostname)
-                || peers.get(i).getName().equals(hostname))
+            if (c.getHostName().equals(hostname)
+                || c.getName().equals(hostname))
             {
-                return peers.get(i);
+                return c;
             }
         }
         return null;
@@ -1243,9 +1719,9 @@ public class Node
      */
     public void sendToAll(Packet p)
     {
-        for (int i = 0; peers.size() > i; i++)
+        for (Connection c : peers)
         {
-            peers.get(i).send(p);
+            c.send(p);
         }
     }
 
@@ -1267,9 +1743,9 @@ public class Node
     /**
      * Returns a list of this Node's known peers.
      * 
-     * @return An ArrayList containing all of this Node's known peers.
+     * @return A thread-safe List containing all of this Node's known peers.
      */
-    public ArrayList<Connection> getPeers()
+    public List<Connection> getPeers()
     {
         return peers;
     }
@@ -1279,9 +1755,12 @@ public class Node
     /**
      * Attempts to generate a new Block from a limited number of known,
      * validated Ballots. If a Block is generated successfully, it is broadcast
-     * to all peer Nodes. If the Block cannot be generated before a valid Block
-     * with the same parent is received, the {@link Node#blockGen Block
-     * Generation Thread} initialized by this method is interrupted and stopped.<br>
+     * to all peer Nodes. The Block is mined from a {@link BlockTemplate
+     * BlockTemplate}, so Ballots accepted while its Proof of Work is generated
+     * are still included, up to {@link Node#BLOCK_THRESHOLD} Ballots. If the
+     * Block cannot be generated before a valid Block with the same parent is
+     * received, the {@link Node#blockGen Block Generation Thread} initialized
+     * by this method is interrupted and stopped.<br>
      * <br>
      * This method only allows one Block to be generated at any given time, so
      * this method will return if called while a Block is currently being
@@ -1294,12 +1773,7 @@ public class Node
         {
             return;
         }
-        final ArrayList<Ballot> tempBallot = new ArrayList<Ballot>();
-        int size = Math.min(BLOCK_THRESHOLD, ballots.size());
-        for (int i = 0; size > i; i++)
-        {
-            tempBallot.add(ballots.get(i));
-        }
+        final ArrayList<Ballot> tempBallot = ballots.select(BLOCK_THRESHOLD);
         stopBlockGeneration();
         blockGen = new Thread(new Runnable() {
             @Override
@@ -1312,26 +1786,31 @@ public class Node
                     + ByteUtil.bytesToHex(ByteUtil.intToBytes(currTar)) + "...");
                 long time = System.currentTimeMillis();
                 blockGenHash = blockChain.getTop().getHash();
-                Block b = new Block(blockGenHash, currTar, tempBallot);
+                BlockTemplate template =
+                    new BlockTemplate(blockGenHash, currTar, BLOCK_THRESHOLD);
+                template.add(tempBallot);
+                blockTemplate = template;
+
+                /*
+                 * Ballots accepted before the template was published are
+                 * added here; later ones are added as they are accepted.
+                 */
+
+                template.add(ballots.select(BLOCK_THRESHOLD));
                 try
                 {
-                    b.genProof();
+                    Block b = template.mine();
+                    blockTemplate = null;
                     logger.info("Generated Block in "
                         + ((System.currentTimeMillis() - time) / 1000)
                         + " seconds!\n" + b.toString());
-                    for (int i = 0; tempBallot.size() > i; i++)
-                    {
-                        for (int j = 0; ballots.size() > j; j++)
-                        {
-                            if (ballots.get(j).getID()
-                                .equalsIgnoreCase(tempBallot.get(i).getID()))
-                            {
-                                ballots.remove(j--);
-                            }
-                        }
-                    }
+                    ballots.removeAll(b.getBallots());
                     logger.info("Adding block to BlockChain...");
                     blockChain.append(b);
+                    for (NodeListener l : listeners)
+                    {
+                        l.blockAppended(b);
+                    }
                     PacketInv inv = new PacketInv();
                     inv.addInv(b);
                     logger.info("Notifying peers of block...");
@@ -1362,6 +1841,7 @@ public class Node
         {
             blockGen.interrupt();
             blockGen = null;
+            blockTemplate = null;
             if (blockGenHash != null)
             {
                 logger.info("Block generation stopped!");
@@ -1373,17 +1853,84 @@ public class Node
     
     // -------------------------------------------------------------------------
     /**
-     * Adds a hash to the {@link Node#dataRequests data requests} list.
+     * Adds a hash to the {@link Node#dataRequests data requests} table, for
+     * data which is parsed by this Node without being requested from a peer.
      * 
      * @param hash
-     *            Hash to add to the data requests list
+     *            Hash to add to the data requests table
      */
-    public void addDataRequest(String hash)
+    public void addDataRequest(Hash256 hash)
     {
         dataRequests.add(hash);
     }
 
 
+    // -------------------------------------------------------------------------
+    /**
+     * Announces a {@link Ballot Ballot} to a single peer without validating it
+     * or adding it to this Node's Ballot pool. The peer requests, validates and
+     * relays the Ballot like any other, which lets Ballots be submitted to a
+     * remote Node over the network.
+     * 
+     * @param ballot
+     *            Ballot to announce
+     * @param connection
+     *            Connection to the peer
+     */
+    public void announce(Ballot ballot, Connection connection)
+    {
+        announced.put(ballot.getRoot(), ballot);
+        PacketInv inv = new PacketInv();
+        inv.addInv(ballot);
+        connection.send(inv);
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Requests the {@link MerkleProof Merkle Proof} of a {@link Ballot Ballot}
+     * from a peer. The proof is verified against this Node's BlockChain when
+     * it is received, and the result is logged.
+     * 
+     * @param root
+     *            {@link Ballot#getRoot() Root hash} of the Ballot
+     * @param uuid
+     *            {@link Ballot#getID() UUID} of the Ballot
+     * @param connection
+     *            Connection to the peer
+     */
+    public void requestProof(Hash256 root, String uuid, Connection connection)
+    {
+        connection.send(new PacketGetProof(root, uuid));
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Adds a listener notified of accepted Ballots and appended Blocks.
+     * 
+     * @param listener
+     *            Listener to add
+     */
+    public void addListener(NodeListener listener)
+    {
+        listeners.add(listener);
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Removes a listener added with {@link Node#addListener(NodeListener)}.
+     * 
+     * @param listener
+     *            Listener to remove
+     */
+    public void removeListener(NodeListener listener)
+    {
+        listeners.remove(listener);
+    }
+
+
     // -------------------------------------------------------------------------
     /**
      * Checks if the version of another Node is compatible with the
@@ -0,0 +1,75 @@
+/*============================================================================*\
+ | Copyright (C) 2015 Matthew Edwards                                         |
+ |                                                                            |
+ | Licensed under the Apache License, Version 2.0 (the "License"); you may    |
+ | not use this file except in compliance with the License. You may obtain a  |
+ | copy of the License at                                                     |
+ |                                                                            |
+ |     http://www.apache.org/licenses/LICENSE-2.0                             |
+ |                                                                            |
+ | Unless required by applicable law or agreed to in writing, software        |
+ | distributed under the License is distributed on an "AS IS" BASIS,          |
+ | WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   |
+ | See the License for the specific language governing permissions and        |
+ | limitations under the License.                                             |
+\*============================================================================*/
+
+package me.edwards.des;
+
+import me.edwards.des.block.Ballot;
+import me.edwards.des.block.Block;
+import me.edwards.des.net.Connection;
+import me.edwards.des.util.Hash256;
+
+// -----------------------------------------------------------------------------
+/**
+ * Receives notifications of the progress of {@link Ballot Ballots} and
+ * {@link Block Blocks} through a {@link Node Node}. Listeners are
+ * {@linkplain Node#addListener(NodeListener) added} to a Node and called by
+ * the Node's validation and generation threads, so implementations must be
+ * thread-safe and return quickly.<br>
+ * <br>
+ * Created on: Oct 17, 2026 at 5:41:18 AM
+ * 
+ * @author Matthew Edwards
+ */
+public interface NodeListener
+{
+    // ~ Methods ...............................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Called after a {@link Ballot Ballot} was validated and added to the
+     * Node's Ballot pool.
+     * 
+     * @param ballot
+     *            Accepted Ballot
+     */
+    public void ballotAccepted(Ballot ballot);
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Called when a peer announces a {@link Ballot Ballot} with an
+     * {@link me.edwards.des.net.packet.PacketInv Inventory packet}. A peer
+     * only announces Ballots that it accepted into its own Ballot pool.
+     * 
+     * @param root
+     *            Root hash of the announced Ballot
+     * @param connection
+     *            Connection to the announcing peer
+     */
+    public void ballotAnnounced(Hash256 root, Connection connection);
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Called after a valid {@link Block Block} was appended to the Node's
+     * {@link me.edwards.des.block.BlockChain BlockChain}, whether it was
+     * received from a peer or generated by the Node.
+     * 
+     * @param block
+     *            Appended Block
+     */
+    public void blockAppended(Block block);
+}
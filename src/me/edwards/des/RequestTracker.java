@@ -0,0 +1,547 @@
+/*============================================================================*\
+ | Copyright (C) 2015 Matthew Edwards                                         |
+ |                                                                            |
+ | Licensed under the Apache License, Version 2.0 (the "License"); you may    |
+ | not use this file except in compliance with the License. You may obtain a  |
+ | copy of the License at                                                     |
+ |                                                                            |
+ |     http://www.apache.org/licenses/LICENSE-2.0                             |
+ |                                                                            |
+ | Unless required by applicable law or agreed to in writing, software        |
+ | distributed under the License is distributed on an "AS IS" BASIS,          |
+ | WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   |
+ | See the License for the specific language governing permissions and        |
+ | limitations under the License.                                             |
+\*============================================================================*/
+
+
+package me.edwards.des;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import me.edwards.des.net.Connection;
+import me.edwards.des.net.packet.PacketGetData;
+import me.edwards.des.net.packet.PacketInv;
+import me.edwards.des.util.Hash256;
+
+// -----------------------------------------------------------------------------
+/**
+ * Table of the data objects requested by a {@link Node Node} from its peers,
+ * by hash. Every request records the peer which was asked, when it was asked,
+ * and the other peers which announced the same object. Data which is not in
+ * the table is unsolicited and refused by the Node.<br>
+ * <br>
+ * A request which is not answered within {@link RequestTracker#TIMEOUT}, or
+ * which the peer answers with a NOTFOUND, is sent again to another peer which
+ * announced the object. When no such peer is left the request is forgotten, so
+ * the object is requested again the next time it is announced. At most
+ * {@link RequestTracker#PEER_LIMIT} requests are outstanding at any peer;
+ * requests above the limit wait until the peer has answered half of its
+ * outstanding requests, and are then sent together. A peer which lets a
+ * request time out is stalling, and is sent a single request at a time until
+ * it answers one.<br>
+ * <br>
+ * Created on: Oct 17, 2026 at 12:41:07 PM
+ * 
+ * @author Matthew Edwards
+ */
+public class RequestTracker
+{
+    // ~ Static/Instance variables .............................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Time (in milliseconds) after which an unanswered request is sent to
+     * another peer
+     */
+    public static final long                   TIMEOUT        = 30 * 1000;
+
+    /**
+     * Maximum number of outstanding requests at a single peer
+     */
+    public static final int                    PEER_LIMIT     = 1024;
+
+    /**
+     * Interval (in milliseconds) between checks of request timeouts
+     */
+    public static final int                    CHECK_INTERVAL = 1000;
+
+
+    // -------------------------------------------------------------------------
+    private final Node                         node;
+    private final HashMap<Hash256, Request>    requests;
+    private final HashMap<Connection, Integer> outstanding;
+    private final HashSet<Connection>          stalling;
+
+    /**
+     * For every peer at its limit, the requests which wait for the peer to
+     * answer. Entries are not removed when their request is sent to another
+     * peer, and are skipped instead.
+     */
+    private final HashMap<Connection, ArrayDeque<Request>> waiting;
+
+
+    // ~ Constructors ..........................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Creates new RequestTracker for a Node.
+     * 
+     * @param node
+     *            Node whose requests are tracked
+     */
+    public RequestTracker(Node node)
+    {
+        this.node = node;
+        this.requests = new HashMap<Hash256, Request>();
+        this.outstanding = new HashMap<Connection, Integer>();
+        this.stalling = new HashSet<Connection>();
+        this.waiting = new HashMap<Connection, ArrayDeque<Request>>();
+    }
+
+
+    // ~ Methods ...............................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Requests a data object announced by a peer. If the object is already
+     * requested, the peer is only remembered as another source of the object.
+     * If the peer has {@linkplain RequestTracker#getLimit(Connection) reached
+     * its limit}, the request waits and is sent by this RequestTracker later.
+     * 
+     * @param type
+     *            Type of the object, as defined by {@link PacketInv}
+     * @param hash
+     *            Hash of the object
+     * @param peer
+     *            Connection to the peer which announced the object
+     * @return True if the object must be requested from the peer now, False
+     *         otherwise
+     */
+    public synchronized boolean request(int type, Hash256 hash, Connection peer)
+    {
+        Request r = requests.get(hash);
+        if (r != null)
+        {
+            if (r.peer != peer && !r.sources.contains(peer))
+            {
+                r.sources.add(peer);
+            }
+            return false;
+        }
+        r = new Request(type, hash);
+        requests.put(hash, r);
+        if (getOutstanding(peer) < getLimit(peer))
+        {
+            start(r, peer);
+            return true;
+        }
+        r.sources.add(peer);
+        enqueue(r, peer);
+        return false;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Adds a data object which is expected without being requested from a
+     * peer, such as a Ballot submitted to this Node directly. The object is
+     * forgotten if it does not arrive within {@link RequestTracker#TIMEOUT}.
+     * 
+     * @param hash
+     *            Hash of the object
+     */
+    public synchronized void add(Hash256 hash)
+    {
+        if (!requests.containsKey(hash))
+        {
+            requests.put(hash, new Request(PacketInv.VECTOR_BALLOT, hash));
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns whether a data object is requested.
+     * 
+     * @param hash
+     *            Hash of the object
+     * @return True if the object is requested, False otherwise
+     */
+    public synchronized boolean contains(Hash256 hash)
+    {
+        return requests.containsKey(hash);
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Removes a data object once it is received, which frees the slot of the
+     * peer it was requested from. The peer is no longer stalling.
+     * 
+     * @param hash
+     *            Hash of the object
+     * @return True if the object was requested, False if it is unsolicited
+     */
+    public synchronized boolean remove(Hash256 hash)
+    {
+        Request r = requests.remove(hash);
+        if (r == null)
+        {
+            return false;
+        }
+        if (r.peer != null)
+        {
+            stalling.remove(r.peer);
+            release(r.peer);
+        }
+        return true;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Handles a NOTFOUND from a peer. If the object was requested from the
+     * peer, it is requested from another peer which announced it.
+     * 
+     * @param hash
+     *            Hash of the object
+     * @param peer
+     *            Connection to the peer which could not find the object
+     */
+    public synchronized void notFound(Hash256 hash, Connection peer)
+    {
+        Request r = requests.get(hash);
+        if (r == null)
+        {
+            return;
+        }
+        r.sources.remove(peer);
+        if (r.peer == peer)
+        {
+            failover(r);
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Forgets a disconnected peer. The requests outstanding at the peer are
+     * sent to other peers which announced the same objects.
+     * 
+     * @param peer
+     *            Connection to the peer
+     */
+    public synchronized void removePeer(Connection peer)
+    {
+        outstanding.remove(peer);
+        stalling.remove(peer);
+        waiting.remove(peer);
+        for (Request r : new ArrayList<Request>(requests.values()))
+        {
+            if (r.peer == peer)
+            {
+                failover(r);
+            }
+            else if (r.sources.remove(peer) && r.peer == null
+                && r.sources.isEmpty())
+            {
+                requests.remove(r.hash);
+            }
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Sends the requests which were not answered within
+     * {@link RequestTracker#TIMEOUT} to other peers, and forgets the expected
+     * objects which did not arrive. Called every
+     * {@link RequestTracker#CHECK_INTERVAL} milliseconds by the Node.
+     */
+    public synchronized void check()
+    {
+        long now = System.currentTimeMillis();
+        ArrayList<Request> expired = new ArrayList<Request>();
+        for (Request r : requests.values())
+        {
+            if (now - r.time >= TIMEOUT
+                && (r.peer != null || r.sources.isEmpty()))
+            {
+                expired.add(r);
+            }
+        }
+        for (Request r : expired)
+        {
+            if (requests.get(r.hash) != r || now - r.time < TIMEOUT)
+            {
+                continue;
+            }
+            if (r.peer == null)
+            {
+                requests.remove(r.hash);
+                continue;
+            }
+            if (stalling.add(r.peer))
+            {
+                node.logger.info("Request for " + r.hash + " timed out! "
+                    + r.peer + " is stalling.");
+            }
+            failover(r);
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the peer which a data object is currently requested from.
+     * 
+     * @param hash
+     *            Hash of the object
+     * @return Connection to the peer, or null if the object is not requested
+     *         from a peer
+     */
+    public synchronized Connection getPeer(Hash256 hash)
+    {
+        Request r = requests.get(hash);
+        return r == null ? null : r.peer;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the number of requests outstanding at a peer.
+     * 
+     * @param peer
+     *            Connection to the peer
+     * @return Number of outstanding requests
+     */
+    public synchronized int getOutstanding(Connection peer)
+    {
+        Integer count = outstanding.get(peer);
+        return count == null ? 0 : count;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns whether a peer is stalling: a request to the peer timed out, and
+     * the peer has not answered another request since.
+     * 
+     * @param peer
+     *            Connection to the peer
+     * @return True if the peer is stalling, False otherwise
+     */
+    public synchronized boolean isStalling(Connection peer)
+    {
+        return stalling.contains(peer);
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the maximum number of requests outstanding at a peer: 1 if the
+     * peer is stalling, {@link RequestTracker#PEER_LIMIT} otherwise.
+     * 
+     * @param peer
+     *            Connection to the peer
+     * @return Maximum number of outstanding requests
+     */
+    public synchronized int getLimit(Connection peer)
+    {
+        return stalling.contains(peer) ? 1 : PEER_LIMIT;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the number of requested data objects.
+     * 
+     * @return Number of requests
+     */
+    public synchronized int size()
+    {
+        return requests.size();
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Marks a request as outstanding at a peer. The caller sends the request.
+     * 
+     * @param r
+     *            Request
+     * @param peer
+     *            Connection to the peer
+     */
+    private void start(Request r, Connection peer)
+    {
+        r.peer = peer;
+        r.time = System.currentTimeMillis();
+        r.sources.remove(peer);
+        outstanding.put(peer, getOutstanding(peer) + 1);
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Queues a request until a peer at its limit has answered enough of its
+     * outstanding requests.
+     * 
+     * @param r
+     *            Request
+     * @param peer
+     *            Connection to the peer
+     */
+    private void enqueue(Request r, Connection peer)
+    {
+        ArrayDeque<Request> queue = waiting.get(peer);
+        if (queue == null)
+        {
+            queue = new ArrayDeque<Request>();
+            waiting.put(peer, queue);
+        }
+        queue.add(r);
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Frees a slot of a peer. Once half of the slots of the peer are free, the
+     * requests waiting for the peer are sent in a single packet.
+     * 
+     * @param peer
+     *            Connection to the peer
+     */
+    private void release(Connection peer)
+    {
+        int count = getOutstanding(peer) - 1;
+        if (count > 0)
+        {
+            outstanding.put(peer, count);
+        }
+        else
+        {
+            outstanding.remove(peer);
+        }
+        ArrayDeque<Request> queue = waiting.get(peer);
+        if (queue == null || count > getLimit(peer) / 2)
+        {
+            return;
+        }
+        PacketGetData getData = new PacketGetData();
+        while (!queue.isEmpty() && getOutstanding(peer) < getLimit(peer))
+        {
+            Request r = queue.poll();
+            if (requests.get(r.hash) == r && r.peer == null
+                && r.sources.contains(peer))
+            {
+                start(r, peer);
+                getData.addInv(r.type, r.hash);
+            }
+        }
+        if (queue.isEmpty())
+        {
+            waiting.remove(peer);
+        }
+        if (getData.getSize() > 0)
+        {
+            peer.send(getData);
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Sends a request to another peer which announced the object. The
+     * request waits for the first of those peers to free a slot if all of them
+     * are at their limit, and is forgotten if there are none.
+     * 
+     * @param r
+     *            Request which failed at its current peer
+     */
+    private void failover(Request r)
+    {
+        Connection previous = r.peer;
+        r.peer = null;
+        if (previous != null)
+        {
+            release(previous);
+        }
+        for (Connection c : r.sources)
+        {
+            if (c.isConnected() && getOutstanding(c) < getLimit(c))
+            {
+                node.logger.fine("Requesting " + r.hash + " from " + c
+                    + " instead...");
+                start(r, c);
+                PacketGetData getData = new PacketGetData();
+                getData.addInv(r.type, r.hash);
+                c.send(getData);
+                return;
+            }
+        }
+        if (r.sources.isEmpty())
+        {
+            node.logger.fine("No other peer has " + r.hash + "!");
+            requests.remove(r.hash);
+            return;
+        }
+        for (Connection c : r.sources)
+        {
+            enqueue(r, c);
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Request for a single data object.<br>
+     * <br>
+     * Created on: Oct 17, 2026 at 12:41:07 PM
+     * 
+     * @author Matthew Edwards
+     */
+    private static class Request
+    {
+        // ~ Static/Instance variables .........................................
+
+        private final int                   type;
+        private final Hash256               hash;
+
+        /**
+         * Peer which the object is requested from, or null if the request is
+         * waiting or the object is expected without a request
+         */
+        private Connection                  peer;
+        private long                        time;
+
+        /**
+         * Other peers which announced the object
+         */
+        private final ArrayList<Connection> sources;
+
+
+        // ~ Constructors ......................................................
+
+        // ---------------------------------------------------------------------
+        /**
+         * Creates new Request.
+         * 
+         * @param type
+         *            Type of the object
+         * @param hash
+         *            Hash of the object
+         */
+        private Request(int type, Hash256 hash)
+        {
+            this.type = type;
+            this.hash = hash;
+            this.peer = null;
+            this.time = System.currentTimeMillis();
+            this.sources = new ArrayList<Connection>();
+        }
+    }
+}
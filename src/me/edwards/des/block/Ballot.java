@@ -21,6 +21,7 @@ import java.util.ArrayList;
 import me.edwards.des.Node;
 import me.edwards.des.net.packet.PacketInv;
 import me.edwards.des.util.ByteUtil;
+import me.edwards.des.util.Hash256;
 import me.edwards.des.util.HashUtil;
 
 // -----------------------------------------------------------------------------
@@ -38,6 +39,11 @@ import me.edwards.des.util.HashUtil;
  * receives} a Ballot, the signature is authenticated with the Ballot's hash to
  * ensure that the Ballot was not changed en-route to the Node.<br>
  * <br>
+ * A Ballot is a view over its binary data, which is usually a slice of a
+ * received packet or of a stored {@link Block Block}. Only the root hash is
+ * computed when the Ballot is loaded; the UUID, Votes and signature are read
+ * from the binary data when they are requested.<br>
+ * <br>
  * Created on: Nov 1, 2015 at 11:30:16 PM
  * 
  * @author Matthew Edwards
@@ -54,14 +60,10 @@ public class Ballot
 
     
     // -------------------------------------------------------------------------
-    private byte              version;
-    private String            id;           // 8 bytes
-    private byte[]            votes;
-    private String            signature;    // 72 bytes
+    private ByteBuffer        data;
 
-    private String            signatureRoot;
-    private String            root;
-    private byte[]            bytes;
+    private Hash256           signatureRoot;
+    private Hash256           root;
 
 
     // ~ Constructors ..........................................................
@@ -72,7 +74,7 @@ public class Ballot
      * constructor is mainly used for demonstration or testing purposes because
      * Election Applications create new Ballots. {@link Node Nodes} and
      * {@link Block Blocks} only create Ballots from
-     * {@link Ballot#Ballot(byte[]) binary data}.
+     * {@link Ballot#Ballot(ByteBuffer) binary data}.
      * 
      * @param id
      *            UUID of Ballot signer (User who cast this Ballot)
@@ -84,63 +86,64 @@ public class Ballot
      */
     public Ballot(String id, String signature, ArrayList<Vote> votes)
     {
-        this.version = VERSION;
-        this.id = HashUtil.generateLeadingZeros(id, 16);
-        this.signature = HashUtil.generateLeadingZeros(signature, 144);
-
         int size = 0;
         for (int i = 0; votes.size() > i; i++)
         {
             size += votes.get(i).getBytes().length;
         }
         ByteBuffer buffer = ByteBuffer.allocate(1 + 8 + size + 72);
-        buffer.put(version);
-        buffer.put(ByteUtil.hexToBytes(this.id));
+        buffer.put(VERSION);
+        buffer.put(ByteUtil.hexToBytes(HashUtil.generateLeadingZeros(id, 16)));
         for (int i = 0; votes.size() > i; i++)
         {
             buffer.put(votes.get(i).getBytes());
         }
-        int rootLength = buffer.position();
-        buffer.put(ByteUtil.hexToBytes(this.signature));
-        this.bytes = buffer.array();
-        this.root = HashUtil.generateHash(this.bytes);
-        buffer.position(9);
-        this.votes = new byte[size];
-        buffer.get(this.votes);
-        buffer.position(0);
-        byte[] signatureRootBytes = new byte[rootLength];
-        buffer.get(signatureRootBytes);
-        this.signatureRoot = HashUtil.generateHash(signatureRootBytes);
+        buffer.put(ByteUtil.hexToBytes(HashUtil.generateLeadingZeros(
+            signature,
+            144)));
+        buffer.flip();
+        this.data = buffer;
+        this.root = HashUtil.generateHash(data);
     }
 
 
     // -------------------------------------------------------------------------
     /**
-     * Initializes Ballot from binary data as a byte array. This constructor is
-     * used by {@link Node Nodes} and {@link Block Blocks} to load Ballots.
+     * Initializes Ballot from binary data as a byte array. The array is used
+     * by the Ballot without being copied.
      * 
      * @param binary
      *            Byte array representing this Ballot
      */
     public Ballot(byte[] binary)
     {
-        this.bytes = binary;
-        ByteBuffer data = ByteBuffer.wrap(binary);
-        this.version = data.get();
-        byte[] idBytes = new byte[8];
-        data.get(idBytes, 0, 8);
-        this.id = ByteUtil.bytesToHex(idBytes);
-        this.votes = new byte[data.capacity() - data.position() - 72];
-        data.get(this.votes);
-        int rootLength = data.position();
-        byte[] signatureBytes = new byte[72];
-        data.get(signatureBytes);
-        this.signature = ByteUtil.bytesToHex(signatureBytes);
-        root = HashUtil.generateHash(binary);
-        data.position(0);
-        byte[] signatureRootBytes = new byte[rootLength];
-        data.get(signatureRootBytes);
-        this.signatureRoot = HashUtil.generateHash(signatureRootBytes);
+        this(ByteBuffer.wrap(binary));
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Initializes Ballot as a view over the remaining bytes of a buffer. This
+     * constructor is used by {@link Node Nodes} and {@link Block Blocks} to
+     * load Ballots from received packets and stored Blocks without copying
+     * them: the fields of the Ballot are read directly from the buffer when
+     * they are requested. The position of the buffer is not changed, and the
+     * bytes of the Ballot must not be modified afterwards.
+     * 
+     * @param binary
+     *            Buffer containing this Ballot from its position to its limit
+     * @throws IllegalArgumentException
+     *             Thrown if the buffer is too small to contain a Ballot
+     */
+    public Ballot(ByteBuffer binary)
+    {
+        if (binary.remaining() < 1 + 8 + 72)
+        {
+            throw new IllegalArgumentException("Invalid Ballot length: "
+                + binary.remaining());
+        }
+        this.data = binary.slice();
+        this.root = HashUtil.generateHash(data);
     }
 
 
@@ -154,7 +157,20 @@ public class Ballot
      */
     public String getID()
     {
-        return id;
+        return ByteUtil.bytesToHex(ByteUtil.longToBytes(data.getLong(1)));
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns this Ballot's (user) UUID as a number, read directly from the
+     * binary data of the Ballot.
+     * 
+     * @return UUID as a long integer
+     */
+    public long getIDValue()
+    {
+        return data.getLong(1);
     }
 
 
@@ -167,19 +183,43 @@ public class Ballot
      */
     public String getSignature()
     {
-        return signature;
+        return ByteUtil.bytesToHex(getSignatureBytes());
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns this Ballot's signature as stored in the Ballot, including its
+     * leading zero padding.
+     * 
+     * @return Copy of the 72-byte ECDSA signature
+     */
+    public byte[] getSignatureBytes()
+    {
+        ByteBuffer signature = data.duplicate();
+        signature.position(data.limit() - 72);
+        byte[] bytes = new byte[72];
+        signature.get(bytes);
+        return bytes;
     }
 
 
     // -------------------------------------------------------------------------
     /**
      * Returns the signature root hash of this ballot. Used for Ballot
-     * authentication by the {@link Node Node}.
+     * authentication by the {@link Node Node}. The hash is computed the first
+     * time it is requested.
      * 
-     * @return Signature root as a 32-digit hexadecimal hash digest
+     * @return Signature root as a 256-bit hash digest
      */
-    public String getSignatureRoot()
+    public Hash256 getSignatureRoot()
     {
+        if (signatureRoot == null)
+        {
+            ByteBuffer signed = data.duplicate();
+            signed.limit(data.limit() - 72);
+            signatureRoot = HashUtil.generateHash(signed);
+        }
         return signatureRoot;
     }
 
@@ -189,9 +229,9 @@ public class Ballot
      * Returns the root hash of this ballot. Used to identify this Ballot in
      * {@link PacketInv Inventory requests} and in the Node's memory.
      * 
-     * @return Ballot root hash (32-digit hexadecimal)
+     * @return Ballot root hash (256-bit)
      */
-    public String getRoot()
+    public Hash256 getRoot()
     {
         return root;
     }
@@ -199,16 +239,65 @@ public class Ballot
 
     // -------------------------------------------------------------------------
     /**
-     * Returns the Ballot in binary format as a byte array.
+     * Returns the Ballot in binary format as a byte array. If the Ballot is a
+     * view over a whole array, the array itself is returned, otherwise its
+     * bytes are copied into a new array.
      * 
      * @return Byte array representing this Ballot
      */
     public byte[] getBytes()
     {
+        if (data.hasArray() && data.arrayOffset() == 0
+            && data.array().length == data.limit())
+        {
+            return data.array();
+        }
+        byte[] bytes = new byte[data.limit()];
+        data.duplicate().get(bytes);
         return bytes;
     }
 
 
+    // -------------------------------------------------------------------------
+    /**
+     * Returns a read-only buffer over the binary data of this Ballot, without
+     * copying it.
+     * 
+     * @return Buffer containing this Ballot from its position to its limit
+     */
+    public ByteBuffer getBuffer()
+    {
+        return data.asReadOnlyBuffer();
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the length of this Ballot in binary format.
+     * 
+     * @return Number of bytes representing this Ballot
+     */
+    public int getSize()
+    {
+        return data.limit();
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns a buffer over the {@link Vote Votes} contained in this Ballot.
+     * 
+     * @return Buffer containing the binary data of the Votes
+     */
+    private ByteBuffer getVoteData()
+    {
+        ByteBuffer votes = data.duplicate();
+        votes.position(1 + 8);
+        votes.limit(data.limit() - 72);
+        return votes;
+    }
+
+
     // -------------------------------------------------------------------------
     /**
      * Returns the {@link Vote Votes} contained in this Ballot as an ArrayList.
@@ -218,12 +307,12 @@ public class Ballot
     public ArrayList<Vote> getVotes()
     {
         ArrayList<Vote> voteList = new ArrayList<Vote>();
-        ByteBuffer data = ByteBuffer.wrap(votes);
-        while (data.hasRemaining())
+        ByteBuffer votes = getVoteData();
+        while (votes.hasRemaining())
         {
-            int id = data.getInt();
-            byte[] strBytes = new byte[data.getInt()];
-            data.get(strBytes);
+            int id = votes.getInt();
+            byte[] strBytes = new byte[votes.getInt()];
+            votes.get(strBytes);
             voteList.add(new Vote(id, new String(strBytes)));
         }
         return voteList;
@@ -235,7 +324,7 @@ public class Ballot
     public String toString()
     {
         StringBuffer voteDigest = new StringBuffer();
-        ByteBuffer voteData = ByteBuffer.wrap(votes);
+        ByteBuffer voteData = getVoteData();
         int voteSize = 0;
         while (voteData.hasRemaining())
         {
@@ -246,7 +335,8 @@ public class Ballot
             voteSize++;
         }
         return "--- Ballot --------------------------------" + "\nID:        "
-            + id + "\nVersion:   " + version + "\nSignature: " + signature
+            + getID() + "\nVersion:   " + data.get(0) + "\nSignature: "
+            + getSignature()
             + "\nVotes (" + voteSize + "): " + voteDigest.toString()
             + "\n-------------------------------------------";
     }
@@ -0,0 +1,266 @@
+/*============================================================================*\
+ | Copyright (C) 2015 Matthew Edwards                                         |
+ |                                                                            |
+ | Licensed under the Apache License, Version 2.0 (the "License"); you may    |
+ | not use this file except in compliance with the License. You may obtain a  |
+ | copy of the License at                                                     |
+ |                                                                            |
+ |     http://www.apache.org/licenses/LICENSE-2.0                             |
+ |                                                                            |
+ | Unless required by applicable law or agreed to in writing, software        |
+ | distributed under the License is distributed on an "AS IS" BASIS,          |
+ | WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   |
+ | See the License for the specific language governing permissions and        |
+ | limitations under the License.                                             |
+\*============================================================================*/
+
+package me.edwards.des.block;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import me.edwards.des.util.Hash256;
+
+// -----------------------------------------------------------------------------
+/**
+ * Thread-safe pool of known, unmined {@link Ballot Ballots} (the mempool of a
+ * Node). Ballots are indexed both by their {@link Ballot#getRoot() root hash},
+ * which identifies them in inventory and data packets, and by their
+ * {@link Ballot#getID() UUID}, which identifies the voter, so every lookup is a
+ * single hash table access.<br>
+ * <br>
+ * Ballots are {@link BallotPool#select(int) selected} for new Blocks in the
+ * order in which they were added, and all Ballots contained in an accepted
+ * Block are {@link BallotPool#removeAll(ArrayList) removed} atomically. The
+ * pool is bounded: once it holds its {@link BallotPool#getCapacity() capacity}
+ * of Ballots, new Ballots are {@link BallotPool#offer(Ballot) refused} until
+ * Ballots are mined, which lets the Node stop requesting Ballots from its
+ * peers.<br>
+ * <br>
+ * Created on: Oct 17, 2026 at 1:58:14 AM
+ * 
+ * @author Matthew Edwards
+ */
+public class BallotPool
+{
+    // ~ Static/Instance variables .............................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * The default maximum number of Ballots held by the pool
+     */
+    public static final int                MAXIMUM_BALLOTS = 100000;
+
+
+    // -------------------------------------------------------------------------
+    private final int                      capacity;
+    private LinkedHashMap<Hash256, Ballot> byRoot;
+    private HashMap<Long, Ballot>          byID;
+    private long                           rejected;
+
+
+    // ~ Constructors ..........................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Creates new, empty BallotPool.
+     * 
+     * @param capacity
+     *            Maximum number of Ballots held by the pool
+     */
+    public BallotPool(int capacity)
+    {
+        this.capacity = capacity;
+        this.byRoot = new LinkedHashMap<Hash256, Ballot>();
+        this.byID = new HashMap<Long, Ballot>();
+    }
+
+
+    // ~ Methods ...............................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Adds a {@link Ballot Ballot} to the pool, unless the pool already
+     * contains a Ballot with the same root or UUID, or the pool is full.
+     * 
+     * @param ballot
+     *            Ballot to add
+     * @return True if the Ballot was added, False otherwise
+     */
+    public synchronized boolean offer(Ballot ballot)
+    {
+        Hash256 root = ballot.getRoot();
+        Long id = ballot.getIDValue();
+        if (byRoot.containsKey(root) || byID.containsKey(id))
+        {
+            return false;
+        }
+        if (byRoot.size() >= capacity)
+        {
+            rejected++;
+            return false;
+        }
+        byRoot.put(root, ballot);
+        byID.put(id, ballot);
+        return true;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the {@link Ballot Ballot} with the specified root hash.
+     * 
+     * @param root
+     *            {@link Ballot#getRoot() Root hash} of the Ballot
+     * @return If the pool contains the Ballot, it is returned. Otherwise, a
+     *         null value is returned.
+     */
+    public synchronized Ballot get(Hash256 root)
+    {
+        return byRoot.get(root);
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns True if the pool contains a {@link Ballot Ballot} with the
+     * specified root hash.
+     * 
+     * @param root
+     *            {@link Ballot#getRoot() Root hash} of the Ballot
+     * @return True if the pool contains the Ballot, False otherwise
+     */
+    public synchronized boolean contains(Hash256 root)
+    {
+        return byRoot.containsKey(root);
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns True if the pool contains a {@link Ballot Ballot} with the
+     * specified UUID.
+     * 
+     * @param uuid
+     *            {@link Ballot#getID() UUID} of the Ballot
+     * @return True if the pool contains a Ballot with the UUID, False
+     *         otherwise
+     */
+    public synchronized boolean containsID(String uuid)
+    {
+        return byID.containsKey(BlockChain.ballotKey(uuid));
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the oldest {@link Ballot Ballots} in the pool, in the order in
+     * which they were added. The Ballots remain in the pool until they are
+     * {@link BallotPool#removeAll(ArrayList) removed}.
+     * 
+     * @param maximum
+     *            Maximum number of Ballots to return
+     * @return List of at most the specified number of Ballots
+     */
+    public synchronized ArrayList<Ballot> select(int maximum)
+    {
+        ArrayList<Ballot> selection =
+            new ArrayList<Ballot>(Math.min(maximum, byRoot.size()));
+        Iterator<Ballot> it = byRoot.values().iterator();
+        while (it.hasNext() && selection.size() < maximum)
+        {
+            selection.add(it.next());
+        }
+        return selection;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns all {@link Ballot Ballots} in the pool, in the order in which
+     * they were added.
+     * 
+     * @return List of all Ballots in the pool
+     */
+    public synchronized ArrayList<Ballot> getBallots()
+    {
+        return new ArrayList<Ballot>(byRoot.values());
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Removes every {@link Ballot Ballot} whose UUID matches one of the
+     * specified Ballots. This is used when a Block is accepted, so Ballots
+     * with the same voter are removed even if their contents differ.
+     * 
+     * @param ballots
+     *            Ballots to remove (for example the Ballots of a Block)
+     * @return Number of Ballots removed from the pool
+     */
+    public synchronized int removeAll(ArrayList<Ballot> ballots)
+    {
+        int removed = 0;
+        for (int i = 0; ballots.size() > i; i++)
+        {
+            Ballot b = byID.remove(ballots.get(i).getIDValue());
+            if (b != null)
+            {
+                byRoot.remove(b.getRoot());
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the number of {@link Ballot Ballots} in the pool.
+     * 
+     * @return Number of Ballots
+     */
+    public synchronized int size()
+    {
+        return byRoot.size();
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns True if the pool holds its maximum number of
+     * {@link Ballot Ballots}.
+     * 
+     * @return True if new Ballots will be refused, False otherwise
+     */
+    public synchronized boolean isFull()
+    {
+        return byRoot.size() >= capacity;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the maximum number of {@link Ballot Ballots} held by the pool.
+     * 
+     * @return Capacity of the pool
+     */
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the number of {@link Ballot Ballots} refused because the pool
+     * was full.
+     * 
+     * @return Number of refused Ballots
+     */
+    public synchronized long getRejected()
+    {
+        return rejected;
+    }
+}
@@ -0,0 +1,288 @@
+/*============================================================================*\
+ | Copyright (C) 2015 Matthew Edwards                                         |
+ |                                                                            |
+ | Licensed under the Apache License, Version 2.0 (the "License"); you may    |
+ | not use this file except in compliance with the License. You may obtain a  |
+ | copy of the License at                                                     |
+ |                                                                            |
+ |     http://www.apache.org/licenses/LICENSE-2.0                             |
+ |                                                                            |
+ | Unless required by applicable law or agreed to in writing, software        |
+ | distributed under the License is distributed on an "AS IS" BASIS,          |
+ | WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   |
+ | See the License for the specific language governing permissions and        |
+ | limitations under the License.                                             |
+\*============================================================================*/
+
+package me.edwards.des.block;
+
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// -----------------------------------------------------------------------------
+/**
+ * Verifies the ECDSA signatures of {@link Ballot Ballots}. A single Ballot is
+ * {@linkplain BallotVerifier#verify(Ballot, ECPublicKey) verified} by the
+ * calling thread, while a batch of Ballots (such as the Ballots of a
+ * {@link Block Block}) is {@linkplain BallotVerifier#verifyAll(ArrayList,
+ * ECPublicKey[]) verified} by splitting it into one range per thread of the
+ * verifier. Every thread reuses its own Signature instance, and all threads
+ * stop as soon as one invalid signature is found.<br>
+ * <br>
+ * Signatures are stored in Ballots as 72-byte DER encodings padded with
+ * leading zeros. The padding is skipped before verification, which is safe
+ * because a DER signature always starts with a non-zero byte.<br>
+ * <br>
+ * Created on: Oct 17, 2026 at 3:41:55 AM
+ * 
+ * @author Matthew Edwards
+ */
+public class BallotVerifier
+{
+    // ~ Static/Instance variables .............................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Signature algorithm used to sign Ballots
+     */
+    public static final String                  ALGORITHM     = "SHA1withECDSA";
+
+    /**
+     * Minimum number of Ballots verified by each thread of a batch. Smaller
+     * batches are verified by fewer threads.
+     */
+    public static final int                     MINIMUM_BATCH = 16;
+
+    private static final Logger                 logger        = Logger
+                                                                  .getLogger("DES.node");
+
+    private static final ThreadLocal<Signature> signatures    =
+        new ThreadLocal<Signature>() {
+            @Override
+            protected Signature initialValue()
+            {
+                try
+                {
+                    return Signature.getInstance(ALGORITHM);
+                }
+                catch (NoSuchAlgorithmException e)
+                {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+
+
+    // -------------------------------------------------------------------------
+    private final int                           threads;
+    private final ExecutorService               pool;
+
+
+    // ~ Constructors ..........................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Creates new BallotVerifier with a fixed pool of daemon threads.
+     * 
+     * @param threads
+     *            Number of threads used to verify a batch of Ballots
+     */
+    public BallotVerifier(int threads)
+    {
+        this.threads = threads;
+        this.pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread t =
+                    new Thread(r, "Ballot Verifier " + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+
+    // ~ Methods ...............................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Verifies the signature of a {@link Ballot Ballot} using the calling
+     * thread.
+     * 
+     * @param ballot
+     *            Ballot to verify
+     * @param key
+     *            Public key of the voter who cast the Ballot
+     * @return True if the signature is valid, False otherwise
+     */
+    public static boolean verify(Ballot ballot, ECPublicKey key)
+    {
+        Signature dsa = signatures.get();
+        try
+        {
+            dsa.initVerify(key);
+            dsa.update(ballot.getSignatureRoot().toByteArray());
+            return dsa.verify(getSignature(ballot));
+        }
+        catch (GeneralSecurityException e)
+        {
+            logger.log(Level.FINE, "Could not validate signature of Ballot "
+                + ballot.getID(), e);
+            return false;
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the DER-encoded signature of a {@link Ballot Ballot} without its
+     * leading zero padding.
+     * 
+     * @param ballot
+     *            Ballot
+     * @return DER-encoded signature
+     */
+    public static byte[] getSignature(Ballot ballot)
+    {
+        byte[] padded = ballot.getSignatureBytes();
+        int start = 0;
+        while (padded.length > start && padded[start] == 0)
+        {
+            start++;
+        }
+        byte[] signature = new byte[padded.length - start];
+        System.arraycopy(padded, start, signature, 0, signature.length);
+        return signature;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Verifies the signatures of a batch of {@link Ballot Ballots} in
+     * parallel. Blocks the calling thread until every signature is verified or
+     * an invalid signature is found.
+     * 
+     * @param ballots
+     *            Ballots to verify
+     * @param keys
+     *            Public keys of the voters, in the same order as the Ballots
+     * @return Index of an invalid Ballot, or -1 if all signatures are valid
+     * @throws InterruptedException
+     *             Thrown if the calling thread is interrupted while waiting
+     */
+    public int verifyAll(final ArrayList<Ballot> ballots, final ECPublicKey[] keys)
+        throws InterruptedException
+    {
+        int size = ballots.size();
+        int workers = Math.max(1, Math.min(threads, size / MINIMUM_BATCH));
+        if (workers == 1)
+        {
+            return verifyRange(ballots, keys, 0, size, new AtomicInteger(-1));
+        }
+
+        final AtomicInteger invalid = new AtomicInteger(-1);
+        ArrayList<Callable<Integer>> tasks =
+            new ArrayList<Callable<Integer>>(workers);
+        for (int i = 0; workers > i; i++)
+        {
+            final int start = (int) ((long) size * i / workers);
+            final int end = (int) ((long) size * (i + 1) / workers);
+            tasks.add(new Callable<Integer>() {
+                @Override
+                public Integer call()
+                {
+                    return verifyRange(ballots, keys, start, end, invalid);
+                }
+            });
+        }
+
+        List<Future<Integer>> results = pool.invokeAll(tasks);
+        for (int i = 0; results.size() > i; i++)
+        {
+            try
+            {
+                results.get(i).get();
+            }
+            catch (ExecutionException e)
+            {
+                logger.log(Level.WARNING, "Ballot verification error", e);
+                invalid.compareAndSet(-1, (int) ((long) size * i / workers));
+            }
+        }
+        return invalid.get();
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Verifies a range of a batch of {@link Ballot Ballots}, stopping early if
+     * an invalid signature was found by any thread.
+     * 
+     * @param ballots
+     *            Ballots to verify
+     * @param keys
+     *            Public keys of the voters
+     * @param start
+     *            Index of the first Ballot of the range
+     * @param end
+     *            Index after the last Ballot of the range
+     * @param invalid
+     *            Index of the first invalid Ballot found by any thread, or -1
+     * @return Index of an invalid Ballot, or -1 if no invalid Ballot was found
+     */
+    private static int verifyRange(
+        ArrayList<Ballot> ballots,
+        ECPublicKey[] keys,
+        int start,
+        int end,
+        AtomicInteger invalid)
+    {
+        for (int i = start; end > i && invalid.get() == -1; i++)
+        {
+            if (!verify(ballots.get(i), keys[i]))
+            {
+                invalid.compareAndSet(-1, i);
+            }
+        }
+        return invalid.get();
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Stops the verifier's threads.
+     */
+    public void shutdown()
+    {
+        pool.shutdownNow();
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the number of threads used to verify a batch of Ballots.
+     * 
+     * @return Number of threads
+     */
+    public int getThreads()
+    {
+        return threads;
+    }
+}
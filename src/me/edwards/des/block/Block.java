@@ -16,14 +16,19 @@
 
 package me.edwards.des.block;
 
+import java.io.IOException;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.text.DateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import me.edwards.des.Node;
 import me.edwards.des.util.ByteUtil;
+import me.edwards.des.util.Hash256;
 import me.edwards.des.util.HashUtil;
+import me.edwards.des.util.Miner;
 
 // -----------------------------------------------------------------------------
 /**
@@ -32,15 +37,15 @@ import me.edwards.des.util.HashUtil;
  * and store a payload of {@link Ballot Ballots}.<br>
  * <br>
  * These Ballots are tied to the Block via a
- * {@link HashUtil#generateMerkleRoot(String, String) Merkle Root}, preventing
+ * {@link HashUtil#generateMerkleRoot(Hash256, Hash256) Merkle Root}, preventing
  * any Ballot in the payload from being changed. The Block also contains the
  * hash of the Block before it in the {@link BlockChain BlockChain}, which
  * allows for backwards-linking in the BlockChain. The Block contains a
  * timestamp and target for mining by a {@link Node Node}.<br>
  * <br>
- * Every Block is secured using a {@link HashUtil#generateProof(byte[], int)
- * Proof of Work}, preventing changes after the Block is generated. Any change
- * (even a single bit) in a Ballot or Block attribute will change the overall
+ * Every Block is secured using a {@link Block#genProof() Proof of Work},
+ * preventing changes after the Block is generated. Any change (even a single
+ * bit) in a Ballot or Block attribute will change the overall
  * {@link Block#getHash() hash} of the Block, which will be invalid unless the
  * nonce is changed. The nonce can only be changed to a value which makes the
  * hash valid by re-mining the Block and regenerating a new Proof of Work.<br>
@@ -62,19 +67,26 @@ public class Block
      (byte) 0x1d, (byte) 0xF0, (byte) 0x00, (byte) 0x00});
 
     
+    /**
+     * Version of the Blocks generated by this class
+     */
+    static final int          VERSION        = 1;
+
+
     // -------------------------------------------------------------------------
-    private final int         VERSION        = 1;
     private int               version;
-    private String            prevBlockHash;
-    private String            merkleRootHash;
+    private Hash256           prevBlockHash;
+    private Hash256           merkleRootHash;
+    private MerkleTree        merkleTree;
     private int               time;
     private int               target;
     private int               nonce;
     private ArrayList<Ballot> ballots;
 
     private byte[]            headerBytes;
+    private ByteBuffer        source;
     private byte[]            myBytes;
-    private String            myHash;
+    private Hash256           myHash;
     private boolean           valid;
 
 
@@ -87,20 +99,21 @@ public class Block
      * least one element (cannot be empty).
      * 
      * @param prevBlockHash
-     *            256-bit hash of the previous block in the chain
+     *            256-bit hash of the previous block in the chain, or
+     *            {@link Hash256#ZERO} for the Genesis Block
      * @param target
      *            Short-Format target for hashes
      * @param ballots
      *            A list of votes to be included in this block
      */
-    public Block(String prevBlockHash, int target, ArrayList<Ballot> ballots)
+    public Block(Hash256 prevBlockHash, int target, ArrayList<Ballot> ballots)
     {
         this.version = VERSION;
-        this.prevBlockHash = HashUtil.generateLeadingZeros(prevBlockHash);
-        this.merkleRootHash = "NOT GENERATED";
+        this.prevBlockHash = prevBlockHash;
+        this.merkleRootHash = null;
         this.target = target;
         this.ballots = ballots;
-        this.myHash = "NOT GENERATED";
+        this.myHash = null;
         this.valid = false;
         this.myBytes = null;
     }
@@ -108,38 +121,100 @@ public class Block
 
     // -------------------------------------------------------------------------
     /**
-     * Initializes Block from binary data as a byte array. This constructor is
-     * used by {@link Node Nodes} and {@link Block Blocks} to load Blocks.
+     * Creates new Block from a header mined by a {@link BlockTemplate
+     * BlockTemplate}, or rebuilt from a {@link CompactBlock CompactBlock}, and
+     * the Ballots committed to by the header.
+     * 
+     * @param header
+     *            80-byte Block Header in binary format
+     * @param nonce
+     *            Proof of Work found for the header
+     * @param ballots
+     *            Ballots whose Merkle Root and number are stored in the header
+     * @throws IllegalArgumentException
+     *             Thrown if the header does not match the Ballots
+     */
+    Block(byte[] header, int nonce, ArrayList<Ballot> ballots)
+    {
+        ByteBuffer data = ByteBuffer.wrap(header);
+        this.version = data.getInt();
+        this.prevBlockHash = Hash256.read(data);
+        Hash256 root = Hash256.read(data);
+        this.time = data.getInt();
+        this.target = data.getInt();
+        this.ballots = ballots;
+        this.merkleTree = new MerkleTree(ballots);
+        this.merkleRootHash = merkleTree.getRoot();
+        if (!merkleRootHash.equals(root) || data.getInt() != ballots.size())
+        {
+            throw new IllegalArgumentException(
+                "Header does not match the Ballots");
+        }
+        genBytes();
+        this.nonce = nonce;
+        this.myHash = HashUtil.generateBlockHash(headerBytes, nonce);
+        validate();
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Initializes Block from binary data as a byte array. The array is used by
+     * the Block and its Ballots without being copied.
      * 
      * @param binary
      *            Byte array representing this Block
      */
     public Block(byte[] binary)
     {
-        ByteBuffer data = ByteBuffer.wrap(binary);
+        this(ByteBuffer.wrap(binary));
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Initializes Block as a view over the remaining bytes of a buffer. This
+     * constructor is used by {@link Node Nodes} and {@link Block Blocks} to
+     * load Blocks from received packets and from a {@link BlockStore
+     * BlockStore} without copying them: every {@link Ballot Ballot} of the
+     * Block is a {@linkplain Ballot#Ballot(ByteBuffer) view} over its slice of
+     * the buffer. The position of the buffer is not changed, and the bytes of
+     * the Block must not be modified afterwards.
+     * 
+     * @param binary
+     *            Buffer containing this Block from its position to its limit
+     * @throws IllegalArgumentException
+     *             Thrown if the Ballots of the Block exceed the buffer
+     */
+    public Block(ByteBuffer binary)
+    {
+        this.source = binary.slice();
+        ByteBuffer data = source.duplicate();
         this.version = data.getInt();
-        byte[] prevBlockHashBytes = new byte[32];
-        data.get(prevBlockHashBytes, 0, prevBlockHashBytes.length);
-        this.prevBlockHash = ByteUtil.bytesToHex(prevBlockHashBytes);
+        this.prevBlockHash = Hash256.read(data);
         this.time = data.getInt();
         this.target = data.getInt();
-        this.ballots = new ArrayList<Ballot>();
         int ballotNum = data.getInt();
         this.nonce = data.getInt();
+        this.ballots = new ArrayList<Ballot>(Math.min(ballotNum, 1 << 16));
         for (int i = 0; ballotNum > i; i++)
         {
             int size = data.getInt();
-            byte[] bytes = new byte[size];
-            data.get(bytes);
-            this.ballots.add(new Ballot(bytes));
+            if (size < 0 || size > data.remaining())
+            {
+                throw new IllegalArgumentException("Invalid Ballot length: "
+                    + size);
+            }
+            int limit = data.limit();
+            data.limit(data.position() + size);
+            this.ballots.add(new Ballot(data));
+            data.position(data.limit());
+            data.limit(limit);
         }
-        this.merkleRootHash =
-            HashUtil.generateLeadingZeros(getMerkleRoot(0, 0));
+        this.merkleTree = new MerkleTree(ballots);
+        this.merkleRootHash = merkleTree.getRoot();
         genBytes();
-        this.myHash =
-            HashUtil.generateLeadingZeros(HashUtil.generateBlockHash(
-                headerBytes,
-                nonce));
+        this.myHash = HashUtil.generateBlockHash(headerBytes, nonce);
         validate();
     }
 
@@ -150,9 +225,10 @@ public class Block
     /**
      * Returns the hash of the header for this Block.
      * 
-     * @return 32-digit hexadecimal hash of this Block's header
+     * @return 256-bit hash of this Block's header, or null if the Proof of Work
+     *         has not been generated yet
      */
-    public String getHash()
+    public Hash256 getHash()
     {
         return myHash;
     }
@@ -163,9 +239,9 @@ public class Block
      * Returns the hash for this Block's parent.
      * 
      * @see Block#getHash()
-     * @return 32-digit hexadecimal hash of this Block's parent
+     * @return 256-bit hash of this Block's parent
      */
-    public String getPrevHash()
+    public Hash256 getPrevHash()
     {
         return prevBlockHash;
     }
@@ -173,9 +249,10 @@ public class Block
 
     // -------------------------------------------------------------------------
     /**
-     * Generates a {@link HashUtil#generateProof(byte[], int) Proof of Work} for
-     * this block and validates the Block's contents. If the block is already
-     * valid, this method will return.
+     * Generates a {@link Miner#mine(byte[], int) Proof of Work} for this block
+     * and validates the Block's contents. If the block is already valid, this
+     * method will return. If no nonce results in a valid hash, the time of the
+     * Block is advanced and the Proof of Work is generated again.
      * 
      * @throws InterruptedException
      *             Thrown if the Thread is interrupted by
@@ -187,55 +264,37 @@ public class Block
         {
             return;
         }
+        this.source = null;
+        this.myBytes = null;
         this.time = (int) (System.currentTimeMillis() / 60000);
-        this.merkleRootHash =
-            HashUtil.generateLeadingZeros(getMerkleRoot(0, 0));
+        this.merkleTree = new MerkleTree(ballots);
+        this.merkleRootHash = merkleTree.getRoot();
         genBytes();
-        this.nonce = HashUtil.generateProof(headerBytes, target);
-        this.myHash =
-            HashUtil.generateLeadingZeros(HashUtil.generateBlockHash(
-                headerBytes,
-                nonce));
+        long proof = Miner.mine(headerBytes, target);
+        while (proof == -1)
+        {
+            this.time =
+                Math.max(time + 1, (int) (System.currentTimeMillis() / 60000));
+            genBytes();
+            proof = Miner.mine(headerBytes, target);
+        }
+        this.nonce = (int) proof;
+        this.myHash = HashUtil.generateBlockHash(headerBytes, nonce);
         this.valid = true;
     }
 
 
     // -------------------------------------------------------------------------
     /**
-     * Generates the Merkle Root of the list of Ballots contained in this Block.
-     * The initial call to this method should be {@code getMerkleRoot(0, 0);}
-     * and it will recurse to get the root of the entire list.
+     * Returns the {@link MerkleTree Merkle Tree} of the {@link Ballot Ballots}
+     * contained in this Block, whose root is stored in the header.
      * 
-     * @param depth
-     *            Depth of the Merkle Tree on this recursive step
-     * @param position
-     *            Index of the Ballot composing the first child of the Merkle
-     *            Tree node returned by this method
-     * @return 32-digit hexadecimal Merkle Root of the two leaves at the given
-     *         depth and position
+     * @return Merkle Tree of this Block's Ballots, or null if the Proof of
+     *         Work has not been generated yet
      */
-    private String getMerkleRoot(int depth, int position)
+    public MerkleTree getMerkleTree()
     {
-        if (depth < Math.log(ballots.size()) / Math.log(2))
-        {
-            String root1 = getMerkleRoot(depth + 1, position * 2);
-            String root2 = getMerkleRoot(depth + 1, position * 2 + 1);
-            if (root1 == null)
-            {
-                return null;
-            }
-            return HashUtil.generateMerkleRoot(root1, root2 == null
-                ? root1
-                : root2);
-        }
-        else
-        {
-            if (position >= ballots.size())
-            {
-                return null;
-            }
-            return ballots.get(position).getRoot();
-        }
+        return merkleTree;
     }
 
 
@@ -246,23 +305,65 @@ public class Block
      * {@linkplain Block#Block(byte[])}.
      */
     private void genBytes()
+    {
+        headerBytes =
+            getHeader(
+                version,
+                prevBlockHash,
+                merkleRootHash,
+                time,
+                target,
+                ballots.size());
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns a Block Header in binary format. This method is used by
+     * {@linkplain Block#genBytes()} and by {@link BlockTemplate
+     * BlockTemplates}.
+     * 
+     * @param version
+     *            Version of the Block
+     * @param prevBlockHash
+     *            Hash of the previous Block
+     * @param merkleRootHash
+     *            Merkle Root of the Ballots
+     * @param time
+     *            Unix Timestamp adjusted to minutes
+     * @param target
+     *            Short-Format target
+     * @param ballots
+     *            Number of Ballots
+     * @return 80-byte Block Header
+     */
+    static byte[] getHeader(
+        int version,
+        Hash256 prevBlockHash,
+        Hash256 merkleRootHash,
+        int time,
+        int target,
+        int ballots)
     {
         ByteBuffer bytes = ByteBuffer.allocate(4 + 32 + 32 + 4 + 4 + 4);
         bytes.putInt(version);
-        bytes.put(ByteUtil.hexToBytes(HashUtil
-            .generateLeadingZeros(prevBlockHash)));
-        bytes.put(ByteUtil.hexToBytes(HashUtil
-            .generateLeadingZeros(merkleRootHash)));
+        prevBlockHash.write(bytes);
+        merkleRootHash.write(bytes);
         bytes.putInt(time);
         bytes.putInt(target);
-        bytes.putInt(ballots.size());
-        headerBytes = bytes.array();
+        bytes.putInt(ballots);
+        return bytes.array();
     }
 
 
+
     // -------------------------------------------------------------------------
     /**
-     * Returns the Block in binary format as a byte array.
+     * Returns the Block in binary format as a byte array. A Block loaded from
+     * a buffer returns the buffer's array if the Block spans all of it, and
+     * otherwise copies its bytes once. Blocks which are sent or stored should
+     * be {@linkplain Block#write(WritableByteChannel) written} instead, which
+     * does not materialize the whole Block.
      * 
      * @return Byte array representing this Block
      */
@@ -270,30 +371,172 @@ public class Block
     {
         if (myBytes == null)
         {
-            int size = 0;
-            for (int i = 0; ballots.size() > i; i++)
+            if (source != null && source.hasArray()
+                && source.arrayOffset() == 0
+                && source.array().length == source.limit())
             {
-                size += 4 + ballots.get(i).getBytes().length;
+                myBytes = source.array();
             }
-            ByteBuffer data =
-                ByteBuffer.allocate(4 + 32 + 4 + 4 + 4 + 4 + size);
-            data.putInt(version);
-            data.put(ByteUtil.hexToBytes(HashUtil
-                .generateLeadingZeros(prevBlockHash)));
-            data.putInt(time);
-            data.putInt(target);
-            data.putInt(ballots.size());
-            data.putInt(nonce);
-            for (int i = 0; ballots.size() > i; i++)
+            else
             {
-                byte[] bytes = ballots.get(i).getBytes();
-                data.putInt(bytes.length);
-                data.put(bytes);
+                ByteBuffer data = ByteBuffer.allocate(getSize());
+                write(data);
+                myBytes = data.array();
             }
-            myBytes = data.array();
         }
         return myBytes;
     }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the length of this Block in binary format, without serializing
+     * it.
+     * 
+     * @return Number of bytes representing this Block
+     */
+    public int getSize()
+    {
+        if (source != null)
+        {
+            return source.limit();
+        }
+        int size = 4 + 32 + 4 + 4 + 4 + 4;
+        for (int i = 0; ballots.size() > i; i++)
+        {
+            size += 4 + ballots.get(i).getSize();
+        }
+        return size;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Writes this Block in binary format at the current position of a buffer,
+     * advancing the position by {@linkplain Block#getSize()} bytes.
+     * 
+     * @param data
+     *            Buffer receiving the Block
+     */
+    public void write(ByteBuffer data)
+    {
+        ByteBuffer[] buffers = getBuffers();
+        for (int i = 0; buffers.length > i; i++)
+        {
+            data.put(buffers[i]);
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns this Block in binary format as a sequence of buffers, suitable
+     * for a gathering write. The buffers are views over the header of this
+     * Block and over the binary data of its {@link Ballot Ballots}, so the
+     * Block is not copied. A Block loaded from a buffer returns a single view
+     * over that buffer. Each call returns new buffers, positioned at their
+     * first byte.
+     * 
+     * @return Buffers which together contain this Block
+     */
+    public ByteBuffer[] getBuffers()
+    {
+        if (source != null)
+        {
+            return new ByteBuffer[] { source.asReadOnlyBuffer() };
+        }
+        ByteBuffer[] buffers = new ByteBuffer[1 + ballots.size() * 2];
+        ByteBuffer header = ByteBuffer.allocate(4 + 32 + 4 + 4 + 4 + 4);
+        header.putInt(version);
+        prevBlockHash.write(header);
+        header.putInt(time);
+        header.putInt(target);
+        header.putInt(ballots.size());
+        header.putInt(nonce);
+        header.flip();
+        buffers[0] = header;
+        ByteBuffer sizes = ByteBuffer.allocate(ballots.size() * 4);
+        for (int i = 0; ballots.size() > i; i++)
+        {
+            Ballot ballot = ballots.get(i);
+            sizes.putInt(i * 4, ballot.getSize());
+            sizes.limit(i * 4 + 4);
+            sizes.position(i * 4);
+            buffers[1 + i * 2] = sizes.slice();
+            sizes.limit(sizes.capacity());
+            buffers[2 + i * 2] = ballot.getBuffer();
+        }
+        return buffers;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Writes this Block in binary format to a channel with
+     * {@linkplain Block#getBuffers() gathering writes}, without copying it
+     * into a temporary array. The channel must be in blocking mode.
+     * 
+     * @param channel
+     *            Channel receiving the Block
+     * @return Number of bytes written
+     * @throws IOException
+     *             Thrown if the channel could not be written to
+     */
+    public long write(WritableByteChannel channel)
+        throws IOException
+    {
+        ByteBuffer[] buffers = getBuffers();
+        long written = 0;
+        int next = 0;
+        while (buffers.length > next)
+        {
+            if (!buffers[next].hasRemaining())
+            {
+                next++;
+            }
+            else if (channel instanceof GatheringByteChannel)
+            {
+                written +=
+                    ((GatheringByteChannel) channel).write(
+                        buffers,
+                        next,
+                        buffers.length - next);
+            }
+            else
+            {
+                written += channel.write(buffers[next]);
+            }
+        }
+        return written;
+    }
+    
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the header of this Block in binary format. The header contains
+     * the version, previous hash, Merkle Root, time, target and number of
+     * Ballots of this Block. The header and the {@link Block#getNonce() nonce}
+     * together determine the {@link Block#getHash() hash} of this Block.
+     * 
+     * @return 80-byte array representing this Block's header, or null if the
+     *         Proof of Work has not been generated yet
+     */
+    public byte[] getHeader()
+    {
+        return headerBytes;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the nonce (Proof of Work) of this Block.
+     * 
+     * @return Nonce of this Block
+     */
+    public int getNonce()
+    {
+        return nonce;
+    }
     
 
     // -------------------------------------------------------------------------
@@ -361,8 +604,10 @@ public class Block
             + DateFormat.getDateTimeInstance().format(
                 new Date(((long) (time)) * 60000)) + " "
             + (validate() ? "[VALID]" : "[INVALID]") + "\nHash:       "
-            + myHash + "\nPrevHash:   " + prevBlockHash + "\nMerkleRoot: "
-            + merkleRootHash + "\nTarget:     " + tar + "   Difficulty: "
+            + (myHash == null ? "NOT GENERATED" : myHash) + "\nPrevHash:   "
+            + prevBlockHash + "\nMerkleRoot: "
+            + (merkleRootHash == null ? "NOT GENERATED" : merkleRootHash)
+            + "\nTarget:     " + tar + "   Difficulty: "
             + getDifficulty(target) + "\nBallots:    " + ballots.size()
             + "\nNonce:      " + nonce
             + "\n-------------------------------------------";
@@ -16,9 +16,20 @@
 
 package me.edwards.des.block;
 
+import java.io.IOException;
+import java.lang.ref.SoftReference;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import me.edwards.des.Launcher;
+import me.edwards.des.util.ByteUtil;
+import me.edwards.des.util.Hash256;
+import me.edwards.des.util.HashUtil;
 
 // -----------------------------------------------------------------------------
 /**
@@ -27,12 +38,22 @@ import java.util.ArrayList;
  * {@linkplain BlockChain#append(Block)} and will be put into the correct order
  * to form a continuous tree of Blocks backwards-linked through the
  * {@link Block#getPrevHash() previous hash} fields. The BlockChain maintains a
- * queue of orphan Blocks to ensure that Blocks received by the Node
- * out-of-order in the tree can be appended to the BlockChain correctly. The
+ * {@link OrphanPool pool} of orphan Blocks to ensure that Blocks received by
+ * the Node out-of-order in the tree can be appended to the BlockChain
+ * correctly. The
  * BlockChain also maintains a list of all the Blocks acting as leaves on the
  * top of the tree, but will always choose the longest continuous chain of
  * Blocks as the main chain.<br>
  * <br>
+ * Every tree node is indexed by the raw bytes of its Block's hash, so
+ * {@linkplain BlockChain#contains(Hash256)},
+ * {@linkplain BlockChain#get(Hash256)} and
+ * {@linkplain BlockChain#getNode(Hash256)} run in constant time regardless
+ * of the length of the BlockChain or the number of branches. The
+ * {@link Ballot Ballots} of every indexed Block are also indexed by their UUID,
+ * so {@linkplain BlockChain#hasBallot(Hash256, String)} only has to check
+ * whether the few Blocks containing a UUID lie on the requested branch.<br>
+ * <br>
  * The branching abilities of the BlockChain provide the mechanism of the
  * network to "vote" on valid Blocks and come to a consensus of what the "real"
  * BlockChain is. Blocks that are generated and deemed valid are added to the
@@ -59,12 +80,22 @@ public class BlockChain
      * The goal time for ten Blocks to be mined, in minutes.
      */
     public static final int BLOCK_GOAL = 10;
+
+    /**
+     * The maximum depth, below the top of the BlockChain, at which a new
+     * branch may be started.
+     */
+    public static final int MAXIMUM_FORK_DEPTH = 10;
     
     
     // -------------------------------------------------------------------------
-    private Node              top;
-    private ArrayList<Block>  queue;
-    private ArrayList<Node>   topList;
+    private Node                               top;
+    private OrphanPool                         orphans;
+    private ArrayList<Node>                    topList;
+    private ConcurrentHashMap<Hash256, Node>   index;
+    private HashMap<Long, Node[]>              ballotIndex;
+    private ArrayList<Node>                    mainChain;
+    private BlockStore                         store;
 
 
     // ~ Constructors ..........................................................
@@ -84,9 +115,16 @@ public class BlockChain
         this.top = new Node();
         this.top.height = 0;
         this.top.block = genesis;
-        this.queue = new ArrayList<Block>();
+        this.top.time = genesis.getTime();
+        this.top.target = genesis.getTarget();
+        this.orphans = new OrphanPool();
         this.topList = new ArrayList<Node>();
         this.topList.add(top);
+        this.index = new ConcurrentHashMap<Hash256, Node>();
+        this.ballotIndex = new HashMap<Long, Node[]>();
+        this.mainChain = new ArrayList<Node>();
+        index(top, genesis.getHash(), ballotIds(genesis));
+        updateMainChain();
     }
 
 
@@ -104,8 +142,11 @@ public class BlockChain
      */
     public BlockChain(int size, byte[][] binary)
     {
-        this.queue = new ArrayList<Block>();
+        this.orphans = new OrphanPool();
         this.topList = new ArrayList<Node>();
+        this.index = new ConcurrentHashMap<Hash256, Node>();
+        this.ballotIndex = new HashMap<Long, Node[]>();
+        this.mainChain = new ArrayList<Node>();
         Node n = null;
         int height = size - 1;
         for (int i = 0; binary.length > i; i++)
@@ -118,16 +159,25 @@ public class BlockChain
                     break;
                 }
                 int length = data.getInt();
-                byte[] blockData = new byte[length];
-                data.get(blockData);
+                int limit = data.limit();
+                data.limit(data.position() + length);
                 Node child = new Node();
                 child.height = height--;
-                child.block = new Block(blockData);
+                child.block = new Block(data);
+                data.position(data.limit());
+                data.limit(limit);
+                child.time = child.block.getTime();
+                child.target = child.block.getTarget();
                 child.parent = null;
                 if (n != null)
                 {
                     n.parent = child;
+                    child.children = 1;
                 }
+                index(
+                    child,
+                    child.block.getHash(),
+                    ballotIds(child.block));
                 if (i == 0 && j == 0)
                 {
                     this.top = child;
@@ -136,6 +186,71 @@ public class BlockChain
             }
         }
         this.topList.add(this.top);
+        updateMainChain();
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Initializes BlockChain from the {@link Block Blocks} in the specified
+     * {@link BlockStore BlockStore}. Only the hash and header of each Block
+     * are read from the store's index, and the Ballot IDs are read directly
+     * from the stored Block data. Blocks are not decoded until they are first
+     * {@link Node#getBlock() accessed}, so loading does not hash or verify any
+     * Ballots. Blocks written to the store can be verified separately with
+     * {@linkplain BlockStore#verify()}.<br>
+     * <br>
+     * The BlockChain writes all Blocks appended from now on to the same store.
+     * 
+     * @param store
+     *            BlockStore containing at least the Genesis Block
+     */
+    public BlockChain(BlockStore store)
+    {
+        this.orphans = new OrphanPool();
+        this.topList = new ArrayList<Node>();
+        this.index = new ConcurrentHashMap<Hash256, Node>();
+        this.ballotIndex = new HashMap<Long, Node[]>();
+        this.mainChain = new ArrayList<Node>();
+        this.store = store;
+        int height = 0;
+        for (int i = 0; store.getCount() > i; i++)
+        {
+            Hash256 key = store.getHash(i);
+            if (index.containsKey(key))
+            {
+                continue;
+            }
+            ByteBuffer header = store.getHeader(i);
+            header.position(4);
+            Hash256 prevHash = Hash256.read(header);
+            Node n = new Node();
+            n.entry = i;
+            n.time = header.getInt(68);
+            n.target = header.getInt(72);
+            if (i == 0)
+            {
+                this.top = n;
+            }
+            else
+            {
+                n.parent = index.get(prevHash);
+                if (n.parent == null)
+                {
+                    Launcher.GLOBAL.warning("Stored block " + i
+                        + " has no parent and was skipped!");
+                    continue;
+                }
+                n.height = n.parent.height + 1;
+                n.parent.children++;
+                topList.remove(n.parent);
+                height = Math.max(height, n.height);
+            }
+            topList.add(n);
+            index(n, key, store.getBallotIds(i));
+        }
+        this.top = prune(height + 1);
+        updateMainChain();
     }
 
 
@@ -154,7 +269,7 @@ public class BlockChain
         Node n = top;
         for (long i = 0; getSize() > i; i++)
         {
-            length += 4 + n.block.getBytes().length;
+            length += 4 + n.getBlock().getSize();
             n = n.parent;
         }
         byte[][] bytes = new byte[(int)Math.ceil((double)length / MAXIMUM_BLOCK_SIZE)][];
@@ -165,23 +280,24 @@ public class BlockChain
                 ByteBuffer.allocate((int)Math.min(length, MAXIMUM_BLOCK_SIZE));
             for (int j = 0; getSize() > j; j++)
             {
-                if (n.block.getBytes().length + data.position() > data.limit())
+                Block block = n.getBlock();
+                int size = block.getSize();
+                if (4 + size + data.position() > data.limit())
                 {
                     break;
                 }
-                data.putInt(n.block.getBytes().length);
-                data.put(n.block.getBytes());
-                length -= n.block.getBytes().length;
+                data.putInt(size);
+                block.write(data);
+                length -= 4 + size;
                 n = n.parent;
                 if (n == null)
                 {
                     break;
                 }
             }
-            int pos = data.position();
-            bytes[i] = new byte[pos];
-            data.position(0);
-            data.get(bytes[i]);
+            bytes[i] = data.hasRemaining()
+                ? Arrays.copyOf(data.array(), data.position())
+                : data.array();
         }
         return bytes;
     }
@@ -196,7 +312,7 @@ public class BlockChain
      */
     public Block getTop()
     {
-        return top.block;
+        return top.getBlock();
     }
 
 
@@ -240,77 +356,78 @@ public class BlockChain
      * BlockChain. The new block will be at the top of the BlockChain and the
      * "East Block" will be its parent. The branch containing the "West Block"
      * is now shorter, and declared invalid by each Node. Therefore, the entire
-     * network will have a single agreed-upon BlockChain.
+     * network will have a single agreed-upon BlockChain.<br>
+     * <br>
+     * A Block whose parent is unknown is held in the {@link OrphanPool orphan
+     * pool} until its parent is appended, at which point it is appended
+     * together with all of its waiting descendants. A Block whose parent is
+     * more than {@link BlockChain#MAXIMUM_FORK_DEPTH} Blocks below the top of
+     * the BlockChain (and is not the top of a branch) would start a stale
+     * branch and is discarded.
      * 
      * @param block
      *            Block to be added to this BlockChain
      */
-    public void append(Block block)
+    public synchronized void append(Block block)
     {
-        queue.add(0, block);
+        if (index.containsKey(block.getHash()))
+        {
+            return;
+        }
+        orphans.evict();
 
-        for (int i = 0; queue.size() > i; i++)
+        Node parent = index.get(block.getPrevHash());
+        if (parent == null)
         {
-            for (int j = 0; topList.size() > j; j++)
-            {
-                if (topList.get(j).getBlock().getHash()
-                    .equalsIgnoreCase(queue.get(i).getPrevHash()))
-                {
-                    Node n = new Node();
-                    n.parent = topList.get(j);
-                    n.height = topList.get(j).getHeight() + 1;
-                    n.block = queue.get(i);
-                    topList.remove(j);
-                    topList.add(n);
-                    queue.remove(i);
-                    i = -1;
-                    break;
-                }
-            }
-            if (i > -1)
+            orphans.add(block);
+            return;
+        }
+        if (!topList.contains(parent)
+            && top.height - parent.height >= MAXIMUM_FORK_DEPTH)
+        {
+            return;
+        }
+
+        ArrayList<Node> attached = new ArrayList<Node>();
+        attached.add(attach(block, parent));
+        for (int i = 0; attached.size() > i; i++)
+        {
+            ArrayList<Block> children = orphans.release(attached.get(i).key);
+            for (int j = 0; children.size() > j; j++)
             {
-                Node conNode = null;
-                for (int k = 0; topList.size() > k; k++)
+                if (!index.containsKey(children.get(j).getHash()))
                 {
-                    Node n = topList.get(k);
-                    int height = n.height;
-                    while (n.height >= 0 && height - n.height < 10)
-                    {
-                        if (n.block.getHash().equalsIgnoreCase(
-                            queue.get(i).getPrevHash()))
-                        {
-                            conNode = n;
-                        }
-                        if (n.height > 0)
-                        {
-                            n = n.parent;
-                        }
-                        else
-                        {
-                            break;
-                        }
-                    }
-                    if (conNode != null)
-                    {
-                        Node n2 = new Node();
-                        n2.parent = conNode;
-                        n2.height = conNode.height + 1;
-                        n2.block = queue.get(i);
-                        topList.add(n2);
-                        queue.remove(i);
-                        i = -1;
-                        break;
-                    }
+                    attached.add(attach(children.get(j), attached.get(i)));
                 }
             }
         }
 
+        Node temp = prune(getSize());
+        topList.remove(top);
+        topList.add(0, top);
+        top = temp;
+        updateMainChain();
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Removes every branch from the top list whose leaf is more than 11
+     * Blocks below the specified size, and returns the highest remaining leaf.
+     * 
+     * @param size
+     *            Number of Blocks in the longest branch
+     * @return Highest node in the top list, or the current top if no node is
+     *         higher
+     */
+    private Node prune(int size)
+    {
         Node temp = top;
         for (int i = 0; topList.size() > i; i++)
         {
-            if (topList.get(i).height + 11 < getSize())
+            if (topList.get(i).height + 11 < size)
             {
-                topList.remove(i);
+                forget(topList.remove(i));
                 i--;
                 continue;
             }
@@ -319,43 +436,107 @@ public class BlockChain
                 temp = topList.get(i);
             }
         }
-        topList.remove(top);
-        topList.add(0, top);
-        top = temp;
+        return temp;
     }
 
 
     // -------------------------------------------------------------------------
     /**
-     * Returns true if the specified hash belongs to a {@link Block Block} in
-     * this BlockChain.
+     * Creates a tree node for the specified {@link Block Block} as a child of
+     * the specified parent node. The new node replaces its parent in the top
+     * list, or starts a new branch if the parent already has children. If the
+     * BlockChain is stored, the node only keeps a soft reference to the Block
+     * once it is written, and the Block is read back from the store when it is
+     * no longer in memory.
      * 
-     * @param hash
-     *            Block's 32-digit hexadecimal {@link Block#getHash() hash}
-     * @return True if the specified hash belongs to a Block in this BlockChain
+     * @param block
+     *            Block to attach
+     * @param parent
+     *            Node containing the parent of the Block
+     * @return The new node
      */
-    public boolean contains(String hash)
+    private Node attach(Block block, Node parent)
     {
-        for (int i = 0; topList.size() > i; i++)
+        Node n = new Node();
+        n.parent = parent;
+        n.height = parent.height + 1;
+        n.block = block;
+        n.time = block.getTime();
+        n.target = block.getTarget();
+        parent.children++;
+        index(n, block.getHash(), ballotIds(block));
+        topList.remove(parent);
+        topList.add(n);
+        if (store != null)
         {
-            Node n = topList.get(i);
-            while (n.height >= 0)
+            try
             {
-                if (n.block.getHash().equalsIgnoreCase(hash))
-                {
-                    return true;
-                }
-                if (n.height > 0)
-                {
-                    n = n.parent;
-                }
-                else
-                {
-                    break;
-                }
+                n.entry = store.append(block);
+                n.block = null;
+                n.cache = new SoftReference<Block>(block);
+            }
+            catch (IOException e)
+            {
+                Launcher.GLOBAL.log(Level.SEVERE, "Could not store Block "
+                    + block.getHash(), e);
             }
         }
-        return false;
+        return n;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Sets the {@link BlockStore BlockStore} to which this BlockChain writes
+     * every {@link Block Block} appended from now on.
+     * 
+     * @param store
+     *            BlockStore to write to, or null to stop storing Blocks
+     */
+    public synchronized void setStore(BlockStore store)
+    {
+        this.store = store;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the {@link BlockStore BlockStore} to which this BlockChain
+     * writes its {@link Block Blocks}.
+     * 
+     * @return BlockStore of this BlockChain, or null if the BlockChain is not
+     *         stored
+     */
+    public BlockStore getStore()
+    {
+        return store;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the {@link OrphanPool orphan pool} of this BlockChain.
+     * 
+     * @return Pool of Blocks waiting for their parent
+     */
+    public OrphanPool getOrphans()
+    {
+        return orphans;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns true if the specified hash belongs to a {@link Block Block} in
+     * this BlockChain.
+     * 
+     * @param hash
+     *            Block's 256-bit {@link Block#getHash() hash}
+     * @return True if the specified hash belongs to a Block in this BlockChain
+     */
+    public boolean contains(Hash256 hash)
+    {
+        return getNode(hash) != null;
     }
 
 
@@ -365,32 +546,14 @@ public class BlockChain
      * hash.
      * 
      * @param hash
-     *            Block's 32-digit hexadecimal {@link Block#getHash() hash}
+     *            Block's 256-bit {@link Block#getHash() hash}
      * @return If the Block exists, it is returned, otherwise, a null value is
      *         returned.
      */
-    public Block get(String hash)
+    public Block get(Hash256 hash)
     {
-        for (int i = 0; topList.size() > i; i++)
-        {
-            Node n = topList.get(i);
-            while (n.height >= 0)
-            {
-                if (n.block.getHash().equalsIgnoreCase(hash))
-                {
-                    return n.block;
-                }
-                if (n.height > 0)
-                {
-                    n = n.parent;
-                }
-                else
-                {
-                    break;
-                }
-            }
-        }
-        return null;
+        Node n = getNode(hash);
+        return n == null ? null : n.getBlock();
     }
 
 
@@ -400,35 +563,278 @@ public class BlockChain
      * with the specified hash.
      * 
      * @param hash
-     *            Block's 32-digit hexadecimal {@link Block#getHash() hash}
+     *            Block's 256-bit {@link Block#getHash() hash}
      * @return If the Block exists, the node containing it is returned.
      *         Otherwise, a null value is returned.
      */
-    public Node getNode(String hash)
+    public Node getNode(Hash256 hash)
     {
-        for (int i = 0; topList.size() > i; i++)
+        if (hash == null)
         {
-            Node n = topList.get(i);
-            while (n.height >= 0)
+            return null;
+        }
+        return index.get(hash);
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the {@link Node node} at the specified height in the main chain
+     * of this BlockChain (the chain ending with the top Block).
+     * 
+     * @param height
+     *            Height of the node, where the Genesis Block has height 0
+     * @return If the height is within the main chain, the node at that height
+     *         is returned. Otherwise, a null value is returned.
+     */
+    public synchronized Node getNode(int height)
+    {
+        if (height < 0 || height >= mainChain.size())
+        {
+            return null;
+        }
+        return mainChain.get(height);
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns a block locator for the main chain of this BlockChain: the
+     * hashes of the top ten {@link Block Blocks}, followed by the hashes of
+     * Blocks at exponentially increasing distances below them, down to the
+     * Genesis Block. A peer finds the most recent Block which both BlockChains
+     * share by {@linkplain BlockChain#locate(List) locating} it.
+     * 
+     * @return List of hashes, from the top of the main chain down to the
+     *         Genesis Block
+     */
+    public synchronized ArrayList<Hash256> getLocator()
+    {
+        ArrayList<Hash256> locator = new ArrayList<Hash256>();
+        int step = 1;
+        for (int h = top.height; h > 0; h -= step)
+        {
+            locator.add(mainChain.get(h).key);
+            if (locator.size() >= 10)
             {
-                if (n.block.getHash().equalsIgnoreCase(hash))
+                step *= 2;
+            }
+        }
+        locator.add(mainChain.get(0).key);
+        return locator;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the first node of a block locator which is in the main chain of
+     * this BlockChain. This is the most recent Block shared with the peer
+     * which sent the locator.
+     * 
+     * @param locator
+     *            Block locator created by
+     *            {@linkplain BlockChain#getLocator()}
+     * @return Node of the first located Block, or the node of the Genesis
+     *         Block if no Block of the locator is in the main chain
+     */
+    public synchronized Node locate(List<Hash256> locator)
+    {
+        for (int i = 0; locator.size() > i; i++)
+        {
+            Node n = index.get(locator.get(i));
+            if (n != null && n.height < mainChain.size()
+                && mainChain.get(n.height) == n)
+            {
+                return n;
+            }
+        }
+        return mainChain.get(0);
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Adds the specified node to the {@link BlockChain#index hash index} and
+     * the {@link BlockChain#ballotIndex Ballot index}.
+     * 
+     * @param n
+     *            Node to index
+     * @param key
+     *            Hash of the node's Block
+     * @param ballots
+     *            IDs of the Ballots contained in the node's Block
+     */
+    private void index(Node n, Hash256 key, long[] ballots)
+    {
+        n.key = key;
+        index.put(n.key, n);
+        for (int i = 0; ballots.length > i; i++)
+        {
+            Long id = ballots[i];
+            Node[] nodes = ballotIndex.get(id);
+            if (nodes == null)
+            {
+                ballotIndex.put(id, new Node[] { n });
+            }
+            else
+            {
+                nodes = Arrays.copyOf(nodes, nodes.length + 1);
+                nodes[nodes.length - 1] = n;
+                ballotIndex.put(id, nodes);
+            }
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Removes a pruned branch from the {@link BlockChain#index hash index}.
+     * Starting at the specified leaf, every node which no longer has any
+     * children is removed until the point where the branch forked from the
+     * rest of the BlockChain is reached.
+     * 
+     * @param leaf
+     *            Leaf node of the branch which was removed from the top list
+     */
+    private void forget(Node leaf)
+    {
+        Node n = leaf;
+        while (n != null && n.children == 0)
+        {
+            index.remove(n.key);
+            long[] ballots =
+                n.block == null
+                    ? store.getBallotIds(n.entry)
+                    : ballotIds(n.block);
+            for (int i = 0; ballots.length > i; i++)
+            {
+                Long id = ballots[i];
+                Node[] nodes = ballotIndex.get(id);
+                if (nodes == null)
                 {
-                    return n;
+                    continue;
                 }
-                if (n.height > 0)
+                if (nodes.length == 1 && nodes[0] == n)
                 {
-                    n = n.parent;
+                    ballotIndex.remove(id);
+                    continue;
                 }
-                else
+                Node[] remaining = new Node[nodes.length - 1];
+                int k = 0;
+                for (int j = 0; nodes.length > j && remaining.length > k; j++)
                 {
-                    break;
+                    if (nodes[j] != n)
+                    {
+                        remaining[k++] = nodes[j];
+                    }
                 }
+                ballotIndex.put(id, remaining);
+            }
+            n = n.parent;
+            if (n != null)
+            {
+                n.children--;
             }
         }
-        return null;
     }
     
     
+    // -------------------------------------------------------------------------
+    /**
+     * Rewrites the {@link BlockChain#mainChain main chain} after the top of the
+     * BlockChain changed. Only the nodes between the new top and the point
+     * where its branch joins the previous main chain are rewritten, so a
+     * regular append costs a single step and a reorganization costs the
+     * length of the new branch.
+     */
+    private void updateMainChain()
+    {
+        while (mainChain.size() > top.height + 1)
+        {
+            mainChain.remove(mainChain.size() - 1);
+        }
+        while (mainChain.size() < top.height + 1)
+        {
+            mainChain.add(null);
+        }
+        Node n = top;
+        while (n != null && mainChain.get(n.height) != n)
+        {
+            mainChain.set(n.height, n);
+            n = n.parent;
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns True if the specified ancestor is contained in the branch ending
+     * at the specified node. The branch is walked down only until it joins the
+     * {@link BlockChain#mainChain main chain}, after which the ancestor can be
+     * checked directly by its height.
+     * 
+     * @param ancestor
+     *            Node which may be an ancestor
+     * @param n
+     *            Node at the top of the branch
+     * @return True if the ancestor is in the branch ending at the node, False
+     *         otherwise
+     */
+    private boolean isAncestor(Node ancestor, Node n)
+    {
+        if (ancestor.height > n.height)
+        {
+            return false;
+        }
+        while (n.height >= mainChain.size() || mainChain.get(n.height) != n)
+        {
+            if (n.height == ancestor.height)
+            {
+                return n == ancestor;
+            }
+            n = n.parent;
+        }
+        return mainChain.get(ancestor.height) == ancestor;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the key of the {@link BlockChain#ballotIndex Ballot index} for
+     * the specified Ballot UUID.
+     * 
+     * @param uuid
+     *            16-digit hexadecimal UUID of a Ballot
+     * @return UUID as a long integer
+     */
+    static Long ballotKey(String uuid)
+    {
+        return ByteUtil.bytesToLong(ByteUtil.hexToBytes(HashUtil
+            .generateLeadingZeros(uuid, 16)));
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the keys of the {@link BlockChain#ballotIndex Ballot index} for
+     * the {@link Ballot Ballots} in the specified {@link Block Block}.
+     * 
+     * @param block
+     *            Block containing the Ballots
+     * @return Array of Ballot UUIDs as long integers
+     */
+    private static long[] ballotIds(Block block)
+    {
+        ArrayList<Ballot> ballots = block.getBallots();
+        long[] ids = new long[ballots.size()];
+        for (int i = 0; ids.length > i; i++)
+        {
+            ids[i] = ballots.get(i).getIDValue();
+        }
+        return ids;
+    }
+
+
     // -------------------------------------------------------------------------
     /**
      * Returns the Median Time of the last 10 (or available) Blocks.
@@ -438,7 +844,7 @@ public class BlockChain
      * @return The Median Time of the last 10 Blocks, -1 if the Hash could not
      *         be found.
      */
-    public long getMedianTime(String hash)
+    public long getMedianTime(Hash256 hash)
     {
         Node n = getNode(hash);
         if (n == null)
@@ -449,7 +855,7 @@ public class BlockChain
         ArrayList<Integer> times = new ArrayList<Integer>();
         while (h - n.height < 10)
         {
-            int time = n.block.getTime();
+            int time = n.time;
             for (int i = 0; times.size() > i; i++)
             {
                 if (times.get(i) >= time)
@@ -478,7 +884,8 @@ public class BlockChain
     // -------------------------------------------------------------------------
     /**
      * Returns True if the specified {@linkplain Ballot} is contained in the
-     * longest branch of this BlockChain.
+     * branch ending at the specified hash, or in the longest branch of this
+     * BlockChain if the hash is null or unknown.
      * 
      * @param hash
      *            Parent hash of the {@linkplain Block} containing this ballot.
@@ -486,7 +893,7 @@ public class BlockChain
      *            UUID of the Ballot
      * @return True if the Ballot exists, False otherwise
      */
-    public boolean hasBallot(String hash, String uuid)
+    public synchronized boolean hasBallot(Hash256 hash, String uuid)
     {
         Node n = top;
         if (hash != null)
@@ -497,26 +904,62 @@ public class BlockChain
                 n = n2;
             }
         }
-        while (n.height >= 0)
+        Node[] nodes = ballotIndex.get(ballotKey(uuid));
+        if (nodes == null)
         {
-            ArrayList<Ballot> ballots = n.block.getBallots();
-            for (int i = 0; ballots.size() > i; i++)
+            return false;
+        }
+        for (int i = 0; nodes.length > i; i++)
+        {
+            if (isAncestor(nodes[i], n))
             {
-                if (ballots.get(i).getID().equalsIgnoreCase(uuid))
-                {
-                    return true;
-                }
+                return true;
             }
-            if (n.height > 0)
+        }
+        return false;
+    }
+
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns a {@link MerkleProof Merkle Proof} that the {@linkplain Ballot}
+     * with the specified root hash and UUID is contained in a Block of the
+     * longest branch of this BlockChain. The Blocks containing the UUID are
+     * found through the {@link BlockChain#ballotIndex Ballot index}, so only
+     * those Blocks are searched for the root hash.
+     * 
+     * @param root
+     *            {@link Ballot#getRoot() Root hash} of the Ballot
+     * @param uuid
+     *            UUID of the Ballot
+     * @return Merkle Proof of the Ballot, or null if no Block of the longest
+     *         branch contains the Ballot
+     */
+    public synchronized MerkleProof getProof(Hash256 root, String uuid)
+    {
+        Node[] nodes = ballotIndex.get(ballotKey(uuid));
+        if (nodes == null)
+        {
+            return null;
+        }
+        for (int i = 0; nodes.length > i; i++)
+        {
+            if (!isAncestor(nodes[i], top))
             {
-                n = n.parent;
+                continue;
             }
-            else
+            Block block = nodes[i].getBlock();
+            ArrayList<Ballot> ballots = block.getBallots();
+            for (int j = 0; ballots.size() > j; j++)
             {
-                break;
+                if (ballots.get(j).getRoot().equals(root))
+                {
+                    return new MerkleProof(block, j);
+                }
             }
         }
-        return false;
+        return null;
     }
     
     
@@ -540,7 +983,7 @@ public class BlockChain
         }
 
         Node n = this.top;
-        int time = n.getBlock().getTime();
+        int time = n.time;
         int h = n.height;
         while (h - n.height < 10)
         {
@@ -553,8 +996,8 @@ public class BlockChain
                 break;
             }
         }
-        int target = n.getBlock().getTarget();
-        int realTime = n.getBlock().getTime() - time;
+        int target = n.target;
+        int realTime = n.time - time;
         BigInteger newTarget = Block.getTarget(target);
         if (BLOCK_GOAL / (double) realTime > 4)
         {
@@ -588,21 +1031,18 @@ public class BlockChain
         sb.append("TOPLIST:\n");
         for (int i = 0; topList.size() > i; i++)
         {
-            sb.append("\t" + topList.get(i).getBlock().getHash() + "\n");
-        }
-        sb.append("QUEUE:\n");
-        for (int i = 0; queue.size() > i; i++)
-        {
-            sb.append("\t" + queue.get(i).getHash() + "\n");
+            sb.append("\t" + topList.get(i).getHash() + "\n");
         }
+        sb.append("ORPHANS:\n");
+        sb.append(orphans.toString());
         sb.append("LONGEST:\n");
         Node n = top;
         while (n.parent != null)
         {
-            sb.append("\t" + n.getBlock().getHash() + "\n");
+            sb.append("\t" + n.getHash() + "\n");
             n = n.parent;
         }
-        sb.append("\t" + n.getBlock().getHash() + "\n");
+        sb.append("\t" + n.getHash() + "\n");
         return sb.toString();
     }
 
@@ -619,9 +1059,15 @@ public class BlockChain
     {
         // ~ Static/Instance variables .........................................
 
-        private Node  parent;
-        private int   height;
-        private Block block;
+        private Node                 parent;
+        private int                  height;
+        private int                  children;
+        private Block                block;
+        private Hash256              key;
+        private int                  time;
+        private int                  target;
+        private int                  entry;
+        private SoftReference<Block> cache;
 
 
         // ~ Methods ...........................................................
@@ -654,13 +1100,66 @@ public class BlockChain
 
         // ---------------------------------------------------------------------
         /**
-         * Returns the {@link Block Block} contained in this node.
+         * Returns the hash of the {@link Block Block} contained in this node,
+         * without decoding the Block.
+         * 
+         * @return {@link Block#getHash() Hash} of the Block
+         */
+        public Hash256 getHash()
+        {
+            return key;
+        }
+
+
+        // ---------------------------------------------------------------------
+        /**
+         * Returns the {@link Block Block} contained in this node. If the Block
+         * is in a {@link BlockStore BlockStore}, it is decoded from the store
+         * when it is not in memory and cached until memory runs low.
          * 
          * @return Block contained in this node
          */
         public Block getBlock()
         {
-            return block;
+            if (block != null)
+            {
+                return block;
+            }
+            Block b = cache == null ? null : cache.get();
+            if (b == null)
+            {
+                b = store.getBlock(entry);
+                cache = new SoftReference<Block>(b);
+            }
+            return b;
+        }
+
+
+        // ---------------------------------------------------------------------
+        /**
+         * Returns the header and nonce of the {@link Block Block} contained in
+         * this node, as sent to peers during synchronization. If the Block is
+         * in a {@link BlockStore BlockStore}, they are read from the index of
+         * the store without decoding the Block.
+         * 
+         * @return 84-byte array: the {@linkplain Block#getHeader() header} of
+         *         the Block followed by its {@linkplain Block#getNonce()
+         *         nonce}
+         */
+        public byte[] getHeader()
+        {
+            byte[] bytes = new byte[84];
+            if (block == null)
+            {
+                store.getHeader(entry).get(bytes, 0, 80);
+                ByteBuffer.wrap(bytes).putInt(80, store.getNonce(entry));
+            }
+            else
+            {
+                System.arraycopy(block.getHeader(), 0, bytes, 0, 80);
+                ByteBuffer.wrap(bytes).putInt(80, block.getNonce());
+            }
+            return bytes;
         }
     }
 }
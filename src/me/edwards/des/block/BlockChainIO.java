@@ -18,20 +18,20 @@ package me.edwards.des.block;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
-import java.util.zip.ZipOutputStream;
 import me.edwards.des.Launcher;
 import me.edwards.des.util.ByteUtil;
 
 // -----------------------------------------------------------------------------
 /**
- * Handles reading and writing of BlockChains to and from the file system.<br>
+ * Handles reading and writing of BlockChains to and from the file system.
+ * BlockChains are stored in an append-only {@link BlockStore BlockStore}.<br>
  * <br>
  * Created on: Dec 21, 2015 at 11:28:44 AM
  * 
@@ -46,12 +46,22 @@ public class BlockChainIO
      */
     private static final int BUFFER_SIZE = 4096;
 
+    /**
+     * First four bytes of a ZIP archive ("PK\3\4"), used to recognize
+     * snapshots written in the old compressed format
+     */
+    private static final int ZIP_MAGIC   = 0x504B0304;
+
 
     // ~ Methods ...............................................................
 
     // -------------------------------------------------------------------------
     /**
-     * Saves the BlockChain to the specified file.
+     * Saves the BlockChain to the specified file. If the BlockChain is already
+     * stored in a {@link BlockStore BlockStore} with the specified file name,
+     * the store is only flushed. Otherwise, a new BlockStore is written
+     * containing the main chain of the BlockChain, and attached to the
+     * BlockChain if it does not have a store yet.
      * 
      * @param bc
      *            BlockChain object to save
@@ -63,57 +73,42 @@ public class BlockChainIO
     public static void save(BlockChain bc, String fileName)
         throws IOException
     {
-        if (fileName.endsWith(".block"))
+        if (!fileName.endsWith(".block"))
         {
-            fileName = fileName.substring(0, fileName.length() - 6);
+            fileName = fileName + ".block";
         }
 
         long time = System.currentTimeMillis();
-        
-        byte[][] bytes = bc.getBytes();
 
-        Launcher.GLOBAL.info("Saving BlockChain to \"" + fileName
-            + ".block\" (" + bc.getSize() + " blocks, " + bytes.length
-            + " partitions)...");
-
-        ZipOutputStream zout =
-            new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(
-                new File(fileName + ".block"))));
-        for (int i = -1; bytes.length > i; i++)
+        BlockStore current = bc.getStore();
+        if (current != null
+            && new File(current.getFileName()).getCanonicalPath().equals(
+                new File(fileName).getCanonicalPath()))
         {
-            BufferedOutputStream bout =
-                new BufferedOutputStream(new FileOutputStream(new File(fileName
-                    + ".temp")));
-            ByteBuffer data;
-            if (i == -1)
+            Launcher.GLOBAL.info("Flushing BlockChain to \"" + fileName
+                + "\" (" + bc.getSize() + " blocks)...");
+            current.flush();
+        }
+        else
+        {
+            Launcher.GLOBAL.info("Saving BlockChain to \"" + fileName
+                + "\" (" + bc.getSize() + " blocks)...");
+            delete(fileName);
+            BlockStore store = new BlockStore(fileName);
+            for (int i = 0; bc.getSize() > i; i++)
             {
-                data = ByteBuffer.allocate(8);
-                data.putInt(bc.getSize());
-                data.putInt(bytes.length);
+                store.append(bc.getNode(i).getBlock());
             }
-            else
+            store.flush();
+            if (current == null)
             {
-                data = ByteBuffer.allocate(4 + bytes[i].length);
-                data.putInt(bytes[i].length);
-                data.put(bytes[i]);
+                bc.setStore(store);
             }
-            bout.write(data.array());
-            bout.close();
-
-            zout.putNextEntry(new ZipEntry("block" + i));
-            byte[] buffer = new byte[BUFFER_SIZE];
-            FileInputStream in =
-                new FileInputStream(new File(fileName + ".temp"));
-
-            int len;
-            while ((len = in.read(buffer)) > 0)
+            else
             {
-                zout.write(buffer, 0, len);
+                store.close();
             }
-            in.close();
-            new File(fileName + ".temp").delete();
         }
-        zout.close();
 
         Launcher.GLOBAL.info("BlockChain saved in "
             + (System.currentTimeMillis() - time) / 1000 + " seconds!");
@@ -122,7 +117,13 @@ public class BlockChainIO
 
     // -------------------------------------------------------------------------
     /**
-     * Loads a BlockChain from the specified file.
+     * Loads a BlockChain from the specified file. The BlockChain is built from
+     * the index of the file's {@link BlockStore BlockStore}, and its
+     * {@link Block Blocks} are only decoded when they are first accessed. The
+     * store is attached to the BlockChain so that new Blocks are appended to
+     * the same file. Files written in the old compressed snapshot format are converted
+     * to a BlockStore once, keeping the old file with the extension
+     * ".block.bak".
      * 
      * @param fileName
      *            Full path of file from which to load
@@ -136,66 +137,36 @@ public class BlockChainIO
     {
         if (fileName.endsWith(".block"))
         {
-            fileName = fileName.substring(0, fileName.length() - 6);
-
-            Launcher.GLOBAL.info("Loading BlockChain from \"" + fileName
-                + ".block\"...");
-            long time = System.currentTimeMillis();
-
-            int num = 0;
-            int size = 0;
-
-            ZipInputStream zin =
-                new ZipInputStream(new BufferedInputStream(new FileInputStream(
-                    new File(fileName + ".block"))));
-            byte[][] bytes = null;
-            for (int i = -1; num > i; i++)
+            if (isSnapshot(fileName))
             {
-                BufferedOutputStream bout =
-                    new BufferedOutputStream(new FileOutputStream(new File(
-                        fileName + ".temp")));
-                zin.getNextEntry();
-                byte[] buffer = new byte[BUFFER_SIZE];
-                int len;
-                while ((len = zin.read(buffer)) > 0)
-                {
-                    bout.write(buffer, 0, len);
-                }
-                bout.close();
-
-                FileInputStream fin =
-                    new FileInputStream(new File(fileName + ".temp"));
-                BufferedInputStream bis = new BufferedInputStream(fin);
-
-                if (i == -1)
+                BlockChain bc = loadSnapshot(fileName);
+                File backup = new File(fileName + ".bak");
+                backup.delete();
+                if (!new File(fileName).renameTo(backup))
                 {
-                    byte[] bin = new byte[8];
-                    bis.read(bin);
-                    ByteBuffer data = ByteBuffer.wrap(bin);
-                    size = data.getInt();
-                    num = data.getInt();
-                    Launcher.GLOBAL.info("Found " + size + " blocks and " + num
-                        + " partitions...");
-                    bytes = new byte[num][];
-                }
-                else
-                {
-                    byte[] binI = new byte[4];
-                    bis.read(binI);
-
-                    byte[] bin = new byte[ByteUtil.bytesToInt(binI)];
-                    bis.read(bin);
-                    bytes[i] = bin;
+                    throw new IOException("Could not rename \"" + fileName
+                        + "\"");
                 }
+                Launcher.GLOBAL.info("Converting BlockChain to a BlockStore...");
+                save(bc, fileName);
+                return bc;
+            }
 
-                bis.close();
-                fin.close();
+            Launcher.GLOBAL.info("Loading BlockChain from \"" + fileName
+                + "\"...");
+            long time = System.currentTimeMillis();
 
-                new File(fileName + ".temp").delete();
+            BlockStore store = new BlockStore(fileName);
+            if (store.getCount() == 0)
+            {
+                store.close();
+                throw new IOException("BlockStore \"" + fileName
+                    + "\" is empty");
             }
-            zin.close();
+            Launcher.GLOBAL.info("Found " + store.getCount() + " blocks...");
+
+            BlockChain bc = new BlockChain(store);
 
-            BlockChain bc = new BlockChain(size, bytes);
             Launcher.GLOBAL.info("BlockChain loaded in "
                 + (System.currentTimeMillis() - time) / 1000 + " seconds!");
             return bc;
@@ -205,4 +176,132 @@ public class BlockChainIO
             throw new IOException("Invalid File Extension");
         }
     }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Deletes the index file and all segment files of the {@link BlockStore
+     * BlockStore} with the specified file name.
+     * 
+     * @param fileName
+     *            Full path of the index file
+     */
+    private static void delete(String fileName)
+    {
+        new File(fileName).delete();
+        for (int i = 0; new File(fileName + "." + i).delete(); i++)
+        {
+            continue;
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns True if the specified file is a BlockChain snapshot in the old
+     * compressed format.
+     * 
+     * @param fileName
+     *            Full path of the file
+     * @return True if the file is a ZIP archive, False otherwise
+     * @throws IOException
+     *             Thrown if the file could not be read
+     */
+    private static boolean isSnapshot(String fileName)
+        throws IOException
+    {
+        File file = new File(fileName);
+        if (!file.exists() || file.length() < 4)
+        {
+            return false;
+        }
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try
+        {
+            return in.readInt() == ZIP_MAGIC;
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Loads a BlockChain from a snapshot in the old compressed format.
+     * 
+     * @param fileName
+     *            Full path of file from which to load
+     * @return BlockChain loaded from file
+     * @throws IOException
+     *             Thrown if file reading encounters an error
+     */
+    private static BlockChain loadSnapshot(String fileName)
+        throws IOException
+    {
+        fileName = fileName.substring(0, fileName.length() - 6);
+
+        Launcher.GLOBAL.info("Loading BlockChain snapshot from \"" + fileName
+            + ".block\"...");
+        long time = System.currentTimeMillis();
+
+        int num = 0;
+        int size = 0;
+
+        ZipInputStream zin =
+            new ZipInputStream(new BufferedInputStream(new FileInputStream(
+                new File(fileName + ".block"))));
+        byte[][] bytes = null;
+        for (int i = -1; num > i; i++)
+        {
+            BufferedOutputStream bout =
+                new BufferedOutputStream(new FileOutputStream(new File(
+                    fileName + ".temp")));
+            zin.getNextEntry();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int len;
+            while ((len = zin.read(buffer)) > 0)
+            {
+                bout.write(buffer, 0, len);
+            }
+            bout.close();
+
+            FileInputStream fin =
+                new FileInputStream(new File(fileName + ".temp"));
+            BufferedInputStream bis = new BufferedInputStream(fin);
+
+            if (i == -1)
+            {
+                byte[] bin = new byte[8];
+                bis.read(bin);
+                ByteBuffer data = ByteBuffer.wrap(bin);
+                size = data.getInt();
+                num = data.getInt();
+                Launcher.GLOBAL.info("Found " + size + " blocks and " + num
+                    + " partitions...");
+                bytes = new byte[num][];
+            }
+            else
+            {
+                byte[] binI = new byte[4];
+                bis.read(binI);
+
+                byte[] bin = new byte[ByteUtil.bytesToInt(binI)];
+                bis.read(bin);
+                bytes[i] = bin;
+            }
+
+            bis.close();
+            fin.close();
+
+            new File(fileName + ".temp").delete();
+        }
+        zin.close();
+
+        BlockChain bc = new BlockChain(size, bytes);
+        Launcher.GLOBAL.info("BlockChain snapshot loaded in "
+            + (System.currentTimeMillis() - time) / 1000 + " seconds!");
+        return bc;
+    }
 }
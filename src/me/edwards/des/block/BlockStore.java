@@ -0,0 +1,669 @@
+/*============================================================================*\
+ | Copyright (C) 2015 Matthew Edwards                                         |
+ |                                                                            |
+ | Licensed under the Apache License, Version 2.0 (the "License"); you may    |
+ | not use this file except in compliance with the License. You may obtain a  |
+ | copy of the License at                                                     |
+ |                                                                            |
+ |     http://www.apache.org/licenses/LICENSE-2.0                             |
+ |                                                                            |
+ | Unless required by applicable law or agreed to in writing, software        |
+ | distributed under the License is distributed on an "AS IS" BASIS,          |
+ | WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   |
+ | See the License for the specific language governing permissions and        |
+ | limitations under the License.                                             |
+\*============================================================================*/
+
+package me.edwards.des.block;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.CopyOnWriteArrayList;
+import me.edwards.des.Launcher;
+import me.edwards.des.util.Hash256;
+
+// -----------------------------------------------------------------------------
+/**
+ * Append-only file storage for the {@link Block Blocks} of a
+ * {@linkplain BlockChain}. Blocks are written to the store as they are
+ * appended to the BlockChain, so the BlockChain never has to be rewritten as a
+ * whole.<br>
+ * <br>
+ * The store consists of an index file and a number of segment files. The index
+ * file ("NAME.block") starts with an 8-byte header (magic number and format
+ * version) followed by one {@link BlockStore#ENTRY_SIZE fixed-size} entry per
+ * Block:<br>
+ * <br>
+ * <table>
+ * <thead>
+ * <td><strong>Bytes</strong></td>
+ * <td><strong>Description</strong></td>
+ * </thead>
+ * <tr>
+ * <td>4</td>
+ * <td>Segment number</td>
+ * </tr>
+ * <tr>
+ * <td>4</td>
+ * <td>Offset of the Block in the segment</td>
+ * </tr>
+ * <tr>
+ * <td>4</td>
+ * <td>Length of the Block</td>
+ * </tr>
+ * <tr>
+ * <td>32</td>
+ * <td>{@link Block#getHash() Hash} of the Block</td>
+ * </tr>
+ * <tr>
+ * <td>80</td>
+ * <td>{@link Block#getHeader() Header} of the Block</td>
+ * </tr>
+ * <tr>
+ * <td>4</td>
+ * <td>{@link Block#getNonce() Nonce} of the Block</td>
+ * </tr>
+ * </table>
+ * <br>
+ * Segment files ("NAME.block.0", "NAME.block.1", ...) hold the
+ * {@link Block#getBytes() binary data} of the Blocks back to back, and never
+ * grow larger than {@link BlockStore#SEGMENT_SIZE}. Blocks are written through
+ * a {@link FileChannel} and read back through read-only
+ * {@link MappedByteBuffer MappedByteBuffers}, so opening a store does not copy
+ * or inflate any Block data. Blocks appended after the store was opened are
+ * read back the same way: the index or segment file is mapped again when an
+ * entry beyond its current mapping is first read.<br>
+ * <br>
+ * Entries are stored in the order in which Blocks were attached to the
+ * BlockChain, which guarantees that the parent of every Block is stored before
+ * the Block itself. If the Node stopped while a Block was being written, the
+ * incomplete Block is discarded when the store is opened.<br>
+ * <br>
+ * Created on: Oct 17, 2026 at 12:04:51 AM
+ * 
+ * @author Matthew Edwards
+ */
+public class BlockStore
+{
+    // ~ Static/Instance variables .............................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * The maximum size, in bytes, of a segment file
+     */
+    public static final int       SEGMENT_SIZE = 256 * 1024 * 1024;
+
+    /**
+     * The size, in bytes, of an index entry
+     */
+    public static final int       ENTRY_SIZE   = 4 + 4 + 4 + 32 + 80 + 4;
+
+    /**
+     * Magic number identifying an index file ("DESB")
+     */
+    static final int              MAGIC        = 0x44455342;
+
+    /**
+     * Version of the index file format
+     */
+    static final int              VERSION      = 1;
+
+    private static final int      HEADER_SIZE  = 8;
+
+
+    // -------------------------------------------------------------------------
+    private String                fileName;
+    private FileChannel           index;
+    private FileChannel           segment;
+    private int                   segmentNumber;
+    private volatile ByteBuffer   entries;
+    private int                   count;
+    private int                   size;
+    private CopyOnWriteArrayList<ByteBuffer> segments;
+
+
+    // ~ Constructors ..........................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Opens the BlockStore with the specified index file, creating it if it
+     * does not exist. Incomplete entries at the end of the store are
+     * discarded.
+     * 
+     * @param fileName
+     *            Full path of the index file (ending in ".block")
+     * @throws IOException
+     *             Thrown if the store can not be opened or is not a valid
+     *             BlockStore
+     */
+    public BlockStore(String fileName)
+        throws IOException
+    {
+        this.fileName = fileName;
+        this.segments = new CopyOnWriteArrayList<ByteBuffer>();
+        this.index = new RandomAccessFile(fileName, "rw").getChannel();
+
+        if (index.size() < HEADER_SIZE)
+        {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.flip();
+            index.truncate(0);
+            index.write(header, 0);
+        }
+        else
+        {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            index.read(header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION)
+            {
+                index.close();
+                throw new IOException("Invalid BlockStore \"" + fileName
+                    + "\"");
+            }
+        }
+
+        this.count = (int) ((index.size() - HEADER_SIZE) / ENTRY_SIZE);
+        this.entries = index.map(
+            FileChannel.MapMode.READ_ONLY,
+            HEADER_SIZE,
+            (long) count * ENTRY_SIZE);
+
+        // Map every segment and discard entries that were not written
+        // completely.
+        long end = 0;
+        for (int i = 0; count > i; i++)
+        {
+            int seg = entries.getInt(i * ENTRY_SIZE);
+            int offset = entries.getInt(i * ENTRY_SIZE + 4);
+            int length = entries.getInt(i * ENTRY_SIZE + 8);
+            while (segments.size() <= seg)
+            {
+                segments.add(map(segments.size()));
+            }
+            if (segments.get(seg) == null
+                || (long) offset + length > segments.get(seg).capacity())
+            {
+                count = i;
+                break;
+            }
+            segmentNumber = seg;
+            end = (long) offset + length;
+        }
+        index.truncate(HEADER_SIZE + (long) count * ENTRY_SIZE);
+        index.position(index.size());
+        this.size = count;
+
+        this.segment =
+            new RandomAccessFile(segmentName(segmentNumber), "rw")
+                .getChannel();
+        segment.truncate(end);
+        segment.position(end);
+    }
+
+
+    // ~ Methods ...............................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Appends the specified {@link Block Block} to the end of this store. The
+     * Block data is {@linkplain Block#write(java.nio.channels.WritableByteChannel)
+     * written} to the current segment (or to a new segment if the current one
+     * is full) before its index entry is written.
+     * 
+     * @param block
+     *            Block to store. The Block must have a generated Proof of Work.
+     * @return Number of the entry of the Block, from which it can be read back
+     * @throws IOException
+     *             Thrown if the Block could not be written
+     */
+    public synchronized int append(Block block)
+        throws IOException
+    {
+        int length = block.getSize();
+        if (segment.position() + length > SEGMENT_SIZE
+            && segment.position() > 0)
+        {
+            segment.close();
+            segmentNumber++;
+            segment =
+                new RandomAccessFile(segmentName(segmentNumber), "rw")
+                    .getChannel();
+            segment.truncate(0);
+        }
+        int offset = (int) segment.position();
+        block.write(segment);
+
+        ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+        entry.putInt(segmentNumber);
+        entry.putInt(offset);
+        entry.putInt(length);
+        block.getHash().write(entry);
+        entry.put(block.getHeader());
+        entry.putInt(block.getNonce());
+        entry.flip();
+        while (entry.hasRemaining())
+        {
+            index.write(entry);
+        }
+        return size++;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Forces all appended {@link Block Blocks} to be written to the storage
+     * device.
+     * 
+     * @throws IOException
+     *             Thrown if the store could not be flushed
+     */
+    public synchronized void flush()
+        throws IOException
+    {
+        segment.force(false);
+        index.force(false);
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Flushes and closes this store. No more Blocks can be appended after the
+     * store is closed.
+     * 
+     * @throws IOException
+     *             Thrown if the store could not be closed
+     */
+    public synchronized void close()
+        throws IOException
+    {
+        flush();
+        segment.close();
+        index.close();
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the full path of this store's index file.
+     * 
+     * @return Path of the index file
+     */
+    public String getFileName()
+    {
+        return fileName;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the number of {@link Block Blocks} which were in this store when
+     * it was opened. Blocks appended after the store was opened are not
+     * counted.
+     * 
+     * @return Number of Blocks which can be read from this store
+     */
+    public int getCount()
+    {
+        return count;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the binary data of the {@link Block Block} with the specified
+     * entry number. The returned buffer is a read-only view of the mapped
+     * segment file, so no data is copied.
+     * 
+     * @param entry
+     *            Number of the entry, in the order in which the Blocks were
+     *            appended
+     * @return Buffer containing the Block's binary data
+     */
+    public ByteBuffer getBytes(int entry)
+    {
+        ByteBuffer entries = getEntries(entry);
+        int seg = entries.getInt(entry * ENTRY_SIZE);
+        int offset = entries.getInt(entry * ENTRY_SIZE + 4);
+        int length = entries.getInt(entry * ENTRY_SIZE + 8);
+        ByteBuffer data = getSegment(seg, (long) offset + length).duplicate();
+        data.position(offset);
+        data.limit(offset + length);
+        return data.slice();
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the {@link Block Block} with the specified entry number. The
+     * Block is a view over the mapped segment file, so its data is read from
+     * the file without being copied onto the heap.
+     * 
+     * @param entry
+     *            Number of the entry, in the order in which the Blocks were
+     *            appended
+     * @return Block with the specified entry number
+     */
+    public Block getBlock(int entry)
+    {
+        return new Block(getBytes(entry));
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the {@link Block#getHash() hash} of the {@link Block Block} with
+     * the specified entry number, as stored in the index.
+     * 
+     * @param entry
+     *            Number of the entry, in the order in which the Blocks were
+     *            appended
+     * @return 256-bit hash of the Block
+     */
+    public Hash256 getHash(int entry)
+    {
+        ByteBuffer data = getEntries(entry).duplicate();
+        data.position(entry * ENTRY_SIZE + 12);
+        return Hash256.read(data);
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the {@link Block#getHeader() header} of the {@link Block Block}
+     * with the specified entry number, as stored in the index. The returned
+     * buffer is a read-only view of the mapped index file.
+     * 
+     * @param entry
+     *            Number of the entry, in the order in which the Blocks were
+     *            appended
+     * @return Buffer containing the Block's 80-byte header
+     */
+    public ByteBuffer getHeader(int entry)
+    {
+        ByteBuffer data = getEntries(entry).duplicate();
+        data.position(entry * ENTRY_SIZE + 44);
+        data.limit(entry * ENTRY_SIZE + 44 + 80);
+        return data.slice();
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the {@link Block#getNonce() nonce} of the {@link Block Block}
+     * with the specified entry number, as stored in the index.
+     * 
+     * @param entry
+     *            Number of the entry, in the order in which the Blocks were
+     *            appended
+     * @return Nonce of the Block
+     */
+    public int getNonce(int entry)
+    {
+        return getEntries(entry).getInt(entry * ENTRY_SIZE + 44 + 80);
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the IDs of the {@link Ballot Ballots} contained in the
+     * {@link Block Block} with the specified entry number. The IDs are read
+     * directly from the mapped segment file, without decoding or hashing the
+     * Ballots.
+     * 
+     * @param entry
+     *            Number of the entry, in the order in which the Blocks were
+     *            appended
+     * @return Array of Ballot IDs
+     */
+    public long[] getBallotIds(int entry)
+    {
+        ByteBuffer data = getBytes(entry);
+        long[] ids = new long[data.getInt(44)];
+        int position = 52;
+        for (int i = 0; ids.length > i; i++)
+        {
+            ids[i] = data.getLong(position + 4 + 1);
+            position += 4 + data.getInt(position);
+        }
+        return ids;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Verifies every {@link Block Block} which was in this store when it was
+     * opened. Each Block is decoded from the mapped segment file and checked
+     * against its index entry and its Proof of Work. The decoded Blocks are
+     * not kept, so this method may run in the background while the
+     * BlockChain is in use.
+     * 
+     * @return Number of invalid Blocks
+     */
+    public int verify()
+    {
+        Launcher.GLOBAL.info("Verifying " + count + " stored blocks...");
+        long time = System.currentTimeMillis();
+        int invalid = 0;
+        for (int i = 0; count > i; i++)
+        {
+            Block block = getBlock(i);
+            if (!getHash(i).equals(block.getHash()) || !block.validate())
+            {
+                Launcher.GLOBAL.warning("Stored block " + i + " ("
+                    + block.getHash() + ") is invalid!");
+                invalid++;
+            }
+        }
+        Launcher.GLOBAL.info("Verified " + count + " stored blocks in "
+            + (System.currentTimeMillis() - time) / 1000 + " seconds ("
+            + invalid + " invalid)!");
+        return invalid;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the name of the segment file with the specified number.
+     * 
+     * @param number
+     *            Segment number
+     * @return Full path of the segment file
+     */
+    private String segmentName(int number)
+    {
+        return fileName + "." + number;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the mapping of the index entries which contains the specified
+     * entry, mapping the index file again if the entry was appended after the
+     * current mapping was made.
+     * 
+     * @param entry
+     *            Number of the entry
+     * @return Read-only mapping of the index entries
+     */
+    private ByteBuffer getEntries(int entry)
+    {
+        ByteBuffer data = entries;
+        if ((long) (entry + 1) * ENTRY_SIZE > data.capacity())
+        {
+            data = remapEntries(entry);
+        }
+        return data;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Maps all index entries written so far into memory.
+     * 
+     * @param entry
+     *            Number of the entry which must be mapped
+     * @return Read-only mapping of the index entries
+     * @throws IndexOutOfBoundsException
+     *             Thrown if the entry was not written
+     * @throws IllegalStateException
+     *             Thrown if the index file could not be mapped
+     */
+    private synchronized ByteBuffer remapEntries(int entry)
+    {
+        if (entry < 0 || entry >= size)
+        {
+            throw new IndexOutOfBoundsException("Entry " + entry);
+        }
+        if ((long) (entry + 1) * ENTRY_SIZE <= entries.capacity())
+        {
+            return entries;
+        }
+        try
+        {
+            RandomAccessFile raf = new RandomAccessFile(fileName, "r");
+            try
+            {
+                entries = raf.getChannel().map(
+                    FileChannel.MapMode.READ_ONLY,
+                    HEADER_SIZE,
+                    (long) size * ENTRY_SIZE);
+            }
+            finally
+            {
+                raf.close();
+            }
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Could not map \"" + fileName
+                + "\"", e);
+        }
+        return entries;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the mapping of the segment file with the specified number,
+     * mapping the file again if it has grown past the specified end since the
+     * current mapping was made.
+     * 
+     * @param number
+     *            Segment number
+     * @param end
+     *            Offset after the last byte which must be mapped
+     * @return Read-only mapping of the segment file
+     * @throws IllegalStateException
+     *             Thrown if the segment file could not be mapped
+     */
+    private ByteBuffer getSegment(int number, long end)
+    {
+        ByteBuffer data =
+            segments.size() > number ? segments.get(number) : null;
+        if (data != null && end <= data.capacity())
+        {
+            return data;
+        }
+        synchronized (this)
+        {
+            while (segments.size() <= number)
+            {
+                segments.add(null);
+            }
+            data = segments.get(number);
+            if (data == null || end > data.capacity())
+            {
+                try
+                {
+                    data = map(number);
+                }
+                catch (IOException e)
+                {
+                    throw new IllegalStateException("Could not map \""
+                        + segmentName(number) + "\"", e);
+                }
+                if (data == null || end > data.capacity())
+                {
+                    throw new IllegalStateException("Segment " + number
+                        + " is too short");
+                }
+                segments.set(number, data);
+            }
+            return data;
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Maps the segment file with the specified number into memory.
+     * 
+     * @param number
+     *            Segment number
+     * @return Read-only mapping of the whole segment file, or null if the
+     *         segment file does not exist
+     * @throws IOException
+     *             Thrown if the segment file could not be mapped
+     */
+    private ByteBuffer map(int number)
+        throws IOException
+    {
+        File file = new File(segmentName(number));
+        if (!file.exists())
+        {
+            return null;
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try
+        {
+            return raf.getChannel().map(
+                FileChannel.MapMode.READ_ONLY,
+                0,
+                raf.length());
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+
+
+    // ~ Static Methods ........................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns True if the specified file is the index file of a BlockStore.
+     * 
+     * @param fileName
+     *            Full path of the file
+     * @return True if the file exists and begins with the BlockStore magic
+     *         number, False otherwise
+     * @throws IOException
+     *             Thrown if the file could not be read
+     */
+    public static boolean isBlockStore(String fileName)
+        throws IOException
+    {
+        File file = new File(fileName);
+        if (!file.exists() || file.length() < HEADER_SIZE)
+        {
+            return false;
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try
+        {
+            return raf.readInt() == MAGIC;
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+}
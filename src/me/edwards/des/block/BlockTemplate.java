@@ -0,0 +1,231 @@
+/*============================================================================*\
+ | Copyright (C) 2015 Matthew Edwards                                         |
+ |                                                                            |
+ | Licensed under the Apache License, Version 2.0 (the "License"); you may    |
+ | not use this file except in compliance with the License. You may obtain a  |
+ | copy of the License at                                                     |
+ |                                                                            |
+ |     http://www.apache.org/licenses/LICENSE-2.0                             |
+ |                                                                            |
+ | Unless required by applicable law or agreed to in writing, software        |
+ | distributed under the License is distributed on an "AS IS" BASIS,          |
+ | WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   |
+ | See the License for the specific language governing permissions and        |
+ | limitations under the License.                                             |
+\*============================================================================*/
+
+package me.edwards.des.block;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import me.edwards.des.util.Hash256;
+import me.edwards.des.util.HeaderSource;
+import me.edwards.des.util.Miner;
+import me.edwards.des.util.MidstateHasher;
+
+// -----------------------------------------------------------------------------
+/**
+ * Template of the next {@link Block Block} generated by a Node, which keeps
+ * growing while its Proof of Work is generated. Ballots accepted into the
+ * Ballot pool during mining are {@linkplain BlockTemplate#add(Ballot) added} to
+ * the template until it holds the maximum number of Ballots. The template
+ * keeps an incremental {@link MerkleTree Merkle Tree} of its Ballots, so each
+ * new Ballot only hashes the path to the Merkle Root, and publishes a new
+ * header which the {@link Miner Miner} picks up at its next nonce range
+ * boundary.<br>
+ * <br>
+ * Ballots are only appended, so every published header commits to a prefix of
+ * the Ballots of the template, whose length is the number of Ballots stored in
+ * the header. The Block built from a solution contains exactly that prefix.<br>
+ * <br>
+ * Created on: Oct 17, 2026 at 9:14:52 AM
+ * 
+ * @author Matthew Edwards
+ */
+public class BlockTemplate
+    implements HeaderSource
+{
+    // ~ Static/Instance variables .............................................
+
+    // -------------------------------------------------------------------------
+    private final Hash256           prevBlockHash;
+    private final int               target;
+    private final int               maximum;
+    private final ArrayList<Ballot> ballots;
+    private final HashSet<Hash256>  roots;
+    private final MerkleTree        merkleTree;
+    private int                     time;
+    private volatile byte[]         header;
+
+
+    // ~ Constructors ..........................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Creates new empty BlockTemplate.
+     * 
+     * @param prevBlockHash
+     *            256-bit hash of the Block on which the new Block is built
+     * @param target
+     *            Short-Format target for hashes
+     * @param maximum
+     *            Maximum number of Ballots in the new Block
+     */
+    public BlockTemplate(Hash256 prevBlockHash, int target, int maximum)
+    {
+        this.prevBlockHash = prevBlockHash;
+        this.target = target;
+        this.maximum = maximum;
+        this.ballots = new ArrayList<Ballot>();
+        this.roots = new HashSet<Hash256>();
+        this.merkleTree = new MerkleTree(ballots);
+        this.time = (int) (System.currentTimeMillis() / 60000);
+        publish();
+    }
+
+
+    // ~ Methods ...............................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Adds a Ballot to this template, unless the template is full or already
+     * contains the Ballot.
+     * 
+     * @param ballot
+     *            Ballot to add
+     * @return True if the Ballot was added, False otherwise
+     */
+    public boolean add(Ballot ballot)
+    {
+        return add(Collections.singletonList(ballot)) == 1;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Adds Ballots to this template, in order, until the template is full.
+     * Ballots already contained in the template are skipped. A new header is
+     * published if any Ballot is added.
+     * 
+     * @param list
+     *            Ballots to add
+     * @return Number of Ballots added
+     */
+    public synchronized int add(List<Ballot> list)
+    {
+        ArrayList<Ballot> added = new ArrayList<Ballot>();
+        for (int i = 0; list.size() > i
+            && ballots.size() + added.size() < maximum; i++)
+        {
+            if (roots.add(list.get(i).getRoot()))
+            {
+                added.add(list.get(i));
+            }
+        }
+        if (added.isEmpty())
+        {
+            return 0;
+        }
+        ballots.addAll(added);
+        merkleTree.add(added);
+        publish();
+        return added.size();
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the number of Ballots in this template.
+     * 
+     * @return Number of Ballots
+     */
+    public synchronized int size()
+    {
+        return ballots.size();
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the hash of the Block on which the new Block is built.
+     * 
+     * @return 256-bit hash of the parent Block
+     */
+    public Hash256 getPrevHash()
+    {
+        return prevBlockHash;
+    }
+
+
+    // -------------------------------------------------------------------------
+    @Override
+    public byte[] getHeader()
+    {
+        return header;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Publishes a new header for the current Ballots and time. Must be called
+     * while holding the lock of this template.
+     */
+    private void publish()
+    {
+        header =
+            Block.getHeader(
+                Block.VERSION,
+                prevBlockHash,
+                merkleTree.getRoot(),
+                time,
+                target,
+                ballots.size());
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Generates the Proof of Work for this template and returns the new Block.
+     * Ballots can be added from other threads while this method runs. If no
+     * nonce results in a valid hash, the time of the template is advanced and
+     * the Proof of Work is generated again.
+     * 
+     * @return Block containing the Ballots committed to by the solved header
+     * @throws InterruptedException
+     *             Thrown if the Thread is interrupted by
+     *             {@linkplain me.edwards.des.Node#stopBlockGeneration()}.
+     */
+    public Block mine()
+        throws InterruptedException
+    {
+        byte[] solution = Miner.mine(this, target);
+        while (solution == null)
+        {
+            synchronized (this)
+            {
+                time =
+                    Math.max(
+                        time + 1,
+                        (int) (System.currentTimeMillis() / 60000));
+                publish();
+            }
+            solution = Miner.mine(this, target);
+        }
+
+        ByteBuffer data = ByteBuffer.wrap(solution);
+        int count = data.getInt(76);
+        ArrayList<Ballot> selected;
+        synchronized (this)
+        {
+            selected = new ArrayList<Ballot>(ballots.subList(0, count));
+        }
+        return new Block(
+            Arrays.copyOf(solution, MidstateHasher.HEADER_SIZE),
+            data.getInt(MidstateHasher.HEADER_SIZE),
+            selected);
+    }
+}
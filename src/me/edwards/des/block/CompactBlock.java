@@ -0,0 +1,364 @@
+/*============================================================================*\
+ | Copyright (C) 2015 Matthew Edwards                                         |
+ |                                                                            |
+ | Licensed under the Apache License, Version 2.0 (the "License"); you may    |
+ | not use this file except in compliance with the License. You may obtain a  |
+ | copy of the License at                                                     |
+ |                                                                            |
+ |     http://www.apache.org/licenses/LICENSE-2.0                             |
+ |                                                                            |
+ | Unless required by applicable law or agreed to in writing, software        |
+ | distributed under the License is distributed on an "AS IS" BASIS,          |
+ | WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   |
+ | See the License for the specific language governing permissions and        |
+ | limitations under the License.                                             |
+\*============================================================================*/
+
+package me.edwards.des.block;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import me.edwards.des.util.Hash256;
+import me.edwards.des.util.HashUtil;
+import me.edwards.des.util.Sha256;
+
+// -----------------------------------------------------------------------------
+/**
+ * Compact representation of a {@link Block Block}, relayed to peers which
+ * already hold most of its {@link Ballot Ballots} in their Ballot pool. A
+ * compact Block contains the header and nonce of the Block and a
+ * {@linkplain CompactBlock#SHORT_ID_LENGTH 6-byte} short ID for each of its
+ * Ballots, instead of the Ballots themselves.<br>
+ * <br>
+ * The receiver {@linkplain CompactBlock#fill(List) fills} the compact Block
+ * with the Ballots of its pool whose short IDs match, requests the
+ * {@linkplain CompactBlock#getMissing() missing} Ballots by index, and
+ * {@linkplain CompactBlock#getBlock() rebuilds} the Block once every Ballot is
+ * known. Short IDs are derived from the {@link Ballot#getRoot() root hash} of
+ * each Ballot and keyed with the hash of the Block, so a collision in one Block
+ * does not repeat in the next. A collision which is not detected while the
+ * Ballots are matched leads to a different Merkle Root, and the Block is then
+ * requested in full.<br>
+ * <br>
+ * A compact Block is not thread-safe.<br>
+ * <br>
+ * Created on: Oct 17, 2026 at 10:06:38 AM
+ * 
+ * @author Matthew Edwards
+ */
+public class CompactBlock
+{
+    // ~ Static/Instance variables .............................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Length, in bytes, of the short ID of a Ballot
+     */
+    public static final int SHORT_ID_LENGTH = 6;
+
+
+    // -------------------------------------------------------------------------
+    private byte[]          header;
+    private int             nonce;
+    private Hash256         hash;
+    private long[]          shortIDs;
+    private Ballot[]        ballots;
+    private int             missing;
+
+    private byte[]          keyed;
+    private byte[]          digest;
+
+
+    // ~ Constructors ..........................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Creates new CompactBlock from a Block with a generated Proof of Work.
+     * 
+     * @param block
+     *            Block to relay
+     */
+    public CompactBlock(Block block)
+    {
+        this.header = block.getHeader();
+        this.nonce = block.getNonce();
+        this.hash = block.getHash();
+        ArrayList<Ballot> blockBallots = block.getBallots();
+        this.shortIDs = new long[blockBallots.size()];
+        this.ballots = blockBallots.toArray(new Ballot[blockBallots.size()]);
+        this.missing = 0;
+        for (int i = 0; shortIDs.length > i; i++)
+        {
+            shortIDs[i] = getShortID(ballots[i].getRoot());
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Initializes CompactBlock from binary data as a byte array. None of its
+     * Ballots are known until it is {@linkplain CompactBlock#fill(List)
+     * filled}.
+     * 
+     * @param binary
+     *            Byte array representing this CompactBlock
+     * @throws IllegalArgumentException
+     *             Thrown if the short IDs do not match the number of Ballots
+     *             stored in the header
+     */
+    public CompactBlock(byte[] binary)
+    {
+        ByteBuffer data = ByteBuffer.wrap(binary);
+        this.header = new byte[80];
+        data.get(header);
+        this.nonce = data.getInt();
+        this.hash = HashUtil.generateBlockHash(header, nonce);
+        int count = ByteBuffer.wrap(header).getInt(76);
+        if (count < 0
+            || data.remaining() != (long) count * SHORT_ID_LENGTH)
+        {
+            throw new IllegalArgumentException("Invalid number of Ballots: "
+                + count);
+        }
+        this.shortIDs = new long[count];
+        this.ballots = new Ballot[count];
+        this.missing = count;
+        for (int i = 0; count > i; i++)
+        {
+            long id = 0;
+            for (int j = 0; SHORT_ID_LENGTH > j; j++)
+            {
+                id = (id << 8) | (data.get() & 0xFF);
+            }
+            shortIDs[i] = id;
+        }
+    }
+
+
+    // ~ Methods ...............................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the short ID of a Ballot in this compact Block: the first
+     * {@link CompactBlock#SHORT_ID_LENGTH} bytes of the SHA-256 hash of the
+     * hash of the Block followed by the root hash of the Ballot.
+     * 
+     * @param root
+     *            {@link Ballot#getRoot() Root hash} of the Ballot
+     * @return Short ID of the Ballot
+     */
+    private long getShortID(Hash256 root)
+    {
+        if (keyed == null)
+        {
+            keyed = new byte[Hash256.LENGTH * 2];
+            digest = new byte[Sha256.LENGTH];
+            hash.copyTo(keyed, 0);
+        }
+        root.copyTo(keyed, Hash256.LENGTH);
+        Sha256.hash(keyed, 0, keyed.length, digest, 0);
+        long id = 0;
+        for (int i = 0; SHORT_ID_LENGTH > i; i++)
+        {
+            id = (id << 8) | (digest[i] & 0xFF);
+        }
+        return id;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Fills the unknown Ballots of this compact Block with the candidates
+     * whose short IDs match. Candidates sharing a short ID are ambiguous and
+     * are not used.
+     * 
+     * @param candidates
+     *            Known Ballots, usually the Ballots of the Ballot pool
+     * @return Number of Ballots still missing
+     */
+    public int fill(List<Ballot> candidates)
+    {
+        if (missing == 0)
+        {
+            return 0;
+        }
+        HashMap<Long, Ballot> byShortID =
+            new HashMap<Long, Ballot>(candidates.size() * 2);
+        for (int i = 0; candidates.size() > i; i++)
+        {
+            Ballot candidate = candidates.get(i);
+            Long id = getShortID(candidate.getRoot());
+            if (!byShortID.containsKey(id))
+            {
+                byShortID.put(id, candidate);
+            }
+            else if (byShortID.get(id) != null
+                && !byShortID.get(id).getRoot().equals(candidate.getRoot()))
+            {
+                byShortID.put(id, null);
+            }
+        }
+        for (int i = 0; ballots.length > i; i++)
+        {
+            if (ballots[i] == null)
+            {
+                ballots[i] = byShortID.get(shortIDs[i]);
+                if (ballots[i] != null)
+                {
+                    missing--;
+                }
+            }
+        }
+        return missing;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the indexes of the Ballots of this compact Block which are not
+     * known yet, in ascending order.
+     * 
+     * @return Array of {@linkplain CompactBlock#getMissingCount()} indexes
+     */
+    public int[] getMissing()
+    {
+        int[] indexes = new int[missing];
+        int count = 0;
+        for (int i = 0; ballots.length > i; i++)
+        {
+            if (ballots[i] == null)
+            {
+                indexes[count++] = i;
+            }
+        }
+        return indexes;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the number of Ballots of this compact Block which are not known
+     * yet.
+     * 
+     * @return Number of missing Ballots
+     */
+    public int getMissingCount()
+    {
+        return missing;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Sets a missing Ballot of this compact Block, received from the peer
+     * which relayed it.
+     * 
+     * @param index
+     *            Index of the Ballot in the Block
+     * @param ballot
+     *            Received Ballot
+     * @return True if the Ballot was missing and matches its short ID, False
+     *         otherwise
+     */
+    public boolean set(int index, Ballot ballot)
+    {
+        if (index < 0 || index >= ballots.length || ballots[index] != null
+            || getShortID(ballot.getRoot()) != shortIDs[index])
+        {
+            return false;
+        }
+        ballots[index] = ballot;
+        missing--;
+        return true;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns a Ballot of this compact Block.
+     * 
+     * @param index
+     *            Index of the Ballot in the Block
+     * @return Ballot, or null if it is not known
+     */
+    public Ballot getBallot(int index)
+    {
+        return ballots[index];
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Rebuilds the Block once all of its Ballots are known. The Merkle Root of
+     * the Ballots is checked against the header, which detects Ballots matched
+     * through a colliding short ID.
+     * 
+     * @return Rebuilt Block
+     * @throws IllegalStateException
+     *             Thrown if Ballots are still missing
+     * @throws IllegalArgumentException
+     *             Thrown if the Ballots do not match the header
+     */
+    public Block getBlock()
+    {
+        if (missing != 0)
+        {
+            throw new IllegalStateException(missing + " Ballots are missing");
+        }
+        ArrayList<Ballot> list = new ArrayList<Ballot>(ballots.length);
+        for (int i = 0; ballots.length > i; i++)
+        {
+            list.add(ballots[i]);
+        }
+        return new Block(header, nonce, list);
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the hash of the Block.
+     * 
+     * @return {@link Block#getHash() Hash} of the Block
+     */
+    public Hash256 getHash()
+    {
+        return hash;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the number of Ballots of the Block.
+     * 
+     * @return Number of Ballots
+     */
+    public int getSize()
+    {
+        return ballots.length;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns this CompactBlock in binary format as a byte array.
+     * 
+     * @return Byte array representing this CompactBlock
+     */
+    public byte[] getBytes()
+    {
+        ByteBuffer data =
+            ByteBuffer.allocate(80 + 4 + SHORT_ID_LENGTH * shortIDs.length);
+        data.put(header);
+        data.putInt(nonce);
+        for (int i = 0; shortIDs.length > i; i++)
+        {
+            for (int j = SHORT_ID_LENGTH - 1; j >= 0; j--)
+            {
+                data.put((byte) (shortIDs[i] >>> (j * 8)));
+            }
+        }
+        return data.array();
+    }
+}
@@ -0,0 +1,207 @@
+/*============================================================================*\
+ | Copyright (C) 2015 Matthew Edwards                                         |
+ |                                                                            |
+ | Licensed under the Apache License, Version 2.0 (the "License"); you may    |
+ | not use this file except in compliance with the License. You may obtain a  |
+ | copy of the License at                                                     |
+ |                                                                            |
+ |     http://www.apache.org/licenses/LICENSE-2.0                             |
+ |                                                                            |
+ | Unless required by applicable law or agreed to in writing, software        |
+ | distributed under the License is distributed on an "AS IS" BASIS,          |
+ | WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   |
+ | See the License for the specific language governing permissions and        |
+ | limitations under the License.                                             |
+\*============================================================================*/
+
+package me.edwards.des.block;
+
+import java.nio.ByteBuffer;
+import me.edwards.des.util.Hash256;
+import me.edwards.des.util.HashUtil;
+
+// -----------------------------------------------------------------------------
+/**
+ * Proof that a {@link Ballot Ballot} is contained in a {@link Block Block},
+ * used as a receipt by voters and auditors. The proof holds the root hash of
+ * the Ballot, its index in the Block, its {@link MerkleTree#getPath(int)
+ * Merkle path} and the header and nonce of the Block, so it is verified with
+ * a few hashes instead of the whole Block.<br>
+ * <br>
+ * {@linkplain MerkleProof#verify()} only shows that the Ballot is committed to
+ * by a header with a valid Proof of Work. The verifier must also check that the
+ * {@linkplain MerkleProof#getBlockHash() hash of the Block} belongs to the
+ * BlockChain, for instance with the headers of its Blocks.<br>
+ * <br>
+ * Created on: Oct 17, 2026 at 8:41:09 AM
+ * 
+ * @author Matthew Edwards
+ */
+public class MerkleProof
+{
+    // ~ Static/Instance variables .............................................
+
+    // -------------------------------------------------------------------------
+    private Hash256   root;
+    private int       index;
+    private Hash256[] path;
+    private byte[]    header;
+    private int       nonce;
+
+
+    // ~ Constructors ..........................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Creates new MerkleProof for a Ballot of a Block.
+     * 
+     * @param block
+     *            Block containing the Ballot, with a generated Proof of Work
+     * @param index
+     *            Index of the Ballot in the Block
+     */
+    public MerkleProof(Block block, int index)
+    {
+        this.root = block.getBallots().get(index).getRoot();
+        this.index = index;
+        this.path = block.getMerkleTree().getPath(index);
+        this.header = block.getHeader();
+        this.nonce = block.getNonce();
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Initializes MerkleProof from binary data as a byte array.
+     * 
+     * @param binary
+     *            Byte array representing this MerkleProof
+     */
+    public MerkleProof(byte[] binary)
+    {
+        ByteBuffer data = ByteBuffer.wrap(binary);
+        this.root = Hash256.read(data);
+        this.index = data.getInt();
+        this.header = new byte[80];
+        data.get(header);
+        this.nonce = data.getInt();
+        int length = data.getInt();
+        if (length < 0 || length > data.remaining() / Hash256.LENGTH)
+        {
+            throw new IllegalArgumentException("Invalid Merkle path length: "
+                + length);
+        }
+        this.path = new Hash256[length];
+        for (int i = 0; path.length > i; i++)
+        {
+            path[i] = Hash256.read(data);
+        }
+    }
+
+
+    // ~ Methods ...............................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Verifies this proof. The proof is valid if the Merkle path leads from
+     * the Ballot's root hash to the Merkle Root of the header, if it has the
+     * depth of the Merkle Tree of the number of Ballots in the header, and if
+     * the header has a valid Proof of Work.
+     * 
+     * @return True if this proof is valid, False otherwise
+     */
+    public boolean verify()
+    {
+        ByteBuffer data = ByteBuffer.wrap(header);
+        int target = data.getInt(72);
+        int count = data.getInt(76);
+        if (index < 0 || index >= count
+            || path.length != MerkleTree.getDepth(count))
+        {
+            return false;
+        }
+
+        Hash256 node = root;
+        int position = index;
+        int width = count;
+        for (int i = 0; path.length > i; i++)
+        {
+            if (position % 2 == 1)
+            {
+                node = HashUtil.generateMerkleRoot(path[i], node);
+            }
+            else if (position + 1 < width || path[i].equals(node))
+            {
+                node = HashUtil.generateMerkleRoot(node, path[i]);
+            }
+            else
+            {
+                return false;
+            }
+            position /= 2;
+            width = (width + 1) / 2;
+        }
+        return node.equals(Hash256.copyOf(header, 36))
+            && HashUtil.validateProof(header, nonce, target);
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the root hash of the Ballot proven by this proof.
+     * 
+     * @return {@link Ballot#getRoot() Root hash} of the Ballot
+     */
+    public Hash256 getRoot()
+    {
+        return root;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the index of the Ballot in its Block.
+     * 
+     * @return Index of the Ballot
+     */
+    public int getIndex()
+    {
+        return index;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the hash of the Block containing the Ballot, computed from the
+     * header and nonce of this proof.
+     * 
+     * @return {@link Block#getHash() Hash} of the Block
+     */
+    public Hash256 getBlockHash()
+    {
+        return HashUtil.generateBlockHash(header, nonce);
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns this MerkleProof in binary format as a byte array.
+     * 
+     * @return Byte array representing this MerkleProof
+     */
+    public byte[] getBytes()
+    {
+        ByteBuffer data =
+            ByteBuffer.allocate(32 + 4 + 80 + 4 + 4 + 32 * path.length);
+        root.write(data);
+        data.putInt(index);
+        data.put(header);
+        data.putInt(nonce);
+        data.putInt(path.length);
+        for (int i = 0; path.length > i; i++)
+        {
+            path[i].write(data);
+        }
+        return data.array();
+    }
+}
@@ -0,0 +1,421 @@
+/*============================================================================*\
+ | Copyright (C) 2015 Matthew Edwards                                         |
+ |                                                                            |
+ | Licensed under the Apache License, Version 2.0 (the "License"); you may    |
+ | not use this file except in compliance with the License. You may obtain a  |
+ | copy of the License at                                                     |
+ |                                                                            |
+ |     http://www.apache.org/licenses/LICENSE-2.0                             |
+ |                                                                            |
+ | Unless required by applicable law or agreed to in writing, software        |
+ | distributed under the License is distributed on an "AS IS" BASIS,          |
+ | WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   |
+ | See the License for the specific language governing permissions and        |
+ | limitations under the License.                                             |
+\*============================================================================*/
+
+package me.edwards.des.block;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import me.edwards.des.util.Hash256;
+import me.edwards.des.util.HashUtil;
+
+// -----------------------------------------------------------------------------
+/**
+ * Merkle Tree of the {@link Ballot Ballots} of a {@link Block Block}. The tree
+ * is built level by level, from the {@link Ballot#getRoot() Ballot roots} up
+ * to the Merkle Root, and every level is kept in an array of raw 32-byte
+ * hashes, so the nodes of the tree remain available after the root is built.
+ * Ranges of at least {@link MerkleTree#PARALLEL_THRESHOLD} nodes are hashed
+ * in parallel by a shared fork/join pool. Ballots can be
+ * {@linkplain MerkleTree#add(List) appended} to a tree, which only hashes the
+ * nodes changed by the new Ballots.<br>
+ * <br>
+ * The tree is identical to the one built by the original recursive
+ * implementation: each node is the
+ * {@linkplain HashUtil#generateMerkleRoot(Hash256, Hash256) Merkle Root} of
+ * its two children, a node without a right child is hashed with itself, and
+ * the {@link MerkleTree#getDepth(int) depth} of the tree is derived from the
+ * floating-point logarithm of the number of Ballots.<br>
+ * <br>
+ * A tree is not thread-safe while Ballots are added to it.<br>
+ * <br>
+ * Created on: Oct 17, 2026 at 8:04:26 AM
+ * 
+ * @author Matthew Edwards
+ */
+public class MerkleTree
+{
+    // ~ Static/Instance variables .............................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Minimum number of nodes in a range of a level for the range to be hashed
+     * in parallel
+     */
+    public static final int           PARALLEL_THRESHOLD = 512;
+
+    /**
+     * Number of nodes hashed by a single fork/join task
+     */
+    private static final int          BATCH              = 128;
+
+    private static final ForkJoinPool pool               =
+        new ForkJoinPool(
+            Runtime.getRuntime().availableProcessors(),
+            new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+
+                @Override
+                public ForkJoinWorkerThread newThread(ForkJoinPool p)
+                {
+                    ForkJoinWorkerThread t =
+                        ForkJoinPool.defaultForkJoinWorkerThreadFactory
+                            .newThread(p);
+                    t.setName("Merkle Tree " + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            },
+            null,
+            false);
+
+
+    /**
+     * Maximum number of levels of a tree, which is enough for any number of
+     * Ballots
+     */
+    private static final int          LEVELS             = 33;
+
+
+    // -------------------------------------------------------------------------
+    private final byte[][]            levels;
+    private final int[]               counts;
+    private int                       depth;
+
+
+    // ~ Constructors ..........................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Builds the Merkle Tree of a list of Ballots.
+     * 
+     * @param ballots
+     *            Ballots of a Block, in the order in which they are stored
+     */
+    public MerkleTree(List<Ballot> ballots)
+    {
+        this.levels = new byte[LEVELS][];
+        this.counts = new int[LEVELS];
+        this.depth = 0;
+        add(ballots);
+    }
+
+
+    // ~ Methods ...............................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the depth of the Merkle Tree of the specified number of Ballots.
+     * The depth is the smallest integer which is not less than the base-2
+     * logarithm of the number of Ballots, as computed with floating-point
+     * division. Some powers of two get one more level than expected, which is
+     * kept to produce the same Merkle Roots as the original implementation.
+     * 
+     * @param leaves
+     *            Number of Ballots
+     * @return Number of levels above the Ballot roots
+     */
+    public static int getDepth(int leaves)
+    {
+        double log = Math.log(leaves) / Math.log(2);
+        int depth = 0;
+        while (depth < log)
+        {
+            depth++;
+        }
+        return depth;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Appends a Ballot to the Ballots of this tree. Only the nodes on the path
+     * from the new Ballot root to the Merkle Root are hashed again.
+     * 
+     * @param ballot
+     *            Ballot to append
+     */
+    public void add(Ballot ballot)
+    {
+        add(Collections.singletonList(ballot));
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Appends Ballots to the Ballots of this tree. Only the nodes whose
+     * descendants include a new Ballot root, or which were hashed with
+     * themselves because they had no sibling, are hashed again, so a tree can
+     * grow Ballot by Ballot while its Merkle Root is kept up to date.
+     * 
+     * @param ballots
+     *            Ballots to append, in the order in which they are stored
+     */
+    public void add(List<Ballot> ballots)
+    {
+        if (ballots.isEmpty())
+        {
+            return;
+        }
+        int from = counts[0];
+        int count = from + ballots.size();
+        ensureCapacity(0, count);
+        for (int i = 0; ballots.size() > i; i++)
+        {
+            ballots.get(i).getRoot().copyTo(
+                levels[0],
+                (from + i) * Hash256.LENGTH);
+        }
+        counts[0] = count;
+
+        int oldDepth = depth;
+        depth = getDepth(count);
+        for (int level = 1; depth >= level; level++)
+        {
+            from = level > oldDepth ? 0 : from / 2;
+            count = (count + 1) / 2;
+            ensureCapacity(level, count);
+            counts[level] = count;
+            if (count - from >= PARALLEL_THRESHOLD
+                && pool.getParallelism() > 1)
+            {
+                pool.invoke(new LevelTask(level, from, count));
+            }
+            else
+            {
+                hash(level, from, count);
+            }
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Grows the array of a level so that it holds at least the specified
+     * number of nodes.
+     * 
+     * @param level
+     *            Level of the tree
+     * @param count
+     *            Number of nodes which the level must hold
+     */
+    private void ensureCapacity(int level, int count)
+    {
+        byte[] hashes = levels[level];
+        if (hashes == null)
+        {
+            levels[level] = new byte[count * Hash256.LENGTH];
+        }
+        else if (hashes.length < count * Hash256.LENGTH)
+        {
+            levels[level] =
+                Arrays.copyOf(
+                    hashes,
+                    Math.max(count * Hash256.LENGTH, hashes.length * 2));
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Hashes a range of the nodes of a level from the nodes of the level below.
+     * 
+     * @param level
+     *            Level to hash (at least 1)
+     * @param from
+     *            Index of the first node to hash
+     * @param to
+     *            Index after the last node to hash
+     */
+    private void hash(int level, int from, int to)
+    {
+        byte[] below = levels[level - 1];
+        int last = counts[level - 1] - 1;
+        for (int i = from; to > i; i++)
+        {
+            int left = i * 2;
+            int right = Math.min(left + 1, last);
+            HashUtil.generateMerkleRoot(
+                below,
+                left * Hash256.LENGTH,
+                right * Hash256.LENGTH,
+                levels[level],
+                i * Hash256.LENGTH);
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the Merkle Root of the Ballots.
+     * 
+     * @return Merkle Root, or {@link Hash256#ZERO} if there are no Ballots
+     */
+    public Hash256 getRoot()
+    {
+        if (counts[0] == 0)
+        {
+            return Hash256.ZERO;
+        }
+        return getHash(depth, 0);
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the number of levels above the Ballot roots.
+     * 
+     * @return Depth of this tree
+     */
+    public int getDepth()
+    {
+        return depth;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the number of nodes in a level of this tree.
+     * 
+     * @param level
+     *            Level of the tree, where level 0 holds the Ballot roots and
+     *            level {@linkplain MerkleTree#getDepth()} holds the Merkle Root
+     * @return Number of nodes in the level
+     */
+    public int getCount(int level)
+    {
+        return counts[level];
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns a node of this tree.
+     * 
+     * @param level
+     *            Level of the tree, where level 0 holds the Ballot roots and
+     *            level {@linkplain MerkleTree#getDepth()} holds the Merkle Root
+     * @param index
+     *            Index of the node in the level
+     * @return Hash of the node
+     * @throws IndexOutOfBoundsException
+     *             Thrown if the level does not contain the node
+     */
+    public Hash256 getHash(int level, int index)
+    {
+        if (level > depth || index < 0 || index >= counts[level])
+        {
+            throw new IndexOutOfBoundsException("Node " + index
+                + " of level " + level);
+        }
+        return Hash256.copyOf(levels[level], index * Hash256.LENGTH);
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the Merkle path of a Ballot root: the sibling of the Ballot root
+     * and of each of its ancestors below the Merkle Root, from the bottom of
+     * the tree up. A node without a sibling is hashed with itself, so its own
+     * hash is returned in place of the sibling.
+     * 
+     * @param index
+     *            Index of the Ballot in the Block
+     * @return Array of {@linkplain MerkleTree#getDepth()} hashes
+     * @throws IndexOutOfBoundsException
+     *             Thrown if the tree does not contain the Ballot
+     */
+    public Hash256[] getPath(int index)
+    {
+        if (index < 0 || index >= counts[0])
+        {
+            throw new IndexOutOfBoundsException("Ballot " + index);
+        }
+        Hash256[] path = new Hash256[getDepth()];
+        for (int level = 0; path.length > level; level++)
+        {
+            path[level] = getHash(level, Math.min(index ^ 1, counts[level] - 1));
+            index >>= 1;
+        }
+        return path;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Fork/join task hashing a range of the nodes of a level. Ranges larger
+     * than {@link MerkleTree#BATCH} nodes are split in half.<br>
+     * <br>
+     * Created on: Oct 17, 2026 at 8:04:26 AM
+     * 
+     * @author Matthew Edwards
+     */
+    private class LevelTask
+        extends RecursiveAction
+    {
+        // ~ Static/Instance variables .........................................
+
+        private static final long serialVersionUID = 1L;
+
+        private final int         level;
+        private final int         from;
+        private final int         to;
+
+
+        // ~ Constructors ......................................................
+
+        // ---------------------------------------------------------------------
+        /**
+         * Creates new LevelTask.
+         * 
+         * @param level
+         *            Level to hash
+         * @param from
+         *            Index of the first node to hash
+         * @param to
+         *            Index after the last node to hash
+         */
+        private LevelTask(int level, int from, int to)
+        {
+            this.level = level;
+            this.from = from;
+            this.to = to;
+        }
+
+
+        // ~ Methods ...........................................................
+
+        // ---------------------------------------------------------------------
+        @Override
+        protected void compute()
+        {
+            if (to - from <= BATCH)
+            {
+                hash(level, from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(
+                new LevelTask(level, from, middle),
+                new LevelTask(level, middle, to));
+        }
+    }
+}
@@ -0,0 +1,282 @@
+/*============================================================================*\
+ | Copyright (C) 2015 Matthew Edwards                                         |
+ |                                                                            |
+ | Licensed under the Apache License, Version 2.0 (the "License"); you may    |
+ | not use this file except in compliance with the License. You may obtain a  |
+ | copy of the License at                                                     |
+ |                                                                            |
+ |     http://www.apache.org/licenses/LICENSE-2.0                             |
+ |                                                                            |
+ | Unless required by applicable law or agreed to in writing, software        |
+ | distributed under the License is distributed on an "AS IS" BASIS,          |
+ | WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   |
+ | See the License for the specific language governing permissions and        |
+ | limitations under the License.                                             |
+\*============================================================================*/
+
+package me.edwards.des.block;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import me.edwards.des.util.Hash256;
+
+// -----------------------------------------------------------------------------
+/**
+ * Holds orphan {@link Block Blocks} (Blocks whose parent is not yet contained
+ * in the {@link BlockChain BlockChain}) until their parent arrives. Orphans are
+ * grouped by the hash of their missing parent, so when a Block is appended to
+ * the BlockChain all of its waiting children are
+ * {@link OrphanPool#release(Hash256) released} in a single lookup.<br>
+ * <br>
+ * The pool is bounded. Orphans older than {@link OrphanPool#ORPHAN_TIMEOUT}
+ * are evicted, and the oldest orphans are evicted whenever the pool holds more
+ * than {@link OrphanPool#MAXIMUM_ORPHANS} Blocks or more than
+ * {@link OrphanPool#MAXIMUM_SIZE} bytes. The pool is not thread-safe and is
+ * only used by its BlockChain while the BlockChain is locked.<br>
+ * <br>
+ * Created on: Oct 16, 2026 at 11:18:03 PM
+ * 
+ * @author Matthew Edwards
+ */
+public class OrphanPool
+{
+    // ~ Static/Instance variables .............................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * The maximum number of orphan Blocks held by the pool
+     */
+    public static final int   MAXIMUM_ORPHANS = 1024;
+
+    /**
+     * The maximum size, in bytes, of all orphan Blocks held by the pool
+     */
+    public static final long  MAXIMUM_SIZE    =
+                                                  16L * BlockChain.MAXIMUM_BLOCK_SIZE;
+
+    /**
+     * The time, in milliseconds, after which an orphan Block is evicted
+     */
+    public static final long  ORPHAN_TIMEOUT  = 20 * 60 * 1000;
+
+
+    // -------------------------------------------------------------------------
+    private HashMap<Hash256, ArrayList<Orphan>> byParent;
+    private LinkedHashMap<Hash256, Orphan>      byHash;
+    private long                                size;
+
+    private long                                resolved;
+    private long                                evicted;
+    private long                                resolutionTime;
+
+
+    // ~ Constructors ..........................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Creates new, empty OrphanPool.
+     */
+    public OrphanPool()
+    {
+        this.byParent = new HashMap<Hash256, ArrayList<Orphan>>();
+        this.byHash = new LinkedHashMap<Hash256, Orphan>();
+    }
+
+
+    // ~ Methods ...............................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Adds an orphan {@link Block Block} to the pool. If the Block is already
+     * in the pool, this method does nothing. Old orphans are evicted to keep
+     * the pool within its bounds.
+     * 
+     * @param block
+     *            Block whose parent is not yet in the BlockChain
+     */
+    void add(Block block)
+    {
+        Hash256 key = block.getHash();
+        if (byHash.containsKey(key))
+        {
+            return;
+        }
+        Orphan o = new Orphan();
+        o.block = block;
+        o.key = key;
+        o.parent = block.getPrevHash();
+        o.size = block.getSize();
+        o.time = System.currentTimeMillis();
+
+        ArrayList<Orphan> siblings = byParent.get(o.parent);
+        if (siblings == null)
+        {
+            siblings = new ArrayList<Orphan>(1);
+            byParent.put(o.parent, siblings);
+        }
+        siblings.add(o);
+        byHash.put(key, o);
+        size += o.size;
+        evict();
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Removes and returns all orphan {@link Block Blocks} waiting for the
+     * Block with the specified hash.
+     * 
+     * @param parent
+     *            Hash of the Block which was added to the BlockChain
+     * @return List of Blocks whose parent is the specified Block. The list is
+     *         empty if there are no such Blocks.
+     */
+    ArrayList<Block> release(Hash256 parent)
+    {
+        ArrayList<Block> blocks = new ArrayList<Block>();
+        ArrayList<Orphan> children = byParent.remove(parent);
+        if (children == null)
+        {
+            return blocks;
+        }
+        long now = System.currentTimeMillis();
+        for (int i = 0; children.size() > i; i++)
+        {
+            Orphan o = children.get(i);
+            byHash.remove(o.key);
+            size -= o.size;
+            resolved++;
+            resolutionTime += now - o.time;
+            blocks.add(o.block);
+        }
+        return blocks;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Evicts expired orphans, then evicts the oldest orphans until the pool is
+     * within its count and size bounds.
+     */
+    void evict()
+    {
+        long now = System.currentTimeMillis();
+        Iterator<Orphan> it = byHash.values().iterator();
+        while (it.hasNext())
+        {
+            Orphan o = it.next();
+            if (now - o.time < ORPHAN_TIMEOUT
+                && byHash.size() <= MAXIMUM_ORPHANS && size <= MAXIMUM_SIZE)
+            {
+                break;
+            }
+            it.remove();
+            ArrayList<Orphan> siblings = byParent.get(o.parent);
+            siblings.remove(o);
+            if (siblings.isEmpty())
+            {
+                byParent.remove(o.parent);
+            }
+            size -= o.size;
+            evicted++;
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the number of orphan {@link Block Blocks} in the pool.
+     * 
+     * @return Number of orphan Blocks
+     */
+    public int getCount()
+    {
+        return byHash.size();
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the size of all orphan {@link Block Blocks} in the pool.
+     * 
+     * @return Size of all orphan Blocks, in bytes
+     */
+    public long getSize()
+    {
+        return size;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the number of orphans which were appended to the BlockChain
+     * after their parent arrived.
+     * 
+     * @return Number of resolved orphans
+     */
+    public long getResolved()
+    {
+        return resolved;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the number of orphans which were evicted before their parent
+     * arrived.
+     * 
+     * @return Number of evicted orphans
+     */
+    public long getEvicted()
+    {
+        return evicted;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the average time resolved orphans spent in the pool.
+     * 
+     * @return Average resolution time in milliseconds, 0 if no orphans have
+     *         been resolved
+     */
+    public long getAverageResolutionTime()
+    {
+        return resolved == 0 ? 0 : resolutionTime / resolved;
+    }
+
+
+    // -------------------------------------------------------------------------
+    @Override
+    public String toString()
+    {
+        StringBuffer sb = new StringBuffer();
+        for (Orphan o : byHash.values())
+        {
+            sb.append("\t" + o.block.getHash() + "\n");
+        }
+        return sb.toString();
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * An orphan {@link Block Block} and the information needed to evict it.<br>
+     * <br>
+     * Created on: Oct 16, 2026 at 11:21:40 PM
+     * 
+     * @author Matthew Edwards
+     */
+    private static class Orphan
+    {
+        // ~ Static/Instance variables .........................................
+
+        private Block   block;
+        private Hash256 key;
+        private Hash256 parent;
+        private long    size;
+        private long    time;
+    }
+}
@@ -0,0 +1,167 @@
+/*============================================================================*\
+ | Copyright (C) 2015 Matthew Edwards                                         |
+ |                                                                            |
+ | Licensed under the Apache License, Version 2.0 (the "License"); you may    |
+ | not use this file except in compliance with the License. You may obtain a  |
+ | copy of the License at                                                     |
+ |                                                                            |
+ |     http://www.apache.org/licenses/LICENSE-2.0                             |
+ |                                                                            |
+ | Unless required by applicable law or agreed to in writing, software        |
+ | distributed under the License is distributed on an "AS IS" BASIS,          |
+ | WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   |
+ | See the License for the specific language governing permissions and        |
+ | limitations under the License.                                             |
+\*============================================================================*/
+
+package me.edwards.des.block;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import me.edwards.des.util.Hash256;
+
+// -----------------------------------------------------------------------------
+/**
+ * Thread-safe, bounded set of the {@link Ballot#getRoot() root hashes} of
+ * {@link Ballot Ballots} whose voter was found with the Election Authority and
+ * whose signature was verified. The root hash covers the whole Ballot,
+ * including its signature, so a Ballot with a cached root does not need to be
+ * checked again when it arrives inside a {@link Block Block}. In steady state
+ * almost every Ballot of a relayed Block was verified when it entered the
+ * Ballot pool, so Block validation only pays for the Ballots it has never
+ * seen.<br>
+ * <br>
+ * When the cache is full, the least recently used root is evicted.<br>
+ * <br>
+ * Created on: Oct 17, 2026 at 4:12:09 AM
+ * 
+ * @author Matthew Edwards
+ */
+public class VerifiedBallotCache
+{
+    // ~ Static/Instance variables .............................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * The default maximum number of roots held by the cache
+     */
+    public static final int                 MAXIMUM_ROOTS =
+                                                              2 * BallotPool.MAXIMUM_BALLOTS;
+
+
+    // -------------------------------------------------------------------------
+    private final int                       capacity;
+    private LinkedHashMap<Hash256, Boolean> roots;
+    private long                            hits;
+    private long                            misses;
+
+
+    // ~ Constructors ..........................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Creates new, empty VerifiedBallotCache.
+     * 
+     * @param capacity
+     *            Maximum number of roots held by the cache
+     */
+    public VerifiedBallotCache(final int capacity)
+    {
+        this.capacity = capacity;
+        this.roots = new LinkedHashMap<Hash256, Boolean>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Hash256, Boolean> e)
+            {
+                return size() > capacity;
+            }
+        };
+    }
+
+
+    // ~ Methods ...............................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Records that a {@link Ballot Ballot} was verified.
+     * 
+     * @param ballot
+     *            Verified Ballot
+     */
+    public synchronized void add(Ballot ballot)
+    {
+        roots.put(ballot.getRoot(), Boolean.TRUE);
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns True if a {@link Ballot Ballot} with the same root hash was
+     * verified.
+     * 
+     * @param ballot
+     *            Ballot to look up
+     * @return True if the Ballot does not need to be verified again, False
+     *         otherwise
+     */
+    public synchronized boolean contains(Ballot ballot)
+    {
+        if (roots.get(ballot.getRoot()) != null)
+        {
+            hits++;
+            return true;
+        }
+        misses++;
+        return false;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the number of roots in the cache.
+     * 
+     * @return Number of verified roots
+     */
+    public synchronized int size()
+    {
+        return roots.size();
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the maximum number of roots held by the cache.
+     * 
+     * @return Capacity of the cache
+     */
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the number of lookups that found a verified root.
+     * 
+     * @return Number of cache hits
+     */
+    public synchronized long getHits()
+    {
+        return hits;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the number of lookups that did not find a verified root.
+     * 
+     * @return Number of cache misses
+     */
+    public synchronized long getMisses()
+    {
+        return misses;
+    }
+}
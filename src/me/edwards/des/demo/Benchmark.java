@@ -0,0 +1,442 @@
+/*============================================================================*\
+ | Copyright (C) 2015 Matthew Edwards                                         |
+ |                                                                            |
+ | Licensed under the Apache License, Version 2.0 (the "License"); you may    |
+ | not use this file except in compliance with the License. You may obtain a  |
+ | copy of the License at                                                     |
+ |                                                                            |
+ |     http://www.apache.org/licenses/LICENSE-2.0                             |
+ |                                                                            |
+ | Unless required by applicable law or agreed to in writing, software        |
+ | distributed under the License is distributed on an "AS IS" BASIS,          |
+ | WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   |
+ | See the License for the specific language governing permissions and        |
+ | limitations under the License.                                             |
+\*============================================================================*/
+
+package me.edwards.des.demo;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.logging.Level;
+import me.edwards.des.Launcher;
+import me.edwards.des.block.Ballot;
+import me.edwards.des.block.Block;
+import me.edwards.des.block.BlockChain;
+import me.edwards.des.block.MerkleTree;
+import me.edwards.des.util.ByteUtil;
+import me.edwards.des.util.Hash256;
+import me.edwards.des.util.HashUtil;
+import me.edwards.des.util.MidstateHasher;
+import me.edwards.des.util.Miner;
+import me.edwards.des.util.Sha256;
+
+// -----------------------------------------------------------------------------
+/**
+ * Micro-benchmarks for the performance critical parts of a Node. Benchmarks
+ * are run from the command line using the "-bench" flag of the
+ * {@linkplain Launcher} and report their results through the global logger.
+ * This class is purely used for testing purposes.<br>
+ * <br>
+ * Created on: Oct 16, 2026 at 10:52:37 PM
+ * 
+ * @author Matthew Edwards
+ */
+public class Benchmark
+{
+    // ~ Static/Instance variables .............................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Number of operations timed by each measurement
+     */
+    private static final int LOOKUPS            = 200000;
+
+    /**
+     * Target (in shorthand form) of 1, which no hash can reach
+     */
+    private static final int UNREACHABLE_TARGET = 0x03000001;
+
+
+    // ~ Methods ...............................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Runs the benchmark with the specified name.
+     * 
+     * @param name
+     *            Name of the benchmark to run
+     * @param args
+     *            Additional arguments for the benchmark (may be empty)
+     * @throws IllegalArgumentException
+     *             Thrown if the benchmark does not exist
+     */
+    public static void run(String name, String[] args)
+    {
+        if (name.equalsIgnoreCase("lookup"))
+        {
+            lookup(args.length > 0 ? Integer.parseInt(args[0]) : 100000);
+        }
+        else if (name.equalsIgnoreCase("hashing"))
+        {
+            hashing(args.length > 0 ? Integer.parseInt(args[0]) : 5000000);
+        }
+        else if (name.equalsIgnoreCase("digest"))
+        {
+            digest(args.length > 0 ? Integer.parseInt(args[0]) : 1000000);
+        }
+        else if (name.equalsIgnoreCase("merkle"))
+        {
+            merkle(args.length > 0 ? Integer.parseInt(args[0]) : 10000);
+        }
+        else if (name.equalsIgnoreCase("mining"))
+        {
+            mining(args.length > 0 ? Integer.parseInt(args[0]) : 5);
+        }
+        else
+        {
+            throw new IllegalArgumentException("Unknown benchmark: " + name);
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Measures the latency of {@linkplain BlockChain#contains(Hash256)} as the
+     * BlockChain grows. The BlockChain is grown by a factor of ten between
+     * measurements until it contains the specified number of Blocks. The
+     * latency should stay flat as the BlockChain grows.
+     * 
+     * @param maximum
+     *            Number of Blocks in the BlockChain for the last measurement
+     */
+    public static void lookup(int maximum)
+    {
+        Random rnd = new Random(0);
+        Block genesis = syntheticBlock(Hash256.ZERO, 0);
+        BlockChain bc = new BlockChain(genesis);
+        Hash256[] hashes = new Hash256[maximum];
+        hashes[0] = genesis.getHash();
+        int size = 1;
+        for (int goal = Math.min(1000, maximum); goal <= maximum; goal =
+            goal < maximum ? Math.min(goal * 10, maximum) : maximum + 1)
+        {
+            while (size < goal)
+            {
+                Block b = syntheticBlock(hashes[size - 1], size);
+                bc.append(b);
+                hashes[size++] = b.getHash();
+            }
+
+            int found = 0;
+            for (int i = 0; LOOKUPS / 10 > i; i++)
+            {
+                found += bc.contains(hashes[rnd.nextInt(size)]) ? 1 : 0;
+            }
+            long time = System.nanoTime();
+            for (int i = 0; LOOKUPS > i; i++)
+            {
+                found += bc.contains(hashes[rnd.nextInt(size)]) ? 1 : 0;
+            }
+            time = System.nanoTime() - time;
+            Launcher.GLOBAL.info(String.format(
+                "lookup: %8d blocks, %6.0f ns/lookup (%d found)",
+                size,
+                (double) time / LOOKUPS,
+                found));
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Compares the single-threaded hashrate of a nonce search using
+     * {@link MessageDigest} and {@link BigInteger} (as Proofs of Work were
+     * generated before the {@linkplain Miner}) to the hashrate of the
+     * {@linkplain MidstateHasher}. Both searches run against an unreachable
+     * target, and each is warmed up before it is timed.
+     * 
+     * @param hashes
+     *            Number of hashes to compute in each measurement
+     */
+    public static void hashing(int hashes)
+    {
+        byte[] header = syntheticBlock(Hash256.ZERO, 0).getHeader();
+        BigInteger target = Block.getTarget(UNREACHABLE_TARGET);
+        try
+        {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            for (int run = 0; 2 > run; run++)
+            {
+                int found = 0;
+                long time = System.nanoTime();
+                for (int nonce = 0; hashes > nonce; nonce++)
+                {
+                    md.reset();
+                    md.update(header);
+                    md.update(ByteUtil.intToBytes(nonce));
+                    byte[] digest = md.digest();
+                    md.reset();
+                    md.update(digest);
+                    if (new BigInteger(1, md.digest()).compareTo(target) == -1)
+                    {
+                        found++;
+                    }
+                }
+                time = System.nanoTime() - time;
+                if (run == 1)
+                {
+                    Launcher.GLOBAL.info(String.format(
+                        "hashing: MessageDigest  %12.0f hashes/s (%d found)",
+                        hashes * 1e9 / time,
+                        found));
+                }
+            }
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            Launcher.GLOBAL.log(Level.SEVERE, "hashing", e);
+        }
+
+        MidstateHasher hasher = new MidstateHasher(header, new byte[32]);
+        for (int run = 0; 2 > run; run++)
+        {
+            int found = 0;
+            long time = System.nanoTime();
+            for (int nonce = 0; hashes > nonce; nonce++)
+            {
+                if (hasher.hash(nonce))
+                {
+                    found++;
+                }
+            }
+            time = System.nanoTime() - time;
+            if (run == 1)
+            {
+                Launcher.GLOBAL.info(String.format(
+                    "hashing: MidstateHasher %12.0f hashes/s (%d found)",
+                    hashes * 1e9 / time,
+                    found));
+            }
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Compares the throughput and allocation of SHA-256^2 hashing of a Ballot
+     * sized message with a new {@link MessageDigest} per hash (as
+     * {@linkplain HashUtil} hashed before the {@linkplain Sha256} digests) to
+     * the reusable digest of the calling thread writing into a caller-supplied
+     * buffer. Allocation is measured per thread where the JVM supports it.
+     * 
+     * @param hashes
+     *            Number of hashes to compute in each measurement
+     */
+    public static void digest(int hashes)
+    {
+        byte[] data = new byte[1 + 8 + 4 * 6];
+        new Random(0).nextBytes(data);
+        byte[] out = new byte[Sha256.LENGTH];
+        try
+        {
+            for (int run = 0; 2 > run; run++)
+            {
+                long bytes = getAllocatedBytes();
+                long time = System.nanoTime();
+                for (int i = 0; hashes > i; i++)
+                {
+                    MessageDigest md = MessageDigest.getInstance("SHA-256");
+                    md.update(data);
+                    byte[] digest = md.digest();
+                    md.reset();
+                    md.update(digest);
+                    out = md.digest();
+                }
+                time = System.nanoTime() - time;
+                bytes = getAllocatedBytes() - bytes;
+                if (run == 1)
+                {
+                    Launcher.GLOBAL.info(String.format(
+                        "digest: getInstance %12.0f hashes/s, %6d bytes/hash",
+                        hashes * 1e9 / time,
+                        bytes / hashes));
+                }
+            }
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            Launcher.GLOBAL.log(Level.SEVERE, "digest", e);
+        }
+
+        for (int run = 0; 2 > run; run++)
+        {
+            long bytes = getAllocatedBytes();
+            long time = System.nanoTime();
+            for (int i = 0; hashes > i; i++)
+            {
+                Sha256.hashTwice(data, 0, data.length, out, 0);
+            }
+            time = System.nanoTime() - time;
+            bytes = getAllocatedBytes() - bytes;
+            if (run == 1)
+            {
+                Launcher.GLOBAL.info(String.format(
+                    "digest: Sha256      %12.0f hashes/s, %6d bytes/hash",
+                    hashes * 1e9 / time,
+                    bytes / hashes));
+            }
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the number of bytes allocated by the calling thread so far.
+     * 
+     * @return Allocated bytes, or 0 if the JVM does not measure them
+     */
+    private static long getAllocatedBytes()
+    {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean)
+        {
+            return ((com.sun.management.ThreadMXBean) bean)
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Measures the time to build the {@link MerkleTree Merkle Tree} of a Block
+     * with 10, 100, 1000, ... Ballots, up to the specified number of Ballots.
+     * The time should grow linearly with the number of Ballots, and shrink
+     * with the number of available processors once the lowest level of the
+     * tree is hashed in parallel.
+     * 
+     * @param maximum
+     *            Number of Ballots in the last measurement
+     */
+    public static void merkle(int maximum)
+    {
+        Random rnd = new Random(0);
+        ArrayList<Ballot> ballots = new ArrayList<Ballot>();
+        for (int size = Math.min(10, maximum); size <= maximum; size =
+            size < maximum ? Math.min(size * 10, maximum) : maximum + 1)
+        {
+            while (ballots.size() < size)
+            {
+                byte[] bytes = new byte[1 + 8 + 72];
+                rnd.nextBytes(bytes);
+                ballots.add(new Ballot(bytes));
+            }
+
+            int trees = Math.max(10, 1000000 / size);
+            Hash256 root = null;
+            for (int i = 0; trees / 10 > i; i++)
+            {
+                root = new MerkleTree(ballots).getRoot();
+            }
+            long time = System.nanoTime();
+            for (int i = 0; trees > i; i++)
+            {
+                root = new MerkleTree(ballots).getRoot();
+            }
+            time = System.nanoTime() - time;
+            Launcher.GLOBAL.info(String.format(
+                "merkle: %8d Ballots %10.1f us/tree (%s)",
+                size,
+                time / 1e3 / trees,
+                root));
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Measures the aggregate hashrate of the {@linkplain Miner} with 1, 2, 4,
+     * ... threads, up to the number of available processors. Each
+     * measurement mines against an unreachable target for the specified
+     * time. The hashrate should grow close to linearly with the number of
+     * threads.
+     * 
+     * @param seconds
+     *            Time, in seconds, of each measurement
+     */
+    public static void mining(int seconds)
+    {
+        final byte[] header = syntheticBlock(Hash256.ZERO, 0).getHeader();
+        int processors = Runtime.getRuntime().availableProcessors();
+        int threads = Miner.getThreads();
+        for (int t = 1; t <= processors; t = t < processors
+            ? Math.min(t * 2, processors)
+            : processors + 1)
+        {
+            Miner.setThreads(t);
+            Thread miner = new Thread(new Runnable() {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        Miner.mine(header, UNREACHABLE_TARGET);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        return;
+                    }
+                }
+            }, "Benchmark Miner");
+            miner.start();
+            try
+            {
+                Thread.sleep(seconds * 1000L);
+                miner.interrupt();
+                miner.join();
+            }
+            catch (InterruptedException e)
+            {
+                miner.interrupt();
+                break;
+            }
+            Launcher.GLOBAL.info(String.format(
+                "mining: %3d threads, %12.0f hashes/s",
+                t,
+                Miner.getHashrate()));
+        }
+        Miner.setThreads(threads);
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Creates a Block without Ballots and without a Proof of Work. The Block
+     * is not valid, but is cheap to create and can be appended to a
+     * BlockChain.
+     * 
+     * @param prevHash
+     *            Hash of the parent Block
+     * @param nonce
+     *            Nonce of the Block (used to make each Block unique)
+     * @return Block with the specified parent
+     */
+    private static Block syntheticBlock(Hash256 prevHash, int nonce)
+    {
+        ByteBuffer data = ByteBuffer.allocate(4 + 32 + 4 + 4 + 4 + 4);
+        data.putInt(1);
+        prevHash.write(data);
+        data.putInt((int) (System.currentTimeMillis() / 60000));
+        data.putInt(Block.MAXIMUM_TARGET);
+        data.putInt(0);
+        data.putInt(nonce);
+        return new Block(data.array());
+    }
+}
@@ -0,0 +1,270 @@
+/*============================================================================*\
+ | Copyright (C) 2015 Matthew Edwards                                         |
+ |                                                                            |
+ | Licensed under the Apache License, Version 2.0 (the "License"); you may    |
+ | not use this file except in compliance with the License. You may obtain a  |
+ | copy of the License at                                                     |
+ |                                                                            |
+ |     http://www.apache.org/licenses/LICENSE-2.0                             |
+ |                                                                            |
+ | Unless required by applicable law or agreed to in writing, software        |
+ | distributed under the License is distributed on an "AS IS" BASIS,          |
+ | WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   |
+ | See the License for the specific language governing permissions and        |
+ | limitations under the License.                                             |
+\*============================================================================*/
+
+package me.edwards.des.demo;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import me.edwards.des.Launcher;
+
+// -----------------------------------------------------------------------------
+/**
+ * Generates the key databases used for demonstration purposes ("private.data"
+ * and "public.data", see {@linkplain Submitter#generateDatabase(String, int)})
+ * on all available processors.<br>
+ * <br>
+ * The UUIDs of all users are drawn first, as a sorted array of unique longs, so
+ * uniqueness costs one sort instead of a search per user. Key pairs are then
+ * generated in chunks of consecutive UUIDs by a pool of threads, each with its
+ * own KeyPairGenerator, while the calling thread writes the finished chunks in
+ * order. Both databases are therefore sorted by UUID, which lets the
+ * {@link PublicKeyStore PublicKeyStore} index of "public.data" be written
+ * directly from the offsets of the records. At most a few chunks per thread are
+ * held in memory at any time, and progress is logged every few seconds.<br>
+ * <br>
+ * Created on: Oct 17, 2026 at 5:06:43 AM
+ * 
+ * @author Matthew Edwards
+ */
+public class DatabaseGenerator
+{
+    // ~ Static/Instance variables .............................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Number of key pairs generated by each task
+     */
+    public static final int                         CHUNK_SIZE = 1000;
+
+    /**
+     * Interval (in milliseconds) between progress reports
+     */
+    public static final int                         REPORT_INTERVAL = 5000;
+
+    private static final ThreadLocal<KeyPairGenerator> generators =
+        new ThreadLocal<KeyPairGenerator>() {
+            @Override
+            protected KeyPairGenerator initialValue()
+            {
+                try
+                {
+                    KeyPairGenerator keyGen =
+                        KeyPairGenerator.getInstance("EC");
+                    keyGen.initialize(256, SecureRandom.getInstance("SHA1PRNG"));
+                    return keyGen;
+                }
+                catch (GeneralSecurityException e)
+                {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+
+
+    // ~ Methods ...............................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Generates the key databases for the specified number of users.
+     * 
+     * @param file
+     *            Directory in which to create databases
+     * @param users
+     *            Number of users to generate data for
+     * @param threads
+     *            Number of threads generating key pairs
+     * @throws IOException
+     *             Thrown if the databases could not be written, or a key pair
+     *             could not be generated
+     */
+    public static void generate(String file, int users, int threads)
+        throws IOException
+    {
+        long[] ids = generateIDs(users, new Random());
+        long[] offsets = new long[users];
+        File privateFile = new File(file + "private.data");
+        File publicFile = new File(file + "public.data");
+
+        ExecutorService pool =
+            Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+
+                @Override
+                public Thread newThread(Runnable r)
+                {
+                    Thread t =
+                        new Thread(r, "Key Generator "
+                            + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        DataOutputStream privateOut =
+            new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+                privateFile)));
+        DataOutputStream publicOut =
+            new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+                publicFile)));
+        try
+        {
+            ArrayDeque<Future<byte[][][]>> pending =
+                new ArrayDeque<Future<byte[][][]>>();
+            int submitted = 0;
+            int written = 0;
+            long offset = 0;
+            long start = System.currentTimeMillis();
+            long report = start;
+            while (users > written)
+            {
+                while (users > submitted && threads * 4 > pending.size())
+                {
+                    pending.add(pool.submit(task(Math.min(
+                        CHUNK_SIZE,
+                        users - submitted))));
+                    submitted += CHUNK_SIZE;
+                }
+
+                byte[][][] chunk = pending.poll().get();
+                for (int i = 0; chunk[0].length > i; i++, written++)
+                {
+                    privateOut.writeLong(ids[written]);
+                    privateOut.writeInt(chunk[0][i].length);
+                    privateOut.write(chunk[0][i]);
+
+                    offsets[written] = offset;
+                    publicOut.writeLong(ids[written]);
+                    publicOut.writeInt(chunk[1][i].length);
+                    publicOut.write(chunk[1][i]);
+                    offset += 12 + chunk[1][i].length;
+                }
+
+                long time = System.currentTimeMillis();
+                if (time - report >= REPORT_INTERVAL || written == users)
+                {
+                    report = time;
+                    Launcher.GLOBAL.info("Generated " + written + " of "
+                        + users + " key pairs ("
+                        + (written * 1000L / Math.max(1, time - start))
+                        + " per second)");
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Key generation interrupted");
+        }
+        catch (ExecutionException e)
+        {
+            throw new IOException("Could not generate key pair", e.getCause());
+        }
+        finally
+        {
+            pool.shutdownNow();
+            privateOut.close();
+            publicOut.close();
+        }
+
+        PublicKeyStore.writeIndex(
+            publicFile,
+            new File(file + "public.index"),
+            ids,
+            offsets,
+            users);
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Draws the specified number of unique random UUIDs.
+     * 
+     * @param users
+     *            Number of UUIDs
+     * @param rnd
+     *            Source of random numbers
+     * @return Unique UUIDs in ascending order
+     */
+    static long[] generateIDs(int users, Random rnd)
+    {
+        long[] ids = new long[users];
+        int unique = 0;
+        while (users > unique)
+        {
+            for (int i = unique; users > i; i++)
+            {
+                ids[i] = rnd.nextLong();
+            }
+            Arrays.sort(ids);
+            unique = users == 0 ? 0 : 1;
+            for (int i = 1; users > i; i++)
+            {
+                if (ids[i] != ids[unique - 1])
+                {
+                    ids[unique++] = ids[i];
+                }
+            }
+        }
+        return ids;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Creates a task generating a chunk of key pairs.
+     * 
+     * @param length
+     *            Number of key pairs to generate
+     * @return Task returning the encoded private keys and the encoded public
+     *         keys of the chunk
+     */
+    private static Callable<byte[][][]> task(final int length)
+    {
+        return new Callable<byte[][][]>() {
+            @Override
+            public byte[][][] call()
+            {
+                KeyPairGenerator keyGen = generators.get();
+                byte[][][] chunk = new byte[2][length][];
+                for (int i = 0; length > i; i++)
+                {
+                    KeyPair pair = keyGen.generateKeyPair();
+                    chunk[0][i] = pair.getPrivate().getEncoded();
+                    chunk[1][i] = pair.getPublic().getEncoded();
+                }
+                return chunk;
+            }
+        };
+    }
+}
@@ -0,0 +1,422 @@
+/*============================================================================*\
+ | Copyright (C) 2015 Matthew Edwards                                         |
+ |                                                                            |
+ | Licensed under the Apache License, Version 2.0 (the "License"); you may    |
+ | not use this file except in compliance with the License. You may obtain a  |
+ | copy of the License at                                                     |
+ |                                                                            |
+ |     http://www.apache.org/licenses/LICENSE-2.0                             |
+ |                                                                            |
+ | Unless required by applicable law or agreed to in writing, software        |
+ | distributed under the License is distributed on an "AS IS" BASIS,          |
+ | WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   |
+ | See the License for the specific language governing permissions and        |
+ | limitations under the License.                                             |
+\*============================================================================*/
+
+package me.edwards.des.demo;
+
+import java.io.IOException;
+import java.security.PrivateKey;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import me.edwards.des.Launcher;
+import me.edwards.des.Node;
+import me.edwards.des.NodeListener;
+import me.edwards.des.block.Ballot;
+import me.edwards.des.block.Block;
+import me.edwards.des.net.Connection;
+import me.edwards.des.net.packet.PacketBallot;
+import me.edwards.des.util.Hash256;
+import me.edwards.des.util.LatencyHistogram;
+import me.edwards.des.util.WorkerPool;
+
+// -----------------------------------------------------------------------------
+/**
+ * Submits {@link Ballot Ballots} at a fixed rate and measures how long they
+ * take to be accepted and mined. Unlike the {@link Submitter Submitter}, the
+ * generator is open-loop: Ballots are scheduled at fixed intervals regardless
+ * of how quickly earlier Ballots were processed, and their latency is measured
+ * from the time they were scheduled, so a slow Node cannot hide its queueing
+ * delay by slowing down the load. Ballots are signed by a pool of threads, and
+ * a Ballot that cannot be queued for signing is counted as refused instead of
+ * delaying the schedule. Once every Ballot was submitted, the generator waits
+ * up to {@link LoadGenerator#DRAIN_TIMEOUT} for the remaining Ballots to be
+ * included.<br>
+ * <br>
+ * Ballots are injected into the local {@link Node Node}, or announced to a
+ * remote Node over a {@link Connection Connection}. A Ballot is accepted when
+ * it enters the local Node's Ballot pool, or when the remote Node relays it
+ * back after adding it to its own pool. A Ballot is included when a Block
+ * containing it is appended to the local Node's BlockChain. Both latencies
+ * are recorded in {@link LatencyHistogram LatencyHistograms} and reported
+ * periodically.<br>
+ * <br>
+ * Created on: Oct 17, 2026 at 6:08:52 AM
+ * 
+ * @author Matthew Edwards
+ */
+public class LoadGenerator
+    implements NodeListener
+{
+    // ~ Static/Instance variables .............................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Interval (in milliseconds) between reports
+     */
+    public static final int                REPORT_INTERVAL = 10000;
+
+    /**
+     * Maximum number of Ballots waiting to be signed
+     */
+    public static final int                SIGNING_QUEUE   = 10000;
+
+    /**
+     * Maximum time (in milliseconds) to wait for the submitted Ballots to be
+     * included once every Ballot was submitted
+     */
+    public static final int                DRAIN_TIMEOUT   = 600000;
+
+    private static final ThreadLocal<Random> random        =
+        new ThreadLocal<Random>() {
+            @Override
+            protected Random initialValue()
+            {
+                return new Random();
+            }
+        };
+
+
+    // -------------------------------------------------------------------------
+    private final Node                     node;
+    private final Connection               target;
+    private final String[][]               voteList;
+    private final int                      rate;
+    private final WorkerPool               signers;
+    private ConcurrentHashMap<Hash256, Long> pending;
+    private LatencyHistogram               accepted;
+    private LatencyHistogram               included;
+    private AtomicLong                     submitted;
+    private AtomicLong                     failed;
+    private volatile boolean               running;
+    private long                           start;
+
+
+    // ~ Constructors ..........................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Creates new LoadGenerator.
+     * 
+     * @param node
+     *            Local Node to submit Ballots to, and to observe Blocks with
+     * @param target
+     *            Connection to a remote Node to announce Ballots to, or null to
+     *            inject Ballots into the local Node
+     * @param voteList
+     *            An array representing a list of Vote IDs, each containing list
+     *            of possible Votes for that Vote ID
+     * @param rate
+     *            Number of Ballots submitted per second (at least one)
+     * @param threads
+     *            Number of threads signing Ballots
+     */
+    public LoadGenerator(
+        Node node,
+        Connection target,
+        String[][] voteList,
+        int rate,
+        int threads)
+    {
+        this.node = node;
+        this.target = target;
+        this.voteList = voteList;
+        this.rate = Math.max(1, rate);
+        this.signers = new WorkerPool("Ballot Signer", threads, SIGNING_QUEUE);
+        this.pending = new ConcurrentHashMap<Hash256, Long>();
+        this.accepted = new LatencyHistogram();
+        this.included = new LatencyHistogram();
+        this.submitted = new AtomicLong();
+        this.failed = new AtomicLong();
+    }
+
+
+    // ~ Methods ...............................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Loads the "private.data" database and starts submitting one Ballot for
+     * each of its users on a new thread. The generator stops once every Ballot
+     * was included in a Block or {@link LoadGenerator#DRAIN_TIMEOUT} has
+     * passed, or when it is {@linkplain LoadGenerator#stop() stopped}.
+     * 
+     * @param file
+     *            Directory in which to load the "private.data" database file
+     * @throws IOException
+     *             Thrown if an IOException occurs during file reading
+     */
+    public void start(String file)
+        throws IOException
+    {
+        final HashMap<String, PrivateKey> privateKeys =
+            Submitter.loadPrivateKeys(file);
+        running = true;
+        node.addListener(this);
+        Thread scheduler = new Thread(new Runnable() {
+            @Override
+            public void run()
+            {
+                schedule(privateKeys);
+            }
+        }, "Load Generator");
+        scheduler.setDaemon(true);
+        scheduler.start();
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Submits Ballots at the target rate, reporting progress periodically.
+     * 
+     * @param privateKeys
+     *            Private keys of the users, by UUID
+     */
+    private void schedule(HashMap<String, PrivateKey> privateKeys)
+    {
+        Launcher.GLOBAL.info("Submitting " + privateKeys.size()
+            + " Ballots at " + rate + " Ballots per second"
+            + (target == null ? "" : " to " + target) + "...");
+        long period = TimeUnit.SECONDS.toNanos(1) / rate;
+        start = System.nanoTime();
+        long report = start + TimeUnit.MILLISECONDS.toNanos(REPORT_INTERVAL);
+        int count = 0;
+        for (Map.Entry<String, PrivateKey> e : privateKeys.entrySet())
+        {
+            long scheduled = start + count * period;
+            long delay;
+            while (running && (delay = scheduled - System.nanoTime()) > 0)
+            {
+                LockSupport.parkNanos(delay);
+            }
+            if (!running || !node.isRunning())
+            {
+                break;
+            }
+            if (signers.execute(task(e.getKey(), e.getValue(), scheduled)))
+            {
+                submitted.incrementAndGet();
+            }
+            count++;
+            if (scheduled >= report)
+            {
+                Launcher.GLOBAL.info(getReport());
+                report += TimeUnit.MILLISECONDS.toNanos(REPORT_INTERVAL);
+            }
+        }
+
+        long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT;
+        while (running && node.isRunning()
+            && (signers.getQueued() > 0 || !pending.isEmpty()))
+        {
+            if (System.currentTimeMillis() >= deadline)
+            {
+                Launcher.GLOBAL.warning(pending.size()
+                    + " Ballots were not included after "
+                    + DRAIN_TIMEOUT / 1000 + " seconds!");
+                break;
+            }
+            try
+            {
+                Thread.sleep(REPORT_INTERVAL);
+            }
+            catch (InterruptedException e)
+            {
+                break;
+            }
+            Launcher.GLOBAL.info(getReport());
+        }
+        stop();
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Creates a task signing a Ballot and submitting it.
+     * 
+     * @param uuid
+     *            UUID of the user casting the Ballot
+     * @param key
+     *            Private key of the user
+     * @param scheduled
+     *            Time at which the Ballot was scheduled (in nanoseconds)
+     * @return Signing task
+     */
+    private Runnable task(
+        final String uuid,
+        final PrivateKey key,
+        final long scheduled)
+    {
+        return new Runnable() {
+            @Override
+            public void run()
+            {
+                Ballot ballot = null;
+                try
+                {
+                    ballot =
+                        Submitter.createBallot(
+                            uuid,
+                            key,
+                            voteList,
+                            random.get());
+                    pending.put(ballot.getRoot(), scheduled);
+                    if (target == null)
+                    {
+                        node.addDataRequest(ballot.getRoot());
+                        node.parse(new PacketBallot(ballot).getBinary(), null);
+                    }
+                    else
+                    {
+                        node.announce(ballot, target);
+                    }
+                }
+                catch (Exception e)
+                {
+                    if (ballot != null)
+                    {
+                        pending.remove(ballot.getRoot());
+                    }
+                    failed.incrementAndGet();
+                    Launcher.GLOBAL.log(Level.FINE, "Load Generator Error", e);
+                }
+            }
+        };
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Stops submitting Ballots and logs a final report.
+     */
+    public void stop()
+    {
+        if (running)
+        {
+            running = false;
+            signers.shutdown();
+            node.removeListener(this);
+            Launcher.GLOBAL.info("Load generation finished! " + getReport());
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Formats the progress of the generator and its latency percentiles into a
+     * human-readable String.
+     * 
+     * @return Report of the generator
+     */
+    public String getReport()
+    {
+        long elapsed = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System
+            .nanoTime() - start));
+        return submitted.get() + " Ballots submitted ("
+            + (submitted.get() * 1000 / elapsed) + " per second), "
+            + signers.getRejected() + " refused, "
+            + failed.get() + " failed\nAccepted:   " + accepted.toString(" ms")
+            + "\nIncluded:   " + included.toString(" ms");
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the histogram of latencies (in milliseconds) from submission to
+     * acceptance.
+     * 
+     * @return Acceptance latencies
+     */
+    public LatencyHistogram getAccepted()
+    {
+        return accepted;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the histogram of latencies (in milliseconds) from submission to
+     * inclusion in a Block.
+     * 
+     * @return Inclusion latencies
+     */
+    public LatencyHistogram getIncluded()
+    {
+        return included;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Records the acceptance latency of a submitted Ballot.
+     * 
+     * @param root
+     *            Root hash of the accepted Ballot
+     */
+    private void accept(Hash256 root)
+    {
+        Long scheduled = pending.get(root);
+        if (scheduled != null)
+        {
+            accepted.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime()
+                - scheduled));
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    @Override
+    public void ballotAccepted(Ballot ballot)
+    {
+        if (target == null)
+        {
+            accept(ballot.getRoot());
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    @Override
+    public void ballotAnnounced(Hash256 root, Connection connection)
+    {
+        if (target != null && target == connection)
+        {
+            accept(root);
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    @Override
+    public void blockAppended(Block block)
+    {
+        long time = System.nanoTime();
+        ArrayList<Ballot> ballots = block.getBallots();
+        for (int i = 0; ballots.size() > i; i++)
+        {
+            Long scheduled = pending.remove(ballots.get(i).getRoot());
+            if (scheduled != null)
+            {
+                included.record(TimeUnit.NANOSECONDS.toMillis(time
+                    - scheduled));
+            }
+        }
+    }
+}
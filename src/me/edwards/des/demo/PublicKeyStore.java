@@ -0,0 +1,576 @@
+/*============================================================================*\
+ | Copyright (C) 2015 Matthew Edwards                                         |
+ |                                                                            |
+ | Licensed under the Apache License, Version 2.0 (the "License"); you may    |
+ | not use this file except in compliance with the License. You may obtain a  |
+ | copy of the License at                                                     |
+ |                                                                            |
+ |     http://www.apache.org/licenses/LICENSE-2.0                             |
+ |                                                                            |
+ | Unless required by applicable law or agreed to in writing, software        |
+ | distributed under the License is distributed on an "AS IS" BASIS,          |
+ | WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   |
+ | See the License for the specific language governing permissions and        |
+ | limitations under the License.                                             |
+\*============================================================================*/
+
+package me.edwards.des.demo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.NoSuchAlgorithmException;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import me.edwards.des.Launcher;
+import me.edwards.des.util.ByteUtil;
+
+// -----------------------------------------------------------------------------
+/**
+ * Read-only store of the voters' ECDSA public keys, used in place of the
+ * Election Authority's database for demonstration purposes. The keys are
+ * stored in the "public.data" file created by
+ * {@linkplain Submitter#generateDatabase(String, int)} as a sequence of
+ * records: [UUID (8 bytes)][Length (4 bytes)][X.509 encoded key].<br>
+ * <br>
+ * The store never loads the file into the heap. The data file is memory-mapped,
+ * and an index file ("public.index") holds one [UUID][Offset] entry per record,
+ * sorted by UUID and memory-mapped as well. A key is
+ * {@linkplain PublicKeyStore#get(String) looked up} with a binary search of the
+ * index and decoded only when it is needed. The most recently used decoded keys
+ * are kept in a small LRU cache. The index is built with a single pass over the
+ * data file when it is missing or older than the data file, so opening a store
+ * with an existing index takes constant time and memory regardless of the
+ * number of voters.<br>
+ * <br>
+ * Both files are mapped in chunks of {@link PublicKeyStore#CHUNK_SIZE} bytes,
+ * so they may be larger than 2 GB. The store is thread-safe.<br>
+ * <br>
+ * Created on: Oct 17, 2026 at 4:38:20 AM
+ * 
+ * @author Matthew Edwards
+ */
+public class PublicKeyStore
+{
+    // ~ Static/Instance variables .............................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Maximum number of decoded keys kept in memory
+     */
+    public static final int                  CACHE_SIZE  = 4096;
+
+    /**
+     * Size of each memory-mapped region of the data and index files
+     */
+    public static final int                  CHUNK_SIZE  = 1 << 30;
+
+    private static final int                 MAGIC       = 0x44455349;
+    private static final int                 VERSION     = 1;
+    private static final int                 HEADER_SIZE = 32;
+    private static final int                 ENTRY_SIZE  = 16;
+    private static final int                 PER_CHUNK   = CHUNK_SIZE
+                                                             / ENTRY_SIZE;
+
+    private static final ThreadLocal<KeyFactory> factories =
+        new ThreadLocal<KeyFactory>() {
+            @Override
+            protected KeyFactory initialValue()
+            {
+                try
+                {
+                    return KeyFactory.getInstance("EC");
+                }
+                catch (NoSuchAlgorithmException e)
+                {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+
+
+    // -------------------------------------------------------------------------
+    private final long                       count;
+    private final MappedByteBuffer[]         data;
+    private final MappedByteBuffer[]         index;
+    private LinkedHashMap<Long, ECPublicKey> cache;
+
+
+    // ~ Constructors ..........................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Opens the public key store of a data file, building its index file first
+     * if it is missing or out of date.
+     * 
+     * @param dataFile
+     *            File containing the public key records
+     * @param indexFile
+     *            File containing (or receiving) the sorted index
+     * @throws IOException
+     *             Thrown if either file could not be read, or the index could
+     *             not be written
+     */
+    public PublicKeyStore(File dataFile, File indexFile)
+        throws IOException
+    {
+        if (!isIndexed(dataFile, indexFile))
+        {
+            buildIndex(dataFile, indexFile);
+        }
+
+        RandomAccessFile dataIn = new RandomAccessFile(dataFile, "r");
+        RandomAccessFile indexIn = new RandomAccessFile(indexFile, "r");
+        try
+        {
+            indexIn.seek(8);
+            this.count = indexIn.readLong();
+            this.data = map(dataIn.getChannel(), 0, dataIn.length());
+            this.index = map(
+                indexIn.getChannel(),
+                HEADER_SIZE,
+                count * ENTRY_SIZE);
+        }
+        finally
+        {
+            dataIn.close();
+            indexIn.close();
+        }
+
+        this.cache = new LinkedHashMap<Long, ECPublicKey>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, ECPublicKey> e)
+            {
+                return size() > CACHE_SIZE;
+            }
+        };
+    }
+
+
+    // ~ Methods ...............................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the public key of the voter with the specified UUID.
+     * 
+     * @param uuid
+     *            UUID as a 16-digit hexadecimal String
+     * @return If the UUID exists, its ECDSA Public Key is returned, otherwise
+     *         null is returned.
+     */
+    public ECPublicKey get(String uuid)
+    {
+        if (uuid == null || uuid.length() != 16)
+        {
+            return null;
+        }
+        try
+        {
+            return get(ByteUtil.bytesToLong(ByteUtil.hexToBytes(uuid)));
+        }
+        catch (IllegalArgumentException e)
+        {
+            return null;
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the public key of the voter with the specified UUID.
+     * 
+     * @param uuid
+     *            UUID as an 8-byte integer
+     * @return If the UUID exists, its ECDSA Public Key is returned, otherwise
+     *         null is returned.
+     */
+    public ECPublicKey get(long uuid)
+    {
+        Long key = Long.valueOf(uuid);
+        synchronized (cache)
+        {
+            ECPublicKey publicKey = cache.get(key);
+            if (publicKey != null)
+            {
+                return publicKey;
+            }
+        }
+
+        long entry = find(uuid);
+        if (entry < 0)
+        {
+            return null;
+        }
+        long offset = index[(int) (entry / PER_CHUNK)]
+            .getLong((int) (entry % PER_CHUNK) * ENTRY_SIZE + 8);
+        byte[] lengthBytes = new byte[4];
+        read(offset + 8, lengthBytes);
+        byte[] encoded = new byte[ByteUtil.bytesToInt(lengthBytes)];
+        read(offset + 12, encoded);
+
+        try
+        {
+            ECPublicKey publicKey =
+                (ECPublicKey) factories.get().generatePublic(
+                    new X509EncodedKeySpec(encoded));
+            synchronized (cache)
+            {
+                cache.put(key, publicKey);
+            }
+            return publicKey;
+        }
+        catch (GeneralSecurityException e)
+        {
+            Launcher.GLOBAL.log(Level.WARNING, "Could not decode public key "
+                + uuid, e);
+            return null;
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the number of public keys in the store.
+     * 
+     * @return Number of keys
+     */
+    public long getCount()
+    {
+        return count;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Finds the index entry of a UUID with a binary search.
+     * 
+     * @param uuid
+     *            UUID to find
+     * @return Number of the index entry, or -1 if the UUID is not stored
+     */
+    private long find(long uuid)
+    {
+        long low = 0;
+        long high = count - 1;
+        while (low <= high)
+        {
+            long middle = (low + high) >>> 1;
+            long id = index[(int) (middle / PER_CHUNK)]
+                .getLong((int) (middle % PER_CHUNK) * ENTRY_SIZE);
+            if (id < uuid)
+            {
+                low = middle + 1;
+            }
+            else if (id > uuid)
+            {
+                high = middle - 1;
+            }
+            else
+            {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Copies bytes of the data file, which may span two mapped chunks.
+     * 
+     * @param position
+     *            Position of the first byte in the data file
+     * @param bytes
+     *            Array receiving the bytes
+     */
+    private void read(long position, byte[] bytes)
+    {
+        int copied = 0;
+        while (bytes.length > copied)
+        {
+            ByteBuffer chunk = data[(int) (position / CHUNK_SIZE)].duplicate();
+            chunk.position((int) (position % CHUNK_SIZE));
+            int length = Math.min(chunk.remaining(), bytes.length - copied);
+            chunk.get(bytes, copied, length);
+            copied += length;
+            position += length;
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Maps a region of a file as read-only chunks.
+     * 
+     * @param channel
+     *            Channel of the file
+     * @param start
+     *            Position of the region
+     * @param length
+     *            Length of the region
+     * @return Mapped chunks of at most {@link PublicKeyStore#CHUNK_SIZE} bytes
+     * @throws IOException
+     *             Thrown if the file could not be mapped
+     */
+    private static MappedByteBuffer[] map(
+        FileChannel channel,
+        long start,
+        long length)
+        throws IOException
+    {
+        MappedByteBuffer[] chunks =
+            new MappedByteBuffer[(int) ((length + CHUNK_SIZE - 1) / CHUNK_SIZE)];
+        for (int i = 0; chunks.length > i; i++)
+        {
+            long offset = (long) i * CHUNK_SIZE;
+            chunks[i] = channel.map(
+                FileChannel.MapMode.READ_ONLY,
+                start + offset,
+                Math.min(CHUNK_SIZE, length - offset));
+        }
+        return chunks;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns True if the index file exists and was built from the current
+     * version of the data file.
+     * 
+     * @param dataFile
+     *            File containing the public key records
+     * @param indexFile
+     *            Index file
+     * @return True if the index can be used, False if it must be rebuilt
+     * @throws IOException
+     *             Thrown if the index file could not be read
+     */
+    private static boolean isIndexed(File dataFile, File indexFile)
+        throws IOException
+    {
+        if (!indexFile.isFile() || indexFile.length() < HEADER_SIZE)
+        {
+            return false;
+        }
+        DataInputStream in =
+            new DataInputStream(new FileInputStream(indexFile));
+        try
+        {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+            {
+                return false;
+            }
+            long entries = in.readLong();
+            return in.readLong() == dataFile.length()
+                && in.readLong() == dataFile.lastModified()
+                && indexFile.length() == HEADER_SIZE + entries * ENTRY_SIZE;
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Builds the sorted index of a data file with a single pass over the data.
+     * A truncated record at the end of the data file is ignored.
+     * 
+     * @param dataFile
+     *            File containing the public key records
+     * @param indexFile
+     *            Index file to write
+     * @throws IOException
+     *             Thrown if the data could not be read or the index could not
+     *             be written
+     */
+    private static void buildIndex(File dataFile, File indexFile)
+        throws IOException
+    {
+        Launcher.GLOBAL.info("Indexing " + dataFile + "...");
+        long length = dataFile.length();
+        long[] ids = new long[1024];
+        long[] offsets = new long[1024];
+        int entries = 0;
+
+        DataInputStream in =
+            new DataInputStream(new BufferedInputStream(new FileInputStream(
+                dataFile)));
+        try
+        {
+            long offset = 0;
+            while (length >= offset + 12)
+            {
+                long id = in.readLong();
+                int size = in.readInt();
+                if (size < 0 || offset + 12 + size > length)
+                {
+                    break;
+                }
+                long skipped = 0;
+                while (size > skipped)
+                {
+                    long n = in.skip(size - skipped);
+                    if (n <= 0)
+                    {
+                        throw new EOFException();
+                    }
+                    skipped += n;
+                }
+                if (entries == ids.length)
+                {
+                    long[] temp = new long[entries * 2];
+                    System.arraycopy(ids, 0, temp, 0, entries);
+                    ids = temp;
+                    temp = new long[entries * 2];
+                    System.arraycopy(offsets, 0, temp, 0, entries);
+                    offsets = temp;
+                }
+                ids[entries] = id;
+                offsets[entries] = offset;
+                entries++;
+                offset += 12 + size;
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+
+        sort(ids, offsets, 0, entries - 1);
+        writeIndex(dataFile, indexFile, ids, offsets, entries);
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Writes the index file of a data file from its UUIDs and the offsets of
+     * their records, which must be sorted by UUID. Used to index a data file
+     * whose records were written in sorted order without reading it again.
+     * 
+     * @param dataFile
+     *            File containing the public key records, already closed
+     * @param indexFile
+     *            Index file to write
+     * @param ids
+     *            Sorted UUIDs
+     * @param offsets
+     *            Offsets of the UUIDs' records in the data file
+     * @param entries
+     *            Number of UUIDs
+     * @throws IOException
+     *             Thrown if the index could not be written
+     */
+    static void writeIndex(
+        File dataFile,
+        File indexFile,
+        long[] ids,
+        long[] offsets,
+        int entries)
+        throws IOException
+    {
+        File temp = new File(indexFile.getPath() + ".tmp");
+        DataOutputStream out =
+            new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+                temp)));
+        try
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(entries);
+            out.writeLong(dataFile.length());
+            out.writeLong(dataFile.lastModified());
+            for (int i = 0; entries > i; i++)
+            {
+                out.writeLong(ids[i]);
+                out.writeLong(offsets[i]);
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+        if (indexFile.exists() && !indexFile.delete()
+            || !temp.renameTo(indexFile))
+        {
+            throw new IOException("Could not replace " + indexFile);
+        }
+        Launcher.GLOBAL.info("Indexed " + entries + " public keys!");
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Sorts UUIDs and their offsets by UUID (quicksort of both arrays).
+     * 
+     * @param ids
+     *            UUIDs
+     * @param offsets
+     *            Offsets of the UUIDs' records
+     * @param low
+     *            First index of the range to sort
+     * @param high
+     *            Last index of the range to sort
+     */
+    private static void sort(long[] ids, long[] offsets, int low, int high)
+    {
+        while (low < high)
+        {
+            long pivot = ids[(low + high) >>> 1];
+            int i = low;
+            int j = high;
+            while (i <= j)
+            {
+                while (ids[i] < pivot)
+                {
+                    i++;
+                }
+                while (ids[j] > pivot)
+                {
+                    j--;
+                }
+                if (i <= j)
+                {
+                    long id = ids[i];
+                    ids[i] = ids[j];
+                    ids[j] = id;
+                    long offset = offsets[i];
+                    offsets[i] = offsets[j];
+                    offsets[j] = offset;
+                    i++;
+                    j--;
+                }
+            }
+            // Recurse into the smaller side to bound the stack depth
+            if (j - low < high - i)
+            {
+                sort(ids, offsets, low, j);
+                low = i;
+            }
+            else
+            {
+                sort(ids, offsets, i, high);
+                high = j;
+            }
+        }
+    }
+}
@@ -17,21 +17,16 @@
 package me.edwards.des.demo;
 
 import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
 import java.security.KeyFactory;
-import java.security.KeyPair;
-import java.security.KeyPairGenerator;
 import java.security.PrivateKey;
-import java.security.SecureRandom;
 import java.security.Signature;
 import java.security.interfaces.ECPublicKey;
 import java.security.spec.PKCS8EncodedKeySpec;
-import java.security.spec.X509EncodedKeySpec;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Random;
@@ -39,9 +34,11 @@ import java.util.logging.Level;
 import me.edwards.des.Launcher;
 import me.edwards.des.Node;
 import me.edwards.des.block.Ballot;
+import me.edwards.des.block.BallotVerifier;
 import me.edwards.des.block.Vote;
 import me.edwards.des.net.packet.PacketBallot;
 import me.edwards.des.util.ByteUtil;
+import me.edwards.des.util.Hash256;
 import me.edwards.des.util.HashUtil;
 
 // -----------------------------------------------------------------------------
@@ -61,8 +58,7 @@ public class Submitter
     // ~ Static/Instance variables .............................................
 
     // -------------------------------------------------------------------------
-    private static final HashMap<String, ECPublicKey> keys =
-                                                               new HashMap<String, ECPublicKey>();
+    private static volatile PublicKeyStore keys;
 
 
     // ~ Methods ...............................................................
@@ -71,7 +67,9 @@ public class Submitter
     /**
      * Generates a database of key pairs for demonstration purposes. Two
      * databases are created. "private.data" is created for the private keys and
-     * "public.data" is created for the public keys.
+     * "public.data" is created for the public keys. The key pairs are generated
+     * on all available processors by the {@link DatabaseGenerator
+     * DatabaseGenerator}, and "public.data" is indexed in "public.index".
      * 
      * @param file
      *            Directory in which to create databases
@@ -82,59 +80,20 @@ public class Submitter
      */
     public static void generateDatabase(String file, int users) throws IOException
     {
-        ArrayList<String> uuids = new ArrayList<String>();
-        Random rnd = new Random();
-        File privateFile = new File(file + "private.data");
-        privateFile.createNewFile();
-        File publicFile = new File(file + "public.data");
-        publicFile.createNewFile();
-        
-        BufferedOutputStream privateOut = new BufferedOutputStream(new FileOutputStream(privateFile));
-        BufferedOutputStream publicOut = new BufferedOutputStream(new FileOutputStream(publicFile));
-        for (int i = 0; users > i; i++)
-        {
-            try
-            {
-                String id = null;
-                while (id == null || uuids.contains(id))
-                {
-                    byte[] idBytes = new byte[8];
-                    rnd.nextBytes(idBytes);
-                    id = ByteUtil.bytesToHex(idBytes);
-                }
-                uuids.add(id);
-                
-                KeyPairGenerator keyGen = KeyPairGenerator.getInstance("EC");
-                SecureRandom random = SecureRandom.getInstance("SHA1PRNG");
-                keyGen.initialize(256, random);
-    
-                KeyPair pair = keyGen.generateKeyPair();
-
-                byte[] privateBytes = new PKCS8EncodedKeySpec(pair.getPrivate().getEncoded()).getEncoded();
-                privateOut.write(ByteUtil.hexToBytes(id));
-                privateOut.write(ByteUtil.intToBytes(privateBytes.length));
-                privateOut.write(privateBytes);
-                
-                byte[] publicBytes = new X509EncodedKeySpec(pair.getPublic().getEncoded()).getEncoded();
-                publicOut.write(ByteUtil.hexToBytes(id));
-                publicOut.write(ByteUtil.intToBytes(publicBytes.length));
-                publicOut.write(publicBytes);
-            }
-            catch (Exception e)
-            {
-                e.printStackTrace();
-            }
-        }
-        privateOut.close();
-        publicOut.close();
+        DatabaseGenerator.generate(
+            file,
+            users,
+            Runtime.getRuntime().availableProcessors());
     }
-    
+
 
     // -------------------------------------------------------------------------
     /**
      * Loads the "public.data" database located in the specified directory and
      * loads it for demonstration purposes. The keys stored in the database will
-     * be used to authenticate {@link Ballot Ballots}.
+     * be used to authenticate {@link Ballot Ballots}. The database is
+     * memory-mapped by a {@link PublicKeyStore PublicKeyStore}, which indexes
+     * it in "public.index" the first time it is loaded.
      * 
      * @param file
      *            Directory in which to load the "public.data" database file
@@ -143,34 +102,9 @@ public class Submitter
      */
     public static void loadDatabase(String file) throws IOException
     {
-        keys.clear();
-        File publicFile = new File(file + "public.data");
-        BufferedInputStream publicIn = new BufferedInputStream(new FileInputStream(publicFile));
-        while (publicIn.available() > 0)
-        {
-            try
-            {
-                byte[] uuidBytes = new byte[8];
-                publicIn.read(uuidBytes);
-                String uuid = ByteUtil.bytesToHex(uuidBytes);
-                
-                byte[] lengthBytes = new byte[4];
-                publicIn.read(lengthBytes);
-                int length = ByteUtil.bytesToInt(lengthBytes);
-                
-                byte[] publicBytes = new byte[length];
-                publicIn.read(publicBytes);
-                
-                KeyFactory keyFactory = KeyFactory.getInstance("EC");
-                X509EncodedKeySpec publicKeySpec = new X509EncodedKeySpec(publicBytes);
-                keys.put(uuid, (ECPublicKey) keyFactory.generatePublic(publicKeySpec));
-            }
-            catch (Exception e)
-            {
-                e.printStackTrace();
-            }
-        }
-        publicIn.close();
+        keys = new PublicKeyStore(
+            new File(file + "public.data"),
+            new File(file + "public.index"));
     }
     
     
@@ -198,39 +132,7 @@ public class Submitter
         final int duration)
         throws IOException
     {
-        final HashMap<String, PrivateKey> privateKeys =
-            new HashMap<String, PrivateKey>();
-
-        File privateFile = new File(file + "private.data");
-        BufferedInputStream privateIn =
-            new BufferedInputStream(new FileInputStream(privateFile));
-        while (privateIn.available() > 0)
-        {
-            try
-            {
-                byte[] uuidBytes = new byte[8];
-                privateIn.read(uuidBytes);
-                String uuid = ByteUtil.bytesToHex(uuidBytes);
-
-                byte[] lengthBytes = new byte[4];
-                privateIn.read(lengthBytes);
-                int length = ByteUtil.bytesToInt(lengthBytes);
-
-                byte[] privateBytes = new byte[length];
-                privateIn.read(privateBytes);
-
-                KeyFactory keyFactory = KeyFactory.getInstance("EC");
-                PKCS8EncodedKeySpec publicKeySpec =
-                    new PKCS8EncodedKeySpec(privateBytes);
-                privateKeys
-                    .put(uuid, keyFactory.generatePrivate(publicKeySpec));
-            }
-            catch (Exception e)
-            {
-                e.printStackTrace();
-            }
-        }
-        privateIn.close();
+        final HashMap<String, PrivateKey> privateKeys = loadPrivateKeys(file);
 
         new Thread(new Runnable() {
             @Override
@@ -246,40 +148,14 @@ public class Submitter
                     {
                         break;
                     }
-                    int size = 0;
-                    ArrayList<Vote> votes = new ArrayList<Vote>();
-                    for (int i = 0; voteList.length > i; i++)
-                    {
-                        Vote vote =
-                            new Vote(
-                                i,
-                                voteList[i][rnd.nextInt(voteList[i].length)]);
-                        size += vote.getBytes().length;
-                        votes.add(vote);
-                    }
-                    
-                    ByteBuffer buffer = ByteBuffer.allocate(1 + 8 + size);
-                    buffer.put(Ballot.VERSION);
-                    buffer.put(ByteUtil.hexToBytes(uuid));
-                    for (int i = 0; votes.size() > i; i++)
-                    {
-                        buffer.put(votes.get(i).getBytes());
-                    }
-                    String signatureRoot = HashUtil.generateHash(buffer.array());
-
                     try
                     {
-                        Signature dsa = Signature.getInstance("SHA1withECDSA");
-                        dsa.initSign(privateKeys.get(uuid));
-                        dsa.update(ByteUtil.hexToBytes(signatureRoot));
-                        byte[] signature = dsa.sign();
-
                         Ballot ballot =
-                            new Ballot(
+                            createBallot(
                                 uuid,
-                                ByteUtil.bytesToHex(signature),
-                                votes);
-                        
+                                privateKeys.get(uuid),
+                                voteList,
+                                rnd);
                         node.addDataRequest(ballot.getRoot());
                         node.parse(new PacketBallot(ballot).getBinary(), null);
                     }
@@ -309,6 +185,109 @@ public class Submitter
     }
     
 
+    // -------------------------------------------------------------------------
+    /**
+     * Loads the private keys of all users from the "private.data" database
+     * located in the specified directory.
+     * 
+     * @param file
+     *            Directory in which to load the "private.data" database file
+     * @return Private keys by UUID
+     * @throws IOException
+     *             Thrown if an IOException occurs during file reading
+     */
+    static HashMap<String, PrivateKey> loadPrivateKeys(String file)
+        throws IOException
+    {
+        HashMap<String, PrivateKey> privateKeys =
+            new HashMap<String, PrivateKey>();
+
+        File privateFile = new File(file + "private.data");
+        BufferedInputStream privateIn =
+            new BufferedInputStream(new FileInputStream(privateFile));
+        while (privateIn.available() > 0)
+        {
+            try
+            {
+                byte[] uuidBytes = new byte[8];
+                privateIn.read(uuidBytes);
+                String uuid = ByteUtil.bytesToHex(uuidBytes);
+
+                byte[] lengthBytes = new byte[4];
+                privateIn.read(lengthBytes);
+                int length = ByteUtil.bytesToInt(lengthBytes);
+
+                byte[] privateBytes = new byte[length];
+                privateIn.read(privateBytes);
+
+                KeyFactory keyFactory = KeyFactory.getInstance("EC");
+                PKCS8EncodedKeySpec publicKeySpec =
+                    new PKCS8EncodedKeySpec(privateBytes);
+                privateKeys
+                    .put(uuid, keyFactory.generatePrivate(publicKeySpec));
+            }
+            catch (Exception e)
+            {
+                e.printStackTrace();
+            }
+        }
+        privateIn.close();
+        return privateKeys;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Creates a {@link Ballot Ballot} with random {@link Vote Votes} and signs
+     * it with the private key of its user.
+     * 
+     * @param uuid
+     *            UUID of the user casting the Ballot
+     * @param key
+     *            Private key of the user
+     * @param voteList
+     *            An array representing a list of Vote IDs, each containing list
+     *            of possible Votes for that Vote ID
+     * @param rnd
+     *            Source of random Votes
+     * @return Signed Ballot
+     * @throws GeneralSecurityException
+     *             Thrown if the Ballot could not be signed
+     */
+    static Ballot createBallot(
+        String uuid,
+        PrivateKey key,
+        String[][] voteList,
+        Random rnd)
+        throws GeneralSecurityException
+    {
+        int size = 0;
+        ArrayList<Vote> votes = new ArrayList<Vote>();
+        for (int i = 0; voteList.length > i; i++)
+        {
+            Vote vote = new Vote(i, voteList[i][rnd.nextInt(voteList[i].length)]);
+            size += vote.getBytes().length;
+            votes.add(vote);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 8 + size);
+        buffer.put(Ballot.VERSION);
+        buffer.put(ByteUtil.hexToBytes(uuid));
+        for (int i = 0; votes.size() > i; i++)
+        {
+            buffer.put(votes.get(i).getBytes());
+        }
+        Hash256 signatureRoot = HashUtil.generateHash(buffer.array());
+
+        Signature dsa = Signature.getInstance(BallotVerifier.ALGORITHM);
+        dsa.initSign(key);
+        dsa.update(signatureRoot.toByteArray());
+        byte[] signature = dsa.sign();
+
+        return new Ballot(uuid, ByteUtil.bytesToHex(signature), votes);
+    }
+
+
     // -------------------------------------------------------------------------
     /**
      * Returns the corresponding ECDSA Public Key for the specified UUID.
@@ -320,6 +299,7 @@ public class Submitter
      */
     public static ECPublicKey getKey(String uuid)
     {
-        return keys.get(uuid);
+        PublicKeyStore store = keys;
+        return store == null ? null : store.get(uuid);
     }
 }
@@ -18,15 +18,19 @@ package me.edwards.des.net;
 
 import java.io.IOException;
 import java.net.InetAddress;
-import java.net.Socket;
+import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import me.edwards.des.Node;
 import me.edwards.des.net.packet.Packet;
 import me.edwards.des.net.packet.PacketPing;
 import me.edwards.des.net.packet.PacketPong;
-import me.edwards.des.util.ByteUtil;
 
 // -----------------------------------------------------------------------------
 /**
@@ -34,6 +38,12 @@ import me.edwards.des.util.ByteUtil;
  * Connection tracks the ping and status of a connection between Nodes and
  * ensures that connection stay alive.<br>
  * <br>
+ * A Connection does not own a thread. Its non-blocking socket is served by the
+ * Node's {@link ConnectionHandler ConnectionHandler}, which passes received
+ * data to the Connection to be framed into packets by their 1-byte ID and
+ * 4-byte size header, and writes the packets queued by
+ * {@linkplain Connection#send(Packet)}.<br>
+ * <br>
  * Created on: Oct 17, 2015 at 10:21:02 AM
  * 
  * @author Matthew Edwards
@@ -58,59 +68,99 @@ public class Connection
      */
     public static int           CONNECTION_BOTH      = 2;
 
+    /**
+     * Maximum size (in bytes) of a packet accepted from a remote Node
+     */
+    public static final int     MAXIMUM_PACKET_SIZE  = 1 << 25;
+
+    /**
+     * Maximum number of bytes queued for sending before a Connection is
+     * considered stalled and disconnected
+     */
+    public static final long    MAXIMUM_QUEUED_BYTES = 1L << 26;
+
     private static final Logger logger               = Logger
                                                          .getLogger("DES.node");
+    private static final int    HEADER_SIZE          = 5;
     private static final int    CONNECT_TIMEOUT      = 3000;
     private static final int    PING_TIMEOUT         = 60000 * 5;
 
     
     // -------------------------------------------------------------------------
-    private Node                node;
-    private Socket              socket;
-    private String              name;
-    private InetAddress         address;
-    private int                 port;
-
-    private boolean             connected;
-    private int                 connectionStatus;
-    private long                ping;
-    private long                pingValue;
-    private boolean             pingSent;
+    private Node                                node;
+    private ConnectionHandler                   handler;
+    private SocketChannel                       channel;
+    private SelectionKey                        key;
+    private String                              name;
+    private InetAddress                         address;
+    private int                                 port;
+
+    private volatile boolean                    connected;
+    private volatile boolean                    paused;
+    private volatile int                        connectionStatus;
+    private long                                opened;
+    private volatile long                       ping;
+    private volatile long                       pingValue;
+    private volatile boolean                    pingSent;
+
+    private ByteBuffer                          header;
+    private ByteBuffer                          packet;
+    private ConcurrentLinkedQueue<ByteBuffer[]> outgoing;
+    private int                                 outgoingIndex;
+    private AtomicLong                          queued;
+    private AtomicBoolean                       writeRequested;
 
     // ~ Constructors ..........................................................
 
     // -------------------------------------------------------------------------
     /**
-     * Creates new Connection using the local {@link Node Node} and the socket
-     * connecting to the remote Node.
+     * Creates new Connection using the local {@link Node Node} and the
+     * non-blocking channel connecting to the remote Node. Connections are
+     * created by the {@link ConnectionHandler ConnectionHandler}.
      * 
      * @param node
      *            Local Node which owns this connection
-     * @param socket
-     *            Socket to remote Node which is used by this connection
+     * @param handler
+     *            Handler which serves the channel of this connection
+     * @param channel
+     *            Channel to remote Node which is used by this connection
+     * @param remote
+     *            Address and port of the remote Node
      */
-    public Connection(Node node, Socket socket)
+    Connection(
+        Node node,
+        ConnectionHandler handler,
+        SocketChannel channel,
+        InetSocketAddress remote)
     {
         this.node = node;
-        this.socket = socket;
-        this.address = socket.getInetAddress();
-        this.port = socket.getPort();
+        this.handler = handler;
+        this.channel = channel;
+        this.address = remote.getAddress();
+        this.port = remote.getPort();
         this.name = getHostName();
 
-        this.connected = false;
+        this.connected = true;
         this.connectionStatus = CONNECTION_NODE_ONLY;
+        this.opened = System.currentTimeMillis();
+        this.ping = opened;
+
+        this.header = ByteBuffer.allocate(HEADER_SIZE);
+        this.outgoing = new ConcurrentLinkedQueue<ByteBuffer[]>();
+        this.queued = new AtomicLong();
+        this.writeRequested = new AtomicBoolean();
     }
 
 
     // -------------------------------------------------------------------------
     /**
-     * Returns the socket used by this connection.
+     * Returns the channel used by this connection.
      * 
-     * @return Socket connecting to remote {@link Node Node}
+     * @return Channel connecting to remote {@link Node Node}
      */
-    public Socket getSocket()
+    public SocketChannel getChannel()
     {
-        return socket;
+        return channel;
     }
 
 
@@ -192,7 +242,7 @@ public class Connection
 
     // -------------------------------------------------------------------------
     /**
-     * Returns true if the connection is currently connected.
+     * Returns true if the connection is currently connected (or connecting).
      * 
      * @return True if connected, False otherwise
      */
@@ -272,27 +322,38 @@ public class Connection
     // -------------------------------------------------------------------------
     /**
      * Sends a {@link Packet Packet} through this connection to the remote
-     * {@link Node Node}.
+     * {@link Node Node}. The {@linkplain Packet#getBuffers() buffers of the
+     * packet} are queued and written by the {@link ConnectionHandler
+     * ConnectionHandler} with gathering writes, so this method never blocks.
      * 
      * @param packet
      *            Packet to send
      */
     public void send(Packet packet)
     {
-        try
+        if (!connected)
         {
-            socket.getOutputStream().write(packet.getBinary());
+            logger.log(
+                packet instanceof PacketPing ? Level.FINEST : Level.FINE,
+                "Could not send packet to closed connection " + this);
+            return;
         }
-        catch (IOException e)
+        ByteBuffer[] data = packet.getBuffers();
+        long size = 0;
+        for (int i = 0; data.length > i; i++)
         {
-            if (packet instanceof PacketPing)
-            {
-                logger.log(Level.FINEST, "Could not send packet!", e);
-            }
-            else
-            {
-                logger.log(Level.FINE, "Could not send packet!", e);
-            }
+            size += data[i].remaining();
+        }
+        if (queued.addAndGet(size) > MAXIMUM_QUEUED_BYTES)
+        {
+            logger.warning("Send queue overflow in " + this);
+            disconnect();
+            return;
+        }
+        outgoing.add(data);
+        if (writeRequested.compareAndSet(false, true))
+        {
+            handler.queue(this);
         }
     }
 
@@ -318,90 +379,48 @@ public class Connection
 
     // -------------------------------------------------------------------------
     /**
-     * Connects the local Node to the remote Node through this Connection.
+     * Stops reading packets from the remote {@link Node Node} until the
+     * connection is {@linkplain Connection#resume() resumed}. Packets that were
+     * already received are still parsed. This pushes back on a peer that sends
+     * more data than the local Node can validate, since the peer's socket
+     * buffer fills and its sends stall.
      */
-    public void connect()
+    public void pause()
     {
-        connected = true;
-        final long timeout = System.currentTimeMillis();
-        final Connection c = this;
-        ping = System.currentTimeMillis();
-        new Thread(new Runnable() {
-            @Override
-            public void run()
-            {
-                while (connected && node.isRunning())
-                {
-                    if (connectionStatus != CONNECTION_BOTH
-                        && System.currentTimeMillis() - timeout > CONNECT_TIMEOUT)
-                    {
-                        logger.warning("Request timeout in " + c);
-                        disconnect();
-                    }
-                    if (connectionStatus == CONNECTION_BOTH
-                        && pingSent
-                        && System.currentTimeMillis() - ping > PING_TIMEOUT
-                            + CONNECT_TIMEOUT)
-                    {
-                        logger.warning("Ping timeout in " + c);
-                        disconnect();
-                    }
-                    if (connectionStatus == CONNECTION_BOTH
-                        && System.currentTimeMillis() - ping > PING_TIMEOUT)
-                    {
-                        if (!pingSent)
-                        {
-                            pingValue =
-                                (long) (Long.MAX_VALUE * Math.random()) + 1;
-                            pingSent = true;
-                        }
-                        send(new PacketPing(pingValue));
-                    }
-                    try
-                    {
-                        if (socket.getInputStream().available() >= 5)
-                        {
-                            byte[] idBytes = new byte[1];
-                            socket.getInputStream().read(idBytes);
-                            byte[] sizeBytes = new byte[4];
-                            socket.getInputStream().read(sizeBytes);
-                            int size = ByteUtil.bytesToInt(sizeBytes);
-                            byte[] packetData = new byte[size - 5];
-                            int actual =
-                                socket.getInputStream().read(packetData);
-                            while (actual < size - 5)
-                            {
-                                Thread.sleep(5);
-                                if (socket.getInputStream().available() > 0)
-                                {
-                                    actual +=
-                                        socket.getInputStream().read(
-                                            packetData,
-                                            actual,
-                                            packetData.length - actual);
-                                }
-                            }
-                            ByteBuffer packet = ByteBuffer.allocate(size);
-                            packet.put(idBytes);
-                            packet.put(sizeBytes);
-                            packet.put(packetData);
-                            node.parse(packet.array(), c);
-                        }
-                        else
-                        {
-                            Thread.sleep(10);
-                        }
-                    }
-                    catch (Exception e)
-                    {
-                        logger.log(Level.WARNING, "Socket Receiving Error in "
-                            + c, e);
-                        System.exit(0);
-                    }
-                }
-            }
-        },
-            getHostName()).start();
+        if (!paused)
+        {
+            paused = true;
+            logger.fine("Paused reading from " + this);
+            handler.queue(this);
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Resumes reading packets from the remote {@link Node Node} after the
+     * connection was {@linkplain Connection#pause() paused}.
+     */
+    public void resume()
+    {
+        if (paused)
+        {
+            paused = false;
+            logger.fine("Resumed reading from " + this);
+            handler.queue(this);
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns true if reading from this connection is paused.
+     * 
+     * @return True if paused, False otherwise
+     */
+    public boolean isPaused()
+    {
+        return paused;
     }
 
 
@@ -412,7 +431,184 @@ public class Connection
      */
     public void disconnect()
     {
-        connected = false;
+        if (connected)
+        {
+            connected = false;
+            try
+            {
+                channel.close();
+            }
+            catch (IOException e)
+            {
+                logger.log(Level.FINEST, "Could not close " + this, e);
+            }
+            outgoing.clear();
+        }
         node.removeConnection(this);
     }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the key of this connection's channel in the Selector of the
+     * {@link ConnectionHandler ConnectionHandler}.
+     * 
+     * @return Selection key, or null if the channel is not registered
+     */
+    SelectionKey getKey()
+    {
+        return key;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Sets the key of this connection's channel in the Selector.
+     * 
+     * @param key
+     *            Selection key
+     */
+    void setKey(SelectionKey key)
+    {
+        this.key = key;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Frames received data into packets and passes every complete packet to
+     * {@linkplain Node#parse(byte[], Connection)}. Partial packets are kept
+     * until the rest of their data is received.
+     * 
+     * @param data
+     *            Data received from the remote Node
+     * @return True if the connection is still open, False if it was closed
+     *         because of an invalid packet
+     */
+    boolean receive(ByteBuffer data)
+    {
+        while (data.hasRemaining() && connected)
+        {
+            if (packet == null)
+            {
+                while (header.hasRemaining() && data.hasRemaining())
+                {
+                    header.put(data.get());
+                }
+                if (header.hasRemaining())
+                {
+                    return true;
+                }
+                int size = header.getInt(1);
+                if (size < HEADER_SIZE || size > MAXIMUM_PACKET_SIZE)
+                {
+                    logger.warning("Invalid packet size " + size + " from "
+                        + this);
+                    disconnect();
+                    return false;
+                }
+                header.flip();
+                packet = ByteBuffer.allocate(size);
+                packet.put(header);
+                header.clear();
+            }
+
+            int length = Math.min(packet.remaining(), data.remaining());
+            int limit = data.limit();
+            data.limit(data.position() + length);
+            packet.put(data);
+            data.limit(limit);
+
+            if (!packet.hasRemaining())
+            {
+                byte[] bytes = packet.array();
+                packet = null;
+                try
+                {
+                    node.parse(bytes, this);
+                }
+                catch (Exception e)
+                {
+                    logger.log(Level.WARNING, "Could not parse packet from "
+                        + this, e);
+                }
+            }
+        }
+        return connected;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Writes as many queued packets as the socket accepts without blocking.
+     * Packets queued while this method runs are either written by it or queue
+     * this connection with the {@link ConnectionHandler ConnectionHandler}
+     * again.
+     * 
+     * @return True if all queued packets were written, False if the socket
+     *         buffer is full
+     * @throws IOException
+     *             Thrown if the socket could not be written to
+     */
+    boolean write()
+        throws IOException
+    {
+        writeRequested.set(false);
+        ByteBuffer[] data;
+        while ((data = outgoing.peek()) != null)
+        {
+            while (data.length > outgoingIndex
+                && !data[outgoingIndex].hasRemaining())
+            {
+                outgoingIndex++;
+            }
+            if (data.length == outgoingIndex)
+            {
+                outgoing.poll();
+                outgoingIndex = 0;
+                continue;
+            }
+            long written =
+                channel.write(data, outgoingIndex, data.length - outgoingIndex);
+            queued.addAndGet(-written);
+            if (written == 0)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Checks the handshake and ping timeouts of this connection, and pings the
+     * remote Node if no Pong was received recently. Called periodically by the
+     * {@link ConnectionHandler ConnectionHandler}.
+     * 
+     * @param time
+     *            Current time in milliseconds
+     */
+    void check(long time)
+    {
+        if (connectionStatus != CONNECTION_BOTH
+            && time - opened > CONNECT_TIMEOUT)
+        {
+            logger.warning("Request timeout in " + this);
+            disconnect();
+        }
+        else if (connectionStatus == CONNECTION_BOTH && pingSent
+            && time - ping > PING_TIMEOUT + CONNECT_TIMEOUT)
+        {
+            logger.warning("Ping timeout in " + this);
+            disconnect();
+        }
+        else if (connectionStatus == CONNECTION_BOTH && !pingSent
+            && time - ping > PING_TIMEOUT)
+        {
+            pingValue = (long) (Long.MAX_VALUE * Math.random()) + 1;
+            pingSent = true;
+            send(new PacketPing(pingValue));
+        }
+    }
 }
@@ -0,0 +1,502 @@
+/*============================================================================*\
+ | Copyright (C) 2015 Matthew Edwards                                         |
+ |                                                                            |
+ | Licensed under the Apache License, Version 2.0 (the "License"); you may    |
+ | not use this file except in compliance with the License. You may obtain a  |
+ | copy of the License at                                                     |
+ |                                                                            |
+ |     http://www.apache.org/licenses/LICENSE-2.0                             |
+ |                                                                            |
+ | Unless required by applicable law or agreed to in writing, software        |
+ | distributed under the License is distributed on an "AS IS" BASIS,          |
+ | WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   |
+ | See the License for the specific language governing permissions and        |
+ | limitations under the License.                                             |
+\*============================================================================*/
+
+package me.edwards.des.net;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import me.edwards.des.Node;
+
+// -----------------------------------------------------------------------------
+/**
+ * Non-blocking network layer of a {@link Node Node}. A single thread waits on a
+ * Selector for all of the Node's sockets: it accepts new peers on the listening
+ * socket, completes outgoing connections, reads incoming data into each
+ * {@link Connection Connection} (which frames it into packets and passes them
+ * to {@linkplain Node#parse(byte[], Connection)}), and writes the packets
+ * queued by {@linkplain Connection#send(me.edwards.des.net.packet.Packet)}.
+ * Connections never own a thread and never sleep, so a Node can hold thousands
+ * of peers and a packet is dispatched as soon as its last byte arrives.<br>
+ * <br>
+ * Other threads only interact with the selector thread through a queue of
+ * Connections that need to be registered or written to, followed by a wakeup
+ * of the Selector. Connection timeouts and pings are checked by the selector
+ * thread once every {@link ConnectionHandler#CHECK_INTERVAL interval}.<br>
+ * <br>
+ * Created on: Oct 17, 2026 at 2:31:48 AM
+ * 
+ * @author Matthew Edwards
+ */
+public class ConnectionHandler
+    implements Runnable
+{
+    // ~ Static/Instance variables .............................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Interval (in milliseconds) between checks of connection timeouts and
+     * pings
+     */
+    public static final int                       CHECK_INTERVAL   = 1000;
+
+    /**
+     * Size of the buffer used to read from all sockets
+     */
+    public static final int                       READ_BUFFER_SIZE = 65536;
+
+    private static final Logger                   logger           = Logger
+                                                                       .getLogger("DES.node");
+
+
+    // -------------------------------------------------------------------------
+    private Node                                  node;
+    private Selector                              selector;
+    private ServerSocketChannel                   server;
+    private ByteBuffer                            buffer;
+    private ConcurrentLinkedQueue<Connection>     changes;
+    private Thread                                thread;
+    private volatile boolean                      running;
+    private long                                  lastCheck;
+
+
+    // ~ Constructors ..........................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Creates new ConnectionHandler and binds its listening socket to the
+     * specified port. The handler does not accept or process connections until
+     * it is {@linkplain ConnectionHandler#start() started}.
+     * 
+     * @param node
+     *            Local Node which owns the handler
+     * @param port
+     *            Port to listen on, or 0 to use any free port
+     * @throws IOException
+     *             Thrown if the Selector or the listening socket could not be
+     *             opened
+     */
+    public ConnectionHandler(Node node, int port)
+        throws IOException
+    {
+        this.node = node;
+        this.buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        this.changes = new ConcurrentLinkedQueue<Connection>();
+        this.selector = Selector.open();
+        try
+        {
+            server = ServerSocketChannel.open();
+            server.setOption(StandardSocketOptions.SO_RCVBUF, Node.BUFFER_SIZE);
+            server.bind(new InetSocketAddress(port));
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+        }
+        catch (IOException e)
+        {
+            selector.close();
+            if (server != null)
+            {
+                server.close();
+            }
+            throw e;
+        }
+    }
+
+
+    // ~ Methods ...............................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the port of the listening socket.
+     * 
+     * @return Local port on which peers can connect
+     */
+    public int getPort()
+    {
+        return server.socket().getLocalPort();
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Starts the selector thread.
+     */
+    public void start()
+    {
+        running = true;
+        thread = new Thread(this, "Node Connection Handler");
+        thread.start();
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Stops the selector thread. The listening socket and all connections are
+     * closed by the selector thread before it exits.
+     */
+    public void close()
+    {
+        running = false;
+        selector.wakeup();
+        if (thread != null && thread != Thread.currentThread())
+        {
+            try
+            {
+                thread.join(CHECK_INTERVAL);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Starts a non-blocking connection to a remote Node. The returned
+     * {@link Connection Connection} is registered with the Selector when its
+     * first packet is {@linkplain Connection#send(me.edwards.des.net.packet.Packet)
+     * sent}, and its queued packets are written once the connection is
+     * established.
+     * 
+     * @param address
+     *            IP Address of the remote Node
+     * @param port
+     *            Port of the remote Node
+     * @return New Connection to the remote Node
+     * @throws IOException
+     *             Thrown if the socket could not be opened
+     */
+    public Connection connect(InetAddress address, int port)
+        throws IOException
+    {
+        SocketChannel channel = SocketChannel.open();
+        try
+        {
+            channel.configureBlocking(false);
+            InetSocketAddress remote = new InetSocketAddress(address, port);
+            channel.connect(remote);
+            return new Connection(node, this, channel, remote);
+        }
+        catch (IOException e)
+        {
+            channel.close();
+            throw e;
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Queues a {@link Connection Connection} to be registered with the
+     * Selector or written to by the selector thread, and wakes up the
+     * Selector.
+     * 
+     * @param c
+     *            Connection with pending changes
+     */
+    void queue(Connection c)
+    {
+        changes.add(c);
+        selector.wakeup();
+    }
+
+
+    // -------------------------------------------------------------------------
+    @Override
+    public void run()
+    {
+        lastCheck = System.currentTimeMillis();
+        while (running)
+        {
+            try
+            {
+                selector.select(CHECK_INTERVAL);
+            }
+            catch (IOException e)
+            {
+                logger.log(Level.SEVERE, "Selector error!", e);
+                break;
+            }
+
+            Connection c;
+            while ((c = changes.poll()) != null)
+            {
+                update(c);
+            }
+
+            Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+            while (it.hasNext())
+            {
+                SelectionKey key = it.next();
+                it.remove();
+                if (!key.isValid())
+                {
+                    continue;
+                }
+                if (key.isAcceptable())
+                {
+                    accept();
+                    continue;
+                }
+                process(key);
+            }
+
+            long time = System.currentTimeMillis();
+            if (time - lastCheck >= CHECK_INTERVAL)
+            {
+                lastCheck = time;
+                check(time);
+            }
+        }
+
+        ArrayList<Connection> open = new ArrayList<Connection>();
+        for (SelectionKey key : selector.keys())
+        {
+            if (key.attachment() instanceof Connection)
+            {
+                open.add((Connection) key.attachment());
+            }
+        }
+        for (int i = 0; open.size() > i; i++)
+        {
+            open.get(i).disconnect();
+        }
+        try
+        {
+            server.close();
+            selector.close();
+        }
+        catch (IOException e)
+        {
+            logger.log(Level.FINE, "Could not close Selector!", e);
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Accepts all pending connections on the listening socket.
+     */
+    private void accept()
+    {
+        while (true)
+        {
+            SocketChannel channel;
+            try
+            {
+                channel = server.accept();
+                if (channel == null)
+                {
+                    return;
+                }
+            }
+            catch (IOException e)
+            {
+                logger.log(Level.WARNING, "Could not accept Node to socket", e);
+                return;
+            }
+
+            try
+            {
+                channel.configureBlocking(false);
+                Connection c = new Connection(
+                    node,
+                    this,
+                    channel,
+                    (InetSocketAddress) channel.getRemoteAddress());
+                logger.info("Accepted connection from Node " + c.getHostName()
+                    + "!");
+                c.setConnectionStatus(Connection.CONNECTION_PEER_ONLY);
+                node.addConnection(c);
+                update(c);
+            }
+            catch (IOException e)
+            {
+                logger.log(Level.WARNING, "Could not accept Node to socket", e);
+                try
+                {
+                    channel.close();
+                }
+                catch (IOException e1)
+                {
+                    //
+                }
+            }
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Registers a {@link Connection Connection} with the Selector if it is not
+     * yet registered, and writes its queued packets. Must only be called by the
+     * selector thread.
+     * 
+     * @param c
+     *            Connection to update
+     */
+    private void update(Connection c)
+    {
+        if (!c.isConnected())
+        {
+            return;
+        }
+        try
+        {
+            SelectionKey key = c.getKey();
+            if (key == null)
+            {
+                SocketChannel channel = c.getChannel();
+                key = channel.register(
+                    selector,
+                    channel.isConnectionPending()
+                        ? SelectionKey.OP_CONNECT
+                        : SelectionKey.OP_READ,
+                    c);
+                c.setKey(key);
+            }
+            if (!c.getChannel().isConnectionPending())
+            {
+                interest(key, c, c.write());
+            }
+        }
+        catch (IOException e)
+        {
+            logger.log(Level.FINE, "Socket Sending Error in " + c, e);
+            c.disconnect();
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Handles a ready {@link Connection Connection}: completes its connection,
+     * reads all available data and writes its queued packets.
+     * 
+     * @param key
+     *            Selected key of the Connection
+     */
+    private void process(SelectionKey key)
+    {
+        Connection c = (Connection) key.attachment();
+        try
+        {
+            if (key.isConnectable())
+            {
+                c.getChannel().finishConnect();
+                logger.info("Connected to Node " + c.getHostName() + "!");
+                interest(key, c, c.write());
+                return;
+            }
+            if (key.isReadable())
+            {
+                while (true)
+                {
+                    buffer.clear();
+                    int read = c.getChannel().read(buffer);
+                    if (read < 0)
+                    {
+                        logger.fine("Connection closed by " + c);
+                        c.disconnect();
+                        return;
+                    }
+                    if (read == 0)
+                    {
+                        break;
+                    }
+                    buffer.flip();
+                    if (!c.receive(buffer))
+                    {
+                        return;
+                    }
+                    if (c.isPaused())
+                    {
+                        break;
+                    }
+                }
+            }
+            if (key.isValid() && (key.isWritable() || c.isPaused()))
+            {
+                interest(key, c, c.write());
+            }
+        }
+        catch (IOException e)
+        {
+            logger.log(Level.FINE, "Socket Error in " + c, e);
+            c.disconnect();
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Sets the interest of a key to reading, unless the Connection is paused,
+     * and writing if the Connection still has queued data.
+     * 
+     * @param key
+     *            Key of the Connection
+     * @param c
+     *            Connection
+     * @param flushed
+     *            True if all queued data was written
+     */
+    private void interest(SelectionKey key, Connection c, boolean flushed)
+    {
+        if (key.isValid())
+        {
+            int ops = c.isPaused() ? 0 : SelectionKey.OP_READ;
+            key.interestOps(flushed ? ops : ops | SelectionKey.OP_WRITE);
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Checks the timeouts and pings of all registered {@link Connection
+     * Connections}.
+     * 
+     * @param time
+     *            Current time in milliseconds
+     */
+    private void check(long time)
+    {
+        ArrayList<Connection> open = new ArrayList<Connection>();
+        for (SelectionKey key : selector.keys())
+        {
+            if (key.isValid() && key.attachment() instanceof Connection)
+            {
+                open.add((Connection) key.attachment());
+            }
+        }
+        for (int i = 0; open.size() > i; i++)
+        {
+            open.get(i).check(time);
+        }
+    }
+}
@@ -16,6 +16,7 @@
 
 package me.edwards.des.net.packet;
 
+import java.nio.ByteBuffer;
 import java.text.NumberFormat;
 import me.edwards.des.Node;
 
@@ -83,6 +84,21 @@ public abstract class Packet
     public abstract byte[] getBinary();
 
 
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the binary payload of this Packet as a sequence of buffers, which
+     * are sent with a gathering write. By default, a single buffer wraps the
+     * {@linkplain Packet#getBinary() binary payload}; large packets override
+     * this method to send their data without copying it into one array.
+     * 
+     * @return Buffers which together contain the binary payload
+     */
+    public ByteBuffer[] getBuffers()
+    {
+        return new ByteBuffer[] { ByteBuffer.wrap(getBinary()) };
+    }
+
+
     // -------------------------------------------------------------------------
     @Override
     public String toString()
@@ -285,7 +301,61 @@ public abstract class Packet
          * 
          * @see PacketGetBlocks
          */
-        GETBLOCKS();
+        GETBLOCKS(),
+
+        /**
+         * Get Proof Packet Type, used to request the Merkle Proof of a ballot
+         * 
+         * @see PacketGetProof
+         */
+        GETPROOF(),
+
+        /**
+         * Proof Packet Type, used to transfer the Merkle Proof of a ballot
+         * 
+         * @see PacketProof
+         */
+        PROOF(),
+
+        /**
+         * Compact Block Packet Type, used to relay a block as short ballot
+         * identifiers
+         * 
+         * @see PacketCompactBlock
+         */
+        CMPCTBLOCK(),
+
+        /**
+         * Get Ballots Packet Type, used to request the ballots of a compact
+         * block which are missing from the ballot pool
+         * 
+         * @see PacketGetBallots
+         */
+        GETBALLOTS(),
+
+        /**
+         * Ballots Packet Type, used to transfer the requested ballots of a
+         * compact block
+         * 
+         * @see PacketBallots
+         */
+        BALLOTS(),
+
+        /**
+         * Get Headers Packet Type, used to request block headers during
+         * synchronization
+         * 
+         * @see PacketGetHeaders
+         */
+        GETHEADERS(),
+
+        /**
+         * Headers Packet Type, used to transfer block headers during
+         * synchronization
+         * 
+         * @see PacketHeaders
+         */
+        HEADERS();
 
         // ~ Static/Instance variables .........................................
 
@@ -17,7 +17,7 @@
 package me.edwards.des.net.packet;
 
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
+import java.util.List;
 import me.edwards.des.net.Connection;
 
 // -----------------------------------------------------------------------------
@@ -50,13 +50,14 @@ public class PacketAddr
      * @param peers
      *            List of current peers
      */
-    public PacketAddr(ArrayList<Connection> peers)
+    public PacketAddr(List<Connection> peers)
     {
         super(PacketTypes.ADDR.getID());
-        peerList = new String[peers.size()];
+        Connection[] list = peers.toArray(new Connection[0]);
+        peerList = new String[list.length];
         for (int i = 0; peerList.length > i; i++)
         {
-            peerList[i] = peers.get(i).getHostName();
+            peerList[i] = list[i].getHostName();
         }
     }
 
@@ -56,7 +56,8 @@ public class PacketBallot
 
     // -------------------------------------------------------------------------
     /**
-     * Creates new PacketBallot from binary data
+     * Creates new PacketBallot from binary data. The Ballot is a view over the
+     * packet data, which is not copied.
      * 
      * @param binary
      *            Packet binary data as byte array
@@ -67,9 +68,8 @@ public class PacketBallot
         ByteBuffer data = ByteBuffer.wrap(binary);
         data.position(1);
         int size = data.getInt();
-        byte[] bytes = new byte[size - 5];
-        data.get(bytes, 0, size - 5);
-        this.ballot = new Ballot(bytes);
+        data.limit(size);
+        this.ballot = new Ballot(data);
     }
 
 
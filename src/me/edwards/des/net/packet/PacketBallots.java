@@ -0,0 +1,149 @@
+/*============================================================================*\
+ | Copyright (C) 2015 Matthew Edwards                                         |
+ |                                                                            |
+ | Licensed under the Apache License, Version 2.0 (the "License"); you may    |
+ | not use this file except in compliance with the License. You may obtain a  |
+ | copy of the License at                                                     |
+ |                                                                            |
+ |     http://www.apache.org/licenses/LICENSE-2.0                             |
+ |                                                                            |
+ | Unless required by applicable law or agreed to in writing, software        |
+ | distributed under the License is distributed on an "AS IS" BASIS,          |
+ | WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   |
+ | See the License for the specific language governing permissions and        |
+ | limitations under the License.                                             |
+\*============================================================================*/
+
+package me.edwards.des.net.packet;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import me.edwards.des.block.Ballot;
+import me.edwards.des.util.Hash256;
+
+// -----------------------------------------------------------------------------
+/**
+ * <strong>Ballots Packet</strong><br>
+ * <br>
+ * This packet is sent in response to a {@link PacketGetBallots
+ * PacketGetBallots} to transfer the requested Ballots of a Block, in the order
+ * in which they were requested. The Ballots are views over the packet data,
+ * which is not copied.<br>
+ * <br>
+ * Created on: Oct 17, 2026 at 10:44:17 AM
+ * 
+ * @author Matthew Edwards
+ */
+public class PacketBallots
+    extends Packet
+{
+    // ~ Static/Instance variables .............................................
+
+    // -------------------------------------------------------------------------
+    private Hash256      hash;
+    private List<Ballot> ballots;
+
+
+    // ~ Constructors ..........................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Creates new PacketBallots
+     * 
+     * @param hash
+     *            Hash of the Block
+     * @param ballots
+     *            Requested Ballots of the Block
+     */
+    public PacketBallots(Hash256 hash, List<Ballot> ballots)
+    {
+        super(PacketTypes.BALLOTS.getID());
+        this.hash = hash;
+        this.ballots = ballots;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Creates new PacketBallots from binary data
+     * 
+     * @param binary
+     *            Packet binary data as byte array
+     * @throws IllegalArgumentException
+     *             Thrown if the Ballots exceed the packet
+     */
+    public PacketBallots(byte[] binary)
+    {
+        super(PacketTypes.BALLOTS.getID());
+        ByteBuffer data = ByteBuffer.wrap(binary);
+        data.position(1);
+        data.limit(data.getInt());
+        this.hash = Hash256.read(data);
+        int count = data.getInt();
+        this.ballots = new ArrayList<Ballot>(Math.min(count, 1 << 16));
+        for (int i = 0; count > i; i++)
+        {
+            int size = data.getInt();
+            if (size < 0 || size > data.remaining())
+            {
+                throw new IllegalArgumentException("Invalid Ballot length: "
+                    + size);
+            }
+            int limit = data.limit();
+            data.limit(data.position() + size);
+            ballots.add(new Ballot(data));
+            data.position(data.limit());
+            data.limit(limit);
+        }
+    }
+
+
+    // ~ Methods ...............................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the hash of the Block containing the Ballots.
+     * 
+     * @return Hash of the Block
+     */
+    public Hash256 getHash()
+    {
+        return hash;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the {@link Ballot Ballots} transferred by this Packet.
+     * 
+     * @return Ballots, in the order in which they were requested
+     */
+    public List<Ballot> getBallots()
+    {
+        return ballots;
+    }
+
+
+    // -------------------------------------------------------------------------
+    @Override
+    public byte[] getBinary()
+    {
+        int size = 1 + 4 + 32 + 4;
+        for (int i = 0; ballots.size() > i; i++)
+        {
+            size += 4 + ballots.get(i).getSize();
+        }
+        ByteBuffer data = ByteBuffer.allocate(size);
+        data.put(getID());
+        data.putInt(size);
+        hash.write(data);
+        data.putInt(ballots.size());
+        for (int i = 0; ballots.size() > i; i++)
+        {
+            data.putInt(ballots.get(i).getSize());
+            data.put(ballots.get(i).getBuffer());
+        }
+        return data.array();
+    }
+}
@@ -56,7 +56,8 @@ public class PacketBlock
 
     // -------------------------------------------------------------------------
     /**
-     * Creates new PacketBlock from binary data
+     * Creates new PacketBlock from binary data. The Block is a view over the
+     * packet data, which is not copied.
      * 
      * @param binary
      *            Packet binary data as byte array
@@ -67,9 +68,8 @@ public class PacketBlock
         ByteBuffer data = ByteBuffer.wrap(binary);
         data.position(1);
         int size = data.getInt();
-        byte[] bytes = new byte[size - 5];
-        data.get(bytes);
-        this.block = new Block(bytes);
+        data.limit(size);
+        this.block = new Block(data);
     }
 
 
@@ -91,12 +91,34 @@ public class PacketBlock
     @Override
     public byte[] getBinary()
     {
-        byte[] bytes = block.getBytes();
-        int size = 1 + 4 + bytes.length;
+        int size = 1 + 4 + block.getSize();
         ByteBuffer data = ByteBuffer.allocate(size);
         data.put(getID());
         data.putInt(size);
-        data.put(bytes);
+        block.write(data);
         return data.array();
     }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the binary payload of this Packet as the packet header followed
+     * by the {@linkplain Block#getBuffers() buffers of the Block}, so the
+     * Block is sent without being copied.
+     * 
+     * @return Buffers which together contain the binary payload
+     */
+    @Override
+    public ByteBuffer[] getBuffers()
+    {
+        ByteBuffer[] blockBuffers = block.getBuffers();
+        ByteBuffer[] buffers = new ByteBuffer[1 + blockBuffers.length];
+        ByteBuffer header = ByteBuffer.allocate(1 + 4);
+        header.put(getID());
+        header.putInt(1 + 4 + block.getSize());
+        header.flip();
+        buffers[0] = header;
+        System.arraycopy(blockBuffers, 0, buffers, 1, blockBuffers.length);
+        return buffers;
+    }
 }
@@ -0,0 +1,107 @@
+/*============================================================================*\
+ | Copyright (C) 2015 Matthew Edwards                                         |
+ |                                                                            |
+ | Licensed under the Apache License, Version 2.0 (the "License"); you may    |
+ | not use this file except in compliance with the License. You may obtain a  |
+ | copy of the License at                                                     |
+ |                                                                            |
+ |     http://www.apache.org/licenses/LICENSE-2.0                             |
+ |                                                                            |
+ | Unless required by applicable law or agreed to in writing, software        |
+ | distributed under the License is distributed on an "AS IS" BASIS,          |
+ | WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   |
+ | See the License for the specific language governing permissions and        |
+ | limitations under the License.                                             |
+\*============================================================================*/
+
+package me.edwards.des.net.packet;
+
+import java.nio.ByteBuffer;
+import me.edwards.des.block.CompactBlock;
+
+// -----------------------------------------------------------------------------
+/**
+ * <strong>Compact Block Packet</strong><br>
+ * <br>
+ * This packet is sent in response to a {@link PacketGetData PacketGetData}
+ * request for a {@link PacketInv#VECTOR_COMPACT_BLOCK compact block}. It
+ * transfers the header of a Block and the short IDs of its Ballots as a
+ * {@link CompactBlock CompactBlock}. Ballots missing from the receiver's
+ * Ballot pool are requested with a {@link PacketGetBallots PacketGetBallots}.
+ * <br>
+ * <br>
+ * Created on: Oct 17, 2026 at 10:31:05 AM
+ * 
+ * @author Matthew Edwards
+ */
+public class PacketCompactBlock
+    extends Packet
+{
+    // ~ Static/Instance variables .............................................
+
+    // -------------------------------------------------------------------------
+    private CompactBlock block;
+
+
+    // ~ Constructors ..........................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Creates new PacketCompactBlock
+     * 
+     * @param block
+     *            CompactBlock payload
+     */
+    public PacketCompactBlock(CompactBlock block)
+    {
+        super(PacketTypes.CMPCTBLOCK.getID());
+        this.block = block;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Creates new PacketCompactBlock from binary data
+     * 
+     * @param binary
+     *            Packet binary data as byte array
+     */
+    public PacketCompactBlock(byte[] binary)
+    {
+        super(PacketTypes.CMPCTBLOCK.getID());
+        ByteBuffer data = ByteBuffer.wrap(binary);
+        data.position(1);
+        int size = data.getInt();
+        byte[] bytes = new byte[size - 5];
+        data.get(bytes);
+        this.block = new CompactBlock(bytes);
+    }
+
+
+    // ~ Methods ...............................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the {@link CompactBlock CompactBlock} transferred by this Packet
+     * 
+     * @return CompactBlock payload
+     */
+    public CompactBlock getBlock()
+    {
+        return block;
+    }
+
+
+    // -------------------------------------------------------------------------
+    @Override
+    public byte[] getBinary()
+    {
+        byte[] bytes = block.getBytes();
+        int size = 1 + 4 + bytes.length;
+        ByteBuffer data = ByteBuffer.allocate(size);
+        data.put(getID());
+        data.putInt(size);
+        data.put(bytes);
+        return data.array();
+    }
+}
@@ -0,0 +1,129 @@
+/*============================================================================*\
+ | Copyright (C) 2015 Matthew Edwards                                         |
+ |                                                                            |
+ | Licensed under the Apache License, Version 2.0 (the "License"); you may    |
+ | not use this file except in compliance with the License. You may obtain a  |
+ | copy of the License at                                                     |
+ |                                                                            |
+ |     http://www.apache.org/licenses/LICENSE-2.0                             |
+ |                                                                            |
+ | Unless required by applicable law or agreed to in writing, software        |
+ | distributed under the License is distributed on an "AS IS" BASIS,          |
+ | WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   |
+ | See the License for the specific language governing permissions and        |
+ | limitations under the License.                                             |
+\*============================================================================*/
+
+package me.edwards.des.net.packet;
+
+import java.nio.ByteBuffer;
+import me.edwards.des.util.Hash256;
+
+// -----------------------------------------------------------------------------
+/**
+ * <strong>Get Ballots Packet</strong><br>
+ * <br>
+ * This packet is sent to request the Ballots of a
+ * {@link PacketCompactBlock compact block} which are missing from the Ballot
+ * pool of the receiver. The Ballots are identified by their index in the
+ * Block, and are sent back in a {@link PacketBallots PacketBallots}. If the
+ * Block is not found, a {@link PacketNotFound PacketNotFound} is sent
+ * instead.<br>
+ * <br>
+ * Created on: Oct 17, 2026 at 10:38:52 AM
+ * 
+ * @author Matthew Edwards
+ */
+public class PacketGetBallots
+    extends Packet
+{
+    // ~ Static/Instance variables .............................................
+
+    // -------------------------------------------------------------------------
+    private Hash256 hash;
+    private int[]   indexes;
+
+
+    // ~ Constructors ..........................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Creates new PacketGetBallots
+     * 
+     * @param hash
+     *            Hash of the Block
+     * @param indexes
+     *            Indexes of the requested Ballots in the Block
+     */
+    public PacketGetBallots(Hash256 hash, int[] indexes)
+    {
+        super(PacketTypes.GETBALLOTS.getID());
+        this.hash = hash;
+        this.indexes = indexes;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Creates new PacketGetBallots from binary data
+     * 
+     * @param binary
+     *            Packet binary data as byte array
+     */
+    public PacketGetBallots(byte[] binary)
+    {
+        super(PacketTypes.GETBALLOTS.getID());
+        ByteBuffer data = ByteBuffer.wrap(binary);
+        data.position(1);
+        int length = (data.getInt() - 5 - 32) / 4;
+        this.hash = Hash256.read(data);
+        this.indexes = new int[Math.max(length, 0)];
+        for (int i = 0; indexes.length > i; i++)
+        {
+            indexes[i] = data.getInt();
+        }
+    }
+
+
+    // ~ Methods ...............................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the hash of the Block whose Ballots are requested.
+     * 
+     * @return Hash of the Block
+     */
+    public Hash256 getHash()
+    {
+        return hash;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the indexes of the requested Ballots in the Block.
+     * 
+     * @return Array of indexes
+     */
+    public int[] getIndexes()
+    {
+        return indexes;
+    }
+
+
+    // -------------------------------------------------------------------------
+    @Override
+    public byte[] getBinary()
+    {
+        int size = 1 + 4 + 32 + 4 * indexes.length;
+        ByteBuffer data = ByteBuffer.allocate(size);
+        data.put(getID());
+        data.putInt(size);
+        hash.write(data);
+        for (int i = 0; indexes.length > i; i++)
+        {
+            data.putInt(indexes[i]);
+        }
+        return data.array();
+    }
+}
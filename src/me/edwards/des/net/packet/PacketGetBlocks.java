@@ -18,7 +18,7 @@ package me.edwards.des.net.packet;
 
 import java.nio.ByteBuffer;
 import me.edwards.des.block.Block;
-import me.edwards.des.util.ByteUtil;
+import me.edwards.des.util.Hash256;
 
 // -----------------------------------------------------------------------------
 /**
@@ -37,7 +37,7 @@ public class PacketGetBlocks
     // ~ Static/Instance variables .............................................
 
     // -------------------------------------------------------------------------
-    private String hash;
+    private Hash256 hash;
 
 
     // ~ Constructors ..........................................................
@@ -49,7 +49,7 @@ public class PacketGetBlocks
      * @param hash
      *            Hash of the oldest {@link Block Block} requested
      */
-    public PacketGetBlocks(String hash)
+    public PacketGetBlocks(Hash256 hash)
     {
         super(PacketTypes.GETBLOCKS.getID());
         this.hash = hash;
@@ -68,9 +68,7 @@ public class PacketGetBlocks
         super(PacketTypes.GETBLOCKS.getID());
         ByteBuffer data = ByteBuffer.wrap(binary);
         data.position(5);
-        byte[] bytes = new byte[32];
-        data.get(bytes, 0, 32);
-        this.hash = ByteUtil.bytesToHex(bytes);
+        this.hash = Hash256.read(data);
     }
 
 
@@ -81,9 +79,9 @@ public class PacketGetBlocks
      * Returns the oldest {@link Block#getHash() hash} of the {@link Block
      * Block} requested by this packet.
      * 
-     * @return 32-digit hexadecimal hash of the oldest Block requested
+     * @return 256-bit hash of the oldest Block requested
      */
-    public String getHash()
+    public Hash256 getHash()
     {
         return hash;
     }
@@ -97,7 +95,7 @@ public class PacketGetBlocks
         ByteBuffer data = ByteBuffer.allocate(size);
         data.put(getID());
         data.putInt(size);
-        data.put(ByteUtil.hexToBytes(hash));
+        hash.write(data);
         return data.array();
     }
 }
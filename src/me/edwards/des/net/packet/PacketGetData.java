@@ -19,8 +19,7 @@ package me.edwards.des.net.packet;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import me.edwards.des.net.packet.PacketInv.InvVector;
-import me.edwards.des.util.ByteUtil;
-import me.edwards.des.util.HashUtil;
+import me.edwards.des.util.Hash256;
 
 // -----------------------------------------------------------------------------
 /**
@@ -72,8 +71,7 @@ public class PacketGetData
         {
             InvVector v = new InvVector();
             v.type = data.getInt();
-            v.hash = new byte[32];
-            data.get(v.hash);
+            v.hash = Hash256.read(data);
             vectors.add(v);
         }
     }
@@ -117,14 +115,14 @@ public class PacketGetData
      * 
      * @param index
      *            Index of inventory vector
-     * @return Hash of the specified vector if the index exists as a String,
-     *         otherwise null.
+     * @return Hash of the specified vector if the index exists, otherwise
+     *         null.
      */
-    public String getHash(int index)
+    public Hash256 getHash(int index)
     {
         if (index < vectors.size())
         {
-            return ByteUtil.bytesToHex(vectors.get(index).hash);
+            return vectors.get(index).hash;
         }
         return null;
     }
@@ -137,13 +135,13 @@ public class PacketGetData
      * @param type
      *            {@link PacketInv Type} of data
      * @param hash
-     *            Data's 32-digit hexadecimal hash
+     *            Data's 256-bit hash
      */
-    public void addInv(int type, String hash)
+    public void addInv(int type, Hash256 hash)
     {
         InvVector vector = new InvVector();
         vector.type = type;
-        vector.hash = ByteUtil.hexToBytes(HashUtil.generateLeadingZeros(hash));
+        vector.hash = hash;
         vectors.add(vector);
     }
 
@@ -159,7 +157,7 @@ public class PacketGetData
         for (int i = 0; vectors.size() > i; i++)
         {
             data.putInt(vectors.get(i).type);
-            data.put(vectors.get(i).hash);
+            vectors.get(i).hash.write(data);
         }
         return data.array();
     }
@@ -0,0 +1,114 @@
+/*============================================================================*\
+ | Copyright (C) 2015 Matthew Edwards                                         |
+ |                                                                            |
+ | Licensed under the Apache License, Version 2.0 (the "License"); you may    |
+ | not use this file except in compliance with the License. You may obtain a  |
+ | copy of the License at                                                     |
+ |                                                                            |
+ |     http://www.apache.org/licenses/LICENSE-2.0                             |
+ |                                                                            |
+ | Unless required by applicable law or agreed to in writing, software        |
+ | distributed under the License is distributed on an "AS IS" BASIS,          |
+ | WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   |
+ | See the License for the specific language governing permissions and        |
+ | limitations under the License.                                             |
+\*============================================================================*/
+
+package me.edwards.des.net.packet;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import me.edwards.des.block.Block;
+import me.edwards.des.block.BlockChain;
+import me.edwards.des.util.Hash256;
+
+// -----------------------------------------------------------------------------
+/**
+ * <strong>Get Headers Packet</strong><br>
+ * <br>
+ * This packet is sent to request the headers of the {@link Block Blocks} which
+ * follow the most recent Block shared with the receiver. The
+ * shared Block is found with a {@linkplain BlockChain#getLocator() block
+ * locator}. The receiver answers with a {@link PacketHeaders PacketHeaders}
+ * holding at most {@link PacketHeaders#MAXIMUM_HEADERS} headers.<br>
+ * <br>
+ * Created on: Oct 17, 2026 at 11:12:40 AM
+ * 
+ * @author Matthew Edwards
+ */
+public class PacketGetHeaders
+    extends Packet
+{
+    // ~ Static/Instance variables .............................................
+
+    // -------------------------------------------------------------------------
+    private List<Hash256> locator;
+
+
+    // ~ Constructors ..........................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Creates new PacketGetHeaders
+     * 
+     * @param locator
+     *            Block locator, from the most recent Block down
+     */
+    public PacketGetHeaders(List<Hash256> locator)
+    {
+        super(PacketTypes.GETHEADERS.getID());
+        this.locator = locator;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Creates new PacketGetHeaders from binary data
+     * 
+     * @param binary
+     *            Packet binary data as byte array
+     */
+    public PacketGetHeaders(byte[] binary)
+    {
+        super(PacketTypes.GETHEADERS.getID());
+        ByteBuffer data = ByteBuffer.wrap(binary);
+        data.position(1);
+        int length = (data.getInt() - 5) / 32;
+        this.locator = new ArrayList<Hash256>(Math.max(length, 0));
+        for (int i = 0; length > i; i++)
+        {
+            locator.add(Hash256.read(data));
+        }
+    }
+
+
+    // ~ Methods ...............................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the block locator of the requesting Node.
+     * 
+     * @return List of Block hashes, from the most recent Block down
+     */
+    public List<Hash256> getLocator()
+    {
+        return locator;
+    }
+
+
+    // -------------------------------------------------------------------------
+    @Override
+    public byte[] getBinary()
+    {
+        int size = 1 + 4 + 32 * locator.size();
+        ByteBuffer data = ByteBuffer.allocate(size);
+        data.put(getID());
+        data.putInt(size);
+        for (int i = 0; locator.size() > i; i++)
+        {
+            locator.get(i).write(data);
+        }
+        return data.array();
+    }
+}
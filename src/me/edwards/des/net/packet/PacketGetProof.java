@@ -0,0 +1,125 @@
+/*============================================================================*\
+ | Copyright (C) 2015 Matthew Edwards                                         |
+ |                                                                            |
+ | Licensed under the Apache License, Version 2.0 (the "License"); you may    |
+ | not use this file except in compliance with the License. You may obtain a  |
+ | copy of the License at                                                     |
+ |                                                                            |
+ |     http://www.apache.org/licenses/LICENSE-2.0                             |
+ |                                                                            |
+ | Unless required by applicable law or agreed to in writing, software        |
+ | distributed under the License is distributed on an "AS IS" BASIS,          |
+ | WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   |
+ | See the License for the specific language governing permissions and        |
+ | limitations under the License.                                             |
+\*============================================================================*/
+
+package me.edwards.des.net.packet;
+
+import java.nio.ByteBuffer;
+import me.edwards.des.block.Ballot;
+import me.edwards.des.util.ByteUtil;
+import me.edwards.des.util.Hash256;
+import me.edwards.des.util.HashUtil;
+
+// -----------------------------------------------------------------------------
+/**
+ * <strong>Get Proof Packet</strong><br>
+ * <br>
+ * This packet is sent to request a {@link PacketProof Merkle Proof} that a
+ * {@link Ballot Ballot} is contained in the BlockChain. The Ballot is
+ * identified by its root hash and its UUID, which together form the receipt of
+ * a voter. If no Block contains the Ballot, a {@link PacketNotFound
+ * PacketNotFound} is sent instead.<br>
+ * <br>
+ * Created on: Oct 17, 2026 at 8:52:33 AM
+ * 
+ * @author Matthew Edwards
+ */
+public class PacketGetProof
+    extends Packet
+{
+    // ~ Static/Instance variables .............................................
+
+    // -------------------------------------------------------------------------
+    private Hash256 root;
+    private String  id;
+
+
+    // ~ Constructors ..........................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Creates new PacketGetProof
+     * 
+     * @param root
+     *            {@link Ballot#getRoot() Root hash} of the Ballot
+     * @param id
+     *            {@link Ballot#getID() UUID} of the Ballot
+     */
+    public PacketGetProof(Hash256 root, String id)
+    {
+        super(PacketTypes.GETPROOF.getID());
+        this.root = root;
+        this.id = HashUtil.generateLeadingZeros(id, 16);
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Creates new PacketGetProof from binary data
+     * 
+     * @param binary
+     *            Packet binary data as byte array
+     */
+    public PacketGetProof(byte[] binary)
+    {
+        super(PacketTypes.GETPROOF.getID());
+        ByteBuffer data = ByteBuffer.wrap(binary);
+        data.position(5);
+        this.root = Hash256.read(data);
+        byte[] idBytes = new byte[8];
+        data.get(idBytes);
+        this.id = ByteUtil.bytesToHex(idBytes);
+    }
+
+
+    // ~ Methods ...............................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the root hash of the requested Ballot.
+     * 
+     * @return {@link Ballot#getRoot() Root hash} of the Ballot
+     */
+    public Hash256 getRoot()
+    {
+        return root;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the UUID of the requested Ballot.
+     * 
+     * @return UUID as a 16-digit hexadecimal String
+     */
+    public String getBallotID()
+    {
+        return id;
+    }
+
+
+    // -------------------------------------------------------------------------
+    @Override
+    public byte[] getBinary()
+    {
+        int size = 1 + 4 + 32 + 8;
+        ByteBuffer data = ByteBuffer.allocate(size);
+        data.put(getID());
+        data.putInt(size);
+        root.write(data);
+        data.put(ByteUtil.hexToBytes(id));
+        return data.array();
+    }
+}
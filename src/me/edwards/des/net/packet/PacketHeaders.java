@@ -0,0 +1,186 @@
+/*============================================================================*\
+ | Copyright (C) 2015 Matthew Edwards                                         |
+ |                                                                            |
+ | Licensed under the Apache License, Version 2.0 (the "License"); you may    |
+ | not use this file except in compliance with the License. You may obtain a  |
+ | copy of the License at                                                     |
+ |                                                                            |
+ |     http://www.apache.org/licenses/LICENSE-2.0                             |
+ |                                                                            |
+ | Unless required by applicable law or agreed to in writing, software        |
+ | distributed under the License is distributed on an "AS IS" BASIS,          |
+ | WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   |
+ | See the License for the specific language governing permissions and        |
+ | limitations under the License.                                             |
+\*============================================================================*/
+
+package me.edwards.des.net.packet;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import me.edwards.des.block.Block;
+import me.edwards.des.util.Hash256;
+import me.edwards.des.util.HashUtil;
+
+// -----------------------------------------------------------------------------
+/**
+ * <strong>Headers Packet</strong><br>
+ * <br>
+ * This packet is sent in response to a {@link PacketGetHeaders
+ * PacketGetHeaders} to transfer the {@linkplain Block#getHeader() headers} and
+ * nonces of consecutive {@link Block Blocks} of the main chain of the sender,
+ * in ascending order. Each header takes 84 bytes, so the Proof of Work of the
+ * BlockChain is checked before any Block is downloaded.<br>
+ * <br>
+ * Created on: Oct 17, 2026 at 11:18:27 AM
+ * 
+ * @author Matthew Edwards
+ */
+public class PacketHeaders
+    extends Packet
+{
+    // ~ Static/Instance variables .............................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * The maximum number of headers sent in a single packet
+     */
+    public static final int   MAXIMUM_HEADERS = 2000;
+
+
+    // -------------------------------------------------------------------------
+    private ArrayList<byte[]> headers;
+
+
+    // ~ Constructors ..........................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Creates new, empty PacketHeaders
+     */
+    public PacketHeaders()
+    {
+        super(PacketTypes.HEADERS.getID());
+        this.headers = new ArrayList<byte[]>();
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Creates new PacketHeaders from binary data
+     * 
+     * @param binary
+     *            Packet binary data as byte array
+     * @throws IllegalArgumentException
+     *             Thrown if the packet does not contain a whole number of
+     *             headers or contains more than {@link #MAXIMUM_HEADERS}
+     */
+    public PacketHeaders(byte[] binary)
+    {
+        super(PacketTypes.HEADERS.getID());
+        ByteBuffer data = ByteBuffer.wrap(binary);
+        data.position(1);
+        int size = data.getInt() - 5;
+        if (size < 0 || size % 84 != 0
+            || size / 84 > MAXIMUM_HEADERS || size > data.remaining())
+        {
+            throw new IllegalArgumentException("Invalid headers length: "
+                + size);
+        }
+        int length = size / 84;
+        this.headers = new ArrayList<byte[]>(length);
+        for (int i = 0; length > i; i++)
+        {
+            byte[] header = new byte[84];
+            data.get(header);
+            headers.add(header);
+        }
+    }
+
+
+    // ~ Methods ...............................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the number of headers in this Packet.
+     * 
+     * @return Number of headers
+     */
+    public int getSize()
+    {
+        return headers.size();
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the 80-byte header at the specified index, without its nonce.
+     * 
+     * @param index
+     *            Index of the header
+     * @return Header in binary format
+     */
+    public byte[] getHeader(int index)
+    {
+        return Arrays.copyOf(headers.get(index), 80);
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the nonce of the header at the specified index.
+     * 
+     * @param index
+     *            Index of the header
+     * @return Nonce of the Block
+     */
+    public int getNonce(int index)
+    {
+        return ByteBuffer.wrap(headers.get(index)).getInt(80);
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the hash of the Block of the header at the specified index.
+     * 
+     * @param index
+     *            Index of the header
+     * @return {@link Block#getHash() Hash} of the Block
+     */
+    public Hash256 getHash(int index)
+    {
+        return HashUtil.generateBlockHash(getHeader(index), getNonce(index));
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Adds a header to this Packet.
+     * 
+     * @param header
+     *            84-byte header and nonce, as returned by
+     *            {@linkplain me.edwards.des.block.BlockChain.Node#getHeader()}
+     */
+    public void addHeader(byte[] header)
+    {
+        headers.add(header);
+    }
+
+
+    // -------------------------------------------------------------------------
+    @Override
+    public byte[] getBinary()
+    {
+        int size = 1 + 4 + 84 * headers.size();
+        ByteBuffer data = ByteBuffer.allocate(size);
+        data.put(getID());
+        data.putInt(size);
+        for (int i = 0; headers.size() > i; i++)
+        {
+            data.put(headers.get(i));
+        }
+        return data.array();
+    }
+}
@@ -20,7 +20,7 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import me.edwards.des.block.Ballot;
 import me.edwards.des.block.Block;
-import me.edwards.des.util.ByteUtil;
+import me.edwards.des.util.Hash256;
 
 // -----------------------------------------------------------------------------
 /**
@@ -42,12 +42,19 @@ public class PacketInv
     /**
      * The Vector type for a Ballot Object
      */
-    public static final int      VECTOR_BALLOT = 1;
+    public static final int      VECTOR_BALLOT        = 1;
 
     /**
      * The Vector type for a Block Object
      */
-    public static final int      VECTOR_BLOCK  = 2;
+    public static final int      VECTOR_BLOCK         = 2;
+
+    /**
+     * The Vector type for a Block Object requested as a
+     * {@link PacketCompactBlock compact block}. Only used in
+     * {@link PacketGetData PacketGetData}.
+     */
+    public static final int      VECTOR_COMPACT_BLOCK = 3;
 
     
     // -------------------------------------------------------------------------
@@ -85,8 +92,7 @@ public class PacketInv
         {
             InvVector v = new InvVector();
             v.type = data.getInt();
-            v.hash = new byte[32];
-            data.get(v.hash);
+            v.hash = Hash256.read(data);
             vectors.add(v);
         }
     }
@@ -130,14 +136,14 @@ public class PacketInv
      * 
      * @param index
      *            Index of inventory vector
-     * @return Hash of the specified vector if the index exists as a String,
-     *         otherwise null.
+     * @return Hash of the specified vector if the index exists, otherwise
+     *         null.
      */
-    public String getHash(int index)
+    public Hash256 getHash(int index)
     {
         if (index < vectors.size())
         {
-            return ByteUtil.bytesToHex(vectors.get(index).hash);
+            return vectors.get(index).hash;
         }
         return null;
     }
@@ -158,12 +164,12 @@ public class PacketInv
         if (invObject instanceof Ballot)
         {
             vector.type = VECTOR_BALLOT;
-            vector.hash = ByteUtil.hexToBytes(((Ballot) invObject).getRoot());
+            vector.hash = ((Ballot) invObject).getRoot();
         }
         else if (invObject instanceof Block)
         {
             vector.type = VECTOR_BLOCK;
-            vector.hash = ByteUtil.hexToBytes(((Block) invObject).getHash());
+            vector.hash = ((Block) invObject).getHash();
         }
         else
         {
@@ -173,6 +179,24 @@ public class PacketInv
     }
 
 
+    // -------------------------------------------------------------------------
+    /**
+     * Adds an inventory object to this Packet.
+     * 
+     * @param type
+     *            {@link PacketInv Type} of data
+     * @param hash
+     *            Data's 256-bit hash
+     */
+    public void addInv(int type, Hash256 hash)
+    {
+        InvVector vector = new InvVector();
+        vector.type = type;
+        vector.hash = hash;
+        vectors.add(vector);
+    }
+
+
     // -------------------------------------------------------------------------
     @Override
     public byte[] getBinary()
@@ -184,7 +208,7 @@ public class PacketInv
         for (int i = 0; vectors.size() > i; i++)
         {
             data.putInt(vectors.get(i).type);
-            data.put(vectors.get(i).hash);
+            vectors.get(i).hash.write(data);
         }
         return data.array();
     }
@@ -204,7 +228,7 @@ public class PacketInv
         // ~ Static/Instance variables .........................................
 
         // ---------------------------------------------------------------------
-        protected int    type;
-        protected byte[] hash;
+        protected int     type;
+        protected Hash256 hash;
     }
 }
@@ -18,7 +18,7 @@ package me.edwards.des.net.packet;
 
 import java.nio.ByteBuffer;
 import me.edwards.des.net.packet.PacketInv.InvVector;
-import me.edwards.des.util.ByteUtil;
+import me.edwards.des.util.Hash256;
 
 //-----------------------------------------------------------------------------
 /**
@@ -37,8 +37,8 @@ public class PacketNotFound
     // ~ Static/Instance variables .............................................
 
     // -------------------------------------------------------------------------
-    private int    type;
-    private String hash;
+    private int     type;
+    private Hash256 hash;
 
 
     // ~ Constructors ..........................................................
@@ -53,7 +53,7 @@ public class PacketNotFound
      * @param hash
      *            Inventory Vector hash
      */
-    public PacketNotFound(int type, String hash)
+    public PacketNotFound(int type, Hash256 hash)
     {
         super(PacketTypes.NOTFOUND.getID());
         this.type = type;
@@ -74,9 +74,7 @@ public class PacketNotFound
         ByteBuffer data = ByteBuffer.wrap(binary);
         data.position(5);
         this.type = data.getInt();
-        byte[] hashData = new byte[32];
-        data.get(hashData);
-        this.hash = ByteUtil.bytesToHex(hashData);
+        this.hash = Hash256.read(data);
     }
 
 
@@ -101,7 +99,7 @@ public class PacketNotFound
      * 
      * @return Hash of the inventory vector
      */
-    public String getHash()
+    public Hash256 getHash()
     {
         return hash;
     }
@@ -116,7 +114,7 @@ public class PacketNotFound
         data.put(getID());
         data.putInt(size);
         data.putInt(type);
-        data.put(ByteUtil.hexToBytes(hash));
+        hash.write(data);
         return data.array();
     }
 }
@@ -0,0 +1,103 @@
+/*============================================================================*\
+ | Copyright (C) 2015 Matthew Edwards                                         |
+ |                                                                            |
+ | Licensed under the Apache License, Version 2.0 (the "License"); you may    |
+ | not use this file except in compliance with the License. You may obtain a  |
+ | copy of the License at                                                     |
+ |                                                                            |
+ |     http://www.apache.org/licenses/LICENSE-2.0                             |
+ |                                                                            |
+ | Unless required by applicable law or agreed to in writing, software        |
+ | distributed under the License is distributed on an "AS IS" BASIS,          |
+ | WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   |
+ | See the License for the specific language governing permissions and        |
+ | limitations under the License.                                             |
+\*============================================================================*/
+
+package me.edwards.des.net.packet;
+
+import java.nio.ByteBuffer;
+import me.edwards.des.block.MerkleProof;
+
+// -----------------------------------------------------------------------------
+/**
+ * <strong>Proof Packet</strong><br>
+ * <br>
+ * This packet is sent in response to a {@link PacketGetProof PacketGetProof}
+ * to transfer the {@link MerkleProof Merkle Proof} of a Ballot.<br>
+ * <br>
+ * Created on: Oct 17, 2026 at 8:58:14 AM
+ * 
+ * @author Matthew Edwards
+ */
+public class PacketProof
+    extends Packet
+{
+    // ~ Static/Instance variables .............................................
+
+    // -------------------------------------------------------------------------
+    private MerkleProof proof;
+
+
+    // ~ Constructors ..........................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Creates new PacketProof
+     * 
+     * @param proof
+     *            MerkleProof payload
+     */
+    public PacketProof(MerkleProof proof)
+    {
+        super(PacketTypes.PROOF.getID());
+        this.proof = proof;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Creates new PacketProof from binary data
+     * 
+     * @param binary
+     *            Packet binary data as byte array
+     */
+    public PacketProof(byte[] binary)
+    {
+        super(PacketTypes.PROOF.getID());
+        ByteBuffer data = ByteBuffer.wrap(binary);
+        data.position(1);
+        int size = data.getInt();
+        byte[] bytes = new byte[size - 5];
+        data.get(bytes);
+        this.proof = new MerkleProof(bytes);
+    }
+
+
+    // ~ Methods ...............................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the {@link MerkleProof MerkleProof} transferred by this Packet
+     * 
+     * @return MerkleProof payload
+     */
+    public MerkleProof getProof()
+    {
+        return proof;
+    }
+
+
+    // -------------------------------------------------------------------------
+    @Override
+    public byte[] getBinary()
+    {
+        byte[] bytes = proof.getBytes();
+        int size = 1 + 4 + bytes.length;
+        ByteBuffer data = ByteBuffer.allocate(size);
+        data.put(getID());
+        data.putInt(size);
+        data.put(bytes);
+        return data.array();
+    }
+}
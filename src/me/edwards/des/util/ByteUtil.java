@@ -89,6 +89,25 @@ public class ByteUtil
     }
 
 
+    // -------------------------------------------------------------------------
+    /**
+     * Converts a byte array into a long integer
+     * 
+     * @param bytes
+     *            Byte array to convert
+     * @return Long integer representing the byte array
+     */
+    public static long bytesToLong(byte[] bytes)
+    {
+        long result = 0;
+        for (int i = 0; 8 > i; i++)
+        {
+            result = result << 8 | (0xff & bytes[i]);
+        }
+        return result;
+    }
+
+
     // -------------------------------------------------------------------------
     /**
      * Converts a hexadecimal String into a byte array
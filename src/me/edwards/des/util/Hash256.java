@@ -0,0 +1,278 @@
+/*============================================================================*\
+ | Copyright (C) 2015 Matthew Edwards                                         |
+ |                                                                            |
+ | Licensed under the Apache License, Version 2.0 (the "License"); you may    |
+ | not use this file except in compliance with the License. You may obtain a  |
+ | copy of the License at                                                     |
+ |                                                                            |
+ |     http://www.apache.org/licenses/LICENSE-2.0                             |
+ |                                                                            |
+ | Unless required by applicable law or agreed to in writing, software        |
+ | distributed under the License is distributed on an "AS IS" BASIS,          |
+ | WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   |
+ | See the License for the specific language governing permissions and        |
+ | limitations under the License.                                             |
+\*============================================================================*/
+
+package me.edwards.des.util;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// -----------------------------------------------------------------------------
+/**
+ * Immutable 256-bit hash, such as the hash of a {@link me.edwards.des.block.Block
+ * Block}, a Merkle Root or the root of a {@link me.edwards.des.block.Ballot
+ * Ballot}. The hash is held as its raw 32 bytes, which take a quarter of the
+ * memory of its hexadecimal String and are read from and written to packets
+ * without conversion. The hash code is taken from the first 8 bytes of the
+ * hash, which are already uniformly distributed, and equality compares those
+ * 8 bytes before the rest of the hash.<br>
+ * <br>
+ * The {@linkplain Hash256#toString() String form} of a hash is its 64-digit
+ * upper-case hexadecimal representation, which is used in logs and to compute
+ * Merkle Roots.<br>
+ * <br>
+ * Created on: Oct 17, 2026 at 7:12:45 AM
+ * 
+ * @author Matthew Edwards
+ */
+public final class Hash256
+{
+    // ~ Static/Instance variables .............................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Length, in bytes, of a hash
+     */
+    public static final int      LENGTH = 32;
+
+    /**
+     * Hash with all bits set to zero, used as the parent hash of the Genesis
+     * Block and as the Merkle Root of a Block without Ballots
+     */
+    public static final Hash256  ZERO   = new Hash256(new byte[LENGTH]);
+
+    private static final byte[]  DIGITS = "0123456789ABCDEF".getBytes();
+
+
+    // -------------------------------------------------------------------------
+    private final byte[]         bytes;
+    private final long           prefix;
+
+
+    // ~ Constructors ..........................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Creates new Hash256 holding the specified array.
+     * 
+     * @param bytes
+     *            32-byte hash, which must not be modified afterwards
+     */
+    private Hash256(byte[] bytes)
+    {
+        this.bytes = bytes;
+        this.prefix = ByteBuffer.wrap(bytes).getLong();
+    }
+
+
+    // ~ Methods ...............................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Creates a hash holding the specified array without copying it. The
+     * array must not be modified afterwards.
+     * 
+     * @param bytes
+     *            32-byte hash
+     * @return Hash holding the array
+     * @throws IllegalArgumentException
+     *             Thrown if the array is not 32 bytes long
+     */
+    public static Hash256 wrap(byte[] bytes)
+    {
+        if (bytes.length != LENGTH)
+        {
+            throw new IllegalArgumentException("Invalid hash length: "
+                + bytes.length);
+        }
+        return new Hash256(bytes);
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Creates a hash from 32 bytes of an array.
+     * 
+     * @param bytes
+     *            Array containing the hash
+     * @param offset
+     *            Offset of the first byte of the hash
+     * @return Hash holding a copy of the bytes
+     */
+    public static Hash256 copyOf(byte[] bytes, int offset)
+    {
+        return new Hash256(Arrays.copyOfRange(bytes, offset, offset + LENGTH));
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Reads a hash from the current position of a buffer, advancing the
+     * position by 32 bytes.
+     * 
+     * @param buffer
+     *            Buffer containing the hash
+     * @return Hash read from the buffer
+     */
+    public static Hash256 read(ByteBuffer buffer)
+    {
+        byte[] bytes = new byte[LENGTH];
+        buffer.get(bytes);
+        return new Hash256(bytes);
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Parses a hash from its hexadecimal representation. Hashes with fewer than
+     * 64 digits are padded with leading zeros.
+     * 
+     * @param hex
+     *            Hexadecimal hash of up to 64 digits
+     * @return Parsed hash
+     * @throws IllegalArgumentException
+     *             Thrown if the String is not a valid hash
+     */
+    public static Hash256 fromHex(String hex)
+    {
+        return wrap(ByteUtil.hexToBytes(HashUtil.generateLeadingZeros(hex)));
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Writes this hash at the current position of a buffer, advancing the
+     * position by 32 bytes.
+     * 
+     * @param buffer
+     *            Buffer receiving the hash
+     */
+    public void write(ByteBuffer buffer)
+    {
+        buffer.put(bytes);
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Copies this hash into an array.
+     * 
+     * @param dst
+     *            Array receiving the hash
+     * @param offset
+     *            Offset at which the 32 bytes are written
+     */
+    public void copyTo(byte[] dst, int offset)
+    {
+        System.arraycopy(bytes, 0, dst, offset, LENGTH);
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Writes the 64-digit upper-case hexadecimal representation of this hash as
+     * ASCII characters into an array, without creating a String.
+     * 
+     * @param dst
+     *            Array receiving the 64 characters
+     * @param offset
+     *            Offset of the first character
+     */
+    public void writeHex(byte[] dst, int offset)
+    {
+        writeHex(bytes, 0, dst, offset);
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Writes the 64-digit upper-case hexadecimal representation of a hash
+     * stored in an array as ASCII characters into another array.
+     * 
+     * @param src
+     *            Array containing the hash
+     * @param srcOffset
+     *            Offset of the first byte of the hash
+     * @param dst
+     *            Array receiving the 64 characters
+     * @param dstOffset
+     *            Offset of the first character
+     */
+    public static void writeHex(
+        byte[] src,
+        int srcOffset,
+        byte[] dst,
+        int dstOffset)
+    {
+        for (int i = 0; LENGTH > i; i++)
+        {
+            byte b = src[srcOffset + i];
+            dst[dstOffset + i * 2] = DIGITS[(b >> 4) & 0xF];
+            dst[dstOffset + i * 2 + 1] = DIGITS[b & 0xF];
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns a copy of the bytes of this hash.
+     * 
+     * @return 32-byte array
+     */
+    public byte[] toByteArray()
+    {
+        return bytes.clone();
+    }
+
+
+    // -------------------------------------------------------------------------
+    @Override
+    public int hashCode()
+    {
+        return (int) (prefix ^ (prefix >>> 32));
+    }
+
+
+    // -------------------------------------------------------------------------
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (this == obj)
+        {
+            return true;
+        }
+        return obj instanceof Hash256 && prefix == ((Hash256) obj).prefix
+            && Arrays.equals(bytes, ((Hash256) obj).bytes);
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the 64-digit upper-case hexadecimal representation of this hash.
+     * 
+     * @return Hexadecimal hash
+     */
+    @Override
+    public String toString()
+    {
+        char[] hex = new char[LENGTH * 2];
+        for (int i = 0; LENGTH > i; i++)
+        {
+            hex[i * 2] = (char) DIGITS[(bytes[i] >> 4) & 0xF];
+            hex[i * 2 + 1] = (char) DIGITS[bytes[i] & 0xF];
+        }
+        return new String(hex);
+    }
+}
@@ -17,11 +17,7 @@
 package me.edwards.des.util;
 
 import java.math.BigInteger;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.nio.ByteBuffer;
 import me.edwards.des.Node;
 import me.edwards.des.block.Block;
 
@@ -34,7 +30,9 @@ import me.edwards.des.block.Block;
  * SHA-256 is the hashing method used by this class, and all hashes (except for
  * Merkle Root hashes) are squared, also known as SHA-256^2, or
  * SHA-256(SHA-256(DATA)). This is meant to provide added security against a
- * pre-image attack.<br>
+ * pre-image attack. The Proof of Work itself is generated by the
+ * {@linkplain Miner}. Hashes are computed with the calling thread's reusable
+ * {@linkplain Sha256} digest.<br>
  * <br>
  * Created on: Oct 16, 2015 at 5:30:31 PM
  * 
@@ -44,8 +42,16 @@ public class HashUtil
 {
     // ~ Static/Instance variables .............................................
 
-    private static final Logger logger  = Logger.getLogger("DES.hashutil");
-    private static double       hashEst = -1;
+    private static final ThreadLocal<byte[]> buffers =
+        new ThreadLocal<byte[]>() {
+            @Override
+            protected byte[] initialValue()
+            {
+                return new byte[128];
+            }
+        };
+
+    private static double                    hashEst = -1;
 
 
     // ~ Methods ...............................................................
@@ -100,26 +106,13 @@ public class HashUtil
      *            Byte array representing a Block Header
      * @param proof
      *            Integer Proof of Work for the specified Block
-     * @return Hexadecimal String representing the hash of the Block Header
+     * @return Hash of the Block Header
      */
-    public static String generateBlockHash(byte[] bytes, int proof)
+    public static Hash256 generateBlockHash(byte[] bytes, int proof)
     {
-        try
-        {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            md.reset();
-            md.update(bytes);
-            md.update(ByteUtil.intToBytes(proof));
-            byte[] digest = md.digest();
-            md.reset();
-            md.update(digest);
-            return ByteUtil.bytesToHex(md.digest());
-        }
-        catch (NoSuchAlgorithmException e)
-        {
-            logger.log(Level.SEVERE, "generateBlockHash", e);
-        }
-        return null;
+        byte[] hash = new byte[Hash256.LENGTH];
+        Sha256.hashTwice(bytes, proof, hash, 0);
+        return Hash256.wrap(hash);
     }
 
 
@@ -129,25 +122,30 @@ public class HashUtil
      * 
      * @param bytes
      *            Byte Array from which to generate hash
-     * @return Hexadecimal String representing the hash of the data
+     * @return Hash of the data
      */
-    public static String generateHash(byte[] bytes)
+    public static Hash256 generateHash(byte[] bytes)
     {
-        try
-        {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            md.reset();
-            md.update(bytes);
-            byte[] digest = md.digest();
-            md.reset();
-            md.update(digest);
-            return generateLeadingZeros(ByteUtil.bytesToHex(md.digest()));
-        }
-        catch (NoSuchAlgorithmException e)
-        {
-            logger.log(Level.SEVERE, "generateHash", e);
-        }
-        return null;
+        byte[] hash = new byte[Hash256.LENGTH];
+        Sha256.hashTwice(bytes, 0, bytes.length, hash, 0);
+        return Hash256.wrap(hash);
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Generates a hash from the remaining bytes of a buffer, without copying
+     * them. The position of the buffer is not changed.
+     * 
+     * @param data
+     *            Buffer from which to generate hash
+     * @return Hash of the data
+     */
+    public static Hash256 generateHash(ByteBuffer data)
+    {
+        byte[] hash = new byte[Hash256.LENGTH];
+        Sha256.hashTwice(data, hash, 0);
+        return Hash256.wrap(hash);
     }
 
 
@@ -168,130 +166,9 @@ public class HashUtil
      */
     public static boolean validateProof(byte[] bytes, int proof, int target)
     {
-        try
-        {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            md.reset();
-            md.update(bytes);
-            md.update(ByteUtil.intToBytes(proof));
-            byte[] digest = md.digest();
-            md.reset();
-            md.update(digest);
-            return validateHash(
-                new BigInteger(1, md.digest()),
-                Block.getTarget(target));
-        }
-        catch (NoSuchAlgorithmException e)
-        {
-            logger.log(Level.SEVERE, "validateProof", e);
-        }
-        return false;
-    }
-
-
-    // -------------------------------------------------------------------------
-    /**
-     * Generates the Proof of Work for a given {@link Block Block} using the
-     * Block Header. This algorithm is based on methods used in Adam Back's <a
-     * href="http://en.wikipedia.org/wiki/Hashcash">Hashcash</a>, an anti-spam
-     * solution for email. The generation of the Proof of Work requires the most
-     * time and resources during the mining process. It is based on the
-     * difficulty of finding the pre-image of a hash. Theoretically, any hash
-     * String of 64 characters can be created, but it is difficult to compute
-     * the data that will result in the desired hash.<br>
-     * <br>
-     * For example, let's make a rule that a valid data hash will begin with
-     * three zeros. Hashing "Hello" using SHA-256^2 would give a hash of
-     * 70BC18BEF5AE66B72D1995F8DB90A583A60D77B4066E4653F1CEAD613025861C. In
-     * order to find a pre-image that will result in a valid hash, a nonce
-     * (single-use value) will be randomly generated and appended to the
-     * original data. If the nonce 6591 is appended to our original data,
-     * hashing "Hello6591" using SHA-256^2 yields a hash of
-     * 0008A883DACB7094D6DA1A6CEFC6E7CBC13635D024AC15152C4EADBA7AF8D11C, which
-     * is valid with the three zero rule.<br>
-     * <br>
-     * To successfully generate a Block, a challenge must be declared, called
-     * the Target. The hash resulting from the Block Header and a Proof of Work
-     * (nonce), called the solution, must be less than the Target. This usually
-     * causes a number of zero bits at the beginning of each hash, which is why
-     * the hash of every generated Block starts with a specific number of zeros.
-     * As the target decreases, the difficulty to generate each proof, and
-     * therefore the time it takes to generate a Block, increases. Because the
-     * beginning nonce is initialized with a secure random long (64-bit integer)
-     * on each Node, finding a valid solution is essentially a lottery among
-     * each Node in the network.<br>
-     * <br>
-     * A Proof of Work is implemented in order to prevent manipulation of the
-     * BlockChain. The network can produce a new valid Block every few minutes
-     * as it may have hundreds or thousands of Miner Nodes all working to find a
-     * valid proof for a Block. This means generating a new Block for the
-     * BlockChain is a minor inconvenience to the network, as it may take a few
-     * minutes to generate a single Block. However, it is almost infeasible for
-     * any one Node to generate a valid Block on its own. A target allowing
-     * Blocks to generate every five minutes on the network, on average, could
-     * take a single Node several decades, on average. Therefore, to manipulate
-     * the BlockChain using falsely generated Blocks or to change previously
-     * added Blocks would require infeasible amounts of processing power, in
-     * addition to 51% of Nodes on the network (See 51% Attack).<br>
-     * <br>
-     * The network can be configured to generate Blocks after a fixed time, on
-     * average. The target adjustment after Block generation can keep the
-     * configured time between Blocks fixed by increasing or decreasing the
-     * target. If more Miner Nodes were added to the network, Block generation
-     * would be faster, on average. The target would be adjusted to then
-     * increase the difficulty of each subsequent Block bringing the average
-     * Block generation time back to the configured time. (The fixed time is an
-     * average as Proof of Work generation is a lottery, and a Node's ability to
-     * mine a valid hash is largely based on luck. Half the time a Node can
-     * generate a Block faster than the desired time.)
-     * 
-     * @param bytes
-     *            The Block Header in binary format
-     * @param target
-     *            The hash must be less than the target to be valid (increasing
-     *            the difficulty to create a proof with the power and speed of
-     *            the network).
-     * @return Integer Proof of Work for the specified Block (Nonce to generate
-     *         Block's hash)
-     * @throws InterruptedException Thrown if the Thread is interrupted by {@linkplain Node#stopBlockGeneration()}.
-     */
-    public static int generateProof(byte[] bytes, int target) throws InterruptedException
-    {
-        try
-        {
-            logger.fine("Generating Hash ...");
-            SecureRandom rnd = SecureRandom.getInstance("SHA1PRNG");
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            BigInteger digest = Block.getTarget(Block.MAXIMUM_TARGET);
-            int nonce = rnd.nextInt();
-            long time = System.currentTimeMillis();
-            BigInteger tar = Block.getTarget(target);
-            while (!validateHash(digest, tar))
-            {
-                if (Thread.currentThread().isInterrupted())
-                {
-                    throw new InterruptedException();
-                }
-                nonce++;
-                md.reset();
-                md.update(bytes);
-                md.update(ByteUtil.intToBytes(nonce));
-                byte[] digestBytes = md.digest();
-                md.reset();
-                md.update(digestBytes);
-                digest = new BigInteger(1, md.digest());
-            }
-            logger.fine("Proof generated in "
-                + ((System.currentTimeMillis() - time) / 1000) + " seconds.");
-            logger.fine("Nonce: " + nonce);
-            logger.fine(generateLeadingZeros(digest.toString(16)));
-            return nonce;
-        }
-        catch (NoSuchAlgorithmException e)
-        {
-            logger.log(Level.SEVERE, "generateProof", e);
-        }
-        return 0;
+        byte[] hash = new byte[Sha256.LENGTH];
+        Sha256.hashTwice(bytes, proof, hash, 0);
+        return validateHash(new BigInteger(1, hash), Block.getTarget(target));
     }
 
 
@@ -321,7 +198,11 @@ public class HashUtil
      * leaf nodes. Merkle Roots allow efficient and secure verification of the
      * contents of large data structures. A change in one of the leaf nodes
      * would result in a completely different Merkle Root, as all changes would
-     * be propagated in the tree.
+     * be propagated in the tree.<br>
+     * <br>
+     * The roots are hashed as their ASCII hexadecimal representations, which
+     * are written into a reusable buffer of the calling thread instead of being
+     * converted to Strings.
      * 
      * @param root1
      *            First Merkle Root
@@ -329,21 +210,47 @@ public class HashUtil
      *            Second Merkle Root
      * @return Merkle Root of root1 and root2
      */
-    public static String generateMerkleRoot(String root1, String root2)
+    public static Hash256 generateMerkleRoot(Hash256 root1, Hash256 root2)
     {
-        try
-        {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            md.reset();
-            md.update(root1.getBytes());
-            md.update(root2.getBytes());
-            return generateLeadingZeros(ByteUtil.bytesToHex(md.digest()));
-        }
-        catch (NoSuchAlgorithmException e)
-        {
-            logger.log(Level.SEVERE, "generateMerkleRoot", e);
-        }
-        return null;
+        byte[] buffer = buffers.get();
+        root1.writeHex(buffer, 0);
+        root2.writeHex(buffer, Hash256.LENGTH * 2);
+        byte[] hash = new byte[Hash256.LENGTH];
+        Sha256.hash(buffer, 0, Hash256.LENGTH * 4, hash, 0);
+        return Hash256.wrap(hash);
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Generates a Merkle Root hash based on two other Merkle Roots stored in an
+     * array, writing it into an array. The result is the same as
+     * {@linkplain HashUtil#generateMerkleRoot(Hash256, Hash256)}, but no
+     * object is created, which lets a {@link me.edwards.des.block.MerkleTree
+     * MerkleTree} hash its nodes in place.
+     * 
+     * @param hashes
+     *            Array containing both Merkle Roots
+     * @param root1
+     *            Offset of the first Merkle Root
+     * @param root2
+     *            Offset of the second Merkle Root
+     * @param out
+     *            Array receiving the Merkle Root of root1 and root2
+     * @param outOffset
+     *            Offset at which the 32-byte Merkle Root is written
+     */
+    public static void generateMerkleRoot(
+        byte[] hashes,
+        int root1,
+        int root2,
+        byte[] out,
+        int outOffset)
+    {
+        byte[] buffer = buffers.get();
+        Hash256.writeHex(hashes, root1, buffer, 0);
+        Hash256.writeHex(hashes, root2, buffer, Hash256.LENGTH * 2);
+        Sha256.hash(buffer, 0, Hash256.LENGTH * 4, out, outOffset);
     }
 
 
@@ -361,77 +268,65 @@ public class HashUtil
     {
         if (hashEst == -1)
         {
-            try
+            int hashes = 0;
+            long time = System.currentTimeMillis();
+            byte[] hash = new byte[Sha256.LENGTH];
+            while (System.currentTimeMillis() < time + 125)
             {
-                int hashes = 0;
-                long time = System.currentTimeMillis();
-                MessageDigest md = MessageDigest.getInstance("SHA-256");
-                while (System.currentTimeMillis() < time + 125)
+                Sha256.hashTwice(new byte[0], 0, hash, 0);
+                hashes++;
+            }
+            hashes *= 8;
+            byte[] bytes =
+                Block.getTarget(Block.MAXIMUM_TARGET).toByteArray();
+            int zeros = (32 - bytes.length) * 8;
+            for (int i = 0; bytes.length > i; i++)
+            {
+                if (bytes[i] < (byte)0)
                 {
-                    md.reset();
-                    md.update(ByteUtil.intToBytes(0));
-                    byte[] digest = md.digest();
-                    md.reset();
-                    md.update(digest);
-                    md.digest();
-                    hashes++;
+                    break;
                 }
-                hashes *= 8;
-                byte[] bytes =
-                    Block.getTarget(Block.MAXIMUM_TARGET).toByteArray();
-                int zeros = (32 - bytes.length) * 8;
-                for (int i = 0; bytes.length > i; i++)
+                else if (bytes[i] > (byte)63)
                 {
-                    if (bytes[i] < (byte)0)
-                    {
-                        break;
-                    }
-                    else if (bytes[i] > (byte)63)
-                    {
-                        zeros += 1;
-                        break;
-                    }
-                    else if (bytes[i] > (byte)31)
-                    {
-                        zeros += 2;
-                        break;
-                    }
-                    else if (bytes[i] > (byte)15)
-                    {
-                        zeros += 3;
-                        break;
-                    }
-                    else if (bytes[i] > (byte)7)
-                    {
-                        zeros += 4;
-                        break;
-                    }
-                    else if (bytes[i] > (byte)3)
-                    {
-                        zeros += 5;
-                        break;
-                    }
-                    else if (bytes[i] > (byte)1)
-                    {
-                        zeros += 6;
-                        break;
-                    }
-                    else if (bytes[i] > (byte)0)
-                    {
-                        zeros += 7;
-                        break;
-                    }
-                    else
-                    {
-                        zeros += 8;
-                    }
+                    zeros += 1;
+                    break;
+                }
+                else if (bytes[i] > (byte)31)
+                {
+                    zeros += 2;
+                    break;
+                }
+                else if (bytes[i] > (byte)15)
+                {
+                    zeros += 3;
+                    break;
+                }
+                else if (bytes[i] > (byte)7)
+                {
+                    zeros += 4;
+                    break;
+                }
+                else if (bytes[i] > (byte)3)
+                {
+                    zeros += 5;
+                    break;
+                }
+                else if (bytes[i] > (byte)1)
+                {
+                    zeros += 6;
+                    break;
+                }
+                else if (bytes[i] > (byte)0)
+                {
+                    zeros += 7;
+                    break;
+                }
+                else
+                {
+                    zeros += 8;
                 }
-                hashEst = Math.pow(2, zeros) / hashes;
-            }
-            catch (NoSuchAlgorithmException e)
-            {
-                logger.log(Level.SEVERE, "estimateTime", e);
             }
+            hashEst = Math.pow(2, zeros) / hashes;
         }
         return (int)(difficulty * hashEst);
     }
@@ -0,0 +1,45 @@
+/*============================================================================*\
+ | Copyright (C) 2015 Matthew Edwards                                         |
+ |                                                                            |
+ | Licensed under the Apache License, Version 2.0 (the "License"); you may    |
+ | not use this file except in compliance with the License. You may obtain a  |
+ | copy of the License at                                                     |
+ |                                                                            |
+ |     http://www.apache.org/licenses/LICENSE-2.0                             |
+ |                                                                            |
+ | Unless required by applicable law or agreed to in writing, software        |
+ | distributed under the License is distributed on an "AS IS" BASIS,          |
+ | WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   |
+ | See the License for the specific language governing permissions and        |
+ | limitations under the License.                                             |
+\*============================================================================*/
+
+package me.edwards.des.util;
+
+// -----------------------------------------------------------------------------
+/**
+ * Supplies the Block Header mined by the {@link Miner Miner}. The header may
+ * be replaced while a Proof of Work is generated, for instance when Ballots are
+ * added to a {@link me.edwards.des.block.BlockTemplate BlockTemplate}, and the
+ * workers of the Miner pick up the new header at the boundaries of their nonce
+ * ranges.<br>
+ * <br>
+ * Created on: Oct 17, 2026 at 9:12:40 AM
+ * 
+ * @author Matthew Edwards
+ */
+public interface HeaderSource
+{
+    // ~ Methods ...............................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the current Block Header. This method is called concurrently by
+     * the workers of the Miner, so it must be thread-safe and return quickly.
+     * The returned array must not be modified afterwards; a new header is
+     * returned as a new array.
+     * 
+     * @return 80-byte Block Header in binary format
+     */
+    public byte[] getHeader();
+}
@@ -0,0 +1,227 @@
+/*============================================================================*\
+ | Copyright (C) 2015 Matthew Edwards                                         |
+ |                                                                            |
+ | Licensed under the Apache License, Version 2.0 (the "License"); you may    |
+ | not use this file except in compliance with the License. You may obtain a  |
+ | copy of the License at                                                     |
+ |                                                                            |
+ |     http://www.apache.org/licenses/LICENSE-2.0                             |
+ |                                                                            |
+ | Unless required by applicable law or agreed to in writing, software        |
+ | distributed under the License is distributed on an "AS IS" BASIS,          |
+ | WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   |
+ | See the License for the specific language governing permissions and        |
+ | limitations under the License.                                             |
+\*============================================================================*/
+
+package me.edwards.des.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// -----------------------------------------------------------------------------
+/**
+ * Thread-safe histogram of latencies with a fixed relative precision, in the
+ * style of an HDR histogram. Values below {@link LatencyHistogram#SUB_BUCKETS
+ * SUB_BUCKETS} are counted exactly. Larger values are counted in logarithmic
+ * buckets (one per power of two), each split into SUB_BUCKETS / 2 linear
+ * sub-buckets, so every recorded value is reported within about 1.6% of its
+ * true value regardless of its magnitude. Recording is a single atomic
+ * increment, so many threads can record into the same histogram without
+ * locking.<br>
+ * <br>
+ * Created on: Oct 17, 2026 at 5:52:37 AM
+ * 
+ * @author Matthew Edwards
+ */
+public class LatencyHistogram
+{
+    // ~ Static/Instance variables .............................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Number of values counted exactly, and twice the number of sub-buckets of
+     * each power of two above them
+     */
+    public static final int  SUB_BUCKETS = 128;
+
+    private static final int SUB_BITS    = 7;
+    private static final int HALF        = SUB_BUCKETS / 2;
+
+
+    // -------------------------------------------------------------------------
+    private AtomicLongArray  counts;
+    private AtomicLong       count;
+    private AtomicLong       total;
+    private AtomicLong       max;
+
+
+    // ~ Constructors ..........................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Creates new, empty LatencyHistogram covering all non-negative long
+     * values.
+     */
+    public LatencyHistogram()
+    {
+        this.counts =
+            new AtomicLongArray(getIndex(Long.MAX_VALUE) + 1);
+        this.count = new AtomicLong();
+        this.total = new AtomicLong();
+        this.max = new AtomicLong();
+    }
+
+
+    // ~ Methods ...............................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Records a value. Negative values are recorded as 0.
+     * 
+     * @param value
+     *            Value to record (e.g. a latency in milliseconds)
+     */
+    public void record(long value)
+    {
+        if (value < 0)
+        {
+            value = 0;
+        }
+        counts.incrementAndGet(getIndex(value));
+        count.incrementAndGet();
+        total.addAndGet(value);
+        long m = max.get();
+        while (value > m && !max.compareAndSet(m, value))
+        {
+            m = max.get();
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the value at a percentile of the recorded values. The value is
+     * the highest value of the bucket containing the percentile, so it is never
+     * lower than the exact percentile.
+     * 
+     * @param percentile
+     *            Percentile between 0 and 100
+     * @return Value at the percentile, or 0 if no value was recorded
+     */
+    public long getPercentile(double percentile)
+    {
+        long recorded = count.get();
+        if (recorded == 0)
+        {
+            return 0;
+        }
+        long target =
+            Math.max(1, (long) Math.ceil(recorded * percentile / 100));
+        long seen = 0;
+        for (int i = 0; counts.length() > i; i++)
+        {
+            seen += counts.get(i);
+            if (seen >= target)
+            {
+                return Math.min(getHighestValue(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the number of recorded values.
+     * 
+     * @return Number of values
+     */
+    public long getCount()
+    {
+        return count.get();
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the mean of the recorded values.
+     * 
+     * @return Mean value, or 0 if no value was recorded
+     */
+    public double getMean()
+    {
+        long recorded = count.get();
+        return recorded == 0 ? 0 : (double) total.get() / recorded;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the largest recorded value.
+     * 
+     * @return Maximum value, or 0 if no value was recorded
+     */
+    public long getMax()
+    {
+        return max.get();
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Formats the count, mean and common percentiles of the recorded values
+     * into a human-readable String.
+     * 
+     * @param unit
+     *            Unit of the recorded values, appended to every value
+     * @return Summary of the histogram
+     */
+    public String toString(String unit)
+    {
+        return getCount() + " samples, mean " + (long) getMean() + unit
+            + ", p50 " + getPercentile(50) + unit + ", p90 "
+            + getPercentile(90) + unit + ", p99 " + getPercentile(99) + unit
+            + ", p99.9 " + getPercentile(99.9) + unit + ", max " + getMax()
+            + unit;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the index of the bucket counting a value.
+     * 
+     * @param value
+     *            Non-negative value
+     * @return Bucket index
+     */
+    private static int getIndex(long value)
+    {
+        if (SUB_BUCKETS > value)
+        {
+            return (int) value;
+        }
+        int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return shift * HALF + (int) (value >>> shift);
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the highest value counted by a bucket.
+     * 
+     * @param index
+     *            Bucket index
+     * @return Highest value of the bucket
+     */
+    private static long getHighestValue(int index)
+    {
+        if (SUB_BUCKETS > index)
+        {
+            return index;
+        }
+        int shift = index / HALF - 1;
+        long mantissa = index - shift * HALF;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,249 @@
+/*============================================================================*\
+ | Copyright (C) 2015 Matthew Edwards                                         |
+ |                                                                            |
+ | Licensed under the Apache License, Version 2.0 (the "License"); you may    |
+ | not use this file except in compliance with the License. You may obtain a  |
+ | copy of the License at                                                     |
+ |                                                                            |
+ |     http://www.apache.org/licenses/LICENSE-2.0                             |
+ |                                                                            |
+ | Unless required by applicable law or agreed to in writing, software        |
+ | distributed under the License is distributed on an "AS IS" BASIS,          |
+ | WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   |
+ | See the License for the specific language governing permissions and        |
+ | limitations under the License.                                             |
+\*============================================================================*/
+
+package me.edwards.des.util;
+
+import me.edwards.des.block.Block;
+
+// -----------------------------------------------------------------------------
+/**
+ * Specialized SHA-256^2 hasher for searching the nonce of a {@link Block
+ * Block}. The hash of a Block is computed over its 80-byte header followed by
+ * the 4-byte nonce, which SHA-256 processes as two 64-byte chunks. Only the
+ * second chunk contains the nonce, so the state after the first chunk (the
+ * midstate) is computed once when the hasher is created. Each
+ * {@linkplain MidstateHasher#hash(int) hash} then compresses only the second
+ * chunk and the 32-byte digest of the second round, and compares the result to
+ * the target as integers without allocating any objects.<br>
+ * <br>
+ * A hasher is not thread-safe. Each mining thread uses its own hasher.<br>
+ * <br>
+ * Created on: Oct 17, 2026 at 1:22:37 AM
+ * 
+ * @author Matthew Edwards
+ */
+public class MidstateHasher
+{
+    // ~ Static/Instance variables .............................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Size, in bytes, of a Block header without the nonce
+     */
+    public static final int    HEADER_SIZE = 80;
+
+    private static final int[] IV          = { 0x6a09e667, 0xbb67ae85,
+        0x3c6ef372, 0xa54ff53a, 0x510e527f, 0x9b05688c, 0x1f83d9ab, 0x5be0cd19 };
+
+    private static final int[] K           = { 0x428a2f98, 0x71374491,
+        0xb5c0fbcf, 0xe9b5dba5, 0x3956c25b, 0x59f111f1, 0x923f82a4, 0xab1c5ed5,
+        0xd807aa98, 0x12835b01, 0x243185be, 0x550c7dc3, 0x72be5d74, 0x80deb1fe,
+        0x9bdc06a7, 0xc19bf174, 0xe49b69c1, 0xefbe4786, 0x0fc19dc6, 0x240ca1cc,
+        0x2de92c6f, 0x4a7484aa, 0x5cb0a9dc, 0x76f988da, 0x983e5152, 0xa831c66d,
+        0xb00327c8, 0xbf597fc7, 0xc6e00bf3, 0xd5a79147, 0x06ca6351, 0x14292967,
+        0x27b70a85, 0x2e1b2138, 0x4d2c6dfc, 0x53380d13, 0x650a7354, 0x766a0abb,
+        0x81c2c92e, 0x92722c85, 0xa2bfe8a1, 0xa81a664b, 0xc24b8b70, 0xc76c51a3,
+        0xd192e819, 0xd6990624, 0xf40e3585, 0x106aa070, 0x19a4c116, 0x1e376c08,
+        0x2748774c, 0x34b0bcb5, 0x391c0cb3, 0x4ed8aa4a, 0x5b9cca4f, 0x682e6ff3,
+        0x748f82ee, 0x78a5636f, 0x84c87814, 0x8cc70208, 0x90befffa, 0xa4506ceb,
+        0xbef9a3f7, 0xc67178f2                                             };
+
+
+    // -------------------------------------------------------------------------
+    private final int[]        midstate    = new int[8];
+    private final int[]        tail        = new int[16];
+    private final int[]        inner       = new int[16];
+    private final int[]        digest      = new int[8];
+    private final int[]        target      = new int[8];
+    private final int[]        w           = new int[64];
+
+
+    // ~ Constructors ..........................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Creates new MidstateHasher for the specified Block header and target.
+     * 
+     * @param header
+     *            80-byte Block header without the nonce
+     * @param target
+     *            Target as a 32-byte unsigned big-endian array. A hash is valid
+     *            if it is less than the target.
+     * @throws IllegalArgumentException
+     *             Thrown if the header or target has an invalid length
+     */
+    public MidstateHasher(byte[] header, byte[] target)
+    {
+        if (header.length != HEADER_SIZE || target.length != 32)
+        {
+            throw new IllegalArgumentException("Invalid header or target");
+        }
+        int[] chunk = new int[16];
+        for (int i = 0; 16 > i; i++)
+        {
+            chunk[i] = readInt(header, i * 4);
+        }
+        System.arraycopy(IV, 0, midstate, 0, 8);
+        compress(midstate, chunk, midstate);
+
+        // Second chunk: last 16 header bytes, nonce, padding and the length
+        // of the message (84 bytes) in bits.
+        for (int i = 0; 4 > i; i++)
+        {
+            tail[i] = readInt(header, 64 + i * 4);
+        }
+        tail[5] = 0x80000000;
+        tail[15] = (HEADER_SIZE + 4) * 8;
+
+        // Second round: 32-byte digest, padding and the length in bits.
+        inner[8] = 0x80000000;
+        inner[15] = 32 * 8;
+
+        for (int i = 0; 8 > i; i++)
+        {
+            this.target[i] = readInt(target, i * 4);
+        }
+    }
+
+
+    // ~ Methods ...............................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Computes the SHA-256^2 hash of the header followed by the specified
+     * nonce, and compares it to the target.
+     * 
+     * @param nonce
+     *            Nonce to append to the header
+     * @return True if the hash is less than the target, False otherwise
+     */
+    public boolean hash(int nonce)
+    {
+        tail[4] = nonce;
+        compress(midstate, tail, inner);
+        compress(IV, inner, digest);
+        for (int i = 0; 8 > i; i++)
+        {
+            int h = digest[i] ^ 0x80000000;
+            int t = target[i] ^ 0x80000000;
+            if (h != t)
+            {
+                return h < t;
+            }
+        }
+        return false;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the hash computed by the last call to
+     * {@linkplain MidstateHasher#hash(int)}.
+     * 
+     * @return 32-byte hash
+     */
+    public byte[] getHash()
+    {
+        byte[] bytes = new byte[32];
+        for (int i = 0; 8 > i; i++)
+        {
+            bytes[i * 4] = (byte) (digest[i] >>> 24);
+            bytes[i * 4 + 1] = (byte) (digest[i] >>> 16);
+            bytes[i * 4 + 2] = (byte) (digest[i] >>> 8);
+            bytes[i * 4 + 3] = (byte) digest[i];
+        }
+        return bytes;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Applies the SHA-256 compression function to a 64-byte chunk. Only the
+     * first eight words of the output array are written, so the output may be
+     * the first eight words of a chunk.
+     * 
+     * @param state
+     *            Hash state before the chunk
+     * @param chunk
+     *            Chunk as 16 big-endian words
+     * @param out
+     *            Array receiving the hash state after the chunk
+     */
+    private void compress(int[] state, int[] chunk, int[] out)
+    {
+        System.arraycopy(chunk, 0, w, 0, 16);
+        for (int i = 16; 64 > i; i++)
+        {
+            int x = w[i - 15];
+            int y = w[i - 2];
+            int s0 = (x >>> 7 | x << 25) ^ (x >>> 18 | x << 14) ^ (x >>> 3);
+            int s1 = (y >>> 17 | y << 15) ^ (y >>> 19 | y << 13) ^ (y >>> 10);
+            w[i] = w[i - 16] + s0 + w[i - 7] + s1;
+        }
+
+        int a = state[0];
+        int b = state[1];
+        int c = state[2];
+        int d = state[3];
+        int e = state[4];
+        int f = state[5];
+        int g = state[6];
+        int h = state[7];
+        for (int i = 0; 64 > i; i++)
+        {
+            int s1 = (e >>> 6 | e << 26) ^ (e >>> 11 | e << 21)
+                ^ (e >>> 25 | e << 7);
+            int t1 = h + s1 + ((e & f) ^ (~e & g)) + K[i] + w[i];
+            int s0 = (a >>> 2 | a << 30) ^ (a >>> 13 | a << 19)
+                ^ (a >>> 22 | a << 10);
+            int t2 = s0 + ((a & b) ^ (a & c) ^ (b & c));
+            h = g;
+            g = f;
+            f = e;
+            e = d + t1;
+            d = c;
+            c = b;
+            b = a;
+            a = t1 + t2;
+        }
+
+        out[0] = state[0] + a;
+        out[1] = state[1] + b;
+        out[2] = state[2] + c;
+        out[3] = state[3] + d;
+        out[4] = state[4] + e;
+        out[5] = state[5] + f;
+        out[6] = state[6] + g;
+        out[7] = state[7] + h;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Reads a big-endian integer from a byte array.
+     * 
+     * @param bytes
+     *            Byte array
+     * @param offset
+     *            Offset of the first byte
+     * @return Integer at the offset
+     */
+    private static int readInt(byte[] bytes, int offset)
+    {
+        return (bytes[offset] & 0xFF) << 24 | (bytes[offset + 1] & 0xFF) << 16
+            | (bytes[offset + 2] & 0xFF) << 8 | (bytes[offset + 3] & 0xFF);
+    }
+}
@@ -0,0 +1,529 @@
+/*============================================================================*\
+ | Copyright (C) 2015 Matthew Edwards                                         |
+ |                                                                            |
+ | Licensed under the Apache License, Version 2.0 (the "License"); you may    |
+ | not use this file except in compliance with the License. You may obtain a  |
+ | copy of the License at                                                     |
+ |                                                                            |
+ |     http://www.apache.org/licenses/LICENSE-2.0                             |
+ |                                                                            |
+ | Unless required by applicable law or agreed to in writing, software        |
+ | distributed under the License is distributed on an "AS IS" BASIS,          |
+ | WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   |
+ | See the License for the specific language governing permissions and        |
+ | limitations under the License.                                             |
+\*============================================================================*/
+
+package me.edwards.des.util;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import me.edwards.des.Node;
+import me.edwards.des.block.Block;
+
+// -----------------------------------------------------------------------------
+/**
+ * Generates the Proof of Work for {@link Block Blocks} on multiple threads.
+ * This algorithm is based on methods used in Adam Back's <a
+ * href="http://en.wikipedia.org/wiki/Hashcash">Hashcash</a>, an anti-spam
+ * solution for email. The generation of the Proof of Work requires the most
+ * time and resources during the mining process. It is based on the difficulty
+ * of finding the pre-image of a hash. Theoretically, any hash String of 64
+ * characters can be created, but it is difficult to compute the data that will
+ * result in the desired hash.<br>
+ * <br>
+ * For example, let's make a rule that a valid data hash will begin with three
+ * zeros. Hashing "Hello" using SHA-256^2 would give a hash of
+ * 70BC18BEF5AE66B72D1995F8DB90A583A60D77B4066E4653F1CEAD613025861C. In order
+ * to find a pre-image that will result in a valid hash, a nonce (single-use
+ * value) will be randomly generated and appended to the original data. If the
+ * nonce 6591 is appended to our original data, hashing "Hello6591" using
+ * SHA-256^2 yields a hash of
+ * 0008A883DACB7094D6DA1A6CEFC6E7CBC13635D024AC15152C4EADBA7AF8D11C, which is
+ * valid with the three zero rule.<br>
+ * <br>
+ * To successfully generate a Block, a challenge must be declared, called the
+ * Target. The hash resulting from the Block Header and a Proof of Work
+ * (nonce), called the solution, must be less than the Target. This usually
+ * causes a number of zero bits at the beginning of each hash, which is why the
+ * hash of every generated Block starts with a specific number of zeros. As the
+ * target decreases, the difficulty to generate each proof, and therefore the
+ * time it takes to generate a Block, increases. Because the beginning nonce is
+ * initialized with a secure random integer on each Node, finding a valid
+ * solution is essentially a lottery among each Node in the network.<br>
+ * <br>
+ * A Proof of Work is implemented in order to prevent manipulation of the
+ * BlockChain. The network can produce a new valid Block every few minutes as
+ * it may have hundreds or thousands of Miner Nodes all working to find a valid
+ * proof for a Block. This means generating a new Block for the BlockChain is a
+ * minor inconvenience to the network, as it may take a few minutes to generate
+ * a single Block. However, it is almost infeasible for any one Node to
+ * generate a valid Block on its own. Therefore, to manipulate the BlockChain
+ * using falsely generated Blocks or to change previously added Blocks would
+ * require infeasible amounts of processing power, in addition to 51% of Nodes
+ * on the network (See 51% Attack).<br>
+ * <br>
+ * The 32-bit nonce space is split into one contiguous range per worker thread,
+ * starting at a random nonce. Each worker hashes with its own
+ * {@linkplain MidstateHasher}. The workers share a fixed pool of daemon threads
+ * (one per available processor by default, see
+ * {@linkplain Miner#setThreads(int)}), and all workers stop as soon as one of
+ * them finds a solution, one of them fails, or the mining thread is
+ * interrupted. Headers are read
+ * from a {@linkplain HeaderSource}, which each worker checks for a new header
+ * every {@link Miner#RANGE} nonces, so the header can be refreshed without
+ * restarting the search.<br>
+ * <br>
+ * Created on: Oct 17, 2026 at 12:41:08 AM
+ * 
+ * @author Matthew Edwards
+ */
+public class Miner
+{
+    // ~ Static/Instance variables .............................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Number of nonces in the nonce space
+     */
+    private static final long     NONCES   = 1L << 32;
+
+    /**
+     * Number of hashes a worker computes between updates of the hash counter
+     */
+    private static final int      BATCH    = 4096;
+
+    /**
+     * Number of nonces a worker searches before it checks its
+     * {@link HeaderSource HeaderSource} for a new header
+     */
+    private static final int      RANGE    = 1 << 16;
+
+    private static final Logger   logger   = Logger.getLogger("DES.miner");
+    private static final AtomicLong hashes = new AtomicLong();
+
+    private static int            threads  = Runtime.getRuntime()
+                                               .availableProcessors();
+    private static ExecutorService pool;
+    private static volatile Job   current;
+
+
+    // ~ Methods ...............................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Generates the Proof of Work for a given {@link Block Block} using the
+     * Block Header. Blocks the calling thread until a solution is found, the
+     * whole nonce space has been searched, or the calling thread is
+     * interrupted.
+     * 
+     * @param header
+     *            The 80-byte Block Header in binary format
+     * @param target
+     *            {@link Block#getTarget(int) Target} in shorthand form. The
+     *            hash must be less than the target to be valid (increasing the
+     *            difficulty to create a proof with the power and speed of the
+     *            network).
+     * @return Proof of Work for the specified Block (Nonce to generate the
+     *         Block's hash) as an unsigned integer, or -1 if no nonce results
+     *         in a valid hash. In that case the header must be changed (for
+     *         example by updating its time) before mining again.
+     * @throws InterruptedException
+     *             Thrown if the Thread is interrupted by
+     *             {@linkplain Node#stopBlockGeneration()}. All workers are
+     *             told to stop before this exception is thrown.
+     * @throws RuntimeException
+     *             Thrown if a worker failed, for example because the header
+     *             is invalid. The exception of the worker is rethrown.
+     */
+    public static long mine(final byte[] header, int target)
+        throws InterruptedException
+    {
+        byte[] solution = mine(new HeaderSource() {
+            @Override
+            public byte[] getHeader()
+            {
+                return header;
+            }
+        }, target);
+        if (solution == null)
+        {
+            return -1;
+        }
+        return ByteBuffer.wrap(solution).getInt(MidstateHasher.HEADER_SIZE)
+            & 0xFFFFFFFFL;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Generates the Proof of Work for the header supplied by a
+     * {@link HeaderSource HeaderSource}. The header may change while the
+     * Proof of Work is generated; each worker picks up the current header
+     * every {@link Miner#RANGE} nonces and continues its range of the nonce
+     * space with it. Blocks the calling thread until a solution is found, the
+     * whole nonce space has been searched, or the calling thread is
+     * interrupted.
+     * 
+     * @param source
+     *            Source of the 80-byte Block Header in binary format
+     * @param target
+     *            {@link Block#getTarget(int) Target} in shorthand form
+     * @return 84-byte array containing the header for which a solution was
+     *         found, followed by the nonce, or null if the whole nonce space
+     *         was searched without a solution. In that case the header must
+     *         be changed (for example by updating its time) before mining
+     *         again.
+     * @throws InterruptedException
+     *             Thrown if the Thread is interrupted by
+     *             {@linkplain Node#stopBlockGeneration()}. All workers are
+     *             told to stop before this exception is thrown.
+     * @throws RuntimeException
+     *             Thrown if a worker failed, for example because the
+     *             {@link HeaderSource HeaderSource} supplied an invalid
+     *             header. The exception of the worker is rethrown.
+     */
+    public static byte[] mine(HeaderSource source, int target)
+        throws InterruptedException
+    {
+        logger.fine("Generating Hash ...");
+        int workers = getThreads();
+        ExecutorService executor = getPool();
+        byte[] targetBytes = toBytes(Block.getTarget(target));
+        long start = new SecureRandom().nextInt() & 0xFFFFFFFFL;
+        long range = NONCES / workers;
+
+        Job job = new Job(workers);
+        current = job;
+        for (int i = 0; workers > i; i++)
+        {
+            executor.execute(new Worker(
+                job,
+                source,
+                targetBytes,
+                start + i * range,
+                i == workers - 1 ? NONCES - i * range : range));
+        }
+        try
+        {
+            job.latch.await();
+        }
+        catch (InterruptedException e)
+        {
+            job.done.set(true);
+            throw e;
+        }
+        finally
+        {
+            job.end = System.currentTimeMillis();
+        }
+
+        Throwable failure = job.failure;
+        if (failure instanceof RuntimeException)
+        {
+            throw (RuntimeException) failure;
+        }
+        if (failure instanceof Error)
+        {
+            throw (Error) failure;
+        }
+        if (failure != null)
+        {
+            throw new IllegalStateException(failure);
+        }
+        logger.fine("Proof generated in " + (job.end - job.start) / 1000
+            + " seconds (" + (long) getHashrate() + " hashes per second on "
+            + workers + " threads).");
+        logger.fine("Nonce: " + job.nonce);
+        return job.solution;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Sets the number of worker threads used to generate a Proof of Work. The
+     * new number of threads is used from the next call to
+     * {@linkplain Miner#mine(byte[], int)}.
+     * 
+     * @param threads
+     *            Number of worker threads (at least 1)
+     */
+    public static synchronized void setThreads(int threads)
+    {
+        if (threads < 1)
+        {
+            throw new IllegalArgumentException("Invalid number of threads: "
+                + threads);
+        }
+        Miner.threads = threads;
+        if (pool != null)
+        {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the number of worker threads used to generate a Proof of Work.
+     * 
+     * @return Number of worker threads
+     */
+    public static synchronized int getThreads()
+    {
+        return threads;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the total number of hashes computed by all workers since the
+     * application started.
+     * 
+     * @return Total number of hashes
+     */
+    public static long getHashes()
+    {
+        return hashes.get();
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the aggregate hashrate of all workers during the current Proof
+     * of Work, or during the last Proof of Work if no Block is being mined.
+     * 
+     * @return Hashes per second, 0 if no Proof of Work has been generated yet
+     */
+    public static double getHashrate()
+    {
+        Job job = current;
+        if (job == null)
+        {
+            return 0;
+        }
+        long end = job.end == 0 ? System.currentTimeMillis() : job.end;
+        return job.hashes.get() * 1000D / Math.max(1, end - job.start);
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the pool of worker threads, creating it if necessary.
+     * 
+     * @return Fixed pool of daemon threads
+     */
+    private static synchronized ExecutorService getPool()
+    {
+        if (pool == null)
+        {
+            pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+
+                @Override
+                public Thread newThread(Runnable r)
+                {
+                    Thread t =
+                        new Thread(r, "Miner " + count.incrementAndGet());
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MIN_PRIORITY);
+                    return t;
+                }
+            });
+        }
+        return pool;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Converts a target to a 32-byte unsigned big-endian array, which can be
+     * compared to a hash byte by byte.
+     * 
+     * @param target
+     *            Target as a positive integer
+     * @return 32-byte representation of the target
+     */
+    private static byte[] toBytes(BigInteger target)
+    {
+        byte[] bytes = target.toByteArray();
+        byte[] result = new byte[32];
+        int length = Math.min(bytes.length, 32);
+        System.arraycopy(
+            bytes,
+            bytes.length - length,
+            result,
+            32 - length,
+            length);
+        return result;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * State shared by the workers generating a single Proof of Work.<br>
+     * <br>
+     * Created on: Oct 17, 2026 at 12:44:52 AM
+     * 
+     * @author Matthew Edwards
+     */
+    private static class Job
+    {
+        // ~ Static/Instance variables .........................................
+
+        private final AtomicBoolean  done   = new AtomicBoolean();
+        private final AtomicLong     hashes = new AtomicLong();
+        private final CountDownLatch latch;
+        private final long           start  = System.currentTimeMillis();
+        private volatile long        end;
+        private volatile long        nonce  = -1;
+        private volatile byte[]      solution;
+        private volatile Throwable   failure;
+
+
+        // ~ Constructors ......................................................
+
+        // ---------------------------------------------------------------------
+        /**
+         * Creates new Job for the specified number of workers.
+         * 
+         * @param workers
+         *            Number of workers which will count down the latch
+         */
+        private Job(int workers)
+        {
+            this.latch = new CountDownLatch(workers);
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Searches a contiguous range of the nonce space for a solution.<br>
+     * <br>
+     * Created on: Oct 17, 2026 at 12:46:17 AM
+     * 
+     * @author Matthew Edwards
+     */
+    private static class Worker
+        implements Runnable
+    {
+        // ~ Static/Instance variables .........................................
+
+        private final Job            job;
+        private final HeaderSource   source;
+        private final byte[]         target;
+        private final long           start;
+        private final long           count;
+
+
+        // ~ Constructors ......................................................
+
+        // ---------------------------------------------------------------------
+        /**
+         * Creates new Worker for the specified range of nonces.
+         * 
+         * @param job
+         *            Job this worker belongs to
+         * @param source
+         *            Source of the 80-byte Block Header in binary format
+         * @param target
+         *            32-byte target
+         * @param start
+         *            First nonce to try (wraps around the nonce space)
+         * @param count
+         *            Number of nonces to try
+         */
+        private Worker(
+            Job job,
+            HeaderSource source,
+            byte[] target,
+            long start,
+            long count)
+        {
+            this.job = job;
+            this.source = source;
+            this.target = target;
+            this.start = start;
+            this.count = count;
+        }
+
+
+        // ~ Methods ...........................................................
+
+        // ---------------------------------------------------------------------
+        @Override
+        public void run()
+        {
+            try
+            {
+                byte[] header = source.getHeader();
+                MidstateHasher hasher = new MidstateHasher(header, target);
+                long i = 0;
+                for (; count > i && !job.done.get(); i++)
+                {
+                    if (i % RANGE == RANGE - 1)
+                    {
+                        byte[] current = source.getHeader();
+                        if (current != header)
+                        {
+                            header = current;
+                            hasher = new MidstateHasher(header, target);
+                        }
+                    }
+                    int nonce = (int) (start + i);
+                    if (hasher.hash(nonce))
+                    {
+                        if (job.done.compareAndSet(false, true))
+                        {
+                            ByteBuffer solution =
+                                ByteBuffer.allocate(
+                                    MidstateHasher.HEADER_SIZE + 4);
+                            solution.put(header);
+                            solution.putInt(nonce);
+                            job.solution = solution.array();
+                            job.nonce = nonce & 0xFFFFFFFFL;
+                        }
+                        i++;
+                        break;
+                    }
+                    if (i % BATCH == BATCH - 1)
+                    {
+                        job.hashes.addAndGet(BATCH);
+                        hashes.addAndGet(BATCH);
+                    }
+                }
+                job.hashes.addAndGet(i % BATCH);
+                hashes.addAndGet(i % BATCH);
+            }
+            catch (Throwable t)
+            {
+                /*
+                 * The failure is reported by the mining thread, since a job
+                 * without a solution would otherwise look like an exhausted
+                 * nonce space.
+                 */
+
+                if (job.done.compareAndSet(false, true))
+                {
+                    job.failure = t;
+                }
+            }
+            finally
+            {
+                job.latch.countDown();
+            }
+        }
+    }
+}
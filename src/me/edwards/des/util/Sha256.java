@@ -0,0 +1,245 @@
+/*============================================================================*\
+ | Copyright (C) 2015 Matthew Edwards                                         |
+ |                                                                            |
+ | Licensed under the Apache License, Version 2.0 (the "License"); you may    |
+ | not use this file except in compliance with the License. You may obtain a  |
+ | copy of the License at                                                     |
+ |                                                                            |
+ |     http://www.apache.org/licenses/LICENSE-2.0                             |
+ |                                                                            |
+ | Unless required by applicable law or agreed to in writing, software        |
+ | distributed under the License is distributed on an "AS IS" BASIS,          |
+ | WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   |
+ | See the License for the specific language governing permissions and        |
+ | limitations under the License.                                             |
+\*============================================================================*/
+
+package me.edwards.des.util;
+
+import java.nio.ByteBuffer;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+// -----------------------------------------------------------------------------
+/**
+ * SHA-256 hashing with one reusable {@link MessageDigest} per thread. Looking
+ * up a MessageDigest through the security providers is expensive compared to
+ * hashing a Ballot or a Block header, so each thread creates its instance once
+ * and resets it before every use. Hashes are written into buffers supplied by
+ * the caller, so hashing itself does not allocate.<br>
+ * <br>
+ * Created on: Oct 17, 2026 at 6:47:12 AM
+ * 
+ * @author Matthew Edwards
+ */
+public class Sha256
+{
+    // ~ Static/Instance variables .............................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Length, in bytes, of a SHA-256 hash
+     */
+    public static final int                         LENGTH  = 32;
+
+    private static final ThreadLocal<MessageDigest> digests =
+        new ThreadLocal<MessageDigest>() {
+            @Override
+            protected MessageDigest initialValue()
+            {
+                try
+                {
+                    return MessageDigest.getInstance("SHA-256");
+                }
+                catch (NoSuchAlgorithmException e)
+                {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+
+
+    // ~ Methods ...............................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the calling thread's SHA-256 MessageDigest, reset and ready for
+     * use. The instance must not be shared with other threads, and must not be
+     * used across calls to other methods of this class.
+     * 
+     * @return Reset MessageDigest of the calling thread
+     */
+    public static MessageDigest get()
+    {
+        MessageDigest md = digests.get();
+        md.reset();
+        return md;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Computes the SHA-256 hash of a range of bytes.
+     * 
+     * @param data
+     *            Data to hash
+     * @param offset
+     *            Offset of the first byte to hash
+     * @param length
+     *            Number of bytes to hash
+     * @param out
+     *            Buffer receiving the hash
+     * @param outOffset
+     *            Offset at which the 32-byte hash is written
+     */
+    public static void hash(
+        byte[] data,
+        int offset,
+        int length,
+        byte[] out,
+        int outOffset)
+    {
+        MessageDigest md = get();
+        md.update(data, offset, length);
+        finish(md, out, outOffset);
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Computes the SHA-256^2 hash (SHA-256(SHA-256(DATA))) of a range of bytes.
+     * 
+     * @param data
+     *            Data to hash
+     * @param offset
+     *            Offset of the first byte to hash
+     * @param length
+     *            Number of bytes to hash
+     * @param out
+     *            Buffer receiving the hash
+     * @param outOffset
+     *            Offset at which the 32-byte hash is written
+     */
+    public static void hashTwice(
+        byte[] data,
+        int offset,
+        int length,
+        byte[] out,
+        int outOffset)
+    {
+        MessageDigest md = get();
+        md.update(data, offset, length);
+        finishTwice(md, out, outOffset);
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Computes the SHA-256^2 hash of the remaining bytes of a buffer. The
+     * position of the buffer is not changed, so heap, direct and mapped
+     * buffers are hashed in place.
+     * 
+     * @param data
+     *            Data to hash, from its position to its limit
+     * @param out
+     *            Buffer receiving the hash
+     * @param outOffset
+     *            Offset at which the 32-byte hash is written
+     */
+    public static void hashTwice(ByteBuffer data, byte[] out, int outOffset)
+    {
+        MessageDigest md = get();
+        md.update(data.duplicate());
+        finishTwice(md, out, outOffset);
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Computes the SHA-256^2 hash of a {@link me.edwards.des.block.Block
+     * Block} header followed by a big-endian nonce.
+     * 
+     * @param header
+     *            Block header without the nonce
+     * @param nonce
+     *            Nonce appended to the header
+     * @param out
+     *            Buffer receiving the hash
+     * @param outOffset
+     *            Offset at which the 32-byte hash is written
+     */
+    public static void hashTwice(
+        byte[] header,
+        int nonce,
+        byte[] out,
+        int outOffset)
+    {
+        MessageDigest md = get();
+        md.update(header);
+        md.update((byte) (nonce >>> 24));
+        md.update((byte) (nonce >>> 16));
+        md.update((byte) (nonce >>> 8));
+        md.update((byte) nonce);
+        finishTwice(md, out, outOffset);
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Computes the SHA-256^2 hash of an array of bytes into a new array.
+     * 
+     * @param data
+     *            Data to hash
+     * @return 32-byte hash
+     */
+    public static byte[] hashTwice(byte[] data)
+    {
+        byte[] out = new byte[LENGTH];
+        hashTwice(data, 0, data.length, out, 0);
+        return out;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Completes a hash into a buffer.
+     * 
+     * @param md
+     *            MessageDigest holding the hashed data
+     * @param out
+     *            Buffer receiving the hash
+     * @param outOffset
+     *            Offset at which the 32-byte hash is written
+     */
+    private static void finish(MessageDigest md, byte[] out, int outOffset)
+    {
+        try
+        {
+            md.digest(out, outOffset, LENGTH);
+        }
+        catch (DigestException e)
+        {
+            throw new IllegalArgumentException("Buffer too small for hash", e);
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Completes a hash into a buffer, then replaces it with its own hash.
+     * 
+     * @param md
+     *            MessageDigest holding the hashed data
+     * @param out
+     *            Buffer receiving the hash
+     * @param outOffset
+     *            Offset at which the 32-byte hash is written
+     */
+    private static void finishTwice(MessageDigest md, byte[] out, int outOffset)
+    {
+        finish(md, out, outOffset);
+        md.update(out, outOffset, LENGTH);
+        finish(md, out, outOffset);
+    }
+}
@@ -0,0 +1,258 @@
+/*============================================================================*\
+ | Copyright (C) 2015 Matthew Edwards                                         |
+ |                                                                            |
+ | Licensed under the Apache License, Version 2.0 (the "License"); you may    |
+ | not use this file except in compliance with the License. You may obtain a  |
+ | copy of the License at                                                     |
+ |                                                                            |
+ |     http://www.apache.org/licenses/LICENSE-2.0                             |
+ |                                                                            |
+ | Unless required by applicable law or agreed to in writing, software        |
+ | distributed under the License is distributed on an "AS IS" BASIS,          |
+ | WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.   |
+ | See the License for the specific language governing permissions and        |
+ | limitations under the License.                                             |
+\*============================================================================*/
+
+package me.edwards.des.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// -----------------------------------------------------------------------------
+/**
+ * Fixed pool of daemon threads with a bounded queue of tasks. A task is
+ * {@linkplain WorkerPool#execute(Runnable) refused} instead of queued when the
+ * queue is full, so a flood of work cannot create an unbounded number of
+ * threads or tasks. The submitter of a refused task can ask to be
+ * {@linkplain WorkerPool#whenAvailable(Runnable) notified} once the queue has
+ * drained to half of its capacity, which lets a {@link me.edwards.des.Node
+ * Node} stop reading from a peer until it can accept more work.<br>
+ * <br>
+ * Created on: Oct 17, 2026 at 3:04:26 AM
+ * 
+ * @author Matthew Edwards
+ */
+public class WorkerPool
+{
+    // ~ Static/Instance variables .............................................
+
+    // -------------------------------------------------------------------------
+    private static final Logger            logger = Logger.getLogger("DES.node");
+
+
+    // -------------------------------------------------------------------------
+    private final String                   name;
+    private final int                      capacity;
+    private final ThreadPoolExecutor       executor;
+    private ConcurrentLinkedQueue<Runnable> waiting;
+    private AtomicLong                     rejected;
+
+
+    // ~ Constructors ..........................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Creates new WorkerPool. Threads are started as tasks are submitted.
+     * 
+     * @param name
+     *            Name of the pool, used to name its threads
+     * @param threads
+     *            Number of threads
+     * @param capacity
+     *            Maximum number of tasks waiting for a thread
+     */
+    public WorkerPool(final String name, int threads, final int capacity)
+    {
+        this.name = name;
+        this.capacity = capacity;
+        this.waiting = new ConcurrentLinkedQueue<Runnable>();
+        this.rejected = new AtomicLong();
+        this.executor = new ThreadPoolExecutor(
+            threads,
+            threads,
+            0,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(capacity),
+            new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+
+                @Override
+                public Thread newThread(Runnable r)
+                {
+                    Thread t =
+                        new Thread(r, name + " " + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            }) {
+            @Override
+            protected void afterExecute(Runnable r, Throwable t)
+            {
+                if (!waiting.isEmpty() && getQueue().size() <= capacity / 2)
+                {
+                    notifyWaiting();
+                }
+            }
+        };
+    }
+
+
+    // ~ Methods ...............................................................
+
+    // -------------------------------------------------------------------------
+    /**
+     * Queues a task to be run by one of the pool's threads.
+     * 
+     * @param task
+     *            Task to run
+     * @return True if the task was queued, False if the queue is full or the
+     *         pool was shut down
+     */
+    public boolean execute(Runnable task)
+    {
+        try
+        {
+            executor.execute(task);
+            return true;
+        }
+        catch (RejectedExecutionException e)
+        {
+            rejected.incrementAndGet();
+            return false;
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Runs a callback once the queue has drained to half of its capacity. If
+     * the queue is already below that, the callback is run immediately by the
+     * calling thread.
+     * 
+     * @param callback
+     *            Callback to run once
+     */
+    public void whenAvailable(Runnable callback)
+    {
+        waiting.add(callback);
+        if (executor.getQueue().size() <= capacity / 2)
+        {
+            notifyWaiting();
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Runs and removes all waiting callbacks.
+     */
+    private void notifyWaiting()
+    {
+        Runnable callback;
+        while ((callback = waiting.poll()) != null)
+        {
+            try
+            {
+                callback.run();
+            }
+            catch (Exception e)
+            {
+                logger.log(Level.WARNING, "Error in " + name + " callback", e);
+            }
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Stops accepting tasks. Queued tasks are discarded and running tasks are
+     * interrupted.
+     */
+    public void shutdown()
+    {
+        executor.shutdownNow();
+        waiting.clear();
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the number of tasks waiting for a thread.
+     * 
+     * @return Depth of the queue
+     */
+    public int getQueued()
+    {
+        return executor.getQueue().size();
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the number of threads currently running a task.
+     * 
+     * @return Number of active threads
+     */
+    public int getActive()
+    {
+        return executor.getActiveCount();
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the number of threads of the pool.
+     * 
+     * @return Number of threads
+     */
+    public int getThreads()
+    {
+        return executor.getMaximumPoolSize();
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the maximum number of tasks waiting for a thread.
+     * 
+     * @return Capacity of the queue
+     */
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the number of tasks completed by the pool.
+     * 
+     * @return Number of completed tasks
+     */
+    public long getCompleted()
+    {
+        return executor.getCompletedTaskCount();
+    }
+
+
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the number of tasks refused because the queue was full.
+     * 
+     * @return Number of refused tasks
+     */
+    public long getRejected()
+    {
+        return rejected.get();
+    }
+}